@@ -23,11 +23,25 @@ public class ComparePlugin extends Plugin {
 	// The plug-in ID
 	public static final String PLUGIN_ID = "org.eclipse.compare.core"; //$NON-NLS-1$
 
+	/**
+	 * Diff algorithm based on Myers' LCS, see {@link LCS}.
+	 */
+	public static final String DIFF_ALGORITHM_MYERS = "myers"; //$NON-NLS-1$
+
+	/**
+	 * Histogram diff algorithm that anchors the diff on ranges which occur
+	 * rarely. Falls back to {@link #DIFF_ALGORITHM_MYERS} for comparators that
+	 * don't implement {@link IHashedRangeComparator}.
+	 */
+	public static final String DIFF_ALGORITHM_HISTOGRAM = "histogram"; //$NON-NLS-1$
+
 	// The shared instance
 	private static ComparePlugin plugin;
 
 	private boolean cappingDisabled;
 
+	private String diffAlgorithm = DIFF_ALGORITHM_MYERS;
+
 	/**
 	 * The constructor
 	 */
@@ -78,4 +92,23 @@ public class ComparePlugin extends Plugin {
 		return this.cappingDisabled;
 	}
 
+	/**
+	 * Sets the algorithm used by the <code>RangeDifferencer</code> to find the
+	 * differences between two range comparators.
+	 * 
+	 * @param algorithm
+	 *            one of {@link #DIFF_ALGORITHM_MYERS} or
+	 *            {@link #DIFF_ALGORITHM_HISTOGRAM}
+	 */
+	public void setDiffAlgorithm(String algorithm) {
+		if (DIFF_ALGORITHM_HISTOGRAM.equals(algorithm))
+			this.diffAlgorithm = DIFF_ALGORITHM_HISTOGRAM;
+		else
+			this.diffAlgorithm = DIFF_ALGORITHM_MYERS;
+	}
+
+	public String getDiffAlgorithm() {
+		return this.diffAlgorithm;
+	}
+
 }
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.internal.core;
+
+import org.eclipse.compare.rangedifferencer.IRangeComparator;
+
+/**
+ * An <code>IRangeComparator</code> that is able to provide a hash for each of
+ * its ranges. Diff algorithms that need to bucket equal ranges (e.g. the
+ * histogram diff) use the hashes to avoid comparing every range with every
+ * other range. Ranges that are equal according to <code>rangesEqual</code>
+ * must have the same hash; equal hashes do not imply equal ranges.
+ */
+public interface IHashedRangeComparator extends IRangeComparator {
+
+	/**
+	 * Returns whether the hashes of this comparator can be compared with the
+	 * hashes of the given comparator, i.e. whether both comparators hash their
+	 * ranges the same way.
+	 *
+	 * @param other the comparator to compare this with
+	 * @return <code>true</code> if the hashes of both comparators are
+	 *         consistent with <code>rangesEqual</code>
+	 */
+	boolean isHashCompatible(IRangeComparator other);
+
+	/**
+	 * Returns the hash of the range with the given index.
+	 *
+	 * @param index the index of the range
+	 * @return the hash of the range
+	 */
+	int getRangeHash(int index);
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.internal.core;
+
+/**
+ * Maps lines of text to <code>int</code> symbols. Equal lines are mapped to
+ * the same symbol, so once all lines of the compared inputs have been mapped
+ * using the same table, lines can be compared by comparing their symbols.
+ * <p>
+ * The lines are expected to be normalized by the caller (e.g. with white
+ * space or filtered regions removed). The table is not thread safe.
+ * </p>
+ */
+public class LineSymbolTable {
+
+	private String[] keys = new String[64];
+	private int[] symbols = new int[64];
+	private int size;
+
+	/**
+	 * Returns the symbol of the given line, adding it to the table if the
+	 * line has not been seen before. Symbols are assigned in ascending order
+	 * starting with 0.
+	 *
+	 * @param line the normalized line
+	 * @return the symbol of the line
+	 */
+	public int getSymbol(String line) {
+		int mask = this.keys.length - 1;
+		int i = hash(line) & mask;
+		String key;
+		while ((key = this.keys[i]) != null) {
+			if (key.equals(line))
+				return this.symbols[i];
+			i = (i + 1) & mask;
+		}
+		int symbol = this.size++;
+		this.keys[i] = line;
+		this.symbols[i] = symbol;
+		if (this.size * 2 > this.keys.length)
+			grow();
+		return symbol;
+	}
+
+	/**
+	 * Returns the number of distinct lines in this table.
+	 *
+	 * @return the number of symbols
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	private void grow() {
+		String[] oldKeys = this.keys;
+		int[] oldSymbols = this.symbols;
+		this.keys = new String[oldKeys.length * 2];
+		this.symbols = new int[oldKeys.length * 2];
+		int mask = this.keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			String key = oldKeys[j];
+			if (key != null) {
+				int i = hash(key) & mask;
+				while (this.keys[i] != null)
+					i = (i + 1) & mask;
+				this.keys[i] = key;
+				this.symbols[i] = oldSymbols[j];
+			}
+		}
+	}
+
+	private static int hash(String line) {
+		// spread the high bits, only the low bits are used as index
+		int h = line.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+}
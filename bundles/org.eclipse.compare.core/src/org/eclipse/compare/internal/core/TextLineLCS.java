@@ -18,11 +18,24 @@ public class TextLineLCS extends LCS {
 
 	private final TextLine[] lines1;
 	private final TextLine[] lines2;
+	private final int[] symbols1;
+	private final int[] symbols2;
 	private TextLine[][] lcs;
 
 	public TextLineLCS(TextLine[] lines1, TextLine[] lines2) {
 		this.lines1 = lines1;
 		this.lines2 = lines2;
+		// map the lines to symbols once so the LCS only compares ints
+		LineSymbolTable symbolTable = new LineSymbolTable();
+		this.symbols1 = getSymbols(lines1, symbolTable);
+		this.symbols2 = getSymbols(lines2, symbolTable);
+	}
+
+	private static int[] getSymbols(TextLine[] lines, LineSymbolTable symbolTable) {
+		int[] symbols = new int[lines.length];
+		for (int i = 0; i < lines.length; i++)
+			symbols[i] = symbolTable.getSymbol(lines[i].text);
+		return symbols;
 	}
 
 	public TextLine[][] getResult() {
@@ -32,8 +45,8 @@ public class TextLineLCS extends LCS {
 		TextLine[][] result = new TextLine[2][];
 
 		// compact and shift the result
-		result[0] = compactAndShiftLCS(this.lcs[0], length, this.lines1);
-		result[1] = compactAndShiftLCS(this.lcs[1], length, this.lines2);
+		result[0] = compactAndShiftLCS(this.lcs[0], length, this.lines1, this.symbols1);
+		result[1] = compactAndShiftLCS(this.lcs[1], length, this.lines2, this.symbols2);
 
 		return result;
 	}
@@ -47,7 +60,7 @@ public class TextLineLCS extends LCS {
 	}
 	
 	protected boolean isRangeEqual(int i1, int i2) {
-		return this.lines1[i1].sameText(this.lines2[i2]);
+		return this.symbols1[i1] == this.symbols2[i2];
 	}
 	
 	protected void setLcs(int sl1, int sl2) {
@@ -72,12 +85,13 @@ public class TextLineLCS extends LCS {
 	 * @param len The number of non-null entries in lcs
 	 * @param original The original sequence of lines of which lcs is a
 	 *            subsequence
+	 * @param symbols The symbols of the original lines
 	 * 
 	 * @return The subsequence lcs compacted and chunks shifted towards the
 	 *         front
 	 */
 	private TextLine[] compactAndShiftLCS(TextLine[] lcsSide, int len,
-			TextLine[] original) {
+			TextLine[] original, int[] symbols) {
 		TextLine[] result = new TextLine[len];
 
 		if (len == 0) {
@@ -98,8 +112,9 @@ public class TextLineLCS extends LCS {
 				j++;
 			}
 
-			if (original[result[i - 1].lineNumber() + 1].sameText(lcsSide[j])) {
-				result[i] = original[result[i - 1].lineNumber() + 1];
+			int nextLine = result[i - 1].lineNumber() + 1;
+			if (symbols[nextLine] == symbols[lcsSide[j].lineNumber()]) {
+				result[i] = original[nextLine];
 			} else {
 				result[i] = lcsSide[j];
 			}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2011 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -40,6 +40,8 @@ public class FileDiffResult implements IFilePatchResult {
 	private List fBeforeLines, fAfterLines;
 	private final PatchConfiguration configuration;
 	private String charset;
+	// finds where hunks can be applied to the lines being patched
+	private HunkLocator fLocator;
 	
 	public FileDiffResult(FilePatch2 diff, PatchConfiguration configuration) {
 		super();
@@ -67,6 +69,28 @@ public class FileDiffResult implements IFilePatchResult {
 	 * @param monitor a progress monitor or <code>null</code> if no progress monitoring is desired
 	 */
 	 public void refresh(ReaderCreator content, IProgressMonitor monitor) {
+		boolean create = checkTarget(content);
+		if (this.fDiffProblem) {
+			// We couldn't find the target file or the patch is trying to add a
+			// file that already exists but we need to initialize the hunk
+			// results for display
+			this.fBeforeLines = new ArrayList(getLines(content, false));
+			this.fAfterLines = this.fMatches ? new ArrayList() : this.fBeforeLines;
+			setHunksUnmatched();
+		} else {
+			// If this diff has no problems discovered so far, try applying the patch
+			patch(getLines(content, create), monitor);
+		}
+		checkMatches();
+	}
+
+	/**
+	 * Resets the state of the diff to {no matches, no problems} and checks
+	 * whether the target of the diff exists and is patchable.
+	 * @param content the contents being patched or <code>null</code> for an addition
+	 * @return whether the diff is an addition
+	 */
+	protected boolean checkTarget(ReaderCreator content) {
 		this.fMatches= false;
 		this.fDiffProblem= false;
 		boolean create= false;
@@ -92,25 +116,26 @@ public class FileDiffResult implements IFilePatchResult {
 				this.fErrorMessage= Messages.FileDiffResult_1;
 			}
 		}
+		return create;
+	}
 
-		if (this.fDiffProblem) {
-			// We couldn't find the target file or the patch is trying to add a
-			// file that already exists but we need to initialize the hunk
-			// results for display
-			this.fBeforeLines = new ArrayList(getLines(content, false));
-			this.fAfterLines = this.fMatches ? new ArrayList() : this.fBeforeLines;
-			IHunk[] hunks = this.fDiff.getHunks();
-			for (int i = 0; i < hunks.length; i++) {
-				Hunk hunk = (Hunk) hunks[i];
-				hunk.setCharset(getCharset());
-				HunkResult result = getHunkResult(hunk);
-				result.setMatches(false);
-			}
-		} else {
-			// If this diff has no problems discovered so far, try applying the patch
-			patch(getLines(content, create), monitor);
+	/**
+	 * Marks all hunks as not matching, used when the target can not be patched.
+	 */
+	protected void setHunksUnmatched() {
+		IHunk[] hunks = this.fDiff.getHunks();
+		for (int i = 0; i < hunks.length; i++) {
+			Hunk hunk = (Hunk) hunks[i];
+			hunk.setCharset(getCharset());
+			HunkResult result = getHunkResult(hunk);
+			result.setMatches(false);
 		}
+	}
 
+	/**
+	 * Updates whether the diff matches after the hunks have been applied.
+	 */
+	protected void checkMatches() {
 		if (containsProblems()) {
 			if (this.fMatches) {
 				// Check to see if we have at least one hunk that matches
@@ -159,14 +184,19 @@ public class FileDiffResult implements IFilePatchResult {
 		}
 		int shift= 0;
 		IHunk[] hunks = this.fDiff.getHunks();
-		for (int i = 0; i < hunks.length; i++) {
-			Hunk hunk = (Hunk) hunks[i];
-			hunk.setCharset(getCharset());
-			HunkResult result = getHunkResult(hunk);
-			result.setShift(shift);
-			if (result.patch(lines)) {
-				shift = result.getShift();
+		this.fLocator = new HunkLocator(lines);
+		try {
+			for (int i = 0; i < hunks.length; i++) {
+				Hunk hunk = (Hunk) hunks[i];
+				hunk.setCharset(getCharset());
+				HunkResult result = getHunkResult(hunk);
+				result.setShift(shift);
+				if (result.patch(lines)) {
+					shift = result.getShift();
+				}
 			}
+		} finally {
+			this.fLocator = null;
 		}
 		this.fAfterLines = lines;
 	}
@@ -229,16 +259,21 @@ public class FileDiffResult implements IFilePatchResult {
 		int highestFuzz = -1; // the maximum fuzz factor for all hunks
 		String name = getTargetPath() != null ? getTargetPath().lastSegment() : ""; //$NON-NLS-1$
 		IHunk[] hunks = this.fDiff.getHunks();
-		for (int j = 0; j < hunks.length; j++) {
-			Hunk h = (Hunk) hunks[j];
-			monitor.subTask(NLS.bind(Messages.FileDiffResult_3, new String[] {name, Integer.toString(j + 1)}));
-			HunkResult result = getHunkResult(h);
-			result.setShift(shift);
-			int fuzz = result.calculateFuzz(lines, monitor);
-			shift = result.getShift();
-			if (fuzz > highestFuzz)
-				highestFuzz = fuzz;
-			monitor.worked(1);
+		this.fLocator = new HunkLocator(lines);
+		try {
+			for (int j = 0; j < hunks.length; j++) {
+				Hunk h = (Hunk) hunks[j];
+				monitor.subTask(NLS.bind(Messages.FileDiffResult_3, new String[] {name, Integer.toString(j + 1)}));
+				HunkResult result = getHunkResult(h);
+				result.setShift(shift);
+				int fuzz = result.calculateFuzz(lines, monitor);
+				shift = result.getShift();
+				if (fuzz > highestFuzz)
+					highestFuzz = fuzz;
+				monitor.worked(1);
+			}
+		} finally {
+			this.fLocator = null;
 		}
 		this.fAfterLines = lines;
 		return highestFuzz;
@@ -248,7 +283,17 @@ public class FileDiffResult implements IFilePatchResult {
 		return this.fDiff.getStrippedPath(getConfiguration().getPrefixSegmentStripCount(), getConfiguration().isReversed());
 	}
 
-	private HunkResult getHunkResult(Hunk hunk) {
+	/*
+	 * Returns the locator for the given lines if they are being patched
+	 * and the locator knows about all changes made to them, null otherwise.
+	 */
+	HunkLocator getLocator(List lines) {
+		if (this.fLocator != null && this.fLocator.isLocating(lines))
+			return this.fLocator;
+		return null;
+	}
+
+	HunkResult getHunkResult(Hunk hunk) {
 		HunkResult result = (HunkResult)this.fHunkResults.get(hunk);
 		if (result == null) {
 			result = new HunkResult(this, hunk);
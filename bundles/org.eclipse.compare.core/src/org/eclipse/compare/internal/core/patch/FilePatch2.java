@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2011 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.compare.internal.core.patch;
 
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -19,6 +20,7 @@ import org.eclipse.compare.patch.IFilePatchResult;
 import org.eclipse.compare.patch.IHunk;
 import org.eclipse.compare.patch.PatchConfiguration;
 import org.eclipse.compare.patch.ReaderCreator;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
@@ -202,6 +204,14 @@ public class FilePatch2 implements IFilePatch2 {
 		return result;
 	}
 
+	public IFilePatchResult apply(ReaderCreator content, Writer out,
+			PatchConfiguration configuration, IProgressMonitor monitor)
+			throws CoreException {
+		StreamedFileDiffResult result = new StreamedFileDiffResult(this, configuration);
+		result.refresh(content, out, monitor);
+		return result;
+	}
+
 	public IPath getTargetPath(PatchConfiguration configuration) {
 		return getStrippedPath(configuration.getPrefixSegmentStripCount(), configuration.isReversed());
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -323,6 +323,14 @@ public class Hunk implements IHunk {
 	}
 	
 	int doPatch(PatchConfiguration configuration, List lines, int shift, int fuzz) {
+		return doPatch(configuration, lines, shift, fuzz, null);
+	}
+
+	/*
+	 * Applies the hunk to the given lines and tells the locator, if any,
+	 * about the lines that are removed and added.
+	 */
+	int doPatch(PatchConfiguration configuration, List lines, int shift, int fuzz, HunkLocator locator) {
 		boolean reverse = configuration.isReversed();
 		int pos = getStart(reverse) + shift;
 		List contextLines = new ArrayList();
@@ -372,6 +380,8 @@ public class Hunk implements IHunk {
 				contextLinesMatched = true;
 				
 				lines.remove(pos);
+				if (locator != null)
+					locator.lineRemoved(pos);
 			} else if (isAddedDelimeter(controlChar, reverse)) {
 				// added lines
 				if (precedingLinesChecked && !contextLinesMatched && contextLines.size() > 0)
@@ -392,10 +402,10 @@ public class Hunk implements IHunk {
 				if (line.length() > LineReader.length(line))
 					line = line.substring(0, LineReader.length(line)) + lineDelimiter;
 				
-				if (getLength(reverse) == 0 && pos+1 < lines.size())
-					lines.add(pos+1, line);
-				else
-					lines.add(pos, line);
+				int index= getLength(reverse) == 0 && pos+1 < lines.size() ? pos+1 : pos;
+				lines.add(index, line);
+				if (locator != null)
+					locator.lineAdded(index, getMatchHash(configuration, line, 0));
 				pos++;
 			} else
 				Assert.isTrue(false, "doPatch: unknown control character: " + controlChar); //$NON-NLS-1$
@@ -428,6 +438,22 @@ public class Hunk implements IHunk {
 		return line1.equals(line2);
 	}
 	
+	/*
+	 * Returns a hash of the line from the given index on such that
+	 * lines that match have the same hash.
+	 */
+	int getMatchHash(PatchConfiguration configuration, String line, int start) {
+		boolean ignoreWhitespace= configuration.isIgnoreWhitespace();
+		int end= isIgnoreLineDelimiter() ? LineReader.length(line) : line.length();
+		int hash= 0;
+		for (int i= start; i < end; i++) {
+			char c= line.charAt(i);
+			if (!ignoreWhitespace || !Character.isWhitespace(c))
+				hash= 31 * hash + c;
+		}
+		return hash;
+	}
+
 	private boolean isIgnoreLineDelimiter() {
 		return true;
 	}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.internal.core.patch;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.compare.patch.PatchConfiguration;
+
+/**
+ * Finds the positions at which a hunk that does not apply where the patch
+ * says it should could be applied instead. The lines of the target file are
+ * indexed by their hash once; a hunk can only be applied where the lines it
+ * deletes (and, depending on the fuzz factor, some of its context lines) are
+ * found, so only the positions of the rarest of these lines need to be
+ * tried. Lines with the same hash but different contents only add positions
+ * that {@link Hunk#tryPatch(PatchConfiguration, List, int, int)} rejects.
+ * <p>
+ * The locator must be told about every line that is removed from or added to
+ * the target file (see {@link Hunk#doPatch(PatchConfiguration, List, int, int, HunkLocator)}).
+ * The positions of the lines indexed before are adjusted for these changes
+ * until there are too many of them, then the lines are indexed again.
+ * </p>
+ */
+public class HunkLocator {
+
+	private final List fLines;
+	private boolean fIgnoreWhitespace;
+
+	// the hash of each indexed line in the upper and its position in the lower half, sorted
+	private long[] fIndex;
+	// the number of lines when the lines were indexed plus the number of lines added minus the number of lines removed since
+	private int fSize;
+
+	// the changes since the lines were indexed, a removal is encoded as -position-1
+	private int[] fChanges= new int[16];
+	private int fChangeCount;
+	// the hashes and the current positions of the lines added since the lines were indexed
+	private int[] fAddedHashes= new int[16];
+	private int[] fAddedPositions= new int[16];
+	private int fAddedCount;
+
+	/**
+	 * Create a locator for the given lines.
+	 * @param lines the lines of the target file
+	 */
+	public HunkLocator(List lines) {
+		this.fLines= lines;
+	}
+
+	/**
+	 * Return whether this locator is tracking the given lines.
+	 * @param lines the lines of the target file
+	 * @return whether this locator can be used for the given lines
+	 */
+	public boolean isLocating(List lines) {
+		return lines == this.fLines && (this.fIndex == null || this.fSize == lines.size());
+	}
+
+	/**
+	 * Return the positions, in ascending order, at which the hunk may start
+	 * when applied with the given fuzz factor. The hunk can not be applied at
+	 * any other position.
+	 * @param hunk the hunk
+	 * @param configuration the patch configuration
+	 * @param fuzz the fuzz factor
+	 * @return the candidate positions or <code>null</code> if the hunk has no
+	 * line that must match and every position is a candidate
+	 */
+	public int[] getCandidatePositions(Hunk hunk, PatchConfiguration configuration, int fuzz) {
+		if (this.fIndex == null || this.fIgnoreWhitespace != configuration.isIgnoreWhitespace()
+				|| this.fChangeCount > Math.max(64, this.fSize / 64))
+			index(hunk, configuration);
+		String[] lines= hunk.getLines();
+		boolean[] mustMatch= getLinesThatMustMatch(lines, configuration.isReversed(), fuzz);
+		boolean found= false;
+		int anchorHash= 0;
+		int anchorOffset= 0;
+		int anchorCount= Integer.MAX_VALUE;
+		int offset= 0;
+		for (int i= 0; i < lines.length; i++) {
+			if (isAdded(lines[i].charAt(0), configuration.isReversed()))
+				continue;
+			if (mustMatch[i]) {
+				int hash= hunk.getMatchHash(configuration, lines[i], 1);
+				int count= getCount(hash);
+				if (count < anchorCount) {
+					found= true;
+					anchorHash= hash;
+					anchorOffset= offset;
+					anchorCount= count;
+				}
+			}
+			offset++;
+		}
+		if (!found)
+			return null;
+		int[] positions= getPositions(anchorHash);
+		int count= 0;
+		for (int i= 0; i < positions.length; i++) {
+			if (positions[i] >= anchorOffset)
+				positions[count++]= positions[i] - anchorOffset;
+		}
+		int[] candidates= new int[count];
+		System.arraycopy(positions, 0, candidates, 0, count);
+		return candidates;
+	}
+
+	/**
+	 * Notify the locator that the line at the given position has been removed.
+	 * @param position the position of the removed line
+	 */
+	void lineRemoved(int position) {
+		if (this.fIndex == null)
+			return;
+		int count= 0;
+		for (int i= 0; i < this.fAddedCount; i++) {
+			int added= this.fAddedPositions[i];
+			if (added == position)
+				continue;
+			this.fAddedHashes[count]= this.fAddedHashes[i];
+			this.fAddedPositions[count++]= added > position ? added - 1 : added;
+		}
+		this.fAddedCount= count;
+		addChange(-position - 1);
+		this.fSize--;
+	}
+
+	/**
+	 * Notify the locator that a line has been added at the given position.
+	 * @param position the position of the added line
+	 * @param hash the hash of the added line (see {@link Hunk#getMatchHash(PatchConfiguration, String, int)})
+	 */
+	void lineAdded(int position, int hash) {
+		if (this.fIndex == null)
+			return;
+		for (int i= 0; i < this.fAddedCount; i++) {
+			if (this.fAddedPositions[i] >= position)
+				this.fAddedPositions[i]++;
+		}
+		if (this.fAddedCount == this.fAddedPositions.length) {
+			this.fAddedHashes= grow(this.fAddedHashes, this.fAddedCount);
+			this.fAddedPositions= grow(this.fAddedPositions, this.fAddedCount);
+		}
+		this.fAddedHashes[this.fAddedCount]= hash;
+		this.fAddedPositions[this.fAddedCount++]= position;
+		addChange(position);
+		this.fSize++;
+	}
+
+	private void addChange(int change) {
+		if (this.fChangeCount == this.fChanges.length)
+			this.fChanges= grow(this.fChanges, this.fChangeCount);
+		this.fChanges[this.fChangeCount++]= change;
+	}
+
+	private static int[] grow(int[] array, int length) {
+		int[] newArray= new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, length);
+		return newArray;
+	}
+
+	private void index(Hunk hunk, PatchConfiguration configuration) {
+		this.fIgnoreWhitespace= configuration.isIgnoreWhitespace();
+		this.fSize= this.fLines.size();
+		this.fIndex= new long[this.fSize];
+		for (int i= 0; i < this.fSize; i++) {
+			int hash= hunk.getMatchHash(configuration, (String) this.fLines.get(i), 0);
+			this.fIndex[i]= ((long) hash << 32) | i;
+		}
+		Arrays.sort(this.fIndex);
+		this.fChangeCount= 0;
+		this.fAddedCount= 0;
+	}
+
+	/*
+	 * Returns the index of the first indexed line whose hash is not less than the given one.
+	 */
+	private int getFirst(long hash) {
+		long key= hash << 32;
+		int low= 0;
+		int high= this.fIndex.length;
+		while (low < high) {
+			int middle= (low + high) >>> 1;
+			if (this.fIndex[middle] < key)
+				low= middle + 1;
+			else
+				high= middle;
+		}
+		return low;
+	}
+
+	/*
+	 * Returns the index after the last indexed line with the given hash.
+	 */
+	private int getEnd(int hash) {
+		return hash == Integer.MAX_VALUE ? this.fIndex.length : getFirst(hash + 1L);
+	}
+
+	/*
+	 * Returns an upper bound of the number of lines with the given hash.
+	 */
+	private int getCount(int hash) {
+		int count= getEnd(hash) - getFirst(hash);
+		for (int i= 0; i < this.fAddedCount; i++) {
+			if (this.fAddedHashes[i] == hash)
+				count++;
+		}
+		return count;
+	}
+
+	/*
+	 * Returns the current positions of the lines with the given hash in ascending order.
+	 */
+	private int[] getPositions(int hash) {
+		int first= getFirst(hash);
+		int end= getEnd(hash);
+		int[] positions= new int[end - first + this.fAddedCount];
+		int count= 0;
+		for (int i= first; i < end; i++) {
+			int position= (int) this.fIndex[i];
+			for (int j= 0; j < this.fChangeCount && position != -1; j++) {
+				int change= this.fChanges[j];
+				if (change < 0) {
+					int removed= -change - 1;
+					if (position == removed)
+						position= -1;
+					else if (position > removed)
+						position--;
+				} else if (position >= change) {
+					position++;
+				}
+			}
+			if (position != -1)
+				positions[count++]= position;
+		}
+		for (int i= 0; i < this.fAddedCount; i++) {
+			if (this.fAddedHashes[i] == hash)
+				positions[count++]= this.fAddedPositions[i];
+		}
+		Arrays.sort(positions, 0, count);
+		int[] result= new int[count];
+		System.arraycopy(positions, 0, result, 0, count);
+		return result;
+	}
+
+	/*
+	 * Returns which of the given hunk lines must match the target file for
+	 * Hunk#tryPatch to succeed with the given fuzz factor. Deleted lines must
+	 * always match. Context lines must match without a fuzz factor; with one,
+	 * context lines between changes must match as well as all but the first
+	 * fuzz context lines before the first change and all but the last fuzz
+	 * context lines after the last change.
+	 */
+	private static boolean[] getLinesThatMustMatch(String[] lines, boolean reverse, int fuzz) {
+		boolean[] mustMatch= new boolean[lines.length];
+		int firstChange= -1;
+		int lastChange= -1;
+		for (int i= 0; i < lines.length; i++) {
+			if (lines[i].charAt(0) != ' ') {
+				if (firstChange == -1)
+					firstChange= i;
+				lastChange= i;
+			}
+		}
+		int trailingContext= lines.length - lastChange - 1;
+		for (int i= 0; i < lines.length; i++) {
+			char controlChar= lines[i].charAt(0);
+			if (controlChar != ' ') {
+				mustMatch[i]= !isAdded(controlChar, reverse);
+			} else if (fuzz == 0) {
+				mustMatch[i]= true;
+			} else if (i > lastChange) {
+				// the trailing context, also used if the hunk has no changes
+				mustMatch[i]= i - lastChange - 1 < trailingContext - fuzz;
+			} else if (i < firstChange) {
+				mustMatch[i]= i >= fuzz;
+			} else {
+				mustMatch[i]= true;
+			}
+		}
+		return mustMatch;
+	}
+
+	private static boolean isAdded(char controlChar, boolean reverse) {
+		return (reverse && controlChar == '-') || (!reverse && controlChar == '+');
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2011 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -59,36 +59,13 @@ public class HunkResult {
 		if (isEnabled(configuration)) {
 			if (this.fHunk.tryPatch(configuration, lines, this.fShift, fuzz)) {
 				// it's a perfect match, no shifting is needed
-				this.fShift += this.fHunk.doPatch(configuration, lines, this.fShift, fuzz);
+				this.fShift += this.fHunk.doPatch(configuration, lines, this.fShift, fuzz, getLocator(lines));
 				this.fMatches = true;
 			} else {
-				boolean found= false;
 				int oldShift= this.fShift;
-				
-				int hugeShift = lines.size();
-				for (int i = 1; i <= hugeShift; i++) {
-					if (this.fHunk.tryPatch(configuration, lines, this.fShift - i, fuzz)) {
-						if (isAdjustShift())
-							this.fShift -= i;
-						found = true;
-						break;
-					}
-				}
-				
-				if (!found) {
-					for (int i = 1; i <= hugeShift; i++) {
-						if (this.fHunk.tryPatch(configuration, lines, this.fShift + i, fuzz)) {
-							if (isAdjustShift())
-								this.fShift += i;
-							found = true;
-							break;
-						}
-					}
-				}
-				
-				if (found) {
+				if (shift(configuration, lines, fuzz, null)) {
 					if (DEBUG) System.out.println("patched hunk at offset: " + (this.fShift-oldShift)); //$NON-NLS-1$
-					this.fShift+= this.fHunk.doPatch(configuration, lines, this.fShift, fuzz);
+					this.fShift+= this.fHunk.doPatch(configuration, lines, this.fShift, fuzz, getLocator(lines));
 					this.fMatches = true;
 				}
 			}
@@ -96,6 +73,80 @@ public class HunkResult {
 		return this.fMatches;
 	}
 
+	/*
+	 * Shifts the hunk to the nearest position at which it can be applied,
+	 * trying the positions above the current one before the positions below.
+	 * Returns whether such a position was found. When the diff result has a
+	 * locator for the lines, only the positions it returns are tried.
+	 */
+	private boolean shift(PatchConfiguration configuration, List lines, int fuzz, IProgressMonitor monitor) {
+		// TODO (tzarna): hugeShift=lines.size() is more than we need.
+		// Lines to the beg/end of a file would be enough but this can still
+		// in matching hunks out of order. Try to shift using only lines
+		// available "between" hunks.
+		int hugeShift = lines.size();
+		HunkLocator locator = getLocator(lines);
+		int[] candidates = locator == null ? null : locator.getCandidatePositions(this.fHunk, configuration, fuzz);
+		if (candidates == null) {
+			// shift up
+			for (int i = 1; i <= hugeShift; i++) {
+				checkCanceled(monitor);
+				if (this.fHunk.tryPatch(configuration, lines, this.fShift - i, fuzz)) {
+					if (isAdjustShift())
+						this.fShift -= i;
+					return true;
+				}
+			}
+			// shift down
+			for (int i = 1; i <= hugeShift; i++) {
+				checkCanceled(monitor);
+				if (this.fHunk.tryPatch(configuration, lines, this.fShift + i, fuzz)) {
+					if (isAdjustShift())
+						this.fShift += i;
+					return true;
+				}
+			}
+			return false;
+		}
+		int hunkStart = this.fHunk.getStart(configuration.isReversed());
+		int start = hunkStart + this.fShift;
+		// the first candidate below the current position
+		int below = 0;
+		while (below < candidates.length && candidates[below] <= start)
+			below++;
+		// shift up
+		for (int i = below - 1; i >= 0 && start - candidates[i] <= hugeShift; i--) {
+			if (candidates[i] == start)
+				continue;
+			checkCanceled(monitor);
+			if (this.fHunk.tryPatch(configuration, lines, candidates[i] - hunkStart, fuzz)) {
+				if (isAdjustShift())
+					this.fShift = candidates[i] - hunkStart;
+				return true;
+			}
+		}
+		// shift down
+		for (int i = below; i < candidates.length && candidates[i] - start <= hugeShift; i++) {
+			checkCanceled(monitor);
+			if (this.fHunk.tryPatch(configuration, lines, candidates[i] - hunkStart, fuzz)) {
+				if (isAdjustShift())
+					this.fShift = candidates[i] - hunkStart;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void checkCanceled(IProgressMonitor monitor) {
+		if (monitor != null && monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	private HunkLocator getLocator(List lines) {
+		return getDiffResult().getLocator(lines);
+	}
+
 	private boolean isAdjustShift() {
 		return true;
 	}
@@ -125,47 +176,14 @@ public class HunkResult {
 			// try to apply using lines coordinates from the patch
 			if (this.fHunk.tryPatch(configuration, lines, this.fShift, fuzz)) {
 				// it's a perfect match, no adjustment is needed
-				this.fShift += this.fHunk.doPatch(configuration, lines, this.fShift, fuzz);
+				this.fShift += this.fHunk.doPatch(configuration, lines, this.fShift, fuzz, getLocator(lines));
 				this.fMatches = true;
 				break;
 			}
 			
-			// TODO (tzarna): hugeShift=lines.size() is more than we need.
-			// Lines to the beg/end of a file would be enough but this can still
-			// in matching hunks out of order. Try to shift using only lines
-			// available "between" hunks.
-			int hugeShift = lines.size(); 
-			
-			// shift up 
-			for (int i = 1; i <= hugeShift; i++) {
-				if (monitor.isCanceled()) {
-					throw new OperationCanceledException();
-				}
-				if (this.fHunk.tryPatch(configuration, lines, this.fShift - i, fuzz)) {
-					if (isAdjustShift())
-						this.fShift -= i;
-					this.fMatches = true;
-					break;
-				}
-			}
-
-			// shift down
-			if (!this.fMatches) {
-				for (int i = 1; i <= hugeShift; i++) {
-					if (monitor.isCanceled()) {
-						throw new OperationCanceledException();
-					}
-					if (this.fHunk.tryPatch(configuration, lines, this.fShift + i, fuzz)) {
-						if (isAdjustShift())
-							this.fShift += i;
-						this.fMatches = true;
-						break;
-					}
-				}
-			}
-
-			if (this.fMatches) {
-				this.fShift += this.fHunk.doPatch(configuration, lines, this.fShift, fuzz);
+			if (shift(configuration, lines, fuzz, monitor)) {
+				this.fMatches = true;
+				this.fShift += this.fHunk.doPatch(configuration, lines, this.fShift, fuzz, getLocator(lines));
 				break;
 			}
 		}
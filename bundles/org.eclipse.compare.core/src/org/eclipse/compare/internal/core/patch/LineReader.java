@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@ package org.eclipse.compare.internal.core.patch;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -87,6 +88,19 @@ public class LineReader {
 		return sb.toString();
 	}
 	
+	/*
+	 * Writes the given line like createString appends it.
+	 */
+	/* package */ static void write(Writer writer, boolean preserveLineDelimeters, String line) throws IOException {
+		int l= length(line);
+		if (!preserveLineDelimeters && l < line.length()) {	// line has delimiter
+			writer.write(line, 0, l);
+			writer.write(System.getProperty("line.separator")); //$NON-NLS-1$
+		} else {
+			writer.write(line);
+		}
+	}
+
 	/*
 	 * Returns the length (excluding a line delimiter CR, LF, CR/LF)
 	 * of the given string.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2013 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -26,11 +26,13 @@ import com.ibm.icu.text.DateFormat;
 import com.ibm.icu.text.SimpleDateFormat;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 
 import org.eclipse.compare.patch.IFilePatch2;
+import org.eclipse.compare.patch.IFilePatchVisitor;
 
 public class PatchReader {
 
@@ -57,6 +59,9 @@ public class PatchReader {
 	private boolean fIsGitPatch;
 	private DiffProject[] fDiffProjects;
 	private FilePatch2[] fDiffs;
+	// passed the file diffs as soon as they have been read, if any
+	private IFilePatchVisitor fVisitor;
+	private CoreException fVisitorException;
 
 	// API for writing new multi-project patch format
 	public static final String MULTIPROJECTPATCH_HEADER= "### Eclipse Workspace Patch"; //$NON-NLS-1$
@@ -89,6 +94,36 @@ public class PatchReader {
 		this.fDateFormats = dateFormats;
 	}
 	
+	/**
+	 * Parse the given patch and pass each file diff to the given visitor as
+	 * soon as it has been read instead of keeping the file diffs. The file
+	 * diffs of a workspace patch are passed as relative diffs, see
+	 * {@link #getAdjustedDiffs()}.
+	 * 
+	 * @param reader
+	 *            the patch
+	 * @param visitor
+	 *            the visitor
+	 * @throws IOException
+	 *             if an error occurs reading the patch
+	 * @throws CoreException
+	 *             if the visitor failed
+	 */
+	public void parse(BufferedReader reader, IFilePatchVisitor visitor) throws IOException, CoreException {
+		this.fVisitor= visitor;
+		this.fVisitorException= null;
+		try {
+			parse(reader);
+		} finally {
+			this.fVisitor= null;
+		}
+		if (this.fVisitorException != null) {
+			CoreException e= this.fVisitorException;
+			this.fVisitorException= null;
+			throw e;
+		}
+	}
+
 	public void parse(BufferedReader reader) throws IOException {
 		List diffs= new ArrayList();
 		HashMap diffProjects= new HashMap(4);
@@ -155,6 +190,8 @@ public class PatchReader {
 				line= readUnifiedDiff(diffs, lr, line, diffArgs, fileName, diffProject);
 				diffArgs= fileName= null;
 				reread= true;
+				if (!visit(diffs))
+					break;
 			}
 		}
 
@@ -207,16 +244,20 @@ public class PatchReader {
 				diffArgs= line.substring(4).trim();
 			} else if (line.startsWith("--- ")) { //$NON-NLS-1$
 				line= readUnifiedDiff(diffs, lr, line, diffArgs, fileName);
-				if (!headerLines.isEmpty())
+				if (!headerLines.isEmpty() && !diffs.isEmpty())
 					setHeader((FilePatch2)diffs.get(diffs.size() - 1), headerLines);
 				diffArgs= fileName= null;
 				reread= true;
+				if (!visit(diffs))
+					break;
 			} else if (line.startsWith("*** ")) { //$NON-NLS-1$
 				line= readContextDiff(diffs, lr, line, diffArgs, fileName);
-				if (!headerLines.isEmpty())
+				if (!headerLines.isEmpty() && !diffs.isEmpty())
 					setHeader((FilePatch2)diffs.get(diffs.size() - 1), headerLines);
 				diffArgs= fileName= null;
 				reread= true;
+				if (!visit(diffs))
+					break;
 			}
 			
 			// Any lines we read here are header lines.
@@ -231,6 +272,33 @@ public class PatchReader {
 		this.fDiffs = (FilePatch2[]) diffs.toArray(new FilePatch2[diffs.size()]);
 	}
 	
+	/*
+	 * Passes the file diffs read so far to the visitor, if there is one, and
+	 * forgets them. Returns whether the rest of the patch should be read.
+	 */
+	private boolean visit(List diffs) {
+		if (this.fVisitor == null)
+			return true;
+		try {
+			for (Iterator iter= diffs.iterator(); iter.hasNext();) {
+				FilePatch2 diff= (FilePatch2) iter.next();
+				DiffProject project= diff.getProject();
+				if (project != null) {
+					project.remove(diff);
+					diff= diff.asRelativeDiff();
+				}
+				if (!this.fVisitor.visit(diff))
+					return false;
+			}
+			return true;
+		} catch (CoreException e) {
+			this.fVisitorException= e;
+			return false;
+		} finally {
+			diffs.clear();
+		}
+	}
+
 	private void setHeader(FilePatch2 diff, List headerLines) {
 		String header = LineReader.createString(false, headerLines);
 		diff.setHeader(header);
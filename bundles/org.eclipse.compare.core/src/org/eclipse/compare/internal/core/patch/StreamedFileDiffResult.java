@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.internal.core.patch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.compare.internal.core.ComparePlugin;
+import org.eclipse.compare.patch.IHunk;
+import org.eclipse.compare.patch.PatchConfiguration;
+import org.eclipse.compare.patch.ReaderCreator;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * A file diff result that writes the patched contents to a writer while the
+ * contents are being read. Only a window of lines around the hunk being
+ * applied is held in memory: the lines more than {@link #MAXIMUM_SHIFT}
+ * lines above the position of the hunk have been written and the lines more
+ * than {@link #MAXIMUM_SHIFT} lines below its end have not been read yet.
+ * The hunks are applied in order with the same shifting and fuzz factors as
+ * by {@link FileDiffResult#patch(List, IProgressMonitor)}, except that a hunk
+ * can not be shifted out of the window.
+ * <p>
+ * The before and after lines are not available from this result.
+ * </p>
+ */
+public class StreamedFileDiffResult extends FileDiffResult {
+
+	/**
+	 * The maximum number of lines a hunk is shifted by.
+	 */
+	public static final int MAXIMUM_SHIFT= 1000;
+
+	private ReaderCreator fContent;
+
+	/**
+	 * Create a result for applying the given diff.
+	 * @param diff the file diff
+	 * @param configuration the patch configuration
+	 */
+	public StreamedFileDiffResult(FilePatch2 diff, PatchConfiguration configuration) {
+		super(diff, configuration);
+	}
+
+	/**
+	 * Apply the diff to the given contents and write the patched contents to
+	 * the given writer. Like {@link #refresh(ReaderCreator, IProgressMonitor)}
+	 * the target is checked first; if it can not be patched nothing is written.
+	 * @param content the contents being patched or <code>null</code> for an addition
+	 * @param out the writer for the patched contents, it is flushed but not closed
+	 * @param monitor a progress monitor or <code>null</code> if no progress monitoring is desired
+	 * @throws CoreException if the contents could not be read or the patched
+	 * contents could not be written
+	 */
+	public void refresh(ReaderCreator content, Writer out, IProgressMonitor monitor) throws CoreException {
+		if (monitor == null)
+			monitor= new NullProgressMonitor();
+		this.fContent= content;
+		boolean create= checkTarget(content);
+		if (getDiffProblem()) {
+			setHunksUnmatched();
+			return;
+		}
+
+		LineReader reader= create ? null : createLineReader(content);
+		try {
+			patch(reader, out, monitor);
+			out.flush();
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, ComparePlugin.PLUGIN_ID, 0, e.getMessage(), e));
+		} finally {
+			if (reader != null)
+				reader.close();
+		}
+		checkMatches();
+	}
+
+	/*
+	 * Applies the hunks to the lines of the reader, if any, in order. Each
+	 * hunk is applied to the window of lines it can be shifted within, the
+	 * lines above the window are written and the window is moved on.
+	 */
+	private void patch(LineReader reader, Writer out, IProgressMonitor monitor) throws IOException {
+		boolean reverse= getConfiguration().isReversed();
+		boolean fuzz= getConfiguration().getFuzz() != 0;
+		IHunk[] hunks= getDiff().getHunks();
+		List window= new ArrayList();
+		// the number of lines written before the window
+		int windowStart= 0;
+		int shift= 0;
+		monitor.beginTask(null, hunks.length);
+		try {
+			for (int i= 0; i < hunks.length; i++) {
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+				Hunk hunk= (Hunk) hunks[i];
+				hunk.setCharset(getCharset());
+				int start= hunk.getStart(reverse) + shift;
+				// the first line the hunk can be shifted to
+				int first= start - MAXIMUM_SHIFT;
+				int written= Math.min(first - windowStart, window.size());
+				if (written > 0) {
+					List lines= window.subList(0, written);
+					write(out, lines);
+					lines.clear();
+					windowStart+= written;
+				}
+				String line;
+				while (reader != null && windowStart < first && (line= reader.readLine()) != null) {
+					LineReader.write(out, isPreserveLineDelimeters(), line);
+					windowStart++;
+				}
+				int end= start + hunk.getLength(reverse) + MAXIMUM_SHIFT;
+				while (reader != null && windowStart + window.size() < end && (line= reader.readLine()) != null)
+					window.add(line);
+
+				HunkResult result= getHunkResult(hunk);
+				if (fuzz) {
+					result.setShift(shift - windowStart);
+					result.calculateFuzz(new ArrayList(window), monitor);
+				}
+				result.setShift(shift - windowStart);
+				boolean matches= result.patch(window);
+				result.setShift(result.getShift() + windowStart);
+				if (matches)
+					shift= result.getShift();
+				monitor.worked(1);
+			}
+			write(out, window);
+			String line;
+			while (reader != null && (line= reader.readLine()) != null)
+				LineReader.write(out, isPreserveLineDelimeters(), line);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	private void write(Writer out, List lines) throws IOException {
+		for (int i= 0; i < lines.size(); i++)
+			LineReader.write(out, isPreserveLineDelimeters(), (String) lines.get(i));
+	}
+
+	private LineReader createLineReader(ReaderCreator content) throws CoreException {
+		LineReader reader= new LineReader(new BufferedReader(content.createReader()));
+		if (!Platform.WS_CARBON.equals(Platform.getWS()))
+			reader.ignoreSingleCR(); // Don't treat single CRs as line feeds to be consistent with command line patch
+		return reader;
+	}
+
+	protected boolean isEmpty(ReaderCreator content) {
+		if (content == null)
+			return true;
+		LineReader reader= null;
+		try {
+			reader= createLineReader(content);
+			return reader.readLine() == null;
+		} catch (CoreException e) {
+			ComparePlugin.log(e);
+		} catch (IOException e) {
+			// silently ignored
+		} finally {
+			if (reader != null)
+				reader.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Return the contents before the patch was applied, which are read again.
+	 * @return a stream to the original contents
+	 */
+	public InputStream getOriginalContents() {
+		List lines= LineReader.load(this.fContent, this.fContent == null);
+		return asInputStream(LineReader.createString(isPreserveLineDelimeters(), lines), getCharset());
+	}
+
+	/**
+	 * Return <code>null</code> as the patched contents have been written
+	 * while the patch was applied.
+	 * @return <code>null</code>
+	 */
+	public InputStream getPatchedContents() {
+		return null;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2011 IBM Corporation and others.
+ * Copyright (c) 2009, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.compare.patch;
 
+import java.io.Writer;
+
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 
@@ -55,6 +58,37 @@ public interface IFilePatch2 {
 	public IFilePatchResult apply(ReaderCreator content,
 			PatchConfiguration configuration, IProgressMonitor monitor);
 
+	/**
+	 * Apply this patch to the given contents and write the patched contents
+	 * to the given writer while the contents are being read. Unlike
+	 * {@link #apply(ReaderCreator, PatchConfiguration, IProgressMonitor)}
+	 * only the lines around the hunk being applied are held in memory, so a
+	 * hunk that does not apply at the position given in the patch is only
+	 * searched for up to 1000 lines above and below it. The result indicates
+	 * which hunks failed to apply; as the patched contents have been written
+	 * to the writer its {@link IFilePatchResult#getPatchedContents()} returns
+	 * <code>null</code> and its {@link IFilePatchResult#getOriginalContents()}
+	 * reads the contents again.
+	 * 
+	 * @param content
+	 *            the contents
+	 * @param out
+	 *            the writer the patched contents are written to, it is
+	 *            flushed but not closed
+	 * @param configuration
+	 *            the patch configuration
+	 * @param monitor
+	 *            a progress monitor
+	 * @return the result of the patch application
+	 * @throws CoreException
+	 *             if the contents could not be read or the patched contents
+	 *             could not be written
+	 * @since org.eclipse.compare.core 3.6
+	 */
+	public IFilePatchResult apply(ReaderCreator content, Writer out,
+			PatchConfiguration configuration, IProgressMonitor monitor)
+			throws CoreException;
+
 	/**
 	 * Return the header information of the patch or <code>null</code> if there
 	 * was no header text. The header may be multi-line.
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.patch;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * A visitor that is passed the file patches of a patch one at a time while
+ * the patch is being parsed.
+ * <p>
+ * Clients may implement this interface.
+ * </p>
+ *
+ * @see PatchParser#parsePatch(ReaderCreator, IFilePatchVisitor)
+ * @since org.eclipse.compare.core 3.6
+ */
+public interface IFilePatchVisitor {
+
+	/**
+	 * Visit the given file patch. The file patch is not referenced by the
+	 * parser anymore once this method returns.
+	 *
+	 * @param filePatch
+	 *            the file patch that has just been parsed
+	 * @return whether the remaining file patches of the patch should be
+	 *         parsed and visited
+	 * @throws CoreException
+	 *             if the file patch could not be processed, which stops
+	 *             the parsing
+	 */
+	public boolean visit(IFilePatch2 filePatch) throws CoreException;
+
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 IBM Corporation and others.
+ * Copyright (c) 2008, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -54,4 +54,39 @@ public class PatchParser {
 			}
 		}
 	}
+
+	/**
+	 * Parse the given patch one file patch at a time and pass each file
+	 * patch to the given visitor as soon as it has been read. Unlike
+	 * {@link #parsePatch(ReaderCreator)} the file patches are not kept, so
+	 * only one file patch is held in memory at a time if the visitor does not
+	 * keep them either, e.g. when it applies each file patch with
+	 * {@link IFilePatch2#apply(ReaderCreator, java.io.Writer, PatchConfiguration, org.eclipse.core.runtime.IProgressMonitor)}.
+	 * 
+	 * @param content
+	 *            a patch reader creator
+	 * @param visitor
+	 *            the visitor of the file patches
+	 * @throws CoreException
+	 *             if an error occurs reading the contents or the visitor
+	 *             failed
+	 * @since org.eclipse.compare.core 3.6
+	 */
+	public static void parsePatch(ReaderCreator content,
+			IFilePatchVisitor visitor) throws CoreException {
+		BufferedReader reader = new BufferedReader(content.createReader());
+		try {
+			PatchReader patchReader = new PatchReader();
+			patchReader.parse(reader, visitor);
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR,
+					ComparePlugin.PLUGIN_ID, 0, e.getMessage(), e));
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				// ignored
+			}
+		}
+	}
 }
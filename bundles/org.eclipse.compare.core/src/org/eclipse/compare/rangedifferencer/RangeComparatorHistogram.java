@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.rangedifferencer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.compare.internal.core.IHashedRangeComparator;
+import org.eclipse.compare.internal.core.Messages;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+
+/**
+ * Histogram diff, an extension of the patience diff. The ranges of both sides
+ * are split recursively at the longest common region that contains the least
+ * frequently occurring range of the left side. Unique ranges therefore become
+ * the anchors of the diff, which usually gives more readable results than
+ * the plain LCS and does not need to cap its run time on long inputs.
+ * <p>
+ * The algorithm needs to bucket equal ranges, so both comparators have to
+ * implement {@link IHashedRangeComparator}. If they don't, or if a region only
+ * consists of ranges that occur too often to be used as an anchor, the Myers
+ * LCS of {@link RangeComparatorLCS} is used instead.
+ * </p>
+ */
+/* package */ class RangeComparatorHistogram {
+
+	/*
+	 * Ranges that occur more often than this on the left side of a region are
+	 * not used as anchors.
+	 */
+	private static final int MAX_CHAIN_LENGTH = 64;
+
+	private final IRangeComparator left, right;
+	private final int[] leftHashes, rightHashes;
+	private final AbstractRangeDifferenceFactory factory;
+	private final List differences = new ArrayList();
+
+	public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory, IProgressMonitor pm, IRangeComparator left, IRangeComparator right) {
+		if (!canHash(left, right))
+			return RangeComparatorLCS.findDifferences(factory, pm, left, right);
+		RangeComparatorHistogram histogram = new RangeComparatorHistogram(factory, left, right);
+		SubMonitor monitor = SubMonitor.convert(pm, Messages.RangeComparatorLCS_0, left.getRangeCount() + right.getRangeCount());
+		try {
+			return histogram.getDifferences(monitor);
+		} finally {
+			if (pm != null)
+				pm.done();
+		}
+	}
+
+	private static boolean canHash(IRangeComparator left, IRangeComparator right) {
+		return left instanceof IHashedRangeComparator
+				&& right instanceof IHashedRangeComparator
+				&& ((IHashedRangeComparator) left).isHashCompatible(right);
+	}
+
+	private RangeComparatorHistogram(AbstractRangeDifferenceFactory factory, IRangeComparator left, IRangeComparator right) {
+		this.factory = factory;
+		this.left = left;
+		this.right = right;
+		this.leftHashes = getHashes((IHashedRangeComparator) left);
+		this.rightHashes = getHashes((IHashedRangeComparator) right);
+	}
+
+	private static int[] getHashes(IHashedRangeComparator comparator) {
+		int[] hashes = new int[comparator.getRangeCount()];
+		for (int i = 0; i < hashes.length; i++)
+			hashes[i] = comparator.getRangeHash(i);
+		return hashes;
+	}
+
+	private RangeDifference[] getDifferences(SubMonitor monitor) {
+		/*
+		 * Regions still to diff, as {leftStart, leftEnd, rightStart, rightEnd}.
+		 * A stack is used instead of recursion so that long sequences of
+		 * anchors can't overflow the call stack. Pushing the region after an
+		 * anchor before the one in front of it keeps the differences sorted.
+		 */
+		List regions = new ArrayList();
+		regions.add(new int[] { 0, this.leftHashes.length, 0, this.rightHashes.length });
+		while (!regions.isEmpty()) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			int[] region = (int[]) regions.remove(regions.size() - 1);
+			int leftStart = region[0], leftEnd = region[1];
+			int rightStart = region[2], rightEnd = region[3];
+
+			// common prefixes and suffixes never contain differences
+			while (leftStart < leftEnd && rightStart < rightEnd && isRangeEqual(leftStart, rightStart)) {
+				leftStart++;
+				rightStart++;
+			}
+			while (leftStart < leftEnd && rightStart < rightEnd && isRangeEqual(leftEnd - 1, rightEnd - 1)) {
+				leftEnd--;
+				rightEnd--;
+			}
+			if (leftStart == leftEnd || rightStart == rightEnd) {
+				addChange(leftStart, leftEnd, rightStart, rightEnd);
+				monitor.worked(leftEnd - leftStart + rightEnd - rightStart);
+				continue;
+			}
+
+			int[] anchor = findAnchor(leftStart, leftEnd, rightStart, rightEnd);
+			if (anchor == null) {
+				// nothing in common, the whole region is a single change
+				addChange(leftStart, leftEnd, rightStart, rightEnd);
+				monitor.worked(leftEnd - leftStart + rightEnd - rightStart);
+			} else if (anchor[0] == -1) {
+				// only frequent ranges in common, let the LCS sort them out
+				addLCSChanges(leftStart, leftEnd, rightStart, rightEnd);
+				monitor.worked(leftEnd - leftStart + rightEnd - rightStart);
+			} else {
+				regions.add(new int[] { anchor[1], leftEnd, anchor[3], rightEnd });
+				regions.add(new int[] { leftStart, anchor[0], rightStart, anchor[2] });
+				monitor.worked(anchor[1] - anchor[0] + anchor[3] - anchor[2]);
+			}
+		}
+		return (RangeDifference[]) this.differences.toArray(new RangeDifference[this.differences.size()]);
+	}
+
+	/*
+	 * Finds the longest common region of the given ranges that contains the
+	 * ranges with the lowest number of occurrences on the left side. Returns
+	 * the region as {leftStart, leftEnd, rightStart, rightEnd}, an array
+	 * starting with -1 if all ranges in common occur too often, or
+	 * <code>null</code> if there are no ranges in common at all.
+	 */
+	private int[] findAnchor(int leftStart, int leftEnd, int rightStart, int rightEnd) {
+		int length = leftEnd - leftStart;
+
+		/*
+		 * Group the equal ranges of the left side into records. The
+		 * occurrences of a record are chained in ascending order through next.
+		 */
+		int tableSize = 1;
+		while (tableSize < 2 * length)
+			tableSize <<= 1;
+		int[] table = new int[tableSize]; // record index + 1, 0 for empty
+		int[] recordNextInBucket = new int[length];
+		int[] recordFirst = new int[length];
+		int[] recordCount = new int[length];
+		int records = 0;
+		int[] next = new int[length];
+		int[] recordOf = new int[length];
+
+		for (int i = leftEnd - 1; i >= leftStart; i--) {
+			int hash = this.leftHashes[i];
+			int bucket = hash & (tableSize - 1);
+			int record = table[bucket] - 1;
+			while (record != -1) {
+				int first = recordFirst[record];
+				if (this.leftHashes[first] == hash && this.left.rangesEqual(i, this.left, first))
+					break;
+				record = recordNextInBucket[record] - 1;
+			}
+			if (record == -1) {
+				record = records++;
+				recordNextInBucket[record] = table[bucket];
+				table[bucket] = record + 1;
+				next[i - leftStart] = -1;
+			} else {
+				next[i - leftStart] = recordFirst[record];
+			}
+			recordFirst[record] = i;
+			recordCount[record]++;
+			recordOf[i - leftStart] = record;
+		}
+
+		int[] best = null;
+		int bestCount = MAX_CHAIN_LENGTH + 1;
+		boolean hasCommon = false;
+		int r = rightStart;
+		while (r < rightEnd) {
+			int hash = this.rightHashes[r];
+			int record = table[hash & (tableSize - 1)] - 1;
+			while (record != -1) {
+				int first = recordFirst[record];
+				if (this.leftHashes[first] == hash && this.left.rangesEqual(first, this.right, r))
+					break;
+				record = recordNextInBucket[record] - 1;
+			}
+			if (record == -1) {
+				r++;
+				continue;
+			}
+			hasCommon = true;
+			if (recordCount[record] > bestCount) {
+				r++;
+				continue;
+			}
+
+			int nextR = r + 1;
+			for (int l = recordFirst[record]; l != -1; l = next[l - leftStart]) {
+				int count = recordCount[record];
+				int ls = l, rs = r;
+				int le = l + 1, re = r + 1;
+				while (ls > leftStart && rs > rightStart && isRangeEqual(ls - 1, rs - 1)) {
+					ls--;
+					rs--;
+					if (count > 1)
+						count = Math.min(count, recordCount[recordOf[ls - leftStart]]);
+				}
+				while (le < leftEnd && re < rightEnd && isRangeEqual(le, re)) {
+					if (count > 1)
+						count = Math.min(count, recordCount[recordOf[le - leftStart]]);
+					le++;
+					re++;
+				}
+				if (nextR < re)
+					nextR = re;
+				if (best == null || best[1] - best[0] < le - ls || count < bestCount) {
+					best = new int[] { ls, le, rs, re };
+					bestCount = count;
+				}
+			}
+			r = nextR;
+		}
+
+		if (best == null)
+			return hasCommon ? new int[] { -1 } : null;
+		return best;
+	}
+
+	private boolean isRangeEqual(int leftIndex, int rightIndex) {
+		return this.leftHashes[leftIndex] == this.rightHashes[rightIndex]
+				&& this.left.rangesEqual(leftIndex, this.right, rightIndex);
+	}
+
+	/*
+	 * Runs the Myers LCS on the given region and adds its differences.
+	 */
+	private void addLCSChanges(int leftStart, int leftEnd, int rightStart, int rightEnd) {
+		SubRangeComparator subLeft = new SubRangeComparator(this.left, leftStart, leftEnd - leftStart);
+		SubRangeComparator subRight = new SubRangeComparator(this.right, rightStart, rightEnd - rightStart);
+		RangeDifference[] lcsDifferences = RangeComparatorLCS.findDifferences(this.factory, null, subLeft, subRight);
+		for (int i = 0; i < lcsDifferences.length; i++) {
+			RangeDifference difference = lcsDifferences[i];
+			addChange(leftStart + difference.leftStart(), leftStart + difference.leftEnd(),
+					rightStart + difference.rightStart(), rightStart + difference.rightEnd());
+		}
+	}
+
+	private void addChange(int leftStart, int leftEnd, int rightStart, int rightEnd) {
+		if (leftStart == leftEnd && rightStart == rightEnd)
+			return;
+		if (!this.differences.isEmpty()) {
+			RangeDifference last = (RangeDifference) this.differences.get(this.differences.size() - 1);
+			if (last.leftEnd() == leftStart && last.rightEnd() == rightStart) {
+				// adjacent changes are reported as one
+				last.leftLength += leftEnd - leftStart;
+				last.rightLength += rightEnd - rightStart;
+				return;
+			}
+		}
+		this.differences.add(this.factory.createRangeDifference(RangeDifference.CHANGE, rightStart, rightEnd - rightStart, leftStart, leftEnd - leftStart));
+	}
+
+	/*
+	 * Exposes a region of a comparator as a comparator of its own.
+	 */
+	private static class SubRangeComparator implements IRangeComparator {
+
+		private final IRangeComparator comparator;
+		private final int offset;
+		private final int length;
+
+		SubRangeComparator(IRangeComparator comparator, int offset, int length) {
+			this.comparator = comparator;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public int getRangeCount() {
+			return this.length;
+		}
+
+		public boolean rangesEqual(int thisIndex, IRangeComparator other, int otherIndex) {
+			SubRangeComparator sub = (SubRangeComparator) other;
+			return this.comparator.rangesEqual(this.offset + thisIndex, sub.comparator, sub.offset + otherIndex);
+		}
+
+		public boolean skipRangeComparison(int length, int maxLength, IRangeComparator other) {
+			return false;
+		}
+	}
+}
@@ -13,6 +13,7 @@ package org.eclipse.compare.rangedifferencer;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.compare.internal.core.ComparePlugin;
 import org.eclipse.compare.internal.core.Messages;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -95,6 +96,8 @@ public final class RangeDifferencer {
 	 * @since org.eclipse.compare.core 3.5
 	 */
 	public static RangeDifference[] findDifferences(AbstractRangeDifferenceFactory factory, IProgressMonitor pm, IRangeComparator left, IRangeComparator right) {
+		if (isHistogramDiff())
+			return RangeComparatorHistogram.findDifferences(factory, pm, left, right);
 		return RangeComparatorLCS.findDifferences(factory, pm, left, right);
 	}
 
@@ -395,6 +398,11 @@ public final class RangeDifferencer {
 
 	//---- private methods
 
+	private static boolean isHistogramDiff() {
+		ComparePlugin plugin= ComparePlugin.getDefault();
+		return plugin != null && ComparePlugin.DIFF_ALGORITHM_HISTOGRAM.equals(plugin.getDiffAlgorithm());
+	}
+
 	/*
 	 * Creates a <code>RangeDifference3</code> given the
 	 * state of two DifferenceIterators.
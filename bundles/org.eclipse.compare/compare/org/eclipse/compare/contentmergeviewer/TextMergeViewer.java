@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -63,6 +63,7 @@ import org.eclipse.compare.internal.Utilities;
 import org.eclipse.compare.internal.merge.DocumentMerger;
 import org.eclipse.compare.internal.merge.DocumentMerger.Diff;
 import org.eclipse.compare.internal.merge.DocumentMerger.IDocumentMergerInput;
+import org.eclipse.compare.internal.merge.DocumentMerger.IncrementalDiff;
 import org.eclipse.compare.patch.IHunk;
 import org.eclipse.compare.rangedifferencer.RangeDifference;
 import org.eclipse.compare.structuremergeviewer.DiffNode;
@@ -82,6 +83,7 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.ActionContributionItem;
 import org.eclipse.jface.action.IAction;
@@ -261,6 +263,9 @@ public class TextMergeViewer extends ContentMergeViewer implements IAdaptable {
 	private static final char LEFT_CONTRIBUTOR = MergeViewerContentProvider.LEFT_CONTRIBUTOR;
 	
 	private static final String DIFF_RANGE_CATEGORY = CompareUIPlugin.PLUGIN_ID + ".DIFF_RANGE_CATEGORY"; //$NON-NLS-1$
+	
+	/** The delay after an edit before the edited lines are diffed again, in milliseconds */
+	private static final int DIFF_UPDATE_DELAY= 300;
 
 	static final boolean DEBUG= false;
 	
@@ -453,6 +458,8 @@ public class TextMergeViewer extends ContentMergeViewer implements IAdaptable {
 	// whether enhanced viewer configuration has been done
 	private boolean isConfigured = false;
 	private boolean fRedoDiff = false;
+	private UIJob fDiffUpdater;
+	private Job fIncrementalDiffJob;
 
 	private final class InternalOutlineViewerCreator extends OutlineViewerCreator implements ISelectionChangedListener {
 		public Viewer findStructureViewer(Viewer oldViewer,
@@ -1814,6 +1821,11 @@ public class TextMergeViewer extends ContentMergeViewer implements IAdaptable {
 		if (fHandlerService != null)
 			fHandlerService.dispose();
 		
+		if (fDiffUpdater != null)
+			fDiffUpdater.cancel();
+		if (fIncrementalDiffJob != null)
+			fIncrementalDiffJob.cancel();
+		
 		Object input= getInput();
 		removeFromDocumentManager(ANCESTOR_CONTRIBUTOR, input);
 		removeFromDocumentManager(LEFT_CONTRIBUTOR, input);
@@ -3001,34 +3013,90 @@ public class TextMergeViewer extends ContentMergeViewer implements IAdaptable {
 		
 		final IDocument doc= e.getDocument();
 		
+		int length= e.getText() != null ? e.getText().length() : 0;
 		if (doc == fLeft.getSourceViewer().getDocument()) {
 			setLeftDirty(dirty);
+			fMerger.documentChanged(LEFT_CONTRIBUTOR, e.getOffset(), e.getLength(), length);
 		} else if (doc == fRight.getSourceViewer().getDocument()) {
 			setRightDirty(dirty);
+			fMerger.documentChanged(RIGHT_CONTRIBUTOR, e.getOffset(), e.getLength(), length);
+		} else if (fAncestor != null && doc == fAncestor.getSourceViewer().getDocument()) {
+			fMerger.documentChanged(ANCESTOR_CONTRIBUTOR, e.getOffset(), e.getLength(), length);
 		}
 		if (!isLeftDirty() && !isRightDirty()) {
 			fRedoDiff = false;
-			final Diff oldDiff = getLastDiff();
-			new UIJob(CompareMessages.DocumentMerger_0) {
+		} else {
+			updateLines(doc);
+		}
+		// rapid edits are diffed together
+		if (fDiffUpdater == null) {
+			fDiffUpdater= new UIJob(CompareMessages.DocumentMerger_0) {
 				public IStatus runInUIThread(IProgressMonitor monitor) {
-					if (!getControl().isDisposed()) {
-						doDiff();
-						if (!getControl().isDisposed()) {
-							Diff newDiff = findNewDiff(oldDiff);
-							if (newDiff != null) {
-								updateStatus(newDiff);
-								setCurrentDiff(newDiff, true);
-							}
-							invalidateLines();
-							updateLines(doc);
-						}
-					}
+					if (!getControl().isDisposed())
+						updateDiff();
 					return Status.OK_STATUS;
 				}
-			}.schedule();
-		} else {
-			updateLines(doc);
+			};
+			fDiffUpdater.setSystem(true);
 		}
+		fDiffUpdater.cancel();
+		fDiffUpdater.schedule(DIFF_UPDATE_DELAY);
+	}
+	
+	/*
+	 * Diffs the lines around the text edited since the last diff in the
+	 * background, or all lines when none of the documents is dirty anymore.
+	 * If that's not possible the documents are diffed in the foreground, which
+	 * is only done when none of them is dirty.
+	 */
+	private void updateDiff() {
+		if (!fMerger.hasEdits())
+			return;
+		boolean allLines= !isLeftDirty() && !isRightDirty();
+		final IncrementalDiff incremental= fMerger.prepareIncrementalDiff(allLines);
+		if (incremental == null) {
+			if (allLines) {
+				Diff oldDiff = getLastDiff();
+				doDiff();
+				if (!getControl().isDisposed())
+					diffUpdated(oldDiff);
+			}
+			return;
+		}
+		if (fIncrementalDiffJob != null)
+			fIncrementalDiffJob.cancel();
+		fIncrementalDiffJob= new Job(CompareMessages.DocumentMerger_0) {
+			protected IStatus run(IProgressMonitor monitor) {
+				if (!incremental.run(monitor))
+					return Status.CANCEL_STATUS;
+				new UIJob(CompareMessages.DocumentMerger_0) {
+					public IStatus runInUIThread(IProgressMonitor m) {
+						// the diff is dropped if the documents have been edited since
+						if (!getControl().isDisposed() && incremental.isValid()) {
+							Diff oldDiff = getLastDiff();
+							doDiff(incremental);
+							if (!getControl().isDisposed())
+								diffUpdated(oldDiff);
+						}
+						return Status.OK_STATUS;
+					}
+				}.schedule();
+				return Status.OK_STATUS;
+			}
+		};
+		fIncrementalDiffJob.setSystem(true);
+		fIncrementalDiffJob.schedule();
+	}
+	
+	private void diffUpdated(Diff oldDiff) {
+		Diff newDiff = findNewDiff(oldDiff);
+		if (newDiff != null) {
+			updateStatus(newDiff);
+			setCurrentDiff(newDiff, true);
+		}
+		invalidateLines();
+		updateLines(fLeft.getSourceViewer().getDocument());
+		updateLines(fRight.getSourceViewer().getDocument());
 	}
 	
 	
@@ -3373,6 +3441,13 @@ public class TextMergeViewer extends ContentMergeViewer implements IAdaptable {
 	 * The first level is based on line comparison, the second level on token comparison.
 	 */
 	private void doDiff() {
+		doDiff(null);
+	}
+	
+	/*
+	 * Applies the given incremental diff or performs a diff if it is null.
+	 */
+	private void doDiff(IncrementalDiff incremental) {
 		IDocument lDoc= fLeft.getSourceViewer().getDocument();
 		IDocument rDoc= fRight.getSourceViewer().getDocument();
 		if (lDoc == null || rDoc == null)
@@ -3383,7 +3458,10 @@ public class TextMergeViewer extends ContentMergeViewer implements IAdaptable {
 		saveDiff();
 		fCurrentDiff= null;
 		try {
-			fMerger.doDiff();
+			if (incremental != null)
+				fMerger.applyIncrementalDiff(incremental);
+			else
+				fMerger.doDiff();
 		} catch (CoreException e) {
 			CompareUIPlugin.log(e.getStatus());
 			String title= Utilities.getString(getResourceBundle(), "tooComplexError.title"); //$NON-NLS-1$
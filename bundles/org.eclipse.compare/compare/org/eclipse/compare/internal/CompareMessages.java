@@ -29,6 +29,7 @@ public final class CompareMessages extends NLS {
 	public static String CompareEditor_0;
 	public static String CompareEditor_1;
 	public static String CompareEditor_2;
+	public static String Differencer_0;
 	public static String DocumentMerger_0;
 	public static String DocumentMerger_1;
 	public static String DocumentMerger_2;
@@ -279,6 +279,18 @@ public final class CompareUIPlugin extends AbstractUIPlugin {
 		ComparePlugin.getDefault().setCappingDisabled(
 				getPreferenceStore().getBoolean(
 						ComparePreferencePage.CAPPING_DISABLED));
+		updateDiffAlgorithm();
+	}
+
+	/**
+	 * Passes the diff algorithm selected on the preference page on to the
+	 * <code>RangeDifferencer</code>.
+	 */
+	void updateDiffAlgorithm() {
+		boolean histogram= getPreferenceStore().getBoolean(ComparePreferencePage.USE_HISTOGRAM_DIFF);
+		ComparePlugin.getDefault().setDiffAlgorithm(histogram
+				? ComparePlugin.DIFF_ALGORITHM_HISTOGRAM
+				: ComparePlugin.DIFF_ALGORITHM_MYERS);
 	}
 			
 	public void stop(BundleContext context) throws Exception {
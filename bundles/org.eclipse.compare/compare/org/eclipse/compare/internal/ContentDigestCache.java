@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.eclipse.core.internal.expressions.util.LRUCache;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Remembers the length and a digest of the contents of workspace files so
+ * that files which did not change since they were last compared don't have
+ * to be read again.
+ * <p>
+ * Only unmodified {@link BufferedResourceNode}s backed by a local file are
+ * handled by the cache. An entry is keyed by the file and is only used as
+ * long as the modification stamp, the local time stamp and the length of the
+ * file are the same as when the digest was computed. The cache is thread
+ * safe.
+ * </p>
+ */
+public class ContentDigestCache {
+
+	/**
+	 * The contents of the compared inputs are equal.
+	 */
+	public static final int EQUAL= 0;
+	/**
+	 * The contents of the compared inputs differ.
+	 */
+	public static final int DIFFERENT= 1;
+	/**
+	 * The cache can't tell whether the contents are equal, the inputs have to
+	 * be compared byte by byte.
+	 */
+	public static final int UNKNOWN= 2;
+
+	private static final String DIGEST_ALGORITHM= "SHA-1"; //$NON-NLS-1$
+	private static final int CACHE_SIZE= 100000;
+	private static final int BUFFER_SIZE= 8192;
+
+	private static ContentDigestCache fgDefault;
+
+	private final LRUCache fEntries= new LRUCache(CACHE_SIZE);
+
+	/*
+	 * The state of a file at the time its digest was computed.
+	 */
+	private static class Entry {
+		final long fModificationStamp;
+		final long fLocalTimeStamp;
+		final long fLength;
+		byte[] fDigest;
+
+		Entry(long modificationStamp, long localTimeStamp, long length) {
+			fModificationStamp= modificationStamp;
+			fLocalTimeStamp= localTimeStamp;
+			fLength= length;
+		}
+
+		boolean isValid(Entry current) {
+			return fModificationStamp == current.fModificationStamp
+					&& fLocalTimeStamp == current.fLocalTimeStamp
+					&& fLength == current.fLength;
+		}
+	}
+
+	/**
+	 * Returns the cache shared by all compares.
+	 *
+	 * @return the shared cache
+	 */
+	public static synchronized ContentDigestCache getDefault() {
+		if (fgDefault == null)
+			fgDefault= new ContentDigestCache();
+		return fgDefault;
+	}
+
+	/**
+	 * Compares the contents of the given inputs using their lengths and the
+	 * digests of their contents. The digest of an input is only computed if
+	 * it is not cached yet, and only if both inputs can be cached.
+	 *
+	 * @param input1 the first input
+	 * @param input2 the second input
+	 * @return one of {@link #EQUAL}, {@link #DIFFERENT} or {@link #UNKNOWN}
+	 */
+	public int compare(Object input1, Object input2) {
+		IFile file1= getFile(input1);
+		IFile file2= getFile(input2);
+		if (file1 == null || file2 == null)
+			return UNKNOWN;
+		Entry state1= getState(file1);
+		Entry state2= getState(file2);
+		if (state1 == null || state2 == null)
+			return UNKNOWN;
+		if (state1.fLength != state2.fLength)
+			return DIFFERENT;
+
+		byte[] digest1= getDigest(file1, (BufferedResourceNode) input1, state1);
+		if (digest1 == null)
+			return UNKNOWN;
+		byte[] digest2= getDigest(file2, (BufferedResourceNode) input2, state2);
+		if (digest2 == null)
+			return UNKNOWN;
+		return Arrays.equals(digest1, digest2) ? EQUAL : DIFFERENT;
+	}
+
+	/*
+	 * Returns the file of the given input if the input shows the unmodified
+	 * contents of a file.
+	 */
+	private static IFile getFile(Object input) {
+		if (input instanceof BufferedResourceNode) {
+			BufferedResourceNode node= (BufferedResourceNode) input;
+			IResource resource= node.getResource();
+			if (!node.isDirty() && resource instanceof IFile)
+				return (IFile) resource;
+		}
+		return null;
+	}
+
+	/*
+	 * Returns the current state of the given file or null if the file
+	 * is not available in the local file system.
+	 */
+	private static Entry getState(IFile file) {
+		long modificationStamp= file.getModificationStamp();
+		if (modificationStamp == IResource.NULL_STAMP)
+			return null;
+		IPath location= file.getLocation();
+		if (location == null)
+			return null;
+		File localFile= location.toFile();
+		long localTimeStamp= localFile.lastModified();
+		if (localTimeStamp == 0)
+			return null;
+		return new Entry(modificationStamp, localTimeStamp, localFile.length());
+	}
+
+	private byte[] getDigest(IFile file, BufferedResourceNode node, Entry state) {
+		synchronized (this) {
+			Entry entry= (Entry) fEntries.get(file);
+			if (entry != null && entry.isValid(state))
+				return entry.fDigest;
+		}
+		// the state has been taken before the contents are read, a concurrent
+		// change of the file results in a new state and invalidates the entry
+		byte[] digest= computeDigest(node);
+		if (digest == null)
+			return null;
+		state.fDigest= digest;
+		synchronized (this) {
+			fEntries.put(file, state);
+		}
+		return digest;
+	}
+
+	private static byte[] computeDigest(BufferedResourceNode node) {
+		InputStream is= null;
+		try {
+			MessageDigest digest= MessageDigest.getInstance(DIGEST_ALGORITHM);
+			is= node.getContents();
+			if (is == null)
+				return null;
+			byte[] buffer= new byte[BUFFER_SIZE];
+			int read;
+			while ((read= is.read(buffer)) != -1)
+				digest.update(buffer, 0, read);
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			CompareUIPlugin.log(e);
+		} catch (CoreException e) {
+			// the contents are compared byte by byte instead
+		} catch (IOException e) {
+			// the contents are compared byte by byte instead
+		} finally {
+			if (is != null) {
+				try {
+					is.close();
+				} catch (IOException e) {
+					// silently ignored
+				}
+			}
+		}
+		return null;
+	}
+}
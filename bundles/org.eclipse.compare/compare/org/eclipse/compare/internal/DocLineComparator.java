@@ -10,8 +10,12 @@
  *******************************************************************************/
 package org.eclipse.compare.internal;
 
+import java.util.Arrays;
+
 import org.eclipse.compare.ICompareFilter;
 import org.eclipse.compare.contentmergeviewer.ITokenComparator;
+import org.eclipse.compare.internal.core.IHashedRangeComparator;
+import org.eclipse.compare.internal.core.LineSymbolTable;
 import org.eclipse.compare.rangedifferencer.IRangeComparator;
 import org.eclipse.core.internal.expressions.util.LRUCache;
 import org.eclipse.jface.text.BadLocationException;
@@ -25,8 +29,12 @@ import org.eclipse.jface.text.IRegion;
  * <p>
  * A <code>DocLineComparator</code> doesn't know anything about line separators because
  * its notion of lines is solely defined in the underlying <code>IDocument</code>.
+ * <p>
+ * The first time lines are compared with another <code>DocLineComparator</code>, the
+ * lines of both are mapped to the symbols of a shared <code>LineSymbolTable</code>,
+ * so that later comparisons don't need to extract the lines from the documents again.
  */
-public class DocLineComparator implements ITokenComparator {
+public class DocLineComparator implements ITokenComparator, IHashedRangeComparator {
 
 	private IDocument fDocument;
 	private int fLineOffset;
@@ -36,6 +44,8 @@ public class DocLineComparator implements ITokenComparator {
 	private ICompareFilter[] fCompareFilters;
 	private char fContributor;
 	private LRUCache fCompareFilterCache;
+	private LineSymbolTable fSymbolTable;
+	private int[] fSymbols;
 
 	/**
 	 * Creates a <code>DocLineComparator</code> for the given document range.
@@ -161,6 +171,11 @@ public class DocLineComparator implements ITokenComparator {
 		if (otherComparator != null && otherComparator.getClass() == getClass()) {
 			DocLineComparator other= (DocLineComparator) otherComparator;
 
+			if (isSymbolIndex(thisIndex) && other.isSymbolIndex(otherIndex)
+					&& ((fSymbolTable != null && fSymbolTable == other.fSymbolTable)
+							|| (canShareSymbols(other) && shareSymbolTable(other))))
+				return fSymbols[thisIndex] == other.fSymbols[otherIndex];
+
 			if (fIgnoreWhiteSpace) {
 				String[] linesToCompare = extract(thisIndex, otherIndex, other, false);
 				return compare(linesToCompare[0], linesToCompare[1]);
@@ -179,6 +194,27 @@ public class DocLineComparator implements ITokenComparator {
 		return false;
 	}
 
+	/* (non Javadoc)
+	 * see IHashedRangeComparator.isHashCompatible
+	 */
+	public boolean isHashCompatible(IRangeComparator otherComparator) {
+		if (otherComparator == null || otherComparator.getClass() != getClass())
+			return false;
+		DocLineComparator other= (DocLineComparator) otherComparator;
+		return canShareSymbols(other) && shareSymbolTable(other);
+	}
+
+	/* (non Javadoc)
+	 * Returns the symbol of the given line. Symbols are only comparable
+	 * between comparators for which isHashCompatible returned true.
+	 * see IHashedRangeComparator.getRangeHash
+	 */
+	public int getRangeHash(int line) {
+		if (fSymbolTable == null)
+			internLines(new LineSymbolTable());
+		return fSymbols[line];
+	}
+
 	/**
 	 * Aborts the comparison if the number of tokens is too large.
 	 * 
@@ -195,6 +231,90 @@ public class DocLineComparator implements ITokenComparator {
 		
 	//---- private methods
 	
+	private boolean isSymbolIndex(int line) {
+		return line >= 0 && line < fLineCount;
+	}
+
+	/*
+	 * Returns whether lines of this and the other comparator can be compared
+	 * by their symbols, i.e. whether rangesEqual compares them the same way
+	 * in both directions and independently of the line they are compared to.
+	 */
+	private boolean canShareSymbols(DocLineComparator other) {
+		if (fIgnoreWhiteSpace != other.fIgnoreWhiteSpace)
+			return false;
+		if (hasCompareFilters() || other.hasCompareFilters()) {
+			// filtered lines can only be interned if the filters don't depend on the other line
+			return fCompareFilterCache != null && other.fCompareFilterCache != null
+					&& Arrays.equals(fCompareFilters, other.fCompareFilters);
+		}
+		return true;
+	}
+
+	/*
+	 * Makes sure this and the other comparator have mapped their lines using
+	 * the same symbol table. Returns false if they already use different ones.
+	 */
+	private boolean shareSymbolTable(DocLineComparator other) {
+		if (fSymbolTable == null && other.fSymbolTable == null)
+			internLines(new LineSymbolTable());
+		if (fSymbolTable == null)
+			internLines(other.fSymbolTable);
+		else if (other.fSymbolTable == null)
+			other.internLines(fSymbolTable);
+		return fSymbolTable == other.fSymbolTable;
+	}
+
+	private void internLines(LineSymbolTable symbolTable) {
+		int[] symbols= new int[fLineCount];
+		for (int line= 0; line < fLineCount; line++)
+			symbols[line]= symbolTable.getSymbol(getNormalizedLine(line));
+		fSymbols= symbols;
+		fSymbolTable= symbolTable;
+	}
+
+	/*
+	 * Returns the line the way rangesEqual compares it.
+	 */
+	private String getNormalizedLine(int line) {
+		if (fIgnoreWhiteSpace) {
+			String s= hasCompareFilters() ? getFilteredLine(line, this, line, false) : extract(line, false);
+			StringBuffer buffer= new StringBuffer(s.length());
+			for (int i= 0; i < s.length(); i++) {
+				char c= s.charAt(i);
+				if (!Character.isWhitespace(c))
+					buffer.append(c);
+			}
+			return buffer.toString();
+		}
+		if (hasCompareFilters())
+			return getFilteredLine(line, this, line, true);
+		// lines are only equal if their delimiters have the same length
+		String s= extract(line, false);
+		return s + (char) (getTokenLength(line) - s.length());
+	}
+
+	private boolean hasCompareFilters() {
+		return fCompareFilters != null && fCompareFilters.length > 0;
+	}
+
+	/*
+	 * Returns the filtered line with the given index using the filter cache.
+	 * Only valid if the filter results can be cached.
+	 */
+	private String getFilteredLine(int thisIndex, DocLineComparator other,
+			int otherIndex, boolean includeSeparator) {
+		String filtered = (String) fCompareFilterCache.get(new Integer(thisIndex));
+		if (filtered == null) {
+			filtered = Utilities.applyCompareFilters(
+					extract(thisIndex, includeSeparator), fContributor,
+					other.extract(otherIndex, includeSeparator), other.fContributor,
+					fCompareFilters);
+			fCompareFilterCache.put(new Integer(thisIndex), filtered);
+		}
+		return filtered;
+	}
+
 	private String[] extract(int thisIndex, int otherIndex,
 			DocLineComparator other, boolean includeSeparator) {
 
@@ -202,26 +322,8 @@ public class DocLineComparator implements ITokenComparator {
 		if (fCompareFilters != null && fCompareFilters.length > 0) {
 			if (fCompareFilterCache != null
 					&& other.fCompareFilterCache != null) {
-				extracts[0] = (String) fCompareFilterCache.get(new Integer(
-						thisIndex));
-				if (extracts[0] == null) {
-					extracts[0] = Utilities.applyCompareFilters(
-							extract(thisIndex, includeSeparator), fContributor,
-							other.extract(otherIndex, includeSeparator), other.fContributor,
-							fCompareFilters);
-					fCompareFilterCache
-							.put(new Integer(thisIndex), extracts[0]);
-				}
-
-				extracts[1] = (String) other.fCompareFilterCache
-						.get(new Integer(otherIndex));
-				if (extracts[1] == null) {
-					extracts[1] = Utilities.applyCompareFilters(
-							other.extract(otherIndex, includeSeparator), other.fContributor,
-							extract(thisIndex, includeSeparator), fContributor, fCompareFilters);
-					other.fCompareFilterCache.put(new Integer(otherIndex),
-							extracts[1]);
-				}
+				extracts[0] = getFilteredLine(thisIndex, other, otherIndex, includeSeparator);
+				extracts[1] = other.getFilteredLine(otherIndex, this, thisIndex, includeSeparator);
 			} else {
 				String thisLine = extract(thisIndex, includeSeparator);
 				String otherLine = other.extract(otherIndex, includeSeparator);
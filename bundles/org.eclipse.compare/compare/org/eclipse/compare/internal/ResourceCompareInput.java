@@ -408,7 +408,8 @@ class ResourceCompareInput extends CompareEditorInput {
 					return new MyDiffNode((IDiffContainer) parent, description, (ITypedElement)ancestor, (ITypedElement)left, (ITypedElement)right);
 				}
 			};
-			
+			d.setContentCompareThreads(Runtime.getRuntime().availableProcessors());
+
 			fRoot= d.findDifferences(fThreeWay, pm, null, fAncestor, fLeft, fRight);
 			return fRoot;
 			
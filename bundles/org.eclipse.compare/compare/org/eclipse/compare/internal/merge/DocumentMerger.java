@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2013 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.compare.internal.merge;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -27,7 +28,9 @@ import org.eclipse.jface.operation.IRunnableWithProgress;
 
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.BadPositionCategoryException;
+import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.Region;
@@ -68,10 +71,25 @@ public class DocumentMerger {
 	/** if true copying conflicts from one side to other concatenates both sides */
 	private static final boolean APPEND_CONFLICT= true;
 	
+	private static final char[] CONTRIBUTORS= {
+		MergeViewerContentProvider.LEFT_CONTRIBUTOR,
+		MergeViewerContentProvider.RIGHT_CONTRIBUTOR,
+		MergeViewerContentProvider.ANCESTOR_CONTRIBUTOR
+	};
+	
 	/** All diffs for calculating scrolling position (includes line ranges without changes) */
 	private ArrayList fAllDiffs;
 	/** Subset of above: just real differences. */
 	private ArrayList fChangeDiffs;
+	/** Index of the above for the lookups done while scrolling and painting, built when needed */
+	private DiffIndex fIndex;
+	/** The start and end offsets of the text edited in each document since the last diff, -1 if not edited */
+	private final int[] fEditStarts= new int[CONTRIBUTORS.length];
+	private final int[] fEditEnds= new int[CONTRIBUTORS.length];
+	/** The number of edits recorded, used to find out whether an incremental diff is out of date */
+	private int fEditCount;
+	/** Whether a diff is being copied, which resolves the diff rather than having it diffed again */
+	private boolean fCopying;
 	
 	private final boolean fLeftIsLocal;
 
@@ -389,9 +407,192 @@ public class DocumentMerger {
 		}
 	}
 	
+	/*
+	 * An index of the diffs that replaces scanning all diffs when mapping
+	 * positions and looking up diffs. It holds the sums of the heights of
+	 * the diffs before each diff, so that a position is mapped by a binary
+	 * search, and the offsets of the positions of the diffs in each document.
+	 * The diffs do not overlap and their positions are ordered in each
+	 * document, so the diffs at an offset are found by a binary search as
+	 * well. The index is built when it is first used after a diff and built
+	 * again when the diffs or a document have been changed since.
+	 */
+	private class DiffIndex {
+		
+		private final List fDiffs;
+		private final List fChanges;
+		private final int fChangeCount;
+		private final IDocument[] fDocuments= new IDocument[CONTRIBUTORS.length];
+		private final long[] fStamps= new long[CONTRIBUTORS.length];
+		private final boolean fThreeWay;
+		
+		/** the sum of the virtual heights of the diffs before each diff and of all diffs */
+		private final int[] fVirtualHeights;
+		/** the same sums of the heights in each document */
+		private final int[][] fHeights= new int[CONTRIBUTORS.length][];
+		/** the end offsets of all diffs in each document or null if they are not ordered */
+		private final int[][] fEnds= new int[CONTRIBUTORS.length][];
+		/** the offsets and end offsets of the change diffs in each document or null if they are not ordered */
+		private final int[][] fChangeOffsets= new int[CONTRIBUTORS.length][];
+		private final int[][] fChangeEnds= new int[CONTRIBUTORS.length][];
+		
+		DiffIndex() {
+			fThreeWay= isThreeWay();
+			fDiffs= fAllDiffs;
+			fChanges= fChangeDiffs;
+			fChangeCount= fChangeDiffs != null ? fChangeDiffs.size() : 0;
+			List allDiffs= fAllDiffs != null ? fAllDiffs : new ArrayList();
+			int size= allDiffs.size();
+			fVirtualHeights= new int[size + 1];
+			for (int i= 0; i < size; i++)
+				fVirtualHeights[i + 1]= fVirtualHeights[i] + ((Diff) allDiffs.get(i)).getMaxDiffHeight();
+			Point region= new Point(0, 0);
+			for (int c= 0; c < CONTRIBUTORS.length; c++) {
+				IDocument doc= getDocument(CONTRIBUTORS[c]);
+				fDocuments[c]= doc;
+				fStamps[c]= getModificationStamp(doc);
+				int[] heights= new int[size + 1];
+				for (int i= 0; i < size; i++) {
+					Position pos= ((Diff) allDiffs.get(i)).getPosition(CONTRIBUTORS[c]);
+					heights[i + 1]= heights[i] + getLineRange(doc, pos, region).y;
+				}
+				fHeights[c]= heights;
+				int[][] offsets= getOffsets(allDiffs, CONTRIBUTORS[c]);
+				if (offsets != null)
+					fEnds[c]= offsets[1];
+				offsets= fChangeDiffs != null ? getOffsets(fChangeDiffs, CONTRIBUTORS[c]) : null;
+				if (offsets != null) {
+					fChangeOffsets[c]= offsets[0];
+					fChangeEnds[c]= offsets[1];
+				}
+			}
+		}
+		
+		/*
+		 * Returns the offsets and end offsets of the positions of the given
+		 * diffs or null if a diff has no position or they are not ordered.
+		 */
+		private int[][] getOffsets(List diffs, char contributor) {
+			int size= diffs.size();
+			int[] offsets= new int[size];
+			int[] ends= new int[size];
+			for (int i= 0; i < size; i++) {
+				Position pos= ((Diff) diffs.get(i)).getPosition(contributor);
+				if (pos == null || pos.isDeleted())
+					return null;
+				offsets[i]= pos.getOffset();
+				ends[i]= offsets[i] + pos.getLength();
+				if (i > 0 && (offsets[i] < offsets[i - 1] || ends[i] < ends[i - 1]))
+					return null;
+			}
+			return new int[][] { offsets, ends };
+		}
+		
+		/*
+		 * Returns whether the diffs, the documents and their contents are the
+		 * ones the index has been built for.
+		 */
+		boolean isValid() {
+			if (fDiffs != fAllDiffs || fChanges != fChangeDiffs || fThreeWay != isThreeWay())
+				return false;
+			// the change diffs are added to the list during a diff
+			if (fChangeDiffs != null && fChangeDiffs.size() != fChangeCount)
+				return false;
+			for (int c= 0; c < CONTRIBUTORS.length; c++) {
+				IDocument doc= getDocument(CONTRIBUTORS[c]);
+				if (doc != fDocuments[c])
+					return false;
+				if (doc != null && (fStamps[c] == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP || getModificationStamp(doc) != fStamps[c]))
+					return false;
+			}
+			return true;
+		}
+		
+		private long getModificationStamp(IDocument doc) {
+			if (doc instanceof IDocumentExtension4)
+				return ((IDocumentExtension4) doc).getModificationStamp();
+			return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		}
+		
+		int[] getVirtualHeights() {
+			return fVirtualHeights;
+		}
+		
+		int[] getHeights(char contributor) {
+			int c= indexOf(contributor);
+			if (c == -1)
+				return new int[fVirtualHeights.length];
+			return fHeights[c];
+		}
+		
+		/*
+		 * Returns the index of the first of all diffs that can end at or after
+		 * the given offset in the given document.
+		 */
+		int findDiff(char contributor, int offset) {
+			int c= indexOf(contributor);
+			if (c == -1 || fEnds[c] == null)
+				return 0;
+			return findFirst(fEnds[c], fEnds[c].length, offset);
+		}
+		
+		/*
+		 * Returns the index of the first change diff that can end at or
+		 * after the given offset in the given document.
+		 */
+		int findChangeDiff(char contributor, int offset) {
+			int c= indexOf(contributor);
+			if (c == -1 || fChangeEnds[c] == null)
+				return 0;
+			return findFirst(fChangeEnds[c], fChangeEnds[c].length, offset);
+		}
+		
+		/*
+		 * Returns whether the change diffs from the given one on all start
+		 * after the given offset in the given document.
+		 */
+		boolean isChangeDiffAfter(char contributor, int index, int offset) {
+			int c= indexOf(contributor);
+			return c != -1 && fChangeOffsets[c] != null && fChangeOffsets[c][index] > offset;
+		}
+	}
+	
+	/*
+	 * Returns the index of the first of the given number of ascending values
+	 * that is not less than the given value or the number of values if there
+	 * is none.
+	 */
+	private static int indexOf(char contributor) {
+		for (int c= 0; c < CONTRIBUTORS.length; c++) {
+			if (CONTRIBUTORS[c] == contributor)
+				return c;
+		}
+		return -1;
+	}
+	
+	private static int findFirst(int[] values, int count, int value) {
+		int low= 0;
+		int high= count;
+		while (low < high) {
+			int middle= (low + high) >>> 1;
+			if (values[middle] < value)
+				low= middle + 1;
+			else
+				high= middle;
+		}
+		return low;
+	}
+	
+	private DiffIndex getIndex() {
+		if (fIndex == null || !fIndex.isValid())
+			fIndex= new DiffIndex();
+		return fIndex;
+	}
+	
 	public DocumentMerger(IDocumentMergerInput input) {
 		this.fInput = input;
 		fLeftIsLocal= Utilities.getBoolean(getCompareConfiguration(), "LEFT_IS_LOCAL", false); //$NON-NLS-1$
+		clearEdits();
 	}
 	
 	/**
@@ -401,6 +602,8 @@ public class DocumentMerger {
 	 */
 	public void doDiff() throws CoreException {
 						
+		fIndex= null;
+		clearEdits();
 		fChangeDiffs= new ArrayList();
 		IDocument lDoc = getDocument(MergeViewerContentProvider.LEFT_CONTRIBUTOR);
 		IDocument rDoc = getDocument(MergeViewerContentProvider.RIGHT_CONTRIBUTOR);
@@ -489,16 +692,22 @@ public class DocumentMerger {
 			return;
 		}
 
-		if (isCapped(sa, sl, sr))
-			fInput.getCompareConfiguration().setProperty(
-					CompareContentViewerSwitchingPane.OPTIMIZED_ALGORITHM_USED,
-					new Boolean(true));
-		else
-			fInput.getCompareConfiguration().setProperty(
-					CompareContentViewerSwitchingPane.OPTIMIZED_ALGORITHM_USED,
-					new Boolean(false));
+		setCapped(sa != null ? sa.getRangeCount() : 0, sl.getRangeCount(), sr.getRangeCount());
 
 		ArrayList newAllDiffs = new ArrayList();
+		createDiffs(e, sancestor, sleft, sright, aDoc, aRegion, lDoc, lRegion, rDoc, rRegion, newAllDiffs, fChangeDiffs);
+		fAllDiffs = newAllDiffs;
+	}
+	
+	/*
+	 * Creates the diffs for the given line ranges, adds them to the list of
+	 * all diffs and adds the real differences to the list of change diffs.
+	 */
+	private void createDiffs(RangeDifference[] e,
+			ITokenComparator sancestor, ITokenComparator sleft, ITokenComparator sright,
+			IDocument aDoc, Position aRegion, IDocument lDoc, Position lRegion, IDocument rDoc, Position rRegion,
+			List allDiffs, List changeDiffs) {
+		boolean ignoreWhiteSpace= isIgnoreWhitespace();
 		for (int i= 0; i < e.length; i++) {
 			RangeDifference es= e[i];
 			
@@ -528,11 +737,11 @@ public class DocumentMerger {
 				lDoc, lRegion, leftStart, leftEnd,
 				rDoc, rRegion, rightStart, rightEnd);	
 			
-			newAllDiffs.add(diff);	// remember all range diffs for scrolling
+			allDiffs.add(diff);	// remember all range diffs for scrolling
 	
 			if (isPatchHunk()) {
 				if (useChange(diff)) {
-					recordChangeDiff(diff);
+					changeDiffs.add(diff);	// here we remember only the real diffs
 				}
 			} else {
 				if (ignoreWhiteSpace || useChange(es.kind())) {
@@ -554,7 +763,7 @@ public class DocumentMerger {
 					
 					// If the diff is of interest, record it and generate the token diffs
 					if (useChange(diff)) {
-						recordChangeDiff(diff);
+						changeDiffs.add(diff);	// here we remember only the real diffs
 						if (s.length() > 0 && d.length() > 0) {
 							if (a == null && sancestor != null)
 								a= extract2(aDoc, sancestor, es.ancestorStart(), es.ancestorLength());
@@ -567,16 +776,360 @@ public class DocumentMerger {
 				}
 			}
 		}
-		fAllDiffs = newAllDiffs;
 	}
 
-	private boolean isCapped(DocLineComparator ancestor,
-			DocLineComparator left, DocLineComparator right) {
+	/**
+	 * A line diff of copies of the lines of the documents, which is prepared
+	 * in the UI thread, run in any thread and then applied in the UI thread by
+	 * {@link DocumentMerger#applyIncrementalDiff(IncrementalDiff)}. It diffs
+	 * either all lines or the lines around the text edited since the last
+	 * diff, which are taken from the nearest unchanged range of lines before
+	 * the edited diffs to the nearest one after them, or from the start or to
+	 * the end of the documents if there is none.
+	 */
+	public class IncrementalDiff {
+		
+		private final boolean fAllLines;
+		private final List fDiffs;
+		private final int fEditCount;
+		/** the index of the first and the last diff re-diffed */
+		private final int fFirst;
+		private final int fLast;
+		/** whether the first and the last diff re-diffed are unchanged ranges */
+		private final boolean fAnchoredStart;
+		private final boolean fAnchoredEnd;
+		/** the offsets in the documents at which the lines start */
+		private final int[] fOffsets= new int[CONTRIBUTORS.length];
+		/** the comparators for copies of the lines or null */
+		private final DocLineComparator[] fComparators= new DocLineComparator[CONTRIBUTORS.length];
+		private RangeDifference[] fRanges;
+		
+		IncrementalDiff(boolean allLines, int first, int last, boolean anchoredStart, boolean anchoredEnd) {
+			fAllLines= allLines;
+			fDiffs= fAllDiffs;
+			fEditCount= DocumentMerger.this.fEditCount;
+			fFirst= first;
+			fLast= last;
+			fAnchoredStart= anchoredStart;
+			fAnchoredEnd= anchoredEnd;
+		}
+		
+		/**
+		 * Computes the line differences. This method may be called from any thread.
+		 * @param monitor a progress monitor to report progress and to cancel the diff
+		 * @return <code>false</code> if the diff has been canceled
+		 */
+		public boolean run(IProgressMonitor monitor) {
+			DocLineComparator sa= fComparators[indexOf(MergeViewerContentProvider.ANCESTOR_CONTRIBUTOR)];
+			DocLineComparator sl= fComparators[indexOf(MergeViewerContentProvider.LEFT_CONTRIBUTOR)];
+			DocLineComparator sr= fComparators[indexOf(MergeViewerContentProvider.RIGHT_CONTRIBUTOR)];
+			monitor.beginTask(CompareMessages.DocumentMerger_0, maxWork(sa, sl, sr));
+			try {
+				fRanges= RangeDifferencer.findRanges(monitor, sa, sl, sr);
+			} finally {
+				monitor.done();
+			}
+			return !monitor.isCanceled();
+		}
+		
+		/**
+		 * Returns whether the diff can still be applied, i.e. whether the diffs
+		 * have not been computed again and the documents have not been edited
+		 * since the diff has been prepared.
+		 * @return whether the diff can still be applied
+		 */
+		public boolean isValid() {
+			return fDiffs == fAllDiffs && fEditCount == DocumentMerger.this.fEditCount;
+		}
+		
+		ITokenComparator getComparator(char contributor) {
+			int c= indexOf(contributor);
+			if (fComparators[c] == null)
+				return null;
+			return new ShiftedTokenComparator(fComparators[c], fOffsets[c]);
+		}
+	}
+	
+	/*
+	 * A token comparator for a copy of the lines of a document which returns
+	 * the offsets of the tokens in the document.
+	 */
+	private static class ShiftedTokenComparator implements ITokenComparator {
+		
+		private final ITokenComparator fComparator;
+		private final int fShift;
+		
+		ShiftedTokenComparator(ITokenComparator comparator, int shift) {
+			fComparator= comparator;
+			fShift= shift;
+		}
+		
+		public int getTokenStart(int index) {
+			return fComparator.getTokenStart(index) + fShift;
+		}
+		
+		public int getTokenLength(int index) {
+			return fComparator.getTokenLength(index);
+		}
+		
+		public int getRangeCount() {
+			return fComparator.getRangeCount();
+		}
+		
+		public boolean rangesEqual(int thisIndex, IRangeComparator other, int otherIndex) {
+			if (other instanceof ShiftedTokenComparator)
+				other= ((ShiftedTokenComparator) other).fComparator;
+			return fComparator.rangesEqual(thisIndex, other, otherIndex);
+		}
+		
+		public boolean skipRangeComparison(int length, int maxLength, IRangeComparator other) {
+			if (other instanceof ShiftedTokenComparator)
+				other= ((ShiftedTokenComparator) other).fComparator;
+			return fComparator.skipRangeComparison(length, maxLength, other);
+		}
+	}
+	
+	/**
+	 * Records that text of a document has been replaced, so that the next
+	 * incremental diff re-diffs the lines around it.
+	 * @param contributor the contributor of the document
+	 * @param offset the offset of the replaced text
+	 * @param length the length of the replaced text
+	 * @param textLength the length of the text replacing it
+	 */
+	public void documentChanged(char contributor, int offset, int length, int textLength) {
+		int c= indexOf(contributor);
+		if (c < 0)
+			return;
+		fEditCount++;
+		if (fEditStarts[c] < 0) {
+			if (fCopying)
+				return;
+			fEditStarts[c]= offset;
+			fEditEnds[c]= offset + textLength;
+			return;
+		}
+		if (fEditEnds[c] >= offset + length)
+			fEditEnds[c]+= textLength - length;
+		else
+			fEditEnds[c]= offset + textLength;
+		fEditStarts[c]= Math.min(fEditStarts[c], offset);
+	}
+	
+	/**
+	 * Returns whether a document has been edited since the last diff.
+	 * @return whether a document has been edited since the last diff
+	 */
+	public boolean hasEdits() {
+		for (int c= 0; c < CONTRIBUTORS.length; c++) {
+			if (fEditStarts[c] >= 0)
+				return true;
+		}
+		return false;
+	}
+	
+	private void clearEdits() {
+		Arrays.fill(fEditStarts, -1);
+		Arrays.fill(fEditEnds, -1);
+	}
+	
+	/**
+	 * Prepares the incremental diff of all lines or of the lines around the
+	 * text edited since the last diff. Diffing all lines results in the diffs
+	 * {@link #doDiff()} results in. Diffing the lines around the edited text
+	 * results in them unless the lines can be matched in more than one way and
+	 * the nearest unchanged lines are matched differently then.
+	 * @param allLines whether all lines are diffed
+	 * @return the incremental diff or <code>null</code> if the documents have
+	 * to be diffed by {@link #doDiff()}
+	 */
+	public IncrementalDiff prepareIncrementalDiff(boolean allLines) {
+		if (!allLines && (fAllDiffs == null || fAllDiffs.isEmpty() || !hasEdits()))
+			return null;
+		IDocument[] docs= new IDocument[CONTRIBUTORS.length];
+		for (int c= 0; c < CONTRIBUTORS.length; c++) {
+			if (CONTRIBUTORS[c] != MergeViewerContentProvider.ANCESTOR_CONTRIBUTOR || (isThreeWay() && !isIgnoreAncestor())) {
+				docs[c]= getDocument(CONTRIBUTORS[c]);
+				if (docs[c] == null || getRegion(CONTRIBUTORS[c]) != null)
+					return null;
+			}
+		}
+		
+		int first= 0;
+		int last= fAllDiffs != null ? fAllDiffs.size() - 1 : -1;
+		boolean anchoredStart= false;
+		boolean anchoredEnd= false;
+		if (!allLines) {
+			IDocument aDoc= docs[indexOf(MergeViewerContentProvider.ANCESTOR_CONTRIBUTOR)];
+			IDocument lDoc= docs[indexOf(MergeViewerContentProvider.LEFT_CONTRIBUTOR)];
+			IDocument rDoc= docs[indexOf(MergeViewerContentProvider.RIGHT_CONTRIBUTOR)];
+			// a capped diff of the documents is not the same as a diff of some of their lines
+			if (isCapped(aDoc != null ? aDoc.getNumberOfLines() : 0, lDoc.getNumberOfLines(), rDoc.getNumberOfLines()))
+				return null;
+			
+			// find the first and the last diff that contain edited text
+			int size= fAllDiffs.size();
+			first= -1;
+			for (int i= 0; i < size; i++) {
+				Diff diff= (Diff) fAllDiffs.get(i);
+				for (int c= 0; c < CONTRIBUTORS.length; c++) {
+					Position pos= diff.getPosition(CONTRIBUTORS[c]);
+					// the diffs have to be the ones of the documents diffed now
+					if ((pos == null) != (docs[c] == null) || pos != null && pos.isDeleted())
+						return null;
+					if (pos != null && fEditStarts[c] >= 0 && fEditStarts[c] <= pos.getOffset() + pos.getLength() && pos.getOffset() <= fEditEnds[c]) {
+						if (first < 0)
+							first= i;
+						last= i;
+					}
+				}
+			}
+			if (first < 0)
+				return null;
+			
+			// extend them to the nearest unchanged ranges
+			int before= first - 1;
+			while (before >= 0 && ((Diff) fAllDiffs.get(before)).getKind() != RangeDifference.NOCHANGE)
+				before--;
+			int after= last + 1;
+			while (after < size && ((Diff) fAllDiffs.get(after)).getKind() != RangeDifference.NOCHANGE)
+				after++;
+			anchoredStart= before >= 0;
+			anchoredEnd= after < size - 1;
+			first= anchoredStart ? before : 0;
+			last= after < size ? after : size - 1;
+		}
+		
+		IncrementalDiff incremental= new IncrementalDiff(allLines, first, last, anchoredStart, anchoredEnd);
+		boolean ignoreWhiteSpace= isIgnoreWhitespace();
+		ICompareFilter[] compareFilters= getCompareFilters();
+		for (int c= 0; c < CONTRIBUTORS.length; c++) {
+			if (docs[c] == null)
+				continue;
+			int start= anchoredStart ? ((Diff) fAllDiffs.get(first)).getPosition(CONTRIBUTORS[c]).getOffset() : 0;
+			int end= docs[c].getLength();
+			if (anchoredEnd) {
+				Position pos= ((Diff) fAllDiffs.get(last)).getPosition(CONTRIBUTORS[c]);
+				end= pos.getOffset() + pos.getLength();
+			}
+			try {
+				IDocument lines= new Document(docs[c].get(start, end - start));
+				incremental.fOffsets[c]= start;
+				incremental.fComparators[c]= new DocLineComparator(lines, null, ignoreWhiteSpace, compareFilters, CONTRIBUTORS[c]);
+			} catch (BadLocationException e) {
+				return null;
+			}
+		}
+		return incremental;
+	}
+	
+	/**
+	 * Replaces the diffs of the lines of the given incremental diff by the
+	 * diffs computed for them. The documents are diffed by {@link #doDiff()}
+	 * instead if the lines around edited text have been diffed so that the
+	 * diffs do not start or end with the unchanged ranges they have been
+	 * taken from.
+	 * @param incremental the incremental diff which has been run
+	 * @return <code>false</code> if the diff is not valid anymore and nothing has been changed
+	 * @throws CoreException if the documents have been diffed by {@link #doDiff()} and that failed
+	 */
+	public boolean applyIncrementalDiff(IncrementalDiff incremental) throws CoreException {
+		if (!incremental.isValid() || incremental.fRanges == null)
+			return false;
+		RangeDifference[] e= incremental.fRanges;
+		if (!incremental.fAllLines && e.length == 0
+				|| incremental.fAnchoredStart && e[0].kind() != RangeDifference.NOCHANGE
+				|| incremental.fAnchoredEnd && e[e.length - 1].kind() != RangeDifference.NOCHANGE) {
+			doDiff();
+			return true;
+		}
+		
+		IDocument aDoc= null;
+		if (incremental.fComparators[indexOf(MergeViewerContentProvider.ANCESTOR_CONTRIBUTOR)] != null)
+			aDoc= getDocument(MergeViewerContentProvider.ANCESTOR_CONTRIBUTOR);
+		IDocument lDoc= getDocument(MergeViewerContentProvider.LEFT_CONTRIBUTOR);
+		IDocument rDoc= getDocument(MergeViewerContentProvider.RIGHT_CONTRIBUTOR);
+		ITokenComparator sancestor= incremental.getComparator(MergeViewerContentProvider.ANCESTOR_CONTRIBUTOR);
+		ITokenComparator sleft= incremental.getComparator(MergeViewerContentProvider.LEFT_CONTRIBUTOR);
+		ITokenComparator sright= incremental.getComparator(MergeViewerContentProvider.RIGHT_CONTRIBUTOR);
+		ArrayList diffs= new ArrayList();
+		ArrayList changeDiffs= new ArrayList();
+		
+		if (incremental.fAllLines) {
+			resetPositions(lDoc);
+			resetPositions(rDoc);
+			resetPositions(aDoc);
+			setCapped(sancestor != null ? sancestor.getRangeCount() : 0, sleft.getRangeCount(), sright.getRangeCount());
+			createDiffs(e, sancestor, sleft, sright, aDoc, null, lDoc, null, rDoc, null, diffs, changeDiffs);
+			fAllDiffs= diffs;
+			fChangeDiffs= changeDiffs;
+			fIndex= null;
+			clearEdits();
+			return true;
+		}
+		
+		for (int i= incremental.fFirst; i <= incremental.fLast; i++)
+			removePositions((Diff) fAllDiffs.get(i), aDoc, lDoc, rDoc);
+		createDiffs(e, sancestor, sleft, sright, aDoc, null, lDoc, null, rDoc, null, diffs, changeDiffs);
+		
+		// replace the diffs, the change diffs are kept in the order of all diffs
+		int size= fAllDiffs.size();
+		ArrayList newAllDiffs= new ArrayList(size - (incremental.fLast - incremental.fFirst + 1) + diffs.size());
+		ArrayList newChangeDiffs= new ArrayList();
+		int change= 0;
+		for (int i= 0; i < size; i++) {
+			Diff diff= (Diff) fAllDiffs.get(i);
+			boolean isChange= change < fChangeDiffs.size() && fChangeDiffs.get(change) == diff;
+			if (isChange)
+				change++;
+			if (i == incremental.fFirst) {
+				newAllDiffs.addAll(diffs);
+				newChangeDiffs.addAll(changeDiffs);
+			}
+			if (i < incremental.fFirst || i > incremental.fLast) {
+				newAllDiffs.add(diff);
+				if (isChange)
+					newChangeDiffs.add(diff);
+			}
+		}
+		fAllDiffs= newAllDiffs;
+		fChangeDiffs= newChangeDiffs;
+		fIndex= null;
+		clearEdits();
+		return true;
+	}
+	
+	private void removePositions(Diff diff, IDocument aDoc, IDocument lDoc, IDocument rDoc) {
+		try {
+			if (aDoc != null && diff.fAncestorPos != null)
+				aDoc.removePosition(DIFF_RANGE_CATEGORY, diff.fAncestorPos);
+			if (diff.fLeftPos != null)
+				lDoc.removePosition(DIFF_RANGE_CATEGORY, diff.fLeftPos);
+			if (diff.fRightPos != null)
+				rDoc.removePosition(DIFF_RANGE_CATEGORY, diff.fRightPos);
+		} catch (BadPositionCategoryException e) {
+			// silently ignored
+		}
+		if (diff.fDiffs != null) {
+			for (Iterator iterator= diff.fDiffs.iterator(); iterator.hasNext();)
+				removePositions((Diff) iterator.next(), aDoc, lDoc, rDoc);
+		}
+	}
+	
+	private void setCapped(int aLength, int lLength, int rLength) {
+		if (isCapped(aLength, lLength, rLength))
+			fInput.getCompareConfiguration().setProperty(
+					CompareContentViewerSwitchingPane.OPTIMIZED_ALGORITHM_USED,
+					new Boolean(true));
+		else
+			fInput.getCompareConfiguration().setProperty(
+					CompareContentViewerSwitchingPane.OPTIMIZED_ALGORITHM_USED,
+					new Boolean(false));
+	}
+	
+	private boolean isCapped(int aLength, int lLength, int rLength) {
 		if (isCappingDisabled())
 			return false;
-		int aLength = ancestor == null? 0 : ancestor.getRangeCount();
-		int lLength = left.getRangeCount();
-		int rLength = right.getRangeCount();
 		if ((double) aLength * (double) lLength > LCS.TOO_LONG
 				|| (double) aLength * (double) rLength > LCS.TOO_LONG
 				|| (double) lLength * (double) rLength > LCS.TOO_LONG)
@@ -671,10 +1224,6 @@ public class DocumentMerger {
 		return null;
 	}
 	
-	private void recordChangeDiff(Diff diff) {
-		fChangeDiffs.add(diff);	// here we remember only the real diffs
-	}
-	
 	/*private boolean isHunkOnLeft() {
 		return fInput.isHunkOnLeft();
 	}
@@ -1028,8 +1577,10 @@ public class DocumentMerger {
 	}
 	
     public Diff findDiff(Position p, boolean left) {
-		for (Iterator iterator = fAllDiffs.iterator(); iterator.hasNext();) {
-			Diff diff = (Diff) iterator.next();
+		char contributor= left ? MergeViewerContentProvider.LEFT_CONTRIBUTOR : MergeViewerContentProvider.RIGHT_CONTRIBUTOR;
+		// the diffs before end before the position
+		for (int i= getIndex().findDiff(contributor, p.offset); i < fAllDiffs.size(); i++) {
+			Diff diff = (Diff) fAllDiffs.get(i);
 			Position diffPos;
 			if (left) {
 				diffPos = diff.fLeftPos;
@@ -1049,6 +1600,8 @@ public class DocumentMerger {
 	public void reset() {
 		fChangeDiffs= null;
 		fAllDiffs= null;
+		fIndex= null;
+		clearEdits();
 	}
 	
 	/**
@@ -1061,31 +1614,30 @@ public class DocumentMerger {
 
 		if (fAllDiffs == null)
 			return vpos;
-				
-		int viewPos= 0;		// real view position
-		int virtualPos= 0;	// virtual position
-		Point region= new Point(0, 0);
-		
-		Iterator e= fAllDiffs.iterator();
-		while (e.hasNext()) {
-			Diff diff= (Diff) e.next();
-			Position pos= diff.getPosition(contributor);
-			getLineRange(getDocument(contributor),pos, region);
-			int realHeight= region.y;
-			int virtualHeight= diff.getMaxDiffHeight();
-			if (vpos <= viewPos + realHeight) {	// OK, found!
-				vpos-= viewPos;	// make relative to this slot
-				// now scale position within this slot to virtual slot
-				if (realHeight <= 0)
-					vpos= 0;
-				else
-					vpos= (vpos*virtualHeight)/realHeight;
-				return virtualPos+vpos;
-			}
-			viewPos+= realHeight;
-			virtualPos+= virtualHeight;
+		
+		DiffIndex index= getIndex();
+		int[] viewPositions= index.getHeights(contributor);
+		int[] virtualPositions= index.getVirtualHeights();
+		int size= fAllDiffs.size();
+		
+		// the first slot that ends at or after the position
+		int i= findFirst(viewPositions, size + 1, vpos) - 1;
+		if (i < 0)
+			i= 0;
+		if (i < size) {	// OK, found!
+			int viewPos= viewPositions[i];		// real view position
+			int virtualPos= virtualPositions[i];	// virtual position
+			int realHeight= viewPositions[i + 1] - viewPos;
+			int virtualHeight= virtualPositions[i + 1] - virtualPos;
+			vpos-= viewPos;	// make relative to this slot
+			// now scale position within this slot to virtual slot
+			if (realHeight <= 0)
+				vpos= 0;
+			else
+				vpos= (vpos*virtualHeight)/realHeight;
+			return virtualPos+vpos;
 		}
-		return virtualPos;
+		return virtualPositions[size];
 	}
 	
 	/**
@@ -1098,30 +1650,30 @@ public class DocumentMerger {
 			
 		if (fAllDiffs == null)
 			return v;
-					
-		int virtualPos= 0;
-		int viewPos= 0;
-		Point region= new Point(0, 0);
-		
-		Iterator e= fAllDiffs.iterator();
-		while (e.hasNext()) {
-			Diff diff= (Diff) e.next();
-			Position pos= diff.getPosition(contributor);
-			int viewHeight= getLineRange(getDocument(contributor), pos, region).y;
-			int virtualHeight= diff.getMaxDiffHeight();
-			if (v < (virtualPos + virtualHeight)) {
-				v-= virtualPos;		// make relative to this slot
-				if (viewHeight <= 0) {
-					v= 0;
-				} else {
-					v= (int) (v * ((double)viewHeight/virtualHeight));
-				}
-				return viewPos+v;
+		
+		DiffIndex index= getIndex();
+		int[] viewPositions= index.getHeights(contributor);
+		int[] virtualPositions= index.getVirtualHeights();
+		int size= fAllDiffs.size();
+		
+		// the first slot that ends after the position
+		int i= findFirst(virtualPositions, size + 1, v + 1) - 1;
+		if (i < 0)
+			i= 0;
+		if (i < size) {
+			int virtualPos= virtualPositions[i];
+			int viewPos= viewPositions[i];
+			int viewHeight= viewPositions[i + 1] - viewPos;
+			int virtualHeight= virtualPositions[i + 1] - virtualPos;
+			v-= virtualPos;		// make relative to this slot
+			if (viewHeight <= 0) {
+				v= 0;
+			} else {
+				v= (int) (v * ((double)viewHeight/virtualHeight));
 			}
-			virtualPos+= virtualHeight;
-			viewPos+= viewHeight;
+			return viewPos+v;
 		}
-		return viewPos;
+		return viewPositions[size];
 	}
 	
 	/*
@@ -1129,13 +1681,8 @@ public class DocumentMerger {
 	 */
 	public int getVirtualHeight() {
 		int h= 1;
-		if (fAllDiffs != null) {
-			Iterator e= fAllDiffs.iterator();
-			while (e.hasNext()) {
-				Diff diff= (Diff) e.next();
-				h+= diff.getMaxDiffHeight();
-			}
-		}
+		if (fAllDiffs != null)
+			h+= getIndex().getVirtualHeights()[fAllDiffs.size()];
 		return h;
 	}
 	
@@ -1144,13 +1691,8 @@ public class DocumentMerger {
 	 */
 	public int getRightHeight() {
 		int h= 1;
-		if (fAllDiffs != null) {
-			Iterator e= fAllDiffs.iterator();
-			while (e.hasNext()) {
-				Diff diff= (Diff) e.next();
-				h+= diff.getRightHeight();
-			}
-		}
+		if (fAllDiffs != null)
+			h+= getIndex().getHeights(MergeViewerContentProvider.RIGHT_CONTRIBUTOR)[fAllDiffs.size()];
 		return h;
 	}
 	
@@ -1178,8 +1720,14 @@ public class DocumentMerger {
 		if (fChangeDiffs == null)
 			return new Diff[0];
 		List intersectingDiffs = new ArrayList();
-		for (Iterator iterator = fChangeDiffs.iterator(); iterator.hasNext();) {
-			Diff diff = (Diff) iterator.next();
+		DiffIndex index= getIndex();
+		int end= region.getOffset() + region.getLength();
+		// the diffs before end before the region
+		for (int j= index.findChangeDiff(contributor, region.getOffset()); j < fChangeDiffs.size(); j++) {
+			// the diffs from here on start after the region
+			if (index.isChangeDiffAfter(contributor, j, end))
+				break;
+			Diff diff = (Diff) fChangeDiffs.get(j);
 			Diff[] changeDiffs = diff.getChangeDiffs(contributor, region);
 			for (int i = 0; i < changeDiffs.length; i++) {
 				Diff changeDiff = changeDiffs[i];
@@ -1197,11 +1745,12 @@ public class DocumentMerger {
 		int yy, hh;
 		int y= 0;
 		if (fAllDiffs != null) {
-			Iterator e= fAllDiffs.iterator();
-			while (e.hasNext()) {
-				Diff diff= (Diff) e.next();
-				int h= synchronizedScrolling ? diff.getMaxDiffHeight()
-											  : diff.getRightHeight();
+			DiffIndex index= getIndex();
+			int[] heights= synchronizedScrolling ? index.getVirtualHeights()
+												 : index.getHeights(MergeViewerContentProvider.RIGHT_CONTRIBUTOR);
+			for (int i= 0; i < fAllDiffs.size(); i++) {
+				Diff diff= (Diff) fAllDiffs.get(i);
+				int h= heights[i + 1] - heights[i];
 				if (useChange(diff.getKind()) && !diff.fIsWhitespace) {
 									
 					yy= (y*size.y)/virtualHeight;
@@ -1306,7 +1855,12 @@ public class DocumentMerger {
 						break;
 					}
 					if (s != null) {
-						toDoc.replace(toStart, toLen, s);						
+						fCopying= true;
+						try {
+							toDoc.replace(toStart, toLen, s);
+						} finally {
+							fCopying= false;
+						}
 						toPos.setOffset(toStart);
 						toPos.setLength(s.length());
 					}	
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -167,6 +167,7 @@ public class PatchWizard extends Wizard {
 				scheduleRule = ResourcesPlugin.getWorkspace().getRuleFactory().modifyRule(resource);
 			}
 
+			fPatcher.setPatchThreads(Runtime.getRuntime().availableProcessors());
 			WorkspaceModifyOperation op = new WorkspaceModifyOperation(scheduleRule) {
 				protected void execute(IProgressMonitor monitor) throws InvocationTargetException {
 					try {
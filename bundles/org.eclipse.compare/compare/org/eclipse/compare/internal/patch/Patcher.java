@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -50,9 +50,12 @@ import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.preferences.IScopeContext;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.jface.text.TextUtilities;
@@ -94,6 +97,27 @@ public class Patcher implements IHunkFilter {
 
 	private final PatchConfiguration configuration;
 	private boolean fGenerateRejectFile = false;
+	private int fPatchThreads = 1;
+	// the files patched before they are written by applyAll, or null
+	private Map fPatchedFiles;
+	
+	/*
+	 * The contents of a file patched by patchInParallel.
+	 */
+	static class PatchedFile {
+		final FilePatch2 diff;
+		final IFile file;
+		final boolean create;
+		List lines;
+		List failedHunks;
+		boolean done;
+		
+		PatchedFile(FilePatch2 diff, IFile file, boolean create) {
+			this.diff = diff;
+			this.file = file;
+			this.create = create;
+		}
+	}
 	
 	public Patcher() {
 		configuration = new PatchConfiguration();
@@ -168,6 +192,22 @@ public class Patcher implements IHunkFilter {
 		fGenerateRejectFile = generateRejectFile;
 	}
 	
+	public int getPatchThreads() {
+		return fPatchThreads;
+	}
+	
+	/**
+	 * Sets the number of threads that patch the contents of the files in
+	 * <code>applyAll</code>. With more than one thread the contents of all
+	 * files are patched first, by the calling thread and background jobs, and
+	 * all files are written afterwards. The default is 1, i.e. each file is
+	 * written before the next one is patched.
+	 * @param threads the number of threads, values smaller than 1 are treated as 1
+	 */
+	public void setPatchThreads(int threads) {
+		fPatchThreads = Math.max(1, threads);
+	}
+	
 	//---- parsing patch files
 
 	public void parse(IStorage storage) throws IOException, CoreException {
@@ -266,11 +306,29 @@ public class Patcher implements IHunkFilter {
 			pm.beginTask(message, fDiffs.length*WORK_UNIT);
 		}
 		
+		clearPatchedFiles();
+		if (fPatchThreads > 1) {
+			List files= new ArrayList();
+			for (i= 0; i < fDiffs.length; i++) {
+				FilePatch2 diff= fDiffs[i];
+				int type= diff.getDiffType(isReversed());
+				if (isEnabled(diff) && type != FilePatch2.DELETION) {
+					IFile file= singleFile != null
+									? singleFile
+									: container.getFile(getPath(diff));
+					files.add(new PatchedFile(diff, file, type == FilePatch2.ADDITION));
+				}
+			}
+			patchInParallel(files, pm, WORK_UNIT / 2);
+		}
+		
 		for (i= 0; i < fDiffs.length; i++) {
 			
 			int workTicks= WORK_UNIT;
 			
 			FilePatch2 diff= fDiffs[i];
+			if (isPatched(diff))
+				workTicks-= WORK_UNIT / 2;
 			if (isEnabled(diff)) {
 				
 				IPath path= getPath(diff);
@@ -287,7 +345,7 @@ public class Patcher implements IHunkFilter {
 				switch (type) {
 				case FilePatch2.ADDITION:
 					// patch it and collect rejected hunks
-					List result= apply(diff, file, true, failed);
+					List result= getPatchedLines(diff, file, true, failed);
 					if (result != null)
 						store(LineReader.createString(isPreserveLineDelimeters(), result), file, new SubProgressMonitor(pm, workTicks));
 					workTicks-= WORK_UNIT;
@@ -298,7 +356,7 @@ public class Patcher implements IHunkFilter {
 					break;
 				case FilePatch2.CHANGE:
 					// patch it and collect rejected hunks
-					result= apply(diff, file, false, failed);
+					result= getPatchedLines(diff, file, false, failed);
 					if (result != null)
 						store(LineReader.createString(isPreserveLineDelimeters(), result), file, new SubProgressMonitor(pm, workTicks));
 					workTicks-= WORK_UNIT;
@@ -328,6 +386,7 @@ public class Patcher implements IHunkFilter {
 					pm.worked(workTicks);
 			}
 		}
+		clearPatchedFiles();
 	}
 
 	private IPath getRejectFilePath(IPath path) {
@@ -340,6 +399,138 @@ public class Patcher implements IHunkFilter {
 		return pp;
 	}
 	
+	/*
+	 * Patches the contents of the given files before they are written by
+	 * applyAll, using the calling thread and background jobs that take the
+	 * files from the list in order. Only the calling thread reports progress,
+	 * the given number of ticks per patched file. The files that are left
+	 * when the monitor is canceled are patched when they are written, as are
+	 * the files that more than one diff applies to, except for the first one.
+	 */
+	void patchInParallel(final List files, final IProgressMonitor pm, int ticks) {
+		final int[] next= new int[1];
+		final int[] done= new int[1];
+		final RuntimeException[] error= new RuntimeException[1];
+		fPatchedFiles= new HashMap();
+		Set targets= new HashSet();
+		for (Iterator iter= files.iterator(); iter.hasNext();) {
+			PatchedFile patched= (PatchedFile) iter.next();
+			if (!targets.add(patched.file)) {
+				// the diff applies to the contents written for the previous one
+				iter.remove();
+				continue;
+			}
+			// the diff results are created here as the map is not thread safe
+			getDiffResult(patched.diff);
+			fPatchedFiles.put(patched.diff, patched);
+		}
+		
+		Job[] jobs= new Job[Math.max(0, Math.min(fPatchThreads, files.size()) - 1)];
+		for (int i= 0; i < jobs.length; i++) {
+			jobs[i]= new Job(Messages.Patcher_0) {
+				protected IStatus run(IProgressMonitor monitor) {
+					while (patchNext(files, next, done, error, pm)) {
+						// take the next file
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			jobs[i].setSystem(true);
+			jobs[i].schedule();
+		}
+		
+		int reported= 0;
+		while (patchNext(files, next, done, error, pm)) {
+			reported= reportPatched(files, done, reported, pm, ticks);
+		}
+		
+		boolean interrupted= false;
+		for (int i= 0; i < jobs.length; i++) {
+			try {
+				jobs[i].join();
+			} catch (InterruptedException e) {
+				interrupted= true;
+				i--;	// the jobs still access the files, keep waiting
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		reportPatched(files, done, reported, pm, ticks);
+		
+		synchronized (files) {
+			if (error[0] != null)
+				throw error[0];
+		}
+	}
+	
+	/*
+	 * Patches the next file of the list, returns false if there is none or
+	 * patching should stop.
+	 */
+	private boolean patchNext(List files, int[] next, int[] done, RuntimeException[] error, IProgressMonitor pm) {
+		PatchedFile patched;
+		synchronized (files) {
+			if (next[0] == files.size() || error[0] != null
+					|| (pm != null && pm.isCanceled()))
+				return false;
+			patched= (PatchedFile) files.get(next[0]++);
+		}
+		try {
+			List failedHunks= new ArrayList();
+			List lines= apply(patched.diff, patched.file, patched.create, failedHunks);
+			synchronized (files) {
+				patched.lines= lines;
+				patched.failedHunks= failedHunks;
+				patched.done= true;
+				done[0]++;
+			}
+		} catch (RuntimeException e) {
+			synchronized (files) {
+				if (error[0] == null)
+					error[0]= e;
+			}
+		}
+		return true;
+	}
+	
+	private int reportPatched(List files, int[] done, int reported, IProgressMonitor pm, int ticks) {
+		int count;
+		synchronized (files) {
+			count= done[0];
+		}
+		if (pm != null && count > reported)
+			pm.worked((count - reported) * ticks);
+		return count;
+	}
+	
+	void clearPatchedFiles() {
+		fPatchedFiles= null;
+	}
+	
+	/*
+	 * Returns whether the contents of the file for the given diff have been
+	 * patched by patchInParallel.
+	 */
+	boolean isPatched(FilePatch2 diff) {
+		if (fPatchedFiles == null)
+			return false;
+		PatchedFile patched= (PatchedFile) fPatchedFiles.get(diff);
+		// the jobs have been joined
+		return patched != null && patched.done;
+	}
+	
+	/*
+	 * Returns the patched lines like apply, taking them from patchInParallel
+	 * if it has patched the file.
+	 */
+	List getPatchedLines(FilePatch2 diff, IFile file, boolean create, List failedHunks) {
+		if (!isPatched(diff))
+			return apply(diff, file, create, failedHunks);
+		PatchedFile patched= (PatchedFile) fPatchedFiles.get(diff);
+		failedHunks.addAll(patched.failedHunks);
+		return patched.lines;
+	}
+	
 	List apply(FilePatch2 diff, IFile file, boolean create, List failedHunks) {
 		FileDiffResult result = getDiffResult(diff);
 		List lines = LineReader.load(file, create);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -106,11 +106,25 @@ public class WorkspacePatcher extends Patcher {
 				pm.beginTask(message, diffs.length * WORK_UNIT);
 			}
 
+			clearPatchedFiles();
+			if (getPatchThreads() > 1) {
+				List files= new ArrayList();
+				for (int i= 0; i < diffs.length; i++) {
+					FilePatch2 diff= diffs[i];
+					int type= diff.getDiffType(isReversed());
+					if (isAccessible(diff) && type != FilePatch2.DELETION)
+						files.add(new PatchedFile(diff, getTargetFile(diff), type == FilePatch2.ADDITION));
+				}
+				patchInParallel(files, pm, WORK_UNIT / 2);
+			}
+
 			for (int i= 0; i < diffs.length; i++) {
 
 				int workTicks= WORK_UNIT;
 
 				FilePatch2 diff= diffs[i];
+				if (isPatched(diff))
+					workTicks -= WORK_UNIT / 2;
 				if (isAccessible(diff)) {
 					IFile file= getTargetFile(diff);
 					IPath path= file.getProjectRelativePath();
@@ -124,7 +138,7 @@ public class WorkspacePatcher extends Patcher {
 					switch (type) {
 						case FilePatch2.ADDITION :
 							// patch it and collect rejected hunks
-							List result= apply(diff, file, true, failed);
+							List result= getPatchedLines(diff, file, true, failed);
 							if (result != null)
 								store(LineReader.createString(isPreserveLineDelimeters(), result), file, new SubProgressMonitor(pm, workTicks));
 							workTicks -= WORK_UNIT;
@@ -135,7 +149,7 @@ public class WorkspacePatcher extends Patcher {
 							break;
 						case FilePatch2.CHANGE :
 							// patch it and collect rejected hunks
-							result= apply(diff, file, false, failed);
+							result= getPatchedLines(diff, file, false, failed);
 							if (result != null)
 								store(LineReader.createString(isPreserveLineDelimeters(), result), file, new SubProgressMonitor(pm, workTicks));
 							workTicks -= WORK_UNIT;
@@ -170,6 +184,7 @@ public class WorkspacePatcher extends Patcher {
 						pm.worked(workTicks);
 				}
 			}
+			clearPatchedFiles();
 		}
 	}
 	
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,12 +22,17 @@ import java.util.Set;
 
 import org.eclipse.compare.IStreamContentAccessor;
 import org.eclipse.compare.ITypedElement;
+import org.eclipse.compare.internal.CompareMessages;
+import org.eclipse.compare.internal.ContentDigestCache;
 import org.eclipse.compare.internal.MergeViewerContentProvider;
 import org.eclipse.compare.internal.Utilities;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 
 import com.ibm.icu.text.MessageFormat;
 
@@ -56,6 +61,10 @@ import com.ibm.icu.text.MessageFormat;
  * In the two-way case only NO_CHANGE, ADDITION, DELETION, and CHANGE are used.
  * In the three-way case these constants are bitwise ORed with one of directional constants
  * LEFT, RIGHT, and CONFLICTING.
+ * <p>
+ * By default the contents of the leaf objects are compared while the tree is traversed.
+ * Use <code>setContentCompareThreads</code> to compare them in parallel instead.
+ * </p>
  */
 public class Differencer {
 	
@@ -110,6 +119,15 @@ public class Differencer {
 	 */
 	public static final int PSEUDO_CONFLICT= 16;
 
+	private static final int BUFFER_SIZE= 8192;
+
+	private int fContentCompareThreads= 1;
+
+	/*
+	 * The leaves whose contents still have to be compared, or null if the
+	 * contents are compared while traversing the tree.
+	 */
+	private List fPendingLeaves;
 	
 	static class Node {
 		List fChildren;
@@ -199,6 +217,25 @@ public class Differencer {
 		// nothing to do
 	}
 	
+	/**
+	 * Sets the number of threads that compare the contents of leaf objects.
+	 * If more than one thread is used, the tree is traversed first and the
+	 * contents of all leaves are compared afterwards by the given number of
+	 * background jobs. The result of <code>findDifferences</code> and the order
+	 * of the calls to <code>visit</code> are the same in both modes.
+	 * <p>
+	 * The default is 1, i.e. the contents are compared while traversing the
+	 * tree. Subclasses that override <code>contentsEqual</code> may only use
+	 * more threads if their implementation is thread safe.
+	 * </p>
+	 *
+	 * @param threads the number of threads, values smaller than 1 are treated as 1
+	 * @since 3.6
+	 */
+	public void setContentCompareThreads(int threads) {
+		fContentCompareThreads= Math.max(1, threads);
+	}
+	
 	/**
 	 * Starts the differencing engine on the three input objects. If threeWay is <code>true</code> a 
 	 * three-way comparison is performed, otherwise a two-way compare (in the latter case the ancestor argument is ignored).
@@ -219,7 +256,19 @@ public class Differencer {
 		
 		Node root= new Node();
 		
-		int code= traverse(threeWay, root, pm, threeWay ? ancestor : null, left, right);
+		int code;
+		if (fContentCompareThreads > 1) {
+			fPendingLeaves= new ArrayList();
+			try {
+				traverse(threeWay, root, pm, threeWay ? ancestor : null, left, right);
+				compareLeaves(threeWay, pm);
+			} finally {
+				fPendingLeaves= null;
+			}
+			code= updateCode(threeWay, (Node) root.fChildren.get(0));
+		} else {
+			code= traverse(threeWay, root, pm, threeWay ? ancestor : null, left, right);
+		}
 				
 		if (code != NO_CHANGE) {
 			List l= root.fChildren;
@@ -309,6 +358,13 @@ public class Differencer {
 			}
 		}
 
+		if (fPendingLeaves != null) {
+			// the codes are computed once the contents of all leaves are known
+			if (node.fChildren == null)
+				fPendingLeaves.add(node);
+			return NO_CHANGE;
+		}
+
 		if (content)			// a leaf
 			code= compare(threeWay, ancestor, left, right);
 								
@@ -317,6 +373,91 @@ public class Differencer {
 		return code;
 	}
 	
+	/*
+	 * Compares the contents of the pending leaves using a number of jobs
+	 * that take the leaves from a shared list.
+	 */
+	private void compareLeaves(final boolean threeWay, final IProgressMonitor pm) {
+		final List leaves= fPendingLeaves;
+		final int[] next= new int[1];
+		final RuntimeException[] error= new RuntimeException[1];
+		
+		Job[] jobs= new Job[Math.min(fContentCompareThreads, leaves.size())];
+		for (int i= 0; i < jobs.length; i++) {
+			jobs[i]= new Job(CompareMessages.Differencer_0) {
+				protected IStatus run(IProgressMonitor monitor) {
+					while (true) {
+						Node node;
+						synchronized (leaves) {
+							if (next[0] == leaves.size() || error[0] != null
+									|| (pm != null && pm.isCanceled()))
+								return Status.OK_STATUS;
+							node= (Node) leaves.get(next[0]++);
+						}
+						try {
+							node.fCode= compare(threeWay, node.fAncestor, node.fLeft, node.fRight);
+						} catch (RuntimeException e) {
+							synchronized (leaves) {
+								if (error[0] == null)
+									error[0]= e;
+							}
+						}
+					}
+				}
+			};
+			jobs[i].setSystem(true);
+			jobs[i].schedule();
+		}
+		
+		boolean interrupted= false;
+		for (int i= 0; i < jobs.length; i++) {
+			try {
+				jobs[i].join();
+			} catch (InterruptedException e) {
+				interrupted= true;
+				i--;	// the jobs still access the leaves, keep waiting
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		
+		// the node codes are written by the jobs
+		synchronized (leaves) {
+			if (error[0] != null)
+				throw error[0];
+		}
+		if (pm != null && pm.isCanceled())
+			throw new OperationCanceledException();
+	}
+	
+	/*
+	 * Computes the codes of the given node and its descendants in postorder
+	 * once the codes of the leaves are known.
+	 */
+	private int updateCode(boolean threeWay, Node node) {
+		if (node.fChildren == null)
+			return node.fCode;
+		
+		int code= NO_CHANGE;
+		boolean content= true;
+		Iterator i= node.fChildren.iterator();
+		while (i.hasNext()) {
+			int c= updateCode(threeWay, (Node) i.next());
+			if ((c & CHANGE_TYPE_MASK) != NO_CHANGE) {
+				code|= CHANGE;
+				code|= (c & DIRECTION_MASK);
+				content= false;
+			}
+		}
+		
+		if (content)
+			code= compare(threeWay, node.fAncestor, node.fLeft, node.fRight);
+		
+		node.fCode= code;
+		
+		return code;
+	}
+	
 	/**
 	 * Called for every node or leaf comparison.
 	 * The differencing engine passes in the input objects of the compare and the result of the compare.
@@ -450,7 +591,9 @@ public class Differencer {
 	 * <p>
 	 * The <code>Differencer</code> implementation
 	 * returns <code>true</code> if both inputs implement <code>IStreamContentAccessor</code>
-	 * and their byte contents is identical. Subclasses may override to implement 
+	 * and their byte contents is identical. Unmodified workspace files are compared by
+	 * their length and a cached digest of their contents first, so unchanged files are
+	 * not read again. Subclasses may override to implement 
 	 * a different content compare on the given inputs.
 	 * </p>
 	 *
@@ -462,6 +605,10 @@ public class Differencer {
 		
 		if (input1 == input2)
 			return true;
+		
+		int result= ContentDigestCache.getDefault().compare(input1, input2);
+		if (result != ContentDigestCache.UNKNOWN)
+			return result == ContentDigestCache.EQUAL;
 			
 		InputStream is1= getStream(input1);
 		InputStream is2= getStream(input2);
@@ -473,14 +620,18 @@ public class Differencer {
 			if (is1 == null || is2 == null)	// only one has contents
 				return false;
 			
+			byte[] buffer1= new byte[BUFFER_SIZE];
+			byte[] buffer2= new byte[BUFFER_SIZE];
 			while (true) {
-				int c1= is1.read();
-				int c2= is2.read();
-				if (c1 == -1 && c2 == -1)
-					return true;
-				if (c1 != c2)
+				int n1= fill(is1, buffer1);
+				int n2= fill(is2, buffer2);
+				if (n1 != n2)
 					break;
-				
+				for (int i= 0; i < n1; i++)
+					if (buffer1[i] != buffer2[i])
+						return false;
+				if (n1 < BUFFER_SIZE)
+					return true;
 			}
 		} catch (IOException ex) {
 			// NeedWork
@@ -503,6 +654,21 @@ public class Differencer {
 		return false;
 	}
 	
+	/*
+	 * Reads from the stream until the buffer is full or the end of the
+	 * stream is reached and returns the number of bytes read.
+	 */
+	private static int fill(InputStream is, byte[] buffer) throws IOException {
+		int count= 0;
+		while (count < buffer.length) {
+			int n= is.read(buffer, count, buffer.length - count);
+			if (n == -1)
+				break;
+			count+= n;
+		}
+		return count;
+	}
+	
 	/*
 	 * Tries to return an InputStream for the given object.
 	 * Returns <code>null</code> if the object not an IStreamContentAccessor
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.net;
+
+import java.util.*;
+
+/**
+ * Matches host names against the list of non-proxied hosts. The list is
+ * compiled once: host names go into a hash set, patterns with a single
+ * leading or trailing '*' (e.g. <code>*.eclipse.org</code> or
+ * <code>192.168.*</code>) into a suffix or a prefix trie and IP ranges in
+ * CIDR notation (e.g. <code>10.0.0.0/8</code> or <code>fe80::/10</code>)
+ * are matched against the address of hosts that are IP literals. The
+ * remaining patterns are matched with a {@link StringMatcher} each. Case is
+ * ignored.
+ */
+public class NonProxiedHostMatcher {
+
+	private final Set hosts = new HashSet();
+	private final Node suffixes = new Node();
+	private final Node prefixes = new Node();
+	// network address (byte[]) and prefix length (Integer) pairs
+	private final List networks = new ArrayList();
+	private final StringMatcher[] matchers;
+	// the matchers for all the filters, used for the hosts that are not ASCII
+	private final StringMatcher[] allMatchers;
+
+	/*
+	 * A node of a trie of characters
+	 */
+	private static class Node {
+		char[] keys = new char[0];
+		Node[] children = new Node[0];
+		boolean terminal;
+
+		Node get(char c) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == c)
+					return children[i];
+			}
+			return null;
+		}
+
+		Node add(char c) {
+			Node child = get(c);
+			if (child == null) {
+				child = new Node();
+				char[] newKeys = new char[keys.length + 1];
+				System.arraycopy(keys, 0, newKeys, 0, keys.length);
+				newKeys[keys.length] = c;
+				Node[] newChildren = new Node[children.length + 1];
+				System.arraycopy(children, 0, newChildren, 0, children.length);
+				newChildren[children.length] = child;
+				keys = newKeys;
+				children = newChildren;
+			}
+			return child;
+		}
+	}
+
+	/**
+	 * Compile the given non-proxied hosts.
+	 * @param filters the non-proxied hosts
+	 */
+	public NonProxiedHostMatcher(String[] filters) {
+		List others = new ArrayList();
+		allMatchers = new StringMatcher[filters.length];
+		for (int i = 0; i < filters.length; i++) {
+			String filter = filters[i];
+			allMatchers[i] = new StringMatcher(filter, true, false);
+			if (!isASCII(filter) || filter.indexOf('\\') != -1) {
+				others.add(allMatchers[i]);
+				continue;
+			}
+			if (addNetwork(filter))
+				continue;
+			String lower = filter.toLowerCase(Locale.ENGLISH);
+			int wildcards = count(lower, '*') + count(lower, '?');
+			if (wildcards == 0) {
+				hosts.add(lower);
+			} else if (wildcards == 1 && lower.charAt(0) == '*') {
+				Node node = suffixes;
+				for (int j = lower.length() - 1; j > 0; j--) {
+					node = node.add(lower.charAt(j));
+				}
+				node.terminal = true;
+			} else if (wildcards == 1 && lower.charAt(lower.length() - 1) == '*') {
+				Node node = prefixes;
+				for (int j = 0; j < lower.length() - 1; j++) {
+					node = node.add(lower.charAt(j));
+				}
+				node.terminal = true;
+			} else {
+				others.add(allMatchers[i]);
+			}
+		}
+		matchers = (StringMatcher[]) others.toArray(new StringMatcher[others.size()]);
+	}
+
+	/**
+	 * Return whether the given host matches one of the non-proxied hosts.
+	 * @param host a host name or IP literal
+	 * @return whether the host is not proxied
+	 */
+	public boolean match(String host) {
+		if (!isASCII(host))
+			return match(allMatchers, host);
+		String lower = host.toLowerCase(Locale.ENGLISH);
+		if (hosts.contains(lower))
+			return true;
+		Node node = suffixes;
+		for (int i = lower.length() - 1; i >= 0 && !node.terminal; i--) {
+			Node next = node.get(lower.charAt(i));
+			if (next == null)
+				break;
+			node = next;
+		}
+		if (node.terminal)
+			return true;
+		node = prefixes;
+		for (int i = 0; i < lower.length() && !node.terminal; i++) {
+			Node next = node.get(lower.charAt(i));
+			if (next == null)
+				break;
+			node = next;
+		}
+		if (node.terminal)
+			return true;
+		if (!networks.isEmpty()) {
+			byte[] address = parseAddress(host);
+			if (address != null) {
+				for (int i = 0; i < networks.size(); i += 2) {
+					if (inNetwork(address, (byte[]) networks.get(i), ((Integer) networks.get(i + 1)).intValue()))
+						return true;
+				}
+			}
+		}
+		return match(matchers, host);
+	}
+
+	private static boolean match(StringMatcher[] matchers, String host) {
+		for (int i = 0; i < matchers.length; i++) {
+			if (matchers[i].match(host))
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Add the filter to the networks if it is an IP range in CIDR notation
+	 */
+	private boolean addNetwork(String filter) {
+		int slash = filter.indexOf('/');
+		if (slash == -1)
+			return false;
+		byte[] address = parseAddress(filter.substring(0, slash));
+		if (address == null)
+			return false;
+		int bits;
+		try {
+			bits = Integer.parseInt(filter.substring(slash + 1));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		if (bits < 0 || bits > address.length * 8)
+			return false;
+		networks.add(address);
+		networks.add(new Integer(bits));
+		return true;
+	}
+
+	private static boolean inNetwork(byte[] address, byte[] network, int bits) {
+		if (address.length != network.length)
+			return false;
+		for (int i = 0; bits > 0; i++, bits -= 8) {
+			int mask = bits >= 8 ? 0xFF : (0xFF << (8 - bits)) & 0xFF;
+			if ((address[i] & mask) != (network[i] & mask))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Return the address of the given IPv4 or IPv6 literal. An IPv6 literal
+	 * may be enclosed in brackets.
+	 * @param host a host name or IP literal
+	 * @return the address or <code>null</code> if the host is not an IP literal
+	 */
+	static byte[] parseAddress(String host) {
+		if (host.startsWith("[") && host.endsWith("]")) //$NON-NLS-1$ //$NON-NLS-2$
+			host = host.substring(1, host.length() - 1);
+		if (host.indexOf(':') == -1)
+			return parseIPv4(host);
+		int zone = host.indexOf('%');
+		if (zone != -1)
+			host = host.substring(0, zone);
+		return parseIPv6(host);
+	}
+
+	private static byte[] parseIPv4(String host) {
+		String[] parts = split(host, '.');
+		if (parts.length != 4)
+			return null;
+		byte[] address = new byte[4];
+		for (int i = 0; i < 4; i++) {
+			int value = parseNumber(parts[i], 10, 3);
+			if (value < 0 || value > 255)
+				return null;
+			address[i] = (byte) value;
+		}
+		return address;
+	}
+
+	private static byte[] parseIPv6(String host) {
+		int compressed = host.indexOf("::"); //$NON-NLS-1$
+		if (compressed != -1 && host.indexOf("::", compressed + 1) != -1) //$NON-NLS-1$
+			return null;
+		String head = compressed == -1 ? host : host.substring(0, compressed);
+		String tail = compressed == -1 ? "" : host.substring(compressed + 2); //$NON-NLS-1$
+		List groups = new ArrayList();
+		int headGroups = parseGroups(head, groups, compressed == -1);
+		if (headGroups < 0)
+			return null;
+		int tailGroups = parseGroups(tail, groups, true);
+		if (tailGroups < 0)
+			return null;
+		int missing = 8 - headGroups - tailGroups;
+		if (compressed == -1 ? missing != 0 : missing < 1)
+			return null;
+		byte[] address = new byte[16];
+		int index = 0;
+		for (int i = 0; i < groups.size(); i++) {
+			if (i == headGroups)
+				index += missing * 2;
+			int value = ((Integer) groups.get(i)).intValue();
+			address[index++] = (byte) (value >> 8);
+			address[index++] = (byte) value;
+		}
+		return address;
+	}
+
+	/*
+	 * Add the 16 bit groups of the given part of an IPv6 literal to the list
+	 * and return their number or -1 if the part is not valid. The last part
+	 * may end with an IPv4 address.
+	 */
+	private static int parseGroups(String part, List groups, boolean last) {
+		if (part.length() == 0)
+			return 0;
+		String[] fields = split(part, ':');
+		int count = 0;
+		for (int i = 0; i < fields.length; i++) {
+			if (last && i == fields.length - 1 && fields[i].indexOf('.') != -1) {
+				byte[] ipv4 = parseIPv4(fields[i]);
+				if (ipv4 == null)
+					return -1;
+				groups.add(new Integer(((ipv4[0] & 0xFF) << 8) | (ipv4[1] & 0xFF)));
+				groups.add(new Integer(((ipv4[2] & 0xFF) << 8) | (ipv4[3] & 0xFF)));
+				count += 2;
+			} else {
+				int value = parseNumber(fields[i], 16, 4);
+				if (value < 0)
+					return -1;
+				groups.add(new Integer(value));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static int parseNumber(String number, int radix, int maxLength) {
+		if (number.length() == 0 || number.length() > maxLength)
+			return -1;
+		for (int i = 0; i < number.length(); i++) {
+			if (Character.digit(number.charAt(i), radix) < 0)
+				return -1;
+		}
+		return Integer.parseInt(number, radix);
+	}
+
+	/*
+	 * Split the string at the given separator, keeping empty fields
+	 */
+	private static String[] split(String string, char separator) {
+		List fields = new ArrayList();
+		int start = 0;
+		for (int end = string.indexOf(separator); end != -1; end = string.indexOf(separator, start)) {
+			fields.add(string.substring(start, end));
+			start = end + 1;
+		}
+		fields.add(string.substring(start));
+		return (String[]) fields.toArray(new String[fields.size()]);
+	}
+
+	private static boolean isASCII(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (string.charAt(i) >= 128)
+				return false;
+		}
+		return true;
+	}
+
+	private static int count(String string, char c) {
+		int count = 0;
+		for (int i = 0; i < string.length(); i++) {
+			if (string.charAt(i) == c)
+				count++;
+		}
+		return count;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -36,6 +36,13 @@ public class ProxyData implements IProxyData {
 		this.type = type;
 	}
 
+	ProxyData(ProxyData data) {
+		this(data.type, data.host, data.port, data.requiresAuthentication, data.source);
+		this.user = data.user;
+		this.password = data.password;
+		this.dynamic = data.dynamic;
+	}
+
 	public String getHost() {
 		return host;
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,7 +15,9 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.eclipse.core.net.proxy.IProxyChangeEvent;
@@ -31,18 +33,24 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.ListenerList;
 import org.eclipse.core.runtime.RegistryFactory;
 import org.eclipse.core.runtime.SafeRunner;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.INodeChangeListener;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.NodeChangeEvent;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.service.prefs.BackingStoreException;
 import org.osgi.service.prefs.Preferences;
 
-public class ProxyManager implements IProxyService, IPreferenceChangeListener {
+public class ProxyManager implements IProxyService, IPreferenceChangeListener, INodeChangeListener {
 	
 	static final String PREF_NON_PROXIED_HOSTS = "nonProxiedHosts"; //$NON-NLS-1$
 	static final String PREF_ENABLED = "proxiesEnabled"; //$NON-NLS-1$
 	static final String PREF_OS = "systemProxiesEnabled"; //$NON-NLS-1$
 	
+	// the maximum number of hosts whose proxies are cached
+	private static final int HOST_CACHE_SIZE = 1000;
+	
 	private static IProxyService proxyManager;
 	
 	private AbstractProxyProvider nativeProxyProvider;
@@ -51,6 +59,16 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 	
 	ListenerList listeners = new ListenerList(ListenerList.IDENTITY);
 	private String[] nonProxiedHosts;
+	private NonProxiedHostMatcher nonProxiedHostMatcher;
+	// host -> proxies to use for the host, the least recently used first
+	private final Map hostCache = new LinkedHashMap(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > HOST_CACHE_SIZE;
+		}
+	};
+	// incremented when the cached proxies become invalid
+	private long hostCacheStamp;
 	private final ProxyType[] proxies = new ProxyType[] {
 			new ProxyType(IProxyData.HTTP_PROXY_TYPE),
 			new ProxyType(IProxyData.HTTPS_PROXY_TYPE),
@@ -146,7 +164,11 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 		if (Arrays.equals(oldHosts, hosts)) {
 			return;
 		}
-		nonProxiedHosts = hosts;
+		synchronized (this) {
+			nonProxiedHosts = hosts;
+			nonProxiedHostMatcher = null;
+		}
+		clearHostCache();
 		preferenceManager.putString(PreferenceManager.ROOT, PREF_NON_PROXIED_HOSTS, ProxyType.convertHostsToPropertyString(nonProxiedHosts));
 		try {
 			preferenceManager.flush();
@@ -187,6 +209,8 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 		IProxyData[] oldData = getProxyData();
 		String[] hosts = getNonProxiedHosts();
 		IProxyData[] changedProxies = internalSetProxyData(proxyDatas);
+		// The user and password are not stored in the preferences so there may be no preference change
+		clearHostCache();
 		if (changedProxies.length > 0) {
 			IProxyChangeEvent event = new ProxyChangeEvent(IProxyChangeEvent.PROXY_SERVICE_ENABLEMENT_CHANGE, hosts, hosts, oldData, changedProxies);
 			fireChange(event);
@@ -272,7 +296,11 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 		for (int i = 0; i < proxies.length; i++) {
 			ProxyType type = proxies[i];
 			type.initialize();
+			// Listen to changes of the proxy data to clear the cached proxies of hosts
+			preferenceManager.addPreferenceChangeListener(type.getPreferenceNode(), this);
 		}
+		// The node of a proxy type is removed when its host is cleared
+		preferenceManager.addNodeChangeListener(ProxyType.PREF_PROXY_DATA_NODE, this);
 		registerAuthenticator();
 	}
 
@@ -296,14 +324,41 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 		if (!internalIsProxiesEnabled()) {
 			return new IProxyData[0];
 		}
-		URI uri = tryGetURI(host);
-		if (uri == null) {
-			return new IProxyData[0];
-		}
 		if (hasSystemProxies() && isSystemProxiesEnabled()) {
+			URI uri = tryGetURI(host);
+			if (uri == null) {
+				return new IProxyData[0];
+			}
 			return resolveType(nativeProxyProvider.select(uri));
 		}
 
+		IProxyData[] result;
+		long stamp;
+		synchronized (hostCache) {
+			result = (IProxyData[]) hostCache.get(host);
+			stamp = hostCacheStamp;
+		}
+		if (result == null) {
+			result = internalGetProxyDataForHost(host);
+			synchronized (hostCache) {
+				// Do not cache proxies that were calculated while the cache was cleared
+				if (stamp == hostCacheStamp)
+					hostCache.put(host, result);
+			}
+		}
+		// Clients may modify the proxy data
+		IProxyData[] copy = new IProxyData[result.length];
+		for (int i = 0; i < result.length; i++) {
+			copy[i] = new ProxyData((ProxyData) result[i]);
+		}
+		return copy;
+	}
+
+	private IProxyData[] internalGetProxyDataForHost(String host) {
+		URI uri = tryGetURI(host);
+		if (uri == null) {
+			return new IProxyData[0];
+		}
 		if (isHostFiltered(uri))
 			return new IProxyData[0];
 		IProxyData[] data = getProxyData();
@@ -317,10 +372,18 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 		return resolveType(ret);
 	}
 
+	private void clearHostCache() {
+		synchronized (hostCache) {
+			hostCache.clear();
+			hostCacheStamp++;
+		}
+	}
+
 	public static URI tryGetURI(String host) {
 		try {
 			int i = host.indexOf(":"); //$NON-NLS-1$
-			if (i == -1) {
+			// The colons of an IPv6 literal do not separate a scheme
+			if (i == -1 || host.startsWith("[")) { //$NON-NLS-1$
 				return new URI("//" + host); //$NON-NLS-1$
 			}
 			return new URI(host.substring(i + 1));
@@ -330,18 +393,15 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 	}
 
 	private boolean isHostFiltered(URI uri) {
-		String[] filters = getNonProxiedHosts();
-		for (int i = 0; i < filters.length; i++) {
-			String filter = filters[i];
-			if (matchesFilter(uri.getHost(), filter))
-				return true;
-		}
-		return false;
+		String host = uri.getHost();
+		return host != null && getNonProxiedHostMatcher().match(host);
 	}
 
-	private boolean matchesFilter(String host, String filter) {
-		StringMatcher matcher = new StringMatcher(filter, true, false);
-		return matcher.match(host);
+	private synchronized NonProxiedHostMatcher getNonProxiedHostMatcher() {
+		if (nonProxiedHostMatcher == null) {
+			nonProxiedHostMatcher = new NonProxiedHostMatcher(getNonProxiedHosts());
+		}
+		return nonProxiedHostMatcher;
 	}
 
 	/* (non-Javadoc)
@@ -402,6 +462,7 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 			return;
 		}
 		preferenceManager.migrate(proxies);
+		clearHostCache();
 	}
 	
 	void migrateInstanceScopePreferences(Preferences instance,
@@ -411,6 +472,12 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 	}
 
 	public void preferenceChange(PreferenceChangeEvent event) {
+		if (event.getKey().equals(PREF_NON_PROXIED_HOSTS)) {
+			synchronized (this) {
+				nonProxiedHostMatcher = null;
+			}
+		}
+		clearHostCache();
 		if (event.getKey().equals(PREF_ENABLED) || event.getKey().equals(PREF_OS)) {
 			checkMigrated();
 			internalSetEnabled(preferenceManager.getBoolean(PreferenceManager.ROOT, PREF_ENABLED),
@@ -418,6 +485,21 @@ public class ProxyManager implements IProxyService, IPreferenceChangeListener {
 		}
 	}
 
+	public void added(NodeChangeEvent event) {
+		// Add a preference listener to the node that replaces a removed proxy type node
+		for (int i = 0; i < proxies.length; i++) {
+			if (event.getChild().name().equals(proxies[i].getName())) {
+				((IEclipsePreferences)event.getChild()).addPreferenceChangeListener(this);
+				break;
+			}
+		}
+		clearHostCache();
+	}
+
+	public void removed(NodeChangeEvent event) {
+		clearHostCache();
+	}
+
 	public boolean hasSystemProxies() {
 		return nativeProxyProvider != null;
 	}
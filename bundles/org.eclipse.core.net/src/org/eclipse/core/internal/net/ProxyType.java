@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -119,7 +119,7 @@ public class ProxyType implements INodeChangeListener, IPreferenceChangeListener
 		this.preferenceManager = manager;
 	}
 
-	private String getPreferenceNode() {
+	String getPreferenceNode() {
 		return PREF_PROXY_DATA_NODE + IPath.SEPARATOR + getName();
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -50,7 +50,7 @@ public final class Team {
         
     }
 	
-	private static final String PREF_TEAM_IGNORES = "ignore_files"; //$NON-NLS-1$
+	private static final String PREF_TEAM_IGNORES = TeamPlugin.PREF_TEAM_IGNORES;
 	private static final String PREF_TEAM_SEPARATOR = "\n"; //$NON-NLS-1$
 	public static final Status OK_STATUS = new Status(IStatus.OK, TeamPlugin.ID, IStatus.OK, Messages.ok, null); 
 	
@@ -62,7 +62,7 @@ public final class Team {
 
 	// The ignore list that is read at startup from the persisted file
 	protected static SortedMap globalIgnore, pluginIgnore;
-	private static StringMatcher[] ignoreMatchers;
+	private static IgnoreMatcher ignoreMatcher;
     
     private final static FileContentManager fFileContentManager;
     
@@ -118,15 +118,7 @@ public final class Team {
 	}
 	
 	private static boolean matchesEnabledIgnore(IResource resource) {
-		StringMatcher[] matchers = getStringMatchers();
-		for (int i = 0; i < matchers.length; i++) {
-			String resourceName = resource.getName();
-			if(matchers[i].isPathPattern()) {
-				resourceName = resource.getFullPath().toString();
-			}
-			if (matchers[i].match(resourceName)) return true;
-		}
-		return false;
+		return getIgnoreMatcher().match(resource);
 	}
 	
 	/**
@@ -172,7 +164,7 @@ public final class Team {
 		if (globalIgnore == null) {
 			globalIgnore = new TreeMap();
 			pluginIgnore = new TreeMap();
-			ignoreMatchers = null;
+			ignoreMatcher = null;
 			try {
 				readIgnoreState();
 			} catch (TeamException e) {
@@ -204,19 +196,18 @@ public final class Team {
 		return result;
 	}
 
-	private synchronized static StringMatcher[] getStringMatchers() {
-		if (ignoreMatchers==null) {
+	private synchronized static IgnoreMatcher getIgnoreMatcher() {
+		if (ignoreMatcher==null) {
 			IIgnoreInfo[] ignorePatterns = getAllIgnores();
-			ArrayList matchers = new ArrayList(ignorePatterns.length);
+			ArrayList patterns = new ArrayList(ignorePatterns.length);
 			for (int i = 0; i < ignorePatterns.length; i++) {
 				if (ignorePatterns[i].getEnabled()) {
-					matchers.add(new StringMatcher(ignorePatterns[i].getPattern(), true, false));
+					patterns.add(ignorePatterns[i].getPattern());
 				}
 			}
-			ignoreMatchers = new StringMatcher[matchers.size()];
-			ignoreMatchers = (StringMatcher[]) matchers.toArray(ignoreMatchers);
+			ignoreMatcher = new IgnoreMatcher((String[]) patterns.toArray(new String[patterns.size()]));
 		}
-		return ignoreMatchers;
+		return ignoreMatcher;
 	}
 	
 	
@@ -247,7 +238,7 @@ public final class Team {
 	public static void setAllIgnores(String[] patterns, boolean[] enabled) {
 		initializeIgnores();
 		globalIgnore = new TreeMap();
-		ignoreMatchers = null;
+		ignoreMatcher = null;
 		for (int i = 0; i < patterns.length; i++) {
 			globalIgnore.put(patterns[i], Boolean.valueOf(enabled[i]));
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -42,6 +42,8 @@ import org.eclipse.team.internal.core.*;
  * <p>
  * The cache in which the resource variants reside will occasionally clear
  * cached entries if they have not been accessed for a certain amount of time.
+ * The cached contents are kept across restarts, so the cache path of a resource
+ * variant must identify the same contents in every session.
  * </p>
  * 
  * @since 3.0
@@ -153,9 +155,16 @@ public abstract class CachedResourceVariant extends PlatformObject implements IR
 	 * @return whether there are contents cached for this resource variant
 	 */
 	public boolean isContentsCached() {
-		if (isContainer() || !isHandleCached()) {
+		if (isContainer()) {
 			return false;
 		}
+		if (!isHandleCached()) {
+			// The contents may have been cached by a previous session
+			if (!getCache().hasContents(getCachePath())) {
+				return false;
+			}
+			cacheHandle();
+		}
 		ResourceVariantCacheEntry entry = getCache().getCacheEntry(getCachePath());
 		return entry.getState() == ResourceVariantCacheEntry.READY;
 	}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.core;
+
+import org.eclipse.core.resources.IResource;
+
+/**
+ * Matches resources against the enabled global ignore patterns. The case of
+ * characters is ignored and patterns that contain '/' are matched against
+ * the full path of resources instead of their name.
+ */
+public class IgnoreMatcher {
+
+	// one matcher per pattern, used for the names that cannot be matched by the compiled patterns
+	private final StringMatcher[] matchers;
+	private final MultiPatternMatcher compiled;
+	private final StringMatcher[] uncompiled;
+
+	/**
+	 * Create a matcher for the given patterns.
+	 * @param patterns the ignore patterns
+	 */
+	public IgnoreMatcher(String[] patterns) {
+		matchers = new StringMatcher[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			matchers[i] = new StringMatcher(patterns[i], true, false);
+		}
+		compiled = new MultiPatternMatcher(patterns, true);
+		int[] indexes = compiled.getUncompiledPatterns();
+		uncompiled = new StringMatcher[indexes.length];
+		for (int i = 0; i < indexes.length; i++) {
+			uncompiled[i] = matchers[indexes[i]];
+		}
+	}
+
+	/**
+	 * Return whether the given resource matches one of the patterns.
+	 * @param resource a resource
+	 * @return whether the resource matches one of the patterns
+	 */
+	public boolean match(IResource resource) {
+		int index = compiled.match(resource.getName());
+		if (index >= 0)
+			return true;
+		return match(index == MultiPatternMatcher.NOT_COMPILED ? matchers : uncompiled, resource);
+	}
+
+	private static boolean match(StringMatcher[] matchers, IResource resource) {
+		for (int i = 0; i < matchers.length; i++) {
+			String resourceName = resource.getName();
+			if(matchers[i].isPathPattern()) {
+				resourceName = resource.getFullPath().toString();
+			}
+			if (matchers[i].match(resourceName)) return true;
+		}
+		return false;
+	}
+}
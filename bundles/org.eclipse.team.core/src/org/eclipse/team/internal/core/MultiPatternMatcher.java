@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.core;
+
+import java.util.*;
+
+/**
+ * Matches names against a set of simple patterns at once. A pattern may
+ * contain '*' for zero or more characters and '?' for exactly one character,
+ * like the patterns of a {@link StringMatcher}, and the result of a match is
+ * the index of the first pattern that matches.
+ * <p>
+ * Patterns without wildcards are looked up in a table of names and patterns
+ * of the form <code>*.ext</code> in a table of extensions. The remaining
+ * patterns are compiled into a single automaton that is run once per name.
+ * Only patterns and names made of ASCII characters are compiled. Patterns
+ * that contain escapes, character classes or '/' are not compiled either;
+ * they are returned by {@link #getUncompiledPatterns()} and must be matched
+ * by the client, and so must the names for which {@link #match(String)}
+ * returns {@link #NOT_COMPILED}. For the patterns and names that are
+ * compiled, the result is the same as the one of a {@link StringMatcher}.
+ * </p>
+ * Instances are immutable and may be used by several threads.
+ */
+public class MultiPatternMatcher {
+
+	/**
+	 * Result of {@link #match(String)} for a name that contains characters
+	 * the compiled patterns do not handle.
+	 */
+	public static final int NOT_COMPILED = -2;
+
+	// above this number of states the automaton is simulated instead of being built
+	private static final int MAX_DFA_STATES = 2048;
+
+	private static final int DEAD_STATE = 0;
+	private static final int[] EMPTY = new int[0];
+
+	private final boolean ignoreCase;
+	private final int[] uncompiled;
+
+	// name -> index of the first pattern with that name
+	private final Map names = new HashMap();
+	// extension -> Suffix[] in pattern order
+	private final Map extensions = new HashMap();
+
+	/*
+	 * The automaton. Each pattern has one state per character and a final
+	 * state, so tokens[s] is the character that state s consumes ('*', '?'
+	 * or a literal) and accept[s] the index of the pattern that ends in s
+	 * or -1.
+	 */
+	private char[] tokens;
+	private int[] accept;
+	private int[] initial;
+	// the character class of each ASCII character, 0 for the characters that appear in no pattern
+	private final int[] classes = new int[128];
+	private int classCount = 1;
+	// the deterministic automaton, null if it has too many states
+	private int[] transitions;
+	private int[] dfaAccept;
+
+	private static class Suffix {
+		final String suffix;
+		final int index;
+		Suffix(String suffix, int index) {
+			this.suffix = suffix;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Compile the given patterns.
+	 * @param patterns the patterns, <code>null</code> entries are skipped
+	 * and reported as not compiled
+	 * @param ignoreCase whether the case of characters is ignored
+	 */
+	public MultiPatternMatcher(String[] patterns, boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+		List uncompiledList = new ArrayList();
+		List wildcards = new ArrayList();
+		List wildcardIndexes = new ArrayList();
+		Map suffixes = new HashMap();
+		for (int i = 0; i < patterns.length; i++) {
+			String pattern = patterns[i];
+			if (pattern == null || !isCompilable(pattern)) {
+				uncompiledList.add(new Integer(i));
+				continue;
+			}
+			int star = pattern.indexOf('*');
+			if (star == -1 && pattern.indexOf('?') == -1) {
+				String key = fold(pattern);
+				if (!names.containsKey(key))
+					names.put(key, new Integer(i));
+				continue;
+			}
+			String rest = pattern.substring(1);
+			if (star == 0 && rest.indexOf('*') == -1 && rest.indexOf('?') == -1 && rest.indexOf('.') != -1) {
+				String key = fold(rest.substring(rest.lastIndexOf('.') + 1));
+				List list = (List) suffixes.get(key);
+				if (list == null) {
+					list = new ArrayList();
+					suffixes.put(key, list);
+				}
+				list.add(new Suffix(rest, i));
+				continue;
+			}
+			wildcards.add(collapseStars(pattern));
+			wildcardIndexes.add(new Integer(i));
+		}
+		for (Iterator iter = suffixes.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			List list = (List) entry.getValue();
+			extensions.put(entry.getKey(), list.toArray(new Suffix[list.size()]));
+		}
+		uncompiled = new int[uncompiledList.size()];
+		for (int i = 0; i < uncompiled.length; i++) {
+			uncompiled[i] = ((Integer) uncompiledList.get(i)).intValue();
+		}
+		if (!wildcards.isEmpty())
+			compile(wildcards, wildcardIndexes);
+	}
+
+	/**
+	 * Return the indexes of the patterns that were not compiled, in
+	 * ascending order.
+	 * @return the indexes of the patterns that were not compiled
+	 */
+	public int[] getUncompiledPatterns() {
+		return uncompiled;
+	}
+
+	/**
+	 * Return the index of the first compiled pattern that matches the given
+	 * name.
+	 * @param name the name to match
+	 * @return the index of the first compiled pattern that matches, -1 if no
+	 * compiled pattern matches or {@link #NOT_COMPILED} if the name cannot be
+	 * matched against the compiled patterns
+	 */
+	public int match(String name) {
+		int length = name.length();
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) >= 128)
+				return NOT_COMPILED;
+		}
+		int result = -1;
+		if (!names.isEmpty()) {
+			Integer index = (Integer) names.get(fold(name));
+			if (index != null)
+				result = index.intValue();
+		}
+		if (!extensions.isEmpty()) {
+			int dot = name.lastIndexOf('.');
+			if (dot != -1) {
+				Suffix[] candidates = (Suffix[]) extensions.get(fold(name.substring(dot + 1)));
+				if (candidates != null) {
+					for (int i = 0; i < candidates.length && (result == -1 || candidates[i].index < result); i++) {
+						String suffix = candidates[i].suffix;
+						if (name.regionMatches(ignoreCase, length - suffix.length(), suffix, 0, suffix.length())) {
+							result = candidates[i].index;
+							break;
+						}
+					}
+				}
+			}
+		}
+		if (tokens != null) {
+			int index = transitions == null ? simulate(name) : run(name);
+			if (index != -1 && (result == -1 || index < result))
+				result = index;
+		}
+		return result;
+	}
+
+	/*
+	 * Return whether the pattern has the same meaning for the automaton as
+	 * for a StringMatcher
+	 */
+	private static boolean isCompilable(String pattern) {
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == 0 || c >= 128 || c == '\\' || c == '[' || c == '/')
+				return false;
+		}
+		return true;
+	}
+
+	private static String collapseStars(String pattern) {
+		StringBuffer buffer = new StringBuffer(pattern.length());
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c != '*' || buffer.length() == 0 || buffer.charAt(buffer.length() - 1) != '*')
+				buffer.append(c);
+		}
+		return buffer.toString();
+	}
+
+	private String fold(String string) {
+		return ignoreCase ? string.toLowerCase(Locale.ENGLISH) : string;
+	}
+
+	private char fold(char c) {
+		return ignoreCase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	private void compile(List patterns, List indexes) {
+		int stateCount = 0;
+		for (Iterator iter = patterns.iterator(); iter.hasNext();) {
+			stateCount += ((String) iter.next()).length() + 1;
+		}
+		tokens = new char[stateCount];
+		accept = new int[stateCount];
+		initial = new int[patterns.size()];
+		int state = 0;
+		for (int i = 0; i < patterns.size(); i++) {
+			String pattern = (String) patterns.get(i);
+			initial[i] = state;
+			for (int j = 0; j < pattern.length(); j++) {
+				char c = fold(pattern.charAt(j));
+				if (c != '*' && c != '?' && classes[c] == 0) {
+					classes[c] = classCount++;
+					if (ignoreCase && c >= 'a' && c <= 'z')
+						classes[c - ('a' - 'A')] = classes[c];
+				}
+				tokens[state] = c;
+				accept[state++] = -1;
+			}
+			accept[state++] = ((Integer) indexes.get(i)).intValue();
+		}
+		buildDFA();
+	}
+
+	/*
+	 * Build the deterministic automaton from the sets of states that are
+	 * reachable from the initial states.
+	 */
+	private void buildDFA() {
+		Map ids = new HashMap();
+		List sets = new ArrayList();
+		sets.add(EMPTY);
+		ids.put(key(EMPTY), new Integer(DEAD_STATE));
+		sets.add(closure(initial));
+		ids.put(key((int[]) sets.get(1)), new Integer(1));
+		int[] table = new int[16 * classCount];
+		for (int id = 1; id < sets.size(); id++) {
+			int[] set = (int[]) sets.get(id);
+			for (int c = 0; c < classCount; c++) {
+				int[] next = step(set, c);
+				String key = key(next);
+				Integer nextId = (Integer) ids.get(key);
+				if (nextId == null) {
+					if (sets.size() == MAX_DFA_STATES)
+						return;
+					nextId = new Integer(sets.size());
+					ids.put(key, nextId);
+					sets.add(next);
+				}
+				int slot = id * classCount + c;
+				if (slot >= table.length) {
+					int[] newTable = new int[table.length * 2];
+					System.arraycopy(table, 0, newTable, 0, table.length);
+					table = newTable;
+				}
+				table[slot] = nextId.intValue();
+			}
+		}
+		dfaAccept = new int[sets.size()];
+		for (int id = 0; id < sets.size(); id++) {
+			dfaAccept[id] = acceptOf((int[]) sets.get(id));
+		}
+		transitions = table;
+	}
+
+	private int run(String name) {
+		int state = 1;
+		for (int i = 0; i < name.length() && state != DEAD_STATE; i++) {
+			state = transitions[state * classCount + classes[name.charAt(i)]];
+		}
+		return dfaAccept[state];
+	}
+
+	private int simulate(String name) {
+		int[] set = closure(initial);
+		for (int i = 0; i < name.length() && set.length > 0; i++) {
+			set = step(set, classes[name.charAt(i)]);
+		}
+		return acceptOf(set);
+	}
+
+	/*
+	 * Return the sorted set of states that follow the given states on a
+	 * character of the given class
+	 */
+	private int[] step(int[] set, int characterClass) {
+		int[] next = new int[set.length * 2];
+		int count = 0;
+		for (int i = 0; i < set.length; i++) {
+			int state = set[i];
+			if (accept[state] != -1)
+				continue;
+			char token = tokens[state];
+			if (token == '*') {
+				next[count++] = state;
+				next[count++] = state + 1;
+			} else if (token == '?' || classes[token] == characterClass) {
+				next[count++] = state + 1;
+				// a star also matches no character
+				if (accept[state + 1] == -1 && tokens[state + 1] == '*')
+					next[count++] = state + 2;
+			}
+		}
+		return sort(next, count);
+	}
+
+	/*
+	 * Add the states that follow stars, which also match no character
+	 */
+	private int[] closure(int[] states) {
+		int[] set = new int[states.length * 2];
+		int count = 0;
+		for (int i = 0; i < states.length; i++) {
+			int state = states[i];
+			set[count++] = state;
+			if (accept[state] == -1 && tokens[state] == '*')
+				set[count++] = state + 1;
+		}
+		return sort(set, count);
+	}
+
+	private static int[] sort(int[] states, int count) {
+		Arrays.sort(states, 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || states[unique - 1] != states[i])
+				states[unique++] = states[i];
+		}
+		int[] result = new int[unique];
+		System.arraycopy(states, 0, result, 0, unique);
+		return result;
+	}
+
+	private int acceptOf(int[] set) {
+		int result = -1;
+		for (int i = 0; i < set.length; i++) {
+			int index = accept[set[i]];
+			if (index != -1 && (result == -1 || index < result))
+				result = index;
+		}
+		return result;
+	}
+
+	private static String key(int[] set) {
+		StringBuffer buffer = new StringBuffer(set.length * 4);
+		for (int i = 0; i < set.length; i++) {
+			buffer.append(set[i]).append(',');
+		}
+		return buffer.toString();
+	}
+}
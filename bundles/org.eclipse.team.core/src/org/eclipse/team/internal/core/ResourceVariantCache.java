@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,10 +10,12 @@
  *******************************************************************************/
 package org.eclipse.team.internal.core;
 
-import java.io.File;
+import java.io.*;
 import java.util.*;
 
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.jobs.ILock;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.osgi.util.NLS;
@@ -21,30 +23,80 @@ import org.eclipse.team.core.TeamException;
 import org.eclipse.team.core.variants.CachedResourceVariant;
 
 /**
- * This class implements a caching facility that can be used by TeamProviders to cache contents
+ * This class implements a caching facility that can be used by TeamProviders to cache contents.
+ * <p>
+ * The contents are stored in files named by the SHA-1 hash of the contents, so identical
+ * contents of different resource variants are only stored once. An index that maps the
+ * id of each resource variant to the hash of its contents is persisted when the cache
+ * is shut down or cleaned up periodically and loaded lazily on the first access after a restart. The total size of
+ * the cached contents is limited by the {@link #PREF_CACHE_SIZE} preference. Contents
+ * that have not been accessed for the longest time are removed first when the limit
+ * is exceeded.
+ * </p>
+ * <p>
+ * The entries are kept in a number of segments that are locked independently, and
+ * the writing of contents is serialized by a number of locks that are assigned to the
+ * entries by their id. Contents of different entries are therefore written in parallel
+ * and looking up an entry doesn't wait for unrelated writes. The index is only locked
+ * briefly to register contents once they have been written.
+ * </p>
  */
 public class ResourceVariantCache {
-	
+
+	/**
+	 * Preference of the Team core plug-in that holds the maximum number of
+	 * bytes that may be used by the contents of each cache.
+	 */
+	public static final String PREF_CACHE_SIZE = "resource_variant_cache_size"; //$NON-NLS-1$
+
+	// Default maximum size of the cached contents, in bytes
+	private static final long DEFAULT_CACHE_SIZE = 256*1024*1024; // 256MB
 	// Directory to cache file contents
 	private static final String CACHE_DIRECTORY = ".cache"; //$NON-NLS-1$
-	// Maximum lifespan of local cache file, in milliseconds
+	// File in the cache directory that holds the index
+	private static final String INDEX_FILE = "index"; //$NON-NLS-1$
+	// Prefix of the files that receive contents while they are written
+	private static final String TEMP_FILE_PREFIX = "tmp"; //$NON-NLS-1$
+	private static final int INDEX_VERSION = 1;
+	// Maximum lifespan of cached handles, in milliseconds
 	private static final long CACHE_FILE_LIFESPAN = 60*60*1000; // 1hr
-	
+	// Number of entry segments and write locks, must be a power of 2
+	private static final int STRIPES = 32;
+
 	// Map of registered caches indexed by local name of a QualifiedName
 	private static Map caches = new HashMap(); // String (local name) > RemoteContentsCache
-	
+
 	private String name;
-	private Map cacheEntries;
+	// Segments of String (id) > ResourceVariantCacheEntry, each segment is guarded by itself
+	private Map[] cacheEntries;
 	private long lastCacheCleanup;
-	private int cacheDirSize;
+	private int tempFileCount;
+	private long maxSize;
+
+	// The persisted index, loaded on first use
+	private Map index; // String (entry id) > String (contents hash)
+	private LinkedHashMap contents; // String (contents hash) > Contents, in least recently used order
+	private long contentsSize;
+	private boolean indexChanged;
+
+	// Locks used to serialize the writing of cache contents of entries with the same stripe
+	private ILock[] locks;
+
+	/*
+	 * Describes a file of cached contents and the ids of the entries that share it.
+	 */
+	private static class Contents {
+		long size;
+		List ids = new ArrayList(1);
+		Contents(long size) {
+			this.size = size;
+		}
+	}
 
-	// Lock used to serialize the writing of cache contents
-	private ILock lock = Job.getJobManager().newLock(); 
-	
 	/**
 	 * Enables the use of remote contents caching for the given cacheId. The cache ID must be unique.
 	 * A good candidate for this ID is the plugin ID of the plugin performing the caching.
-	 * 
+	 *
 	 * @param cacheId the unique Id of the cache being enabled
 	 */
 	public static synchronized void enableCaching(String cacheId) {
@@ -53,22 +105,22 @@ public class ResourceVariantCache {
 		cache.createCacheDirectory();
 		caches.put(cacheId, cache);
 	}
-	
+
 	/**
 	 * Returns whether caching has been enabled for the given Id. A cache should only be enabled once.
 	 * It is conceivable that a cache be persisted over workbench invocations thus leading to a cache that
 	 * is enabled on startup without intervention by the owning plugin.
-	 * 
+	 *
 	 * @param cacheId the unique Id of the cache
 	 * @return true if caching for the given Id is enabled
 	 */
 	public static boolean isCachingEnabled(String cacheId) {
 		return getCache(cacheId) != null;
 	}
-	
+
 	/**
 	 * Disable the cache, disposing of any file contents in the cache.
-	 * 
+	 *
 	 * @param cacheId the unique Id of the cache
 	 */
 	public static void disableCache(String cacheId) {
@@ -80,7 +132,7 @@ public class ResourceVariantCache {
 		caches.remove(cacheId);
 		cache.deleteCacheDirectory();
 	}
-	
+
 	/**
 	 * Return the cache for the given id or null if caching is not enabled for the given id.
 	 * @param cacheId
@@ -89,19 +141,47 @@ public class ResourceVariantCache {
 	public static synchronized ResourceVariantCache getCache(String cacheId) {
 		return (ResourceVariantCache)caches.get(cacheId);
 	}
-	
+
+	/**
+	 * Persist the index of all caches so that their contents can be used after a restart.
+	 * The caches are disabled afterwards but their contents are kept.
+	 */
 	public static synchronized void shutdown() {
 		String[] keys = (String[])caches.keySet().toArray(new String[caches.size()]);
         for (int i = 0; i < keys.length; i++) {
             String id = keys[i];
-			disableCache(id);
+            ResourceVariantCache cache = (ResourceVariantCache)caches.remove(id);
+            cache.saveIndex();
 		}
 	}
-	
+
 	private ResourceVariantCache(String name) {
 		this.name = name;
+		this.maxSize = Platform.getPreferencesService().getLong(TeamPlugin.ID, PREF_CACHE_SIZE, DEFAULT_CACHE_SIZE, null);
+		this.locks = new ILock[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = Job.getJobManager().newLock();
+		}
+	}
+
+	private static int getStripe(String id) {
+		int h = id.hashCode();
+		h ^= (h >>> 16);
+		return h & (STRIPES - 1);
+	}
+
+	/*
+	 * Return the segment that holds the entry with the given id.
+	 */
+	private Map getSegment(String id) {
+		Map[] segments = cacheEntries;
+		if (segments == null) {
+			// This probably means that the cache has been disposed
+			throw new IllegalStateException(NLS.bind(Messages.RemoteContentsCache_cacheDisposed, new String[] { name }));
+		}
+		return segments[getStripe(id)];
 	}
-	
+
 	/**
 	 * Return whether the cache contains an entry for the given id. Register a hit if it does.
 	 * @param id the id of the cache entry
@@ -111,6 +191,17 @@ public class ResourceVariantCache {
 		return internalGetCacheEntry(id) != null;
 	}
 
+	/**
+	 * Return whether the index contains contents for the given id, even if there is
+	 * no entry for the id yet. This is the case for contents that have been cached
+	 * before a restart. Adding an entry for the id makes the contents available.
+	 * @param id the id of the cache entry
+	 * @return true if there are contents cached for the id
+	 */
+	public synchronized boolean hasContents(String id) {
+		return getIndex().containsKey(id);
+	}
+
 	protected IPath getCachePath() {
 		return getStateLocation().append(CACHE_DIRECTORY).append(name);
 	}
@@ -118,61 +209,100 @@ public class ResourceVariantCache {
 	private IPath getStateLocation() {
 		return TeamPlugin.getPlugin().getStateLocation();
 	}
-	
-	private synchronized void clearOldCacheEntries() {
+
+	/*
+	 * Remove the handles that have not been accessed for a while. Their contents
+	 * remain in the cache until the size limit is exceeded, contents that are
+	 * still being written are added to the index once they are complete.
+	 */
+	private void clearOldCacheEntries() {
 		long current = new Date().getTime();
-		if ((lastCacheCleanup!=-1) && (current - lastCacheCleanup < CACHE_FILE_LIFESPAN)) return;
-		List stale = new ArrayList();
-		for (Iterator iter = cacheEntries.values().iterator(); iter.hasNext();) {
-			ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
-			long lastHit = entry.getLastAccessTimeStamp();
-			if ((current - lastHit) > CACHE_FILE_LIFESPAN){
-				stale.add(entry);
-			}
+		synchronized (this) {
+			if ((lastCacheCleanup!=-1) && (current - lastCacheCleanup < CACHE_FILE_LIFESPAN)) return;
+			lastCacheCleanup = current;
 		}
-		for (Iterator iter = stale.iterator(); iter.hasNext();) {
-			ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
-			entry.dispose();
+		Map[] segments = cacheEntries;
+		if (segments == null)
+			return;
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				for (Iterator iter = segments[i].values().iterator(); iter.hasNext();) {
+					ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry) iter.next();
+					long lastHit = entry.getLastAccessTimeStamp();
+					if ((current - lastHit) > CACHE_FILE_LIFESPAN){
+						iter.remove();
+					}
+				}
+			}
 		}
+		saveIndex();
 	}
-	
-	private synchronized void purgeFromCache(String id) {
-		ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry)cacheEntries.get(id);
-		File f = entry.getFile();
-		try {
-			deleteFile(f);
-		} catch (TeamException e) {
-			// Ignore the deletion failure.
-			// A failure only really matters when purging the directory on startup
+
+	private void purgeFromCache(ResourceVariantCacheEntry entry, String id) {
+		Map[] segments = cacheEntries;
+		if (segments == null) {
+			// The cache has been disposed along with its contents
+			return;
+		}
+		Map segment = segments[getStripe(id)];
+		synchronized (segment) {
+			if (segment.get(id) == entry) {
+				segment.remove(id);
+			}
+		}
+		synchronized (this) {
+			if (cacheEntries != null) {
+				releaseContents(id);
+			}
 		}
-		cacheEntries.remove(id);
 	}
-	
-	private synchronized void createCacheDirectory() {
-		IPath cacheLocation = getCachePath();
-		File file = cacheLocation.toFile();
-		if (file.exists()) {
+
+	/*
+	 * Remove the given id from the index and delete its contents if no
+	 * other entry shares them.
+	 */
+	private void releaseContents(String id) {
+		String hash = (String)getIndex().remove(id);
+		if (hash == null)
+			return;
+		indexChanged = true;
+		Contents c = (Contents)contents.get(hash);
+		if (c == null)
+			return;
+		c.ids.remove(id);
+		if (c.ids.isEmpty()) {
+			contents.remove(hash);
+			contentsSize -= c.size;
 			try {
-				deleteFile(file);
+				deleteFile(new File(getCachePath().toFile(), hash));
 			} catch (TeamException e) {
-				// Check to see if were in an acceptable state
-				if (file.exists() && (!file.isDirectory() || file.listFiles().length != 0)) {
-					TeamPlugin.log(e);
-				}
+				// Ignore the deletion failure.
+				// Files that are not in the index are deleted when the index is loaded
 			}
 		}
+	}
+
+	private synchronized void createCacheDirectory() {
+		IPath cacheLocation = getCachePath();
+		File file = cacheLocation.toFile();
 		if (! file.exists() && ! file.mkdirs()) {
-			TeamPlugin.log(new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { file.getAbsolutePath() }))); 
+			TeamPlugin.log(new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { file.getAbsolutePath() })));
+		}
+		cacheEntries = new Map[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			cacheEntries[i] = new HashMap();
 		}
-		cacheEntries = new HashMap();
 		lastCacheCleanup = -1;
-		cacheDirSize = 0;
+		tempFileCount = 0;
 	}
-			
+
 	private synchronized void deleteCacheDirectory() {
 		cacheEntries = null;
 		lastCacheCleanup = -1;
-		cacheDirSize = 0;
+		tempFileCount = 0;
+		index = null;
+		contents = null;
+		contentsSize = 0;
 		IPath cacheLocation = getCachePath();
 		File file = cacheLocation.toFile();
 		if (file.exists()) {
@@ -184,7 +314,7 @@ public class ResourceVariantCache {
 			}
 		}
 	}
-	
+
 	private void deleteFile(File file) throws TeamException {
 		if (file.isDirectory()) {
 			File[] children = file.listFiles();
@@ -193,7 +323,124 @@ public class ResourceVariantCache {
 			}
 		}
 		if (! file.delete()) {
-			throw new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { file.getAbsolutePath() })); 
+			throw new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { file.getAbsolutePath() }));
+		}
+	}
+
+	/*
+	 * Return the index, loading it from disk if this is the first access.
+	 */
+	private Map getIndex() {
+		if (index == null) {
+			if (cacheEntries == null) {
+				// This probably means that the cache has been disposed
+				throw new IllegalStateException(NLS.bind(Messages.RemoteContentsCache_cacheDisposed, new String[] { name }));
+			}
+			loadIndex();
+		}
+		return index;
+	}
+
+	private void loadIndex() {
+		index = new HashMap();
+		contents = new LinkedHashMap(16, 0.75f, true);
+		contentsSize = 0;
+		indexChanged = false;
+		File directory = getCachePath().toFile();
+		File indexFile = new File(directory, INDEX_FILE);
+		if (indexFile.exists()) {
+			try {
+				readIndex(indexFile);
+			} catch (IOException e) {
+				TeamPlugin.log(IStatus.WARNING, NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { indexFile.getAbsolutePath() }), e);
+				index.clear();
+				contents.clear();
+				contentsSize = 0;
+			}
+		}
+		// Delete the files the index doesn't know about, i.e. partially written
+		// contents or the contents of a cache whose index could not be saved
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				String fileName = files[i].getName();
+				if (!fileName.equals(INDEX_FILE) && !contents.containsKey(fileName)) {
+					try {
+						deleteFile(files[i]);
+					} catch (TeamException e) {
+						// Try again on the next start
+					}
+				}
+			}
+		}
+		if (contentsSize > maxSize)
+			trimToSize(false);
+	}
+
+	private void readIndex(File indexFile) throws IOException {
+		File directory = indexFile.getParentFile();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try {
+			if (in.readInt() != INDEX_VERSION)
+				return;
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String hash = in.readUTF();
+				Contents c = new Contents(in.readLong());
+				int ids = in.readInt();
+				for (int j = 0; j < ids; j++) {
+					c.ids.add(in.readUTF());
+				}
+				// Only use contents that are still there
+				File file = new File(directory, hash);
+				if (file.isFile() && file.length() == c.size && !c.ids.isEmpty()) {
+					contents.put(hash, c);
+					contentsSize += c.size;
+					for (Iterator iter = c.ids.iterator(); iter.hasNext();) {
+						index.put(iter.next(), hash);
+					}
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Write the index if it has changed since it was loaded or saved.
+	 */
+	private synchronized void saveIndex() {
+		if (index == null || !indexChanged)
+			return;
+		File directory = getCachePath().toFile();
+		File indexFile = new File(directory, INDEX_FILE);
+		File tempFile = new File(directory, INDEX_FILE + ".new"); //$NON-NLS-1$
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				out.writeInt(INDEX_VERSION);
+				out.writeInt(contents.size());
+				// Write the least recently used contents first to retain the order
+				for (Iterator iter = contents.entrySet().iterator(); iter.hasNext();) {
+					Map.Entry mapEntry = (Map.Entry) iter.next();
+					Contents c = (Contents)mapEntry.getValue();
+					out.writeUTF((String)mapEntry.getKey());
+					out.writeLong(c.size);
+					out.writeInt(c.ids.size());
+					for (Iterator ids = c.ids.iterator(); ids.hasNext();) {
+						out.writeUTF((String)ids.next());
+					}
+				}
+			} finally {
+				out.close();
+			}
+			if ((indexFile.exists() && !indexFile.delete()) || !tempFile.renameTo(indexFile)) {
+				throw new IOException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { indexFile.getAbsolutePath() }));
+			}
+			indexChanged = false;
+		} catch (IOException e) {
+			// The contents will be fetched again after a restart
+			TeamPlugin.log(IStatus.WARNING, NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { indexFile.getAbsolutePath() }), e);
 		}
 	}
 
@@ -203,21 +450,149 @@ public class ResourceVariantCache {
 	 * @param entry
 	 */
 	protected void purgeFromCache(ResourceVariantCacheEntry entry) {
-		purgeFromCache(entry.getId());
+		purgeFromCache(entry, entry.getId());
 	}
 
-	private synchronized ResourceVariantCacheEntry internalGetCacheEntry(String id) {
-		if (cacheEntries == null) {
-			// This probably means that the cache has been disposed
-			throw new IllegalStateException(NLS.bind(Messages.RemoteContentsCache_cacheDisposed, new String[] { name })); 
+	/**
+	 * Return a new file in the cache directory that can receive the contents of an entry.
+	 * @return a file that doesn't exist yet
+	 */
+	protected synchronized File createTempFile() {
+		// Load the index first, loading deletes the files the index doesn't know about
+		getIndex();
+		return new File(getCachePath().toFile(), TEMP_FILE_PREFIX + (tempFileCount++));
+	}
+
+	/**
+	 * Add the contents that have been written to the given temporary file to the cache.
+	 * If the cache already contains the same contents, the temporary file is deleted
+	 * and the existing contents are shared. This method should only be invoked from an
+	 * instance of ResourceVariantCacheEntry.
+	 * @param id the id of the entry the contents belong to
+	 * @param tempFile the file that contains the contents
+	 * @param hash the hash of the contents
+	 * @param size the number of bytes of the contents
+	 * @throws IOException if the contents could not be moved into place
+	 */
+	protected synchronized void contentsCached(String id, File tempFile, String hash, long size) throws IOException {
+		Map idToHash = getIndex();
+		File file = new File(getCachePath().toFile(), hash);
+		if (file.exists() && file.length() == size) {
+			// The contents are already cached for another entry
+			tempFile.delete();
+		} else {
+			file.delete();
+			if (!tempFile.renameTo(file)) {
+				throw new IOException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { file.getAbsolutePath() }));
+			}
+		}
+		if (hash.equals(idToHash.get(id))) {
+			contents.get(hash);
+			return;
+		}
+		releaseContents(id);
+		Contents c = (Contents)contents.get(hash);
+		if (c == null) {
+			c = new Contents(size);
+			contents.put(hash, c);
+			contentsSize += size;
+		}
+		c.ids.add(id);
+		idToHash.put(id, hash);
+		indexChanged = true;
+	}
+
+	/**
+	 * Register an access of the given contents so that they are removed last
+	 * when the cache exceeds its size.
+	 * @param hash the hash of the contents
+	 */
+	protected synchronized void registerHit(String hash) {
+		if (contents != null) {
+			contents.get(hash);
+		}
+	}
+
+	/**
+	 * Remove the least recently used contents until the cache no longer exceeds
+	 * its size. The entries that show the removed contents are disposed. This method
+	 * must not be called while a cache entry lock is held.
+	 */
+	protected void checkSize() {
+		ResourceVariantCacheEntry[] disposed;
+		synchronized (this) {
+			if (contents == null || contentsSize <= maxSize)
+				return;
+			disposed = trimToSize(true);
+		}
+		// Dispose outside of the cache lock, disposal acquires the entry lock first
+		for (int i = 0; i < disposed.length; i++) {
+			disposed[i].dispose();
+		}
+		// The index is saved by the periodic cleanup and on shutdown
+	}
+
+	/*
+	 * Remove the least recently used contents, except the most recently used, until
+	 * the size limit is met. If live entries are considered, contents shown by one of
+	 * the entries are kept until the entries are disposed, the entries are returned.
+	 */
+	private ResourceVariantCacheEntry[] trimToSize(boolean liveEntries) {
+		List disposed = new ArrayList();
+		long size = contentsSize;
+		List removed = new ArrayList();
+		for (Iterator iter = contents.entrySet().iterator(); iter.hasNext() && size > maxSize;) {
+			Map.Entry mapEntry = (Map.Entry) iter.next();
+			if (!iter.hasNext())
+				break;
+			Contents c = (Contents)mapEntry.getValue();
+			size -= c.size;
+			for (Iterator ids = c.ids.iterator(); ids.hasNext();) {
+				String id = (String)ids.next();
+				Object entry = null;
+				if (liveEntries) {
+					Map segment = getSegment(id);
+					synchronized (segment) {
+						entry = segment.get(id);
+					}
+				}
+				if (entry != null) {
+					disposed.add(entry);
+				} else {
+					removed.add(id);
+				}
+			}
+		}
+		for (Iterator iter = removed.iterator(); iter.hasNext();) {
+			releaseContents((String)iter.next());
+		}
+		if (!removed.isEmpty()) {
+			indexChanged = true;
+		}
+		return (ResourceVariantCacheEntry[]) disposed.toArray(new ResourceVariantCacheEntry[disposed.size()]);
+	}
+
+	/**
+	 * Set the maximum number of bytes the cached contents may use. The limit is
+	 * enforced the next time contents are added to the cache.
+	 * @param maxSize the maximum size in bytes
+	 */
+	public synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	private ResourceVariantCacheEntry internalGetCacheEntry(String id) {
+		Map segment = getSegment(id);
+		ResourceVariantCacheEntry entry;
+		synchronized (segment) {
+			entry = (ResourceVariantCacheEntry)segment.get(id);
 		}
-		ResourceVariantCacheEntry entry = (ResourceVariantCacheEntry)cacheEntries.get(id);
 		if (entry != null) {
 			entry.registerHit();
 		}
 		return entry;
 	}
-	
+
 	/**
 	 * @param id the id that uniquely identifies the remote resource that is cached.
 	 * @return the cache entry
@@ -225,25 +600,44 @@ public class ResourceVariantCache {
 	public ResourceVariantCacheEntry getCacheEntry(String id) {
 		return internalGetCacheEntry(id);
 	}
-	
-	public synchronized ResourceVariantCacheEntry add(String id, CachedResourceVariant resource) {
+
+	public ResourceVariantCacheEntry add(String id, CachedResourceVariant resource) {
 		clearOldCacheEntries();
-		String filePath = String.valueOf(cacheDirSize++);
-		ResourceVariantCacheEntry entry = new ResourceVariantCacheEntry(this, lock, id, filePath);
-		entry.setResourceVariant(resource);
-		cacheEntries.put(id, entry);
+		Map segment = getSegment(id);
+		ResourceVariantCacheEntry entry;
+		// Look up the contents and publish the entry under the cache lock so that a
+		// concurrent trim either sees the live entry or the entry starts uninitialized
+		synchronized (this) {
+			// The contents may have been cached by a previous entry or session
+			String hash = (String)getIndex().get(id);
+			if (hash != null) {
+				contents.get(hash);
+			}
+			entry = new ResourceVariantCacheEntry(this, locks[getStripe(id)], id, hash);
+			entry.setResourceVariant(resource);
+			synchronized (segment) {
+				segment.put(id, entry);
+			}
+		}
 		return entry;
 	}
 
 	public String getName() {
 		return name;
 	}
-	
+
 	/*
 	 * Method used for testing only
 	 */
 	public ResourceVariantCacheEntry[] getEntries() {
-		return (ResourceVariantCacheEntry[]) cacheEntries.values().toArray(new ResourceVariantCacheEntry[cacheEntries.size()]);
+		List entries = new ArrayList();
+		Map[] segments = cacheEntries;
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				entries.addAll(segments[i].values());
+			}
+		}
+		return (ResourceVariantCacheEntry[]) entries.toArray(new ResourceVariantCacheEntry[entries.size()]);
 	}
 
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,9 +11,13 @@
 package org.eclipse.team.internal.core;
 
 import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.jobs.ILock;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.team.core.TeamException;
@@ -28,6 +32,9 @@ public class ResourceVariantCacheEntry {
 	public static final int READY = 1;
 	public static final int DISPOSED = 2;
 	
+	private static final String DIGEST_ALGORITHM = "SHA-1"; //$NON-NLS-1$
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+	
 	private String id;
 	private String filePath;
 	private ResourceVariantCache cache;
@@ -36,9 +43,17 @@ public class ResourceVariantCacheEntry {
 	private CachedResourceVariant resourceVariant;
 	private ILock lock;
 
+	/**
+	 * Create an entry of the given cache.
+	 * @param cache the cache
+	 * @param lock the lock that serializes the writing of contents
+	 * @param id the id of the entry
+	 * @param filePath the name of the file that holds the contents if they are
+	 * already cached or <code>null</code> if the contents need to be set
+	 */
 	public ResourceVariantCacheEntry(ResourceVariantCache cache, ILock lock, String id, String filePath) {
 		this.lock = lock;
-		state = UNINITIALIZED;
+		state = filePath != null ? READY : UNINITIALIZED;
 		this.cache = cache;
 		this.id = id;
 		this.filePath = filePath;
@@ -51,6 +66,7 @@ public class ResourceVariantCacheEntry {
 	public InputStream getContents() throws TeamException {
 		if (state != READY) return null;
 		registerHit();
+		cache.registerHit(filePath);
 		File ioFile = getFile();
 		try {
 			try {
@@ -71,25 +87,30 @@ public class ResourceVariantCacheEntry {
 	}
 
 	protected File getFile() {
+		if (filePath == null)
+			return null;
 		return new File(cache.getCachePath().toFile(), filePath);
 	}
 
 	/**
 	 * Set the contents of for this cache entry. This method supports concurrency by only allowing
-	 * one cache entry to be written at a time. In the case of two concurrent writes to the same cache entry,
+	 * one write at a time for the entries that share the lock of this entry; entries with different
+	 * locks are written in parallel. In the case of two concurrent writes to the same cache entry,
 	 * the contents from the first write is used and the content from subsequent writes is ignored.
+	 * If the cache already contains the same contents for another entry, the contents are shared.
 	 * @param stream an InputStream that provides the contents to be cached
 	 * @param monitor a progress monitor
 	 * @throws TeamException if the entry is DISPOSED or an I/O error occurred
 	 */
 	public void setContents(InputStream stream, IProgressMonitor monitor) throws TeamException {
-		// Use a lock to only allow one write at a time
+		// Use a lock to only allow one write at a time for this entry
 		beginOperation();
 		try {
 			internalSetContents(stream, monitor);
 		} finally {
 			endOperation();
 		}
+		cache.checkSize();
 	}
 	
 	private void endOperation() {
@@ -107,14 +128,16 @@ public class ResourceVariantCacheEntry {
 		}
 		// Otherwise, the state is UNINITIALIZED or READY so we can proceed
 		registerHit();
-		File ioFile = getFile();
+		File ioFile = cache.createTempFile();
 		try {
 			
 			// Open the cache file for writing
 			OutputStream out;
+			MessageDigest digest = null;
 			try {
 				if (state == UNINITIALIZED) {
-					out = new BufferedOutputStream(new FileOutputStream(ioFile));
+					digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+					out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(ioFile)), digest);
 				} else {
 					// If the entry is READY, the contents must have been read in another thread.
 					// We still need to red the contents but they can be ignored since presumably they are the same
@@ -122,24 +145,39 @@ public class ResourceVariantCacheEntry {
 				}
 			} catch (FileNotFoundException e) {
 				throw new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { ioFile.getAbsolutePath() }), e); 
+			} catch (NoSuchAlgorithmException e) {
+				throw new TeamException(NLS.bind(Messages.RemoteContentsCache_fileError, new String[] { ioFile.getAbsolutePath() }), e); 
 			}
 			
 			// Transfer the contents
+			long size = 0;
 			try {
 				try {
-					byte[] buffer = new byte[1024];
+					byte[] buffer = new byte[8192];
 					int read;
 					while ((read = stream.read(buffer)) >= 0) {
 						Policy.checkCanceled(monitor);
 						out.write(buffer, 0, read);
+						size += read;
 					}
 				} finally {
 					out.close();
 				}
+				if (digest != null) {
+					// Move the contents to the file named by their hash
+					String hash = toHex(digest.digest());
+					cache.contentsCached(id, ioFile, hash, size);
+					filePath = hash;
+				}
 			} catch (IOException e) {
 				// Make sure we don't leave the cache file around as it may not have the right contents
+				ioFile.delete();
 				cache.purgeFromCache(this);
 				throw e;
+			} catch (OperationCanceledException e) {
+				// The partial contents are not needed, the entry remains uninitialized
+				ioFile.delete();
+				throw e;
 			}
 			
 			// Mark the cache entry as ready
@@ -156,6 +194,15 @@ public class ResourceVariantCacheEntry {
 
 	}
 
+	private static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.team.core.sync.ICacheEntry#getState()
 	 */
@@ -169,7 +216,7 @@ public class ResourceVariantCacheEntry {
 	public long getSize() {
 		if (state != READY) return 0;
 		File ioFile = getFile();
-		if (ioFile.exists()) {
+		if (ioFile != null && ioFile.exists()) {
 			return ioFile.length();
 		}
 		return 0;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -45,6 +45,8 @@ final public class TeamPlugin extends Plugin {
 	
 	// The id of the global ignore extension point
 	public static final String IGNORE_EXTENSION = "ignore"; //$NON-NLS-1$
+	// The preference of the plug-in that holds the customized global ignores
+	public static final String PREF_TEAM_IGNORES = "ignore_files"; //$NON-NLS-1$
 	// The id of the project set extension point
 	public static final String PROJECT_SET_EXTENSION = "projectSets"; //$NON-NLS-1$
 	// The id of the repository extension point
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.core.streams;
+
+import java.util.LinkedList;
+
+import org.eclipse.team.internal.core.Policy;
+
+/**
+ * A pool of daemon threads that perform the blocking reads, writes and closes
+ * of the timeout streams. A thread is only used while an operation is pending,
+ * so streams that are idle do not use a thread at all. Threads that have been
+ * idle for a while terminate.
+ */
+final class StreamPump {
+
+	private static final long KEEP_ALIVE = 30000;
+
+	private static final LinkedList tasks = new LinkedList();
+	private static int idleThreads = 0;
+	private static int threadCount = 0;
+
+	private StreamPump() {
+		// No instances
+	}
+
+	/**
+	 * Runs the given task in one of the threads of the pump. The task may
+	 * block but must not wait for another task.
+	 * @param task the task
+	 */
+	static void execute(Runnable task) {
+		synchronized (tasks) {
+			tasks.addLast(task);
+			if (idleThreads > tasks.size() - 1) {
+				tasks.notify();
+				return;
+			}
+			threadCount++;
+			if (Policy.DEBUG_STREAMS) {
+				System.out.println("StreamPump starting thread " + threadCount); //$NON-NLS-1$
+			}
+		}
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				runThread();
+			}
+		}, "StreamPump"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the number of threads of the pump.
+	 */
+	static int getThreadCount() {
+		synchronized (tasks) {
+			return threadCount;
+		}
+	}
+
+	private static void runThread() {
+		try {
+			for (;;) {
+				Runnable task;
+				synchronized (tasks) {
+					if (tasks.isEmpty()) {
+						idleThreads++;
+						try {
+							tasks.wait(KEEP_ALIVE);
+						} catch (InterruptedException e) {
+							// Check for tasks and quit if there are none
+						} finally {
+							idleThreads--;
+						}
+						if (tasks.isEmpty())
+							return;
+					}
+					task = (Runnable) tasks.removeFirst();
+				}
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// The tasks handle their errors, don't let a bug stop the thread
+					if (Policy.DEBUG_STREAMS) {
+						e.printStackTrace();
+					}
+				}
+			}
+		} finally {
+			synchronized (tasks) {
+				threadCount--;
+			}
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -26,24 +26,43 @@ import org.eclipse.team.internal.core.Policy;
  * generates InterruptedIOExceptions in which case it must also support resuming.
  * Check the bytesTransferred field to determine how much of the operation completed;
  * conversely, at what point to resume.
+ *
+ * The blocking operations on the underlying stream are performed by the threads
+ * of the {@link StreamPump}. The buffer is only filled when it is empty and a
+ * read is waiting for data, so a stream does not use a thread while it is idle.
+ * Streams that grow when full keep reading ahead so that the writer of the
+ * underlying stream never blocks.
  */
 public class TimeoutInputStream extends FilterInputStream {
 	// unsynchronized variables
 	private final long readTimeout; // read() timeout in millis
 	private final long closeTimeout; // close() timeout in millis, or -1
+	private final boolean growWhenFull; // if true, buffer will grow when it is full
 
-	// requests for the thread (synchronized)
+	// requests for the pump (synchronized)
 	private boolean closeRequested = false; // if true, close requested
 
-	// responses from the thread (synchronized)
-	private Thread thread;   // if null, thread has terminated
+	// responses from the pump (synchronized)
+	private boolean reading = false; // if true, a read of the underlying stream is pending
+	private Thread readThread = null; // if non-null, the thread that reads the underlying stream
+	private boolean closed = false;  // if true, the underlying stream has been closed
 	private byte[] iobuffer; // circular buffer
 	private int head = 0;    // points to first unread byte
 	private int length = 0;  // number of remaining unread bytes
 	private IOException ioe = null; // if non-null, contains a pending exception
-	private boolean waitingForClose = false; // if true, thread is waiting for close()
-	
-	private boolean growWhenFull = false; // if true, buffer will grow when it is full
+	private boolean eof = false; // if true, EOF or an error was encountered
+
+	private final Runnable readTask = new Runnable() {
+		public void run() {
+			readUntilDone();
+		}
+	};
+
+	private final Runnable closeTask = new Runnable() {
+		public void run() {
+			closeUnderlyingStream();
+		}
+	};
 
 	/**
 	 * Creates a timeout wrapper for an input stream.
@@ -56,22 +75,18 @@ public class TimeoutInputStream extends FilterInputStream {
 	 *        an InterruptedIOException; 0 blocks indefinitely, -1 closes the stream in the background
 	 */
 	public TimeoutInputStream(InputStream in, int bufferSize, long readTimeout, long closeTimeout) {
+		this(in, bufferSize, readTimeout, closeTimeout, false);
+	}
+
+	public TimeoutInputStream(InputStream in, int bufferSize, long readTimeout, long closeTimeout, boolean growWhenFull) {
 		super(in);
 		this.readTimeout = readTimeout;
 		this.closeTimeout = closeTimeout;
 		this.iobuffer = new byte[bufferSize];
-		thread = new Thread(new Runnable() {
-			public void run() {
-				runThread();
-			}
-		}, "TimeoutInputStream");//$NON-NLS-1$
-		thread.setDaemon(true);
-		thread.start();
-	}
-	
-	public TimeoutInputStream(InputStream in, int bufferSize, long readTimeout, long closeTimeout, boolean growWhenFull) {
-		this(in, bufferSize, readTimeout, closeTimeout);
 		this.growWhenFull = growWhenFull;
+		if (growWhenFull) {
+			requestRead();
+		}
 	}
 
 	/**
@@ -83,27 +98,24 @@ public class TimeoutInputStream extends FilterInputStream {
 	 * @throws InterruptedIOException if the timeout expired
 	 * @throws IOException if an i/o error occurs
 	 */
-	public void close() throws IOException {
-		Thread oldThread;
-		synchronized (this) {
-			if (thread == null) return;
-			oldThread = thread;
+	public synchronized void close() throws IOException {
+		if (closed) return;
+		if (! closeRequested) {
 			closeRequested = true;
-			thread.interrupt();
-			checkError();
+			// a pending read closes the stream when it returns
+			if (readThread != null) readThread.interrupt();
+			if (! reading) StreamPump.execute(closeTask);
 		}
+		checkError();
 		if (closeTimeout == -1) return;
-		try {
-			oldThread.join(closeTimeout);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
-		}
-		synchronized (this) {
-			checkError();
-			if (thread != null) throw new InterruptedIOException();
+		long deadline = getDeadline(closeTimeout);
+		while (! closed && waitUntil(deadline)) {
+			// wait for the pump to close the stream
 		}
+		checkError();
+		if (! closed) throw new InterruptedIOException();
 	}
-	
+
 	/**
 	 * Returns the number of unread bytes in the buffer.
 	 * @throws IOException if an i/o error occurs
@@ -112,7 +124,7 @@ public class TimeoutInputStream extends FilterInputStream {
 		if (length == 0) checkError();
 		return length > 0 ? length : 0;
 	}
-	
+
 	/**
 	 * Reads a byte from the stream.
 	 * @throws InterruptedIOException if the timeout expired and no data was received,
@@ -124,10 +136,10 @@ public class TimeoutInputStream extends FilterInputStream {
 		int b = iobuffer[head++] & 255;
 		if (head == iobuffer.length) head = 0;
 		length--;
-		notify();
+		notifyAll();
 		return b;
 	}
-	
+
 	/**
 	 * Reads multiple bytes from the stream.
 	 * @throws InterruptedIOException if the timeout expired and no data was received,
@@ -136,15 +148,14 @@ public class TimeoutInputStream extends FilterInputStream {
 	 */
 	public synchronized int read(byte[] buffer, int off, int len) throws IOException {
 		if (! syncFill()) return -1; // EOF reached
-		int pos = off;
 		if (len > length) len = length;
-		while (len-- > 0) {
-			buffer[pos++] = iobuffer[head++];
-			if (head == iobuffer.length) head = 0;
-			length--;
-		}
-		notify();
-		return pos - off;
+		int count = Math.min(len, iobuffer.length - head);
+		System.arraycopy(iobuffer, head, buffer, off, count);
+		System.arraycopy(iobuffer, 0, buffer, off + count, len - count);
+		head = (head + len) % iobuffer.length;
+		length -= len;
+		notifyAll();
+		return len;
 	}
 
 	/**
@@ -167,7 +178,7 @@ public class TimeoutInputStream extends FilterInputStream {
 			e.bytesTransferred = (int) amount; // assumes amount < Integer.MAX_INT
 			throw e;
 		}
-		notify();
+		notifyAll();
 		return amount;
 	}
 
@@ -186,16 +197,15 @@ public class TimeoutInputStream extends FilterInputStream {
 	private boolean syncFill() throws IOException {
 		if (length != 0) return true;
 		checkError(); // check errors only after we have read all remaining bytes
-		if (waitingForClose) return false;
-		notify();
-		try {
-			wait(readTimeout);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+		if (eof) return false;
+		requestRead();
+		long deadline = getDeadline(readTimeout);
+		while (reading && length == 0 && waitUntil(deadline)) {
+			// wait for the pump to read from the underlying stream
 		}
 		if (length != 0) return true;
 		checkError(); // check errors only after we have read all remaining bytes
-		if (waitingForClose) return false;
+		if (eof) return false;
 		throw new InterruptedIOException();
 	}
 
@@ -209,98 +219,129 @@ public class TimeoutInputStream extends FilterInputStream {
 			throw e;
 		}
 	}
-	
+
+	/**
+	 * Returns the time at which a wait of the given number of milliseconds
+	 * expires, or 0 if the wait does not expire.
+	 */
+	private static long getDeadline(long timeout) {
+		return timeout == 0 ? 0 : System.currentTimeMillis() + timeout;
+	}
+
 	/**
-	 * Runs the thread in the background.
+	 * Waits until notified or until the deadline passed.
+	 * @return false if the deadline passed or the wait was interrupted
 	 */
-	private void runThread() {
+	private boolean waitUntil(long deadline) {
+		long timeout = 0;
+		if (deadline != 0) {
+			timeout = deadline - System.currentTimeMillis();
+			if (timeout <= 0) return false;
+		}
 		try {
-			readUntilDone();
-		} catch (IOException e) {
-			synchronized (this) { ioe = e; }
-		} finally {
-			waitUntilClosed();
-			try {
-				in.close();
-			} catch (IOException e) {
-				synchronized (this) { ioe = e; } 
-			} finally {
-				synchronized (this) {
-					thread = null;
-					notify();
-				}
-			}
+			wait(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+			return false;
 		}
+		return true;
 	}
-	
+
 	/**
-	 * Waits until we have been requested to close the stream.
+	 * Starts a read of the underlying stream unless one is pending.
 	 */
-	private synchronized void waitUntilClosed() {
-		waitingForClose = true;
-		notify();
-		while (! closeRequested) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				closeRequested = true; // alternate quit signal
-			}
-		}
+	private synchronized void requestRead() {
+		if (reading || eof || closeRequested) return;
+		reading = true;
+		StreamPump.execute(readTask);
 	}
 
 	/**
-	 * Reads bytes into the buffer until EOF, closed, or error.
+	 * Reads bytes into the buffer. Runs in the pump and reads once, or until
+	 * EOF, closed, or error if the buffer grows when full.
 	 */
-	private void readUntilDone() throws IOException {
+	private void readUntilDone() {
 		for (;;) {
 			int off, len;
 			synchronized (this) {
-				while (isBufferFull()) {
-					if (closeRequested) return; // quit signal
+				while (isBufferFull() && ! closeRequested) {
 					waitForRead();
 				}
+				if (closeRequested) {
+					reading = false;
+					break;
+				}
 				off = (head + length) % iobuffer.length;
 				len = ((head > off) ? head : iobuffer.length) - off;
+				readThread = Thread.currentThread();
 			}
 			int count;
 			try {
 				// the i/o operation might block without releasing the lock,
 				// so we do this outside of the synchronized block
 				count = in.read(iobuffer, off, len);
-				if (count == -1) return; // EOF encountered
 			} catch (InterruptedIOException e) {
 				count = e.bytesTransferred; // keep partial transfer
+			} catch (IOException e) {
+				synchronized (this) { ioe = e; }
+				count = -1;
+			}
+			synchronized (this) {
+				readThread = null;
+				Thread.interrupted(); // don't pass an interrupt by close() on to the next task
+				if (count == -1) {
+					eof = true; // EOF encountered
+				} else {
+					length += count;
+				}
+				notifyAll();
+				if (eof || closeRequested || ! growWhenFull) {
+					// clear the flag together with the update so that
+					// a reader that finds the buffer empty requests another read
+					reading = false;
+					if (! closeRequested) return;
+					break;
+				}
 			}
+		}
+		closeUnderlyingStream();
+	}
+
+	/**
+	 * Closes the underlying stream. Runs in the pump.
+	 */
+	private void closeUnderlyingStream() {
+		try {
+			in.close();
+		} catch (IOException e) {
+			synchronized (this) { ioe = e; }
+		} finally {
 			synchronized (this) {
-				length += count;
-				notify();
+				closed = true;
+				notifyAll();
 			}
-		}				
+		}
 	}
-	
+
 	/*
 	 * Wait for a read when the buffer is full (with the implication
-	 * that space will become available in the buffer after the read 
-	 * takes place).
+	 * that space will become available in the buffer after the read
+	 * takes place). Only streams that grow when full read into a full buffer.
 	 */
-	private synchronized void waitForRead() {
+	private void waitForRead() {
 		try {
-			if (growWhenFull) {
-				// wait a second before growing to let reads catch up
-				wait(readTimeout);
-			} else {
-				wait();
-			}
+			// wait before growing to let reads catch up
+			wait(readTimeout);
 		} catch (InterruptedException e) {
 			closeRequested = true; // alternate quit signal
 		}
 		// If the buffer is still full, give it a chance to grow
-		if (growWhenFull && isBufferFull()) {
+		if (isBufferFull()) {
 			growBuffer();
 		}
 	}
 
-	private synchronized void growBuffer() {
+	private void growBuffer() {
 		int newSize = 2 * iobuffer.length;
 		if (newSize > iobuffer.length) {
 			if (Policy.DEBUG_STREAMS) {
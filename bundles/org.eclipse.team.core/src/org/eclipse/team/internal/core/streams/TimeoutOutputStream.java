@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,24 +28,36 @@ import org.eclipse.team.internal.core.Messages;
  * generates InterruptedIOExceptions in which case it must also support resuming.
  * Check the bytesTransferred field to determine how much of the operation completed;
  * conversely, at what point to resume.
+ *
+ * The blocking operations on the underlying stream are performed by the threads
+ * of the {@link StreamPump}. The buffer is only written when it is full, flushed
+ * or closed, so a stream does not use a thread while it is idle.
  */
 public class TimeoutOutputStream extends FilterOutputStream {
 	// unsynchronized variables
 	private final long writeTimeout; // write() timeout in millis
 	private final long closeTimeout; // close() timeout in millis, or -1
 
-	// requests for the thread (synchronized)
+	// requests for the pump (synchronized)
 	private byte[] iobuffer; // circular buffer
 	private int head = 0; // points to first unwritten byte
 	private int length = 0; // number of remaining unwritten bytes
 	private boolean closeRequested = false; // if true, close requested
 	private boolean flushRequested = false; // if true, flush requested
 
-	// responses from the thread (synchronized)
-	private Thread thread;
-	private boolean waitingForClose = false; // if true, the thread is waiting for close()
+	// responses from the pump (synchronized)
+	private boolean writing = false; // if true, the pump is writing the buffer
+	private Thread writeThread = null; // if non-null, the thread that writes the underlying stream
+	private boolean closed = false; // if true, the underlying stream has been closed
+	private boolean failed = false; // if true, writing failed and the buffer will not be written
 	private IOException ioe = null;
 
+	private final Runnable writeTask = new Runnable() {
+		public void run() {
+			writeUntilDone();
+		}
+	};
+
 	/**
 	 * Creates a timeout wrapper for an output stream.
 	 * @param out the underlying input stream
@@ -61,13 +73,6 @@ public class TimeoutOutputStream extends FilterOutputStream {
 		this.writeTimeout = writeTimeout;
 		this.closeTimeout = closeTimeout;
 		this.iobuffer = new byte[bufferSize];
-		thread = new Thread(new Runnable() {
-			public void run() {
-				runThread();
-			}
-		}, "TimeoutOutputStream");//$NON-NLS-1$
-		thread.setDaemon(true);
-		thread.start();
 	}
 
 	/**
@@ -80,25 +85,22 @@ public class TimeoutOutputStream extends FilterOutputStream {
 	 *         reflect the number of bytes flushed from the buffer
 	 * @throws IOException if an i/o error occurs
 	 */
-	public void close() throws IOException {
-		Thread oldThread;
-		synchronized (this) {
-			if (thread == null) return;
-			oldThread = thread;
+	public synchronized void close() throws IOException {
+		if (closed) return;
+		if (! closeRequested) {
 			closeRequested = true;
-			thread.interrupt();
-			checkError();
+			// the pump writes the remaining bytes before closing
+			if (writeThread != null) writeThread.interrupt();
+			requestWrite();
 		}
+		checkError();
 		if (closeTimeout == -1) return;
-		try {
-			oldThread.join(closeTimeout);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
-		}
-		synchronized (this) {
-			checkError();
-			if (thread != null) throw new InterruptedIOException();
+		long deadline = getDeadline(closeTimeout);
+		while (! closed && waitUntil(deadline)) {
+			// wait for the pump to close the stream
 		}
+		checkError();
+		if (! closed) throw new InterruptedIOException();
 	}
 
 	/**
@@ -111,9 +113,8 @@ public class TimeoutOutputStream extends FilterOutputStream {
 		syncCommit(true);
 		iobuffer[(head + length) % iobuffer.length] = (byte) b;
 		length++;
-		notify();
 	}
-	
+
 	/**
 	 * Writes multiple bytes to the stream.
 	 * @throws InterruptedIOException if the timeout expired, bytesTransferred will
@@ -126,16 +127,17 @@ public class TimeoutOutputStream extends FilterOutputStream {
 			do {
 				syncCommit(true);
 				while (amount < len && length != iobuffer.length) {
-					iobuffer[(head + length) % iobuffer.length] = buffer[off++];
-					length++;
-					amount++;
+					int pos = (head + length) % iobuffer.length;
+					int count = Math.min(len - amount, ((head > pos) ? head : iobuffer.length) - pos);
+					System.arraycopy(buffer, off + amount, iobuffer, pos, count);
+					length += count;
+					amount += count;
 				}
 			} while (amount < len);
 		} catch (InterruptedIOException e) {
 			e.bytesTransferred = amount;
 			throw e;
 		}
-		notify();
 	}
 
 	/**
@@ -147,15 +149,15 @@ public class TimeoutOutputStream extends FilterOutputStream {
 	public synchronized void flush() throws IOException {
 		int oldLength = length;
 		flushRequested = true;
+		if (! closeRequested) requestWrite();
 		try {
 			syncCommit(false);
 		} catch (InterruptedIOException e) {
 			e.bytesTransferred = oldLength - length;
 			throw e;
 		}
-		notify();
 	}
-	
+
 	/**
 	 * Waits for the buffer to drain if it is full.
 	 * @param partial if true, waits until the buffer is partially empty, else drains it entirely
@@ -164,12 +166,11 @@ public class TimeoutOutputStream extends FilterOutputStream {
 	private void syncCommit(boolean partial) throws IOException {
 		checkError(); // check errors before allowing the addition of new bytes
 		if (partial && length != iobuffer.length || length == 0) return;
-		if (waitingForClose) throw new IOException(Messages.TimeoutOutputStream_cannotWriteToStream); 
-		notify();
-		try {
-			wait(writeTimeout);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+		if (failed || closeRequested) throw new IOException(Messages.TimeoutOutputStream_cannotWriteToStream);
+		requestWrite();
+		long deadline = getDeadline(writeTimeout);
+		while (writing && (partial ? length == iobuffer.length : length != 0) && waitUntil(deadline)) {
+			// wait for the pump to write to the underlying stream
 		}
 		checkError(); // check errors before allowing the addition of new bytes
 		if (partial && length != iobuffer.length || length == 0) return;
@@ -188,102 +189,113 @@ public class TimeoutOutputStream extends FilterOutputStream {
 	}
 
 	/**
-	 * Runs the thread in the background.
+	 * Returns the time at which a wait of the given number of milliseconds
+	 * expires, or 0 if the wait does not expire.
 	 */
-	private void runThread() {
+	private static long getDeadline(long timeout) {
+		return timeout == 0 ? 0 : System.currentTimeMillis() + timeout;
+	}
+
+	/**
+	 * Waits until notified or until the deadline passed.
+	 * @return false if the deadline passed or the wait was interrupted
+	 */
+	private boolean waitUntil(long deadline) {
+		long timeout = 0;
+		if (deadline != 0) {
+			timeout = deadline - System.currentTimeMillis();
+			if (timeout <= 0) return false;
+		}
 		try {
-			writeUntilDone();
-		} catch (IOException e) {
-			synchronized (this) { ioe = e; }
-		} finally {
-			waitUntilClosed();
-			try {
-				out.close();
-			} catch (IOException e) {
-				synchronized (this) { ioe = e; } 
-			} finally {
-				synchronized (this) {
-					thread = null;
-					notify();
-				}
-			}
+			wait(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // we weren't expecting to be interrupted
+			return false;
 		}
+		return true;
 	}
 
 	/**
-	 * Waits until we have been requested to close the stream.
+	 * Starts writing the buffer unless the pump is already writing it.
 	 */
-	private synchronized void waitUntilClosed() {
-		waitingForClose = true;
-		notify();
-		while (! closeRequested) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				closeRequested = true; // alternate quit signal
-			}
-		}
+	private void requestWrite() {
+		if (writing) return;
+		writing = true;
+		StreamPump.execute(writeTask);
 	}
 
 	/**
-	 * Writes bytes from the buffer until closed and buffer is empty
+	 * Writes bytes from the buffer until it is empty and no flush is pending,
+	 * then closes the stream if requested. Runs in the pump.
 	 */
-	private void writeUntilDone() throws IOException {
-		int bytesUntilFlush = -1; // if > 0, then we will flush after that many bytes have been written
+	private void writeUntilDone() {
 		for (;;) {
 			int off, len;
+			boolean flush;
 			synchronized (this) {
-				for (;;) {
-					if (closeRequested && length == 0) return; // quit signal
-					if (length != 0 || flushRequested) break;
-					try {
-						wait();
-					} catch (InterruptedException e) {
-						closeRequested = true; // alternate quit signal
-					}
+				if (failed || length == 0 && ! flushRequested) {
+					writing = false;
+					notifyAll();
+					if (! closeRequested) return;
+					break;
 				}
 				off = head;
 				len = iobuffer.length - head;
 				if (len > length) len = length;
-				if (flushRequested && bytesUntilFlush < 0) {
-					flushRequested = false;
-					bytesUntilFlush = length;
-				}
+				// flush once all remaining bytes from the buffer are written
+				flush = flushRequested && len == length;
+				if (flush) flushRequested = false;
+				writeThread = Thread.currentThread();
 			}
-			
-			// If there are bytes to be written, write them
-			if (len != 0) {
-				// write out all remaining bytes from the buffer before flushing
-				try {
-					// the i/o operation might block without releasing the lock,
-					// so we do this outside of the synchronized block
-					out.write(iobuffer, off, len);
-				} catch (InterruptedIOException e) {
-					len = e.bytesTransferred;
+
+			try {
+				// the i/o operation might block without releasing the lock,
+				// so we do this outside of the synchronized block
+				if (len != 0) {
+					try {
+						out.write(iobuffer, off, len);
+					} catch (InterruptedIOException e) {
+						len = e.bytesTransferred;
+						if (flush) {
+							// write the rest of the bytes before flushing
+							flush = false;
+							synchronized (this) { flushRequested = true; }
+						}
+					}
 				}
-			}
-			
-			// If there was a pending flush, do it
-			if (bytesUntilFlush >= 0) {
-				bytesUntilFlush -= len;
-				if (bytesUntilFlush <= 0) {
-					// flush the buffer now
+				if (flush) {
 					try {
 						out.flush();
 					} catch (InterruptedIOException e) {
 					}
-					bytesUntilFlush = -1; // might have been 0
 				}
-			}
-			
-			// If bytes were written, update the circular buffer
-			if (len != 0) {
+			} catch (IOException e) {
 				synchronized (this) {
+					ioe = e;
+					failed = true;
+				}
+				len = 0;
+			}
+			synchronized (this) {
+				writeThread = null;
+				Thread.interrupted(); // don't pass an interrupt by close() on to the next task
+				// If bytes were written, update the circular buffer
+				if (len != 0) {
 					head = (head + len) % iobuffer.length;
 					length -= len;
-					notify();
+					notifyAll();
 				}
 			}
 		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			synchronized (this) { ioe = e; }
+		} finally {
+			synchronized (this) {
+				closed = true;
+				notifyAll();
+			}
+		}
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2011 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -99,6 +99,8 @@ public class CVSMessages extends NLS {
 	public static String RemoteFolderTreeBuilder_receivingDelta;
 	public static String RemoteFolderTreeBuilder_receivingRevision;
 	public static String RemoteFolderTreeBuilder_missingParent;
+	public static String FileContentCachingService_fetchJob;
+	public static String SessionPool_closeIdleConnections;
 	public static String RemoteFolderTreeBuild_folderDeletedFromServer;
 
 	public static String Session_badInt;
@@ -204,6 +206,7 @@ public class CVSMessages extends NLS {
 	public static String EclipseSynchronizer_ErrorSettingIgnorePattern;
 	public static String EclipseSynchronizer_ErrorCommitting;
 	public static String EclipseSynchronizer_folderSyncInfoMissing;
+	public static String EclipseSynchronizer_readingSyncInfo;
 	public static String SyncFileChangeListener_errorSettingTeamPrivateFlag;
 
 	public static String RemoteFile_getContents;
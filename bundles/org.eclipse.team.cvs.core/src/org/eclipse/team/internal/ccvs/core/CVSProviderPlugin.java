@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,6 +29,7 @@ import org.eclipse.team.internal.ccvs.core.client.Command.QuietOption;
 import org.eclipse.team.internal.ccvs.core.client.listeners.IConsoleListener;
 import org.eclipse.team.internal.ccvs.core.mapping.CVSActiveChangeSetCollector;
 import org.eclipse.team.internal.ccvs.core.resources.FileModificationManager;
+import org.eclipse.team.internal.ccvs.core.resources.LogHistoryCache;
 import org.eclipse.team.internal.ccvs.core.util.*;
 import org.eclipse.team.internal.core.subscribers.ActiveChangeSetManager;
 import org.osgi.framework.BundleContext;
@@ -56,6 +57,16 @@ public class CVSProviderPlugin extends Plugin {
 	public static final int DEFAULT_TIMEOUT = 60;
 	// file transfer compression level (0 - 9)
 	public static final int DEFAULT_COMPRESSION_LEVEL = 0;
+	// number of sessions used to fetch the contents of many files
+	public static final int DEFAULT_CONTENT_FETCH_SESSIONS = 4;
+	// number of threads used to read the sync info of many folders
+	public static final int DEFAULT_SYNC_INFO_READ_THREADS = 4;
+	// maximum size in bytes of the logs of remote files kept on disk
+	public static final long DEFAULT_LOG_HISTORY_CACHE_SIZE = 32 * 1024 * 1024;
+	// number of idle connections kept per repository location for reuse
+	public static final int DEFAULT_SESSION_POOL_SIZE = 2;
+	// time in seconds after which an idle connection is closed
+	public static final int DEFAULT_SESSION_POOL_IDLE_TIMEOUT = 60;
 	// default text keyword substitution mode
 	public static final KSubstOption DEFAULT_TEXT_KSUBST_OPTION = Command.KSUBST_TEXT_EXPAND;
 
@@ -69,6 +80,13 @@ public class CVSProviderPlugin extends Plugin {
 	
 	private QuietOption quietness;
 	private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+	private int contentFetchSessions = DEFAULT_CONTENT_FETCH_SESSIONS;
+	private int syncInfoReadThreads = DEFAULT_SYNC_INFO_READ_THREADS;
+	private long logHistoryCacheSize = DEFAULT_LOG_HISTORY_CACHE_SIZE;
+	private LogHistoryCache logHistoryCache;
+	private int sessionPoolSize = DEFAULT_SESSION_POOL_SIZE;
+	private int sessionPoolIdleTimeout = DEFAULT_SESSION_POOL_IDLE_TIMEOUT;
+	private SessionPool sessionPool;
 	private KSubstOption defaultTextKSubstOption = DEFAULT_TEXT_KSUBST_OPTION;
 	private boolean usePlatformLineend = true;
 	private int communicationsTimeout = DEFAULT_TIMEOUT;
@@ -91,6 +109,8 @@ public class CVSProviderPlugin extends Plugin {
 	private static final String REPOSITORIES_STATE_FILE = ".cvsProviderState"; //$NON-NLS-1$
 	// version numbers for the state file (a positive number indicates version 1)
 	private static final int REPOSITORIES_STATE_FILE_VERSION_2 = -1;
+	// the directory of the log history cache in the state location
+	private static final String LOG_HISTORY_DIRECTORY = "logHistory"; //$NON-NLS-1$
 	private static List decoratorEnablementListeners = new ArrayList();
 	
 	private CVSWorkspaceSubscriber cvsWorkspaceSubscriber;
@@ -210,6 +230,114 @@ public class CVSProviderPlugin extends Plugin {
 	public int getCompressionLevel() {
 		return compressionLevel;
 	}
+
+	/**
+	 * Sets the maximum number of sessions that are opened in parallel
+	 * to fetch the contents of many remote files. A value of 1 fetches
+	 * the contents over a single session.
+	 */
+	public void setContentFetchSessions(int sessions) {
+		contentFetchSessions = Math.max(1, sessions);
+	}
+
+	/**
+	 * Gets the maximum number of sessions that are opened in parallel
+	 * to fetch the contents of many remote files.
+	 */
+	public int getContentFetchSessions() {
+		return contentFetchSessions;
+	}
+
+	/**
+	 * Sets the maximum number of threads that read the CVS/Entries files
+	 * of many folders in parallel when their sync info is loaded. A value
+	 * of 1 reads the files one after the other.
+	 */
+	public void setSyncInfoReadThreads(int threads) {
+		syncInfoReadThreads = Math.max(1, threads);
+	}
+
+	/**
+	 * Gets the maximum number of threads that read the CVS/Entries files
+	 * of many folders in parallel when their sync info is loaded.
+	 */
+	public int getSyncInfoReadThreads() {
+		return syncInfoReadThreads;
+	}
+
+	/**
+	 * Sets the maximum total size in bytes of the logs of remote files
+	 * that are kept on disk. A value of 0 disables the cache.
+	 */
+	public synchronized void setLogHistoryCacheSize(long size) {
+		logHistoryCacheSize = Math.max(0, size);
+		if (logHistoryCache != null)
+			logHistoryCache.setMaximumSize(logHistoryCacheSize);
+	}
+
+	/**
+	 * Gets the maximum total size in bytes of the logs of remote files
+	 * that are kept on disk.
+	 */
+	public synchronized long getLogHistoryCacheSize() {
+		return logHistoryCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of idle connections per repository location
+	 * that are kept for reuse by later sessions. A value of 0 closes the
+	 * connection of a session when it is closed.
+	 */
+	public synchronized void setSessionPoolSize(int size) {
+		sessionPoolSize = Math.max(0, size);
+		if (sessionPool != null)
+			sessionPool.setMaximumIdle(sessionPoolSize);
+	}
+
+	/**
+	 * Gets the maximum number of idle connections per repository location
+	 * that are kept for reuse by later sessions.
+	 */
+	public synchronized int getSessionPoolSize() {
+		return sessionPoolSize;
+	}
+
+	/**
+	 * Sets the time in seconds after which an idle connection is closed.
+	 */
+	public synchronized void setSessionPoolIdleTimeout(int timeout) {
+		sessionPoolIdleTimeout = Math.max(0, timeout);
+		if (sessionPool != null)
+			sessionPool.setIdleTimeout(sessionPoolIdleTimeout * 1000L);
+	}
+
+	/**
+	 * Gets the time in seconds after which an idle connection is closed.
+	 */
+	public synchronized int getSessionPoolIdleTimeout() {
+		return sessionPoolIdleTimeout;
+	}
+
+	/**
+	 * Returns the pool of the connections of closed sessions.
+	 */
+	public synchronized SessionPool getSessionPool() {
+		if (sessionPool == null) {
+			sessionPool = new SessionPool(sessionPoolSize, sessionPoolIdleTimeout * 1000L);
+		}
+		return sessionPool;
+	}
+
+	/**
+	 * Returns the cache of the logs of remote files.
+	 */
+	public synchronized LogHistoryCache getLogHistoryCache() {
+		if (logHistoryCache == null) {
+			File directory = getStateLocation().append(LOG_HISTORY_DIRECTORY).toFile();
+			logHistoryCache = new LogHistoryCache(directory, logHistoryCacheSize);
+		}
+		return logHistoryCache;
+	}
 	
 	/**
 	 * Sets the default keyword substitution mode for text files.
@@ -325,6 +453,9 @@ public class CVSProviderPlugin extends Plugin {
 			
 			getChangeSetManager().dispose();
 			
+			if (sessionPool != null)
+				sessionPool.clear();
+			
 			tracker.close();
 			
 			deleteCrashFile();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -372,6 +372,9 @@ public abstract class Command extends Request {
 		Policy.checkCanceled(monitor);
 		try {
 			/*** prepare for command ***/
+			// make sure that global options of earlier sessions do not apply
+			session.ensureGlobalOptions(globalOptions, Policy.subMonitorFor(monitor, 0));
+			session.requestStarted();
 			// clear stale command state from previous runs
 			session.setNoLocalChanges(DO_NOT_CHANGE.isElementOf(globalOptions));
 			session.setModTime(null);
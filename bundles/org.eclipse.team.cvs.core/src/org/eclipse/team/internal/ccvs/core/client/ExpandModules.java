@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -23,6 +23,7 @@ public class ExpandModules extends Request {
 	public IStatus execute(Session session, String[] modules, IProgressMonitor monitor) throws CVSException {
 		// Reset the module expansions before the responses arrive
 		session.resetModuleExpansion();
+		session.requestStarted();
 		for (int i = 0; i < modules.length; ++i) {
 			session.sendArgument(modules[i]);
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -140,18 +140,15 @@ public abstract class Request {
 			Policy.checkCanceled(monitor);
 
 			// retrieve a response line
-			String response = session.readLine();
-			int spacePos = response.indexOf(' ');
-			String argument;
-			if (spacePos != -1) {
-				argument = response.substring(spacePos + 1);
-				response = response.substring(0, spacePos);
-			} else argument = "";  //$NON-NLS-1$
+			String response = session.readResponse();
+			String argument = session.getResponseArgument();
 
 			// handle completion responses
 			if (response.equals("ok")) {  //$NON-NLS-1$
+				session.requestCompleted();
 				break;
 			} else if (response.equals("error") || (isCVSNT && response.equals(""))) {  //$NON-NLS-1$ //$NON-NLS-2$
+				session.requestCompleted();
 				argument = argument.trim();
 				boolean serious = false;
 				if (argument.length() == 0) {
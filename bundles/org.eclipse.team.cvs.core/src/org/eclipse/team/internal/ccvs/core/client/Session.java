@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,10 +15,13 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -52,6 +55,10 @@ import org.eclipse.team.internal.core.streams.*;
  * re-opened for use with the same server though no state is persisted from
  * previous connections except for console attributes.
  * 
+ * A session that is closed after its last request completed puts its
+ * connection into the {@link SessionPool} and a session that is opened
+ * reuses a pooled connection to the same location if there is one.
+ * 
  * CVSExceptions are thrown only as a result of unrecoverable errors.  Once
  * this happens, commands must no longer be issued to the server.  If the
  * Session is in the OPEN state, it is still the responsibility of the
@@ -80,6 +87,13 @@ public class Session {
 	private boolean noLocalChanges = false;
 	private boolean createBackups = true;
 	private int compressionLevel = 0;
+	private boolean writeAccess;
+	// whether a request was started and its response was not received completely
+	private boolean requestPending = false;
+	// the global options sent over the connection by this session and by the
+	// sessions the connection was pooled by, they apply to all later commands
+	private Set globalOptions;
+	private Set inheritedGlobalOptions;
 	private List expansions;
 	private Collection /* of ICVSFile */ textTransferOverrideSet = null;
 	
@@ -89,6 +103,7 @@ public class Session {
 	// The resource bundle key that provides the file sending message
 	private String sendFileTitleMessage;
 	private Map responseHandlers;
+	private String[] responseNames;
 	
 	// List of errors accumulated while the command is executing
     private List errors = new ArrayList();
@@ -151,12 +166,49 @@ public class Session {
 	
 	public void open(IProgressMonitor monitor, boolean writeAccess) throws CVSException {
 		if (connection != null) throw new IllegalStateException();
+		this.writeAccess = writeAccess;
+		if (!openPooledConnection()) {
+			openConnection(monitor);
+		}
+	}
+
+	/*
+	 * Take an idle connection to the location from the pool and return
+	 * whether there was one
+	 */
+	private boolean openPooledConnection() {
+		SessionPool.PooledConnection pooled = CVSProviderPlugin.getPlugin().getSessionPool().acquire(location,
+				CVSProviderPlugin.getPlugin().getCompressionLevel());
+		if (pooled == null)
+			return false;
+		connection = pooled.connection;
+		validRequests = pooled.validRequests;
+		compressionLevel = pooled.compressionLevel;
+		if (!pooled.acceptsMT) {
+			// The server was told which responses are accepted when the connection was opened
+			removeResponseHandler("MT"); //$NON-NLS-1$
+		}
+		globalOptions = new HashSet(pooled.globalOptions);
+		inheritedGlobalOptions = pooled.globalOptions;
+		requestPending = false;
+		return true;
+	}
+
+	/*
+	 * Open, authenticate and initialize a new connection
+	 */
+	private void openConnection(IProgressMonitor monitor) throws CVSException {
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(null, 100);
 		boolean opened = false;	
 	
 		try {
 			connection = getLocationForConnection(writeAccess).openConnection(Policy.subMonitorFor(monitor, 50));
+			CVSProviderPlugin.getPlugin().getSessionPool().connectionOpened();
+			globalOptions = new HashSet();
+			inheritedGlobalOptions = Collections.EMPTY_SET;
+			// The connection is not pooled unless it is initialized completely
+			requestPending = true;
 			
 			// If we're connected to a CVSNT server or we don't know the platform, 
 			// accept MT. Otherwise don't.
@@ -181,13 +233,17 @@ public class Session {
 
 			// enable compression
 			compressionLevel = CVSProviderPlugin.getPlugin().getCompressionLevel();
-			if (compressionLevel != 0 && isValidRequest("gzip-file-contents")) { //$NON-NLS-1$
+			if (compressionLevel != 0 && isValidRequest("Gzip-stream") && Connection.isStreamCompressionSupported()) { //$NON-NLS-1$
+				// Compress the whole connection. This also compresses the requests and
+				// the responses other than file contents and makes more effective use of
+				// the code dictionary. The file contents are then sent as is.
+				connection.writeLine("Gzip-stream " + Integer.toString(compressionLevel)); //$NON-NLS-1$
+				connection.enableCompression(compressionLevel);
+				compressionLevel = 0;
+			} else if (compressionLevel != 0 && isValidRequest("gzip-file-contents")) { //$NON-NLS-1$
 				// Enable the use of CVS 1.8 per-file compression mechanism.
-				// The newer Gzip-stream request seems to be problematic due to Java's
-				// GZIPInputStream tendency to block on read() rather than to return a
-				// partially filled buffer.  The latter option would be better since it
-				// can make more effective use of the code dictionary, if it can be made
-				// to work...
+				// This is used if the server or the JRE does not support the
+				// sync flushes that Gzip-stream requires.
 				connection.writeLine("gzip-file-contents " + Integer.toString(compressionLevel)); //$NON-NLS-1$
 			} else {
 				compressionLevel = 0;
@@ -198,8 +254,10 @@ public class Session {
 				Command.VERSION.execute(this, location, Policy.subMonitorFor(monitor, 10));
 			}
 			opened = true;
+			requestPending = false;
 		} finally {
 			if (connection != null && ! opened) {
+				requestPending = true;
 				close();
 			}
 			monitor.done();
@@ -214,17 +272,59 @@ public class Session {
 	}
 
 	/**
-	 * Closes a connection to the server.
+	 * Closes a connection to the server. The connection is put into the
+	 * session pool if the responses to all requests were received.
 	 *
 	 * @throws IllegalStateException if the Session is not in the OPEN state
 	 */
 	public void close() {
 		if (connection != null) {
-			connection.close();
+			if (requestPending) {
+				connection.close();
+			} else {
+				CVSProviderPlugin.getPlugin().getSessionPool().release(location, new SessionPool.PooledConnection(
+						connection, validRequests, compressionLevel, CVSProviderPlugin.getPlugin().getCompressionLevel(),
+						getReponseHandlers().containsKey("MT"), globalOptions)); //$NON-NLS-1$
+			}
 			connection = null;
 			validRequests = null;
 		}
 	}
+
+	/*
+	 * Record that a request is about to be sent. The connection is not
+	 * pooled until the response to the request was received.
+	 */
+	void requestStarted() {
+		requestPending = true;
+	}
+
+	/*
+	 * Record that the response to the last request was received completely.
+	 */
+	void requestCompleted() {
+		requestPending = false;
+	}
+
+	/*
+	 * Open a new connection if the connection was reused and the sessions that
+	 * used it before sent global options that the next command does not send.
+	 * The server applies global options to all later commands of a connection.
+	 */
+	void ensureGlobalOptions(GlobalOption[] options, IProgressMonitor monitor) throws CVSException {
+		if (inheritedGlobalOptions.isEmpty())
+			return;
+		Set sent = new HashSet();
+		for (int i = 0; i < options.length; i++) {
+			sent.add(options[i].getOption());
+		}
+		if (sent.containsAll(inheritedGlobalOptions))
+			return;
+		connection.close();
+		connection = null;
+		validRequests = null;
+		openConnection(monitor);
+	}
 	
 	/**
 	 * Determines if the server supports the specified request.
@@ -300,6 +400,28 @@ public class Session {
 		return connection.readLine();
 	}
 
+	/**
+	 * Receives a response line from the server and returns the name of the
+	 * response. Names of known responses are returned without creating a
+	 * new string. The argument of the response is returned by
+	 * {@link #getResponseArgument()}.
+	 * 
+	 * @return the name of the response
+	 */
+	String readResponse() throws CVSException {
+		return connection.readResponse(getResponseNames());
+	}
+
+	/**
+	 * Returns the argument of the last response received by
+	 * {@link #readResponse()}.
+	 * 
+	 * @return the argument or an empty string
+	 */
+	String getResponseArgument() throws CVSException {
+		return connection.getResponseArgument();
+	}
+
 	/**
 	 * Sends a line of text followed by a newline to the server.
 	 * 
@@ -499,6 +621,7 @@ public class Session {
 	 */
 	public void sendGlobalOption(String option) throws CVSException {
 		connection.writeLine("Global_option " + option); //$NON-NLS-1$
+		globalOptions.add(option);
 	}
 
 	/**
@@ -974,12 +1097,30 @@ public class Session {
 		
 		return result.toString();
 	}
+	/*
+	 * Return the names of the responses that are handled by this session.
+	 */
+	private String[] getResponseNames() {
+		if (responseNames == null) {
+			List names = new ArrayList();
+			names.add("ok"); //$NON-NLS-1$
+			names.add("error"); //$NON-NLS-1$
+			names.add("M"); //$NON-NLS-1$
+			names.add("E"); //$NON-NLS-1$
+			names.addAll(getReponseHandlers().keySet());
+			responseNames = (String[]) names.toArray(new String[names.size()]);
+		}
+		return responseNames;
+	}
+
 	public void registerResponseHandler(ResponseHandler handler) {
 		getReponseHandlers().put(handler.getResponseID(), handler);
+		responseNames = null;
 	}
 	
 	public void removeResponseHandler(String responseID) {
 		getReponseHandlers().remove(responseID);
+		responseNames = null;
 	}
 	
 	public ResponseHandler getResponseHandler(String responseID) {
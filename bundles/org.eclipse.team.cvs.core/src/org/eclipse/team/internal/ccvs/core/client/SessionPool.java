@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.client;
+
+import java.io.IOException;
+import java.util.*;
+
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.CVSMessages;
+import org.eclipse.team.internal.ccvs.core.ICVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.connection.Connection;
+
+/**
+ * A pool of the connections of closed sessions. A session that is opened
+ * takes a connection to its repository location from the pool if there is
+ * one and skips the authentication and the initialization of the
+ * connection. A session that is closed after its last request completed
+ * puts its connection back into the pool.
+ * <p>
+ * The number of idle connections per location is bounded and connections
+ * that were idle for longer than the idle timeout are closed. A connection
+ * that was idle for a while is checked with a <code>noop</code> request
+ * before it is reused.
+ * </p>
+ */
+public class SessionPool {
+
+	// connections that were idle for longer are checked before they are reused
+	private static final long VALIDATION_INTERVAL = 2000;
+
+	/*
+	 * An idle connection and the state that was negotiated when it was opened
+	 */
+	static class PooledConnection {
+		final Connection connection;
+		final String validRequests;
+		final int compressionLevel;
+		final int compressionPreference;
+		final boolean acceptsMT;
+		// the global options that were sent over the connection, they apply to all later commands
+		final Set globalOptions;
+		long releaseTime;
+
+		PooledConnection(Connection connection, String validRequests, int compressionLevel, int compressionPreference, boolean acceptsMT, Set globalOptions) {
+			this.connection = connection;
+			this.validRequests = validRequests;
+			this.compressionLevel = compressionLevel;
+			this.compressionPreference = compressionPreference;
+			this.acceptsMT = acceptsMT;
+			this.globalOptions = globalOptions;
+		}
+	}
+
+	// location string -> list of idle connections, the most recently released last
+	private final Map idleConnections = new HashMap();
+	private int maximumIdle;
+	private long idleTimeout;
+
+	private int opened;
+	private int reused;
+
+	private final Job closeJob = new Job(CVSMessages.SessionPool_closeIdleConnections) {
+		protected IStatus run(IProgressMonitor monitor) {
+			closeExpired();
+			synchronized (SessionPool.this) {
+				if (!idleConnections.isEmpty())
+					schedule(idleTimeout);
+			}
+			return Status.OK_STATUS;
+		}
+	};
+
+	/**
+	 * Create a pool.
+	 * @param maximumIdle the maximum number of idle connections kept per
+	 * repository location, 0 disables the pool
+	 * @param idleTimeout the time in milliseconds after which an idle
+	 * connection is closed
+	 */
+	public SessionPool(int maximumIdle, long idleTimeout) {
+		this.maximumIdle = maximumIdle;
+		this.idleTimeout = idleTimeout;
+		closeJob.setSystem(true);
+	}
+
+	/**
+	 * Set the maximum number of idle connections kept per repository location.
+	 * @param maximumIdle the maximum number of idle connections, 0 disables the pool
+	 */
+	public void setMaximumIdle(int maximumIdle) {
+		synchronized (this) {
+			this.maximumIdle = maximumIdle;
+		}
+		closeExpired();
+	}
+
+	/**
+	 * Set the time after which an idle connection is closed.
+	 * @param idleTimeout the timeout in milliseconds
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		synchronized (this) {
+			this.idleTimeout = idleTimeout;
+		}
+		closeExpired();
+	}
+
+	/**
+	 * Return the number of connections that were opened by sessions,
+	 * i.e. the number of handshakes with servers.
+	 * @return the number of opened connections
+	 */
+	public synchronized int getOpenedCount() {
+		return opened;
+	}
+
+	/**
+	 * Return the number of times a session reused a connection of the pool.
+	 * @return the number of reused connections
+	 */
+	public synchronized int getReusedCount() {
+		return reused;
+	}
+
+	/**
+	 * Return the number of idle connections to the given location.
+	 * @param location a repository location
+	 * @return the number of idle connections
+	 */
+	public synchronized int getIdleCount(ICVSRepositoryLocation location) {
+		List connections = (List) idleConnections.get(location.getLocation(false));
+		return connections == null ? 0 : connections.size();
+	}
+
+	/*
+	 * Record that a session opened a new connection
+	 */
+	synchronized void connectionOpened() {
+		opened++;
+	}
+
+	/*
+	 * Return an idle connection to the given location that is still usable
+	 * or null if there is none
+	 */
+	PooledConnection acquire(ICVSRepositoryLocation location, int compressionPreference) {
+		while (true) {
+			PooledConnection pooled;
+			synchronized (this) {
+				List connections = (List) idleConnections.get(location.getLocation(false));
+				if (connections == null)
+					return null;
+				pooled = (PooledConnection) connections.remove(connections.size() - 1);
+				if (connections.isEmpty())
+					idleConnections.remove(location.getLocation(false));
+			}
+			long idleTime = System.currentTimeMillis() - pooled.releaseTime;
+			if (pooled.compressionPreference == compressionPreference
+					&& idleTime < getIdleTimeout()
+					&& (idleTime < VALIDATION_INTERVAL || isAlive(pooled))) {
+				synchronized (this) {
+					reused++;
+				}
+				return pooled;
+			}
+			pooled.connection.close();
+		}
+	}
+
+	/*
+	 * Put the connection of a closed session into the pool or close it if
+	 * the pool is full
+	 */
+	void release(ICVSRepositoryLocation location, PooledConnection pooled) {
+		synchronized (this) {
+			if (pooled.connection.isEstablished() && maximumIdle > 0) {
+				List connections = (List) idleConnections.get(location.getLocation(false));
+				if (connections == null) {
+					connections = new ArrayList();
+					idleConnections.put(location.getLocation(false), connections);
+				}
+				if (connections.size() < maximumIdle) {
+					pooled.releaseTime = System.currentTimeMillis();
+					connections.add(pooled);
+					if (closeJob.getState() == Job.NONE)
+						closeJob.schedule(idleTimeout);
+					return;
+				}
+			}
+		}
+		pooled.connection.close();
+	}
+
+	/**
+	 * Close the idle connections to the given location. This is done when
+	 * the location is disposed or its user information changes.
+	 * @param location a repository location
+	 */
+	public void clear(ICVSRepositoryLocation location) {
+		List connections;
+		synchronized (this) {
+			connections = (List) idleConnections.remove(location.getLocation(false));
+		}
+		close(connections);
+	}
+
+	/**
+	 * Close all the idle connections.
+	 */
+	public void clear() {
+		List connections = new ArrayList();
+		synchronized (this) {
+			for (Iterator iter = idleConnections.values().iterator(); iter.hasNext();) {
+				connections.addAll((List) iter.next());
+			}
+			idleConnections.clear();
+		}
+		close(connections);
+	}
+
+	private synchronized long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/*
+	 * Close the connections that were idle for too long or exceed the maximum
+	 */
+	private void closeExpired() {
+		List expired = new ArrayList();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			for (Iterator iter = idleConnections.values().iterator(); iter.hasNext();) {
+				List connections = (List) iter.next();
+				for (Iterator iterator = connections.iterator(); iterator.hasNext();) {
+					PooledConnection pooled = (PooledConnection) iterator.next();
+					if (now - pooled.releaseTime >= idleTimeout) {
+						iterator.remove();
+						expired.add(pooled);
+					}
+				}
+				while (connections.size() > maximumIdle) {
+					// The oldest connections are first
+					expired.add(connections.remove(0));
+				}
+				if (connections.isEmpty())
+					iter.remove();
+			}
+		}
+		close(expired);
+	}
+
+	private static void close(List connections) {
+		if (connections == null)
+			return;
+		for (Iterator iter = connections.iterator(); iter.hasNext();) {
+			((PooledConnection) iter.next()).connection.close();
+		}
+	}
+
+	/*
+	 * Return whether the server still answers requests over the connection
+	 */
+	private static boolean isAlive(PooledConnection pooled) {
+		if (!pooled.connection.isEstablished())
+			return false;
+		if (pooled.validRequests != null && pooled.validRequests.indexOf(" noop ") == -1) //$NON-NLS-1$
+			return false;
+		try {
+			if (pooled.connection.getInputStream().available() > 0) {
+				// Unexpected data is waiting, the connection cannot be trusted
+				return false;
+			}
+			pooled.connection.writeLine("noop"); //$NON-NLS-1$
+			pooled.connection.flush();
+			return pooled.connection.readLine().equals("ok"); //$NON-NLS-1$
+		} catch (CVSException e) {
+			return false;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -553,6 +553,7 @@ public class CVSRepositoryLocation extends PlatformObject implements ICVSReposit
 	 */
 	public void dispose() {
 		removeNode();
+		CVSProviderPlugin.getPlugin().getSessionPool().clear(this);
 		try {
 			if (hasPreferences()) {
 				internalGetPreferences().removeNode();
@@ -1096,6 +1097,7 @@ public class CVSRepositoryLocation extends PlatformObject implements ICVSReposit
 	 */
 	public void flushUserInfo() {
 		removeNode();
+		CVSProviderPlugin.getPlugin().getSessionPool().clear(this);
 	}
 	
 	/*
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,8 @@ package org.eclipse.team.internal.ccvs.core.connection;
 
  
 import java.io.*;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -35,6 +37,8 @@ import org.eclipse.team.internal.ccvs.core.*;
  *	<li> close: closes the connection. A closed connection can be reopened by
  *	     calling open again.
  * </ul>
+ * Once the <code>Gzip-stream</code> request was sent, {@link #enableCompression(int)}
+ * makes the request and response streams compress and decompress all further data.
  */
 public class Connection {
 	private static final byte NEWLINE= 0xA;
@@ -42,9 +46,10 @@ public class Connection {
 	private IServerConnection serverConnection;
 	private ICVSRepositoryLocation fCVSRoot;
 	private boolean fIsEstablished;
-	private InputStream fResponseStream;
+	private ResponseInputStream fResponseStream;
+	private SyncFlushDeflaterOutputStream fCompressedRequestStream;
+	private Inflater fInflater;
 	private String fServerEncoding;
-	private byte[] readLineBuffer = new byte[256];
 
 	public Connection(ICVSRepositoryLocation cvsroot, IServerConnection serverConnection) {
 		fCVSRoot = cvsroot;
@@ -78,6 +83,14 @@ public class Connection {
 		} finally {
 			fResponseStream = null;
 			fIsEstablished = false;
+			if (fCompressedRequestStream != null) {
+				fCompressedRequestStream.end();
+				fCompressedRequestStream = null;
+			}
+			if (fInflater != null) {
+				fInflater.end();
+				fInflater = null;
+			}
 		}
 	}
 	/**
@@ -100,6 +113,8 @@ public class Connection {
 	public OutputStream getOutputStream() {
 		if (!isEstablished())
 			return null;
+		if (fCompressedRequestStream != null)
+			return fCompressedRequestStream;
 		return serverConnection.getOutputStream();
 	}
 	/**
@@ -109,9 +124,37 @@ public class Connection {
 	public InputStream getInputStream() {
 		if (!isEstablished())
 			return null;
+		return getResponseStream();
+	}
+
+	private ResponseInputStream getResponseStream() {
 		if (fResponseStream == null)
-			fResponseStream = serverConnection.getInputStream();
-		return fResponseStream;	
+			fResponseStream = new ResponseInputStream(serverConnection.getInputStream(), fServerEncoding);
+		return fResponseStream;
+	}
+
+	/**
+	 * Returns whether the running JRE is able to compress the whole
+	 * connection, see {@link #enableCompression(int)}.
+	 */
+	public static boolean isStreamCompressionSupported() {
+		return SyncFlushDeflaterOutputStream.isSupported();
+	}
+
+	/**
+	 * Compresses all requests written from now on and decompresses all
+	 * responses read from now on. This must be called right after the
+	 * <code>Gzip-stream</code> request was written and before any
+	 * response is read.
+	 * @param level the compression level (1 - 9)
+	 */
+	public void enableCompression(int level) {
+		if (!isEstablished() || fCompressedRequestStream != null)
+			return;
+		fCompressedRequestStream = new SyncFlushDeflaterOutputStream(serverConnection.getOutputStream(), level);
+		fInflater = new Inflater();
+		// Inflate from the current stream as it may have buffered compressed responses
+		fResponseStream = new ResponseInputStream(new InflaterInputStream(getResponseStream(), fInflater, 8192), fServerEncoding);
 	}
 
 	/**
@@ -142,22 +185,56 @@ public class Connection {
 		if (!isEstablished())
 			throw new CVSCommunicationException(CVSMessages.Connection_readUnestablishedConnection,fCVSRoot,null);
 		try { 
-			InputStream in = getInputStream();
-			int index = 0;
-			int r;
-			while ((r = in.read()) != -1) {
-				if (r == NEWLINE) break;
-				readLineBuffer = append(readLineBuffer, index++, (byte) r);
-			}
-
-			String result = new String(readLineBuffer, 0, index, fServerEncoding);
+			ResponseInputStream in = getResponseStream();
+			in.readLine();
+			String result = in.getLine();
 			if (Policy.isDebugProtocol()) Policy.printProtocolLine(result);
 			return result;
 		} catch (IOException e) {
 			throw new CVSCommunicationException(fCVSRoot,e);
 		}
 	}
-	
+
+	/**
+	 * Reads a response line from the response stream and returns the
+	 * name of the response, i.e. the first token of the line. If the name
+	 * is one of the given names, the given instance is returned and no string
+	 * is created for it. The rest of the line can be obtained by calling
+	 * {@link #getResponseArgument()}.
+	 * @param names the names of the known responses
+	 * @return the name of the response
+	 */
+	public String readResponse(String[] names) throws CVSException {
+		if (!isEstablished())
+			throw new CVSCommunicationException(CVSMessages.Connection_readUnestablishedConnection,fCVSRoot,null);
+		try { 
+			ResponseInputStream in = getResponseStream();
+			in.readLine();
+			if (Policy.isDebugProtocol()) Policy.printProtocolLine(in.getLine());
+			return in.getFirstToken(names);
+		} catch (IOException e) {
+			throw new CVSCommunicationException(fCVSRoot,e);
+		}
+	}
+
+	/**
+	 * Returns the argument of the response that was read last by
+	 * {@link #readResponse(String[])}, or an empty string if the response
+	 * has no argument.
+	 */
+	public String getResponseArgument() throws CVSException {
+		try {
+			return getResponseStream().getRemainder();
+		} catch (IOException e) {
+			throw new CVSCommunicationException(fCVSRoot,e);
+		}
+	}
+
+	/*
+	 * This is used while authenticating, before the response stream is
+	 * created. The bytes are read one at a time as bytes following the
+	 * line belong to the protocol and must not be buffered here.
+	 */
 	static String readLine(ICVSRepositoryLocation location, InputStream in) throws IOException {
 		byte[] buffer = new byte[256];
 		int index = 0;
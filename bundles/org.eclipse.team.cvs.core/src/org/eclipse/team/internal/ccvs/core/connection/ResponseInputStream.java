@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * A buffered stream over the responses of the server. Lines are found by
+ * scanning the buffer and are kept in a reusable byte array so that callers
+ * can look at the first token of a line before, or instead of, decoding it.
+ * Lines are decoded with a decoder that is created once per stream. The
+ * remaining methods of <code>InputStream</code> read from the same buffer
+ * so lines and file contents can be read in any order.
+ */
+class ResponseInputStream extends InputStream {
+
+	private static final byte NEWLINE = 0xA;
+	private static final byte SPACE = 0x20;
+	private static final int BUFFER_SIZE = 8192;
+
+	private final InputStream in;
+	private final String encoding;
+	private final CharsetDecoder decoder;
+	private final boolean asciiCompatible;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+
+	// The last line read, without the newline
+	private byte[] line = new byte[256];
+	private int lineLength;
+	private boolean lineIsAscii;
+	private char[] chars = new char[256];
+
+	ResponseInputStream(InputStream in, String encoding) {
+		this.in = in;
+		this.encoding = encoding;
+		this.decoder = createDecoder(encoding);
+		this.asciiCompatible = decoder != null && isAsciiCompatible(encoding);
+	}
+
+	private static CharsetDecoder createDecoder(String encoding) {
+		try {
+			return Charset.forName(encoding).newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		} catch (IllegalCharsetNameException e) {
+			// Decode with the String constructor that reports the problem
+			return null;
+		} catch (UnsupportedCharsetException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Return whether the encoding decodes the bytes 0 - 127 to the ASCII
+	 * characters with the same code, e.g. UTF-8 and ISO-8859-1 do.
+	 */
+	private static boolean isAsciiCompatible(String encoding) {
+		try {
+			byte[] bytes = new byte[0x80];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = (byte) i;
+			}
+			String decoded = new String(bytes, encoding);
+			if (decoded.length() != bytes.length)
+				return false;
+			for (int i = 0; i < bytes.length; i++) {
+				if (decoded.charAt(i) != i)
+					return false;
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		int count = in.read(buffer, 0, buffer.length);
+		if (count <= 0)
+			return false;
+		position = 0;
+		limit = count;
+		return true;
+	}
+
+	/**
+	 * Read the next line into the line buffer. The line ends
+	 * at a newline or at the end of the stream.
+	 */
+	void readLine() throws IOException {
+		int length = 0;
+		boolean ascii = true;
+		while (true) {
+			if (position == limit && !fill())
+				break;
+			int start = position;
+			int end = start;
+			while (end < limit && buffer[end] != NEWLINE) {
+				// Bytes outside of the ASCII range need the decoder
+				ascii &= buffer[end] >= 0;
+				end++;
+			}
+			int count = end - start;
+			if (length + count > line.length) {
+				byte[] newLine = new byte[Math.max(line.length * 2, length + count)];
+				System.arraycopy(line, 0, newLine, 0, length);
+				line = newLine;
+			}
+			System.arraycopy(buffer, start, line, length, count);
+			length += count;
+			if (end < limit) {
+				// Skip the newline
+				position = end + 1;
+				break;
+			}
+			position = end;
+		}
+		lineLength = length;
+		lineIsAscii = ascii;
+	}
+
+	/**
+	 * Return the last line that was read.
+	 */
+	String getLine() throws IOException {
+		return decode(0, lineLength);
+	}
+
+	/**
+	 * Return the first token of the last line that was read. If the token
+	 * is one of the given strings, the given instance is returned.
+	 * @param tokens known tokens, which must consist of ASCII characters
+	 * @return the token
+	 */
+	String getFirstToken(String[] tokens) throws IOException {
+		int end = getFirstTokenEnd();
+		if (asciiCompatible) {
+			for (int i = 0; i < tokens.length; i++) {
+				if (matches(tokens[i], end))
+					return tokens[i];
+			}
+		}
+		return decode(0, end);
+	}
+
+	/**
+	 * Return the last line that was read without its first token and the
+	 * space that follows it, or an empty string if the line has only one token.
+	 */
+	String getRemainder() throws IOException {
+		int end = getFirstTokenEnd();
+		if (end == lineLength)
+			return ""; //$NON-NLS-1$
+		return decode(end + 1, lineLength);
+	}
+
+	private int getFirstTokenEnd() {
+		for (int i = 0; i < lineLength; i++) {
+			if (line[i] == SPACE)
+				return i;
+		}
+		return lineLength;
+	}
+
+	private boolean matches(String token, int length) {
+		if (token.length() != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (line[i] != token.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private String decode(int start, int end) throws IOException {
+		int length = end - start;
+		if (decoder == null)
+			return new String(line, start, length, encoding);
+		// Make sure the characters of the whole line fit
+		int maxChars = (int) Math.ceil(length * (double) decoder.maxCharsPerByte());
+		if (maxChars > chars.length)
+			chars = new char[Math.max(chars.length * 2, maxChars)];
+		if (lineIsAscii && asciiCompatible) {
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) line[start + i];
+			}
+			return new String(chars, 0, length);
+		}
+		CharBuffer out = CharBuffer.wrap(chars);
+		decoder.reset();
+		decoder.decode(ByteBuffer.wrap(line, start, length), out, true);
+		decoder.flush(out);
+		return new String(chars, 0, out.position());
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() throws IOException {
+		if (position == limit && !fill())
+			return -1;
+		return buffer[position++] & 0xff;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (position == limit) {
+			// Large reads bypass the buffer
+			if (len >= buffer.length)
+				return in.read(b, off, len);
+			if (!fill())
+				return -1;
+		}
+		int count = Math.min(len, limit - position);
+		System.arraycopy(buffer, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#skip(long)
+	 */
+	public long skip(long n) throws IOException {
+		if (n <= 0)
+			return 0;
+		if (position == limit)
+			return in.skip(n);
+		int count = (int) Math.min(n, limit - position);
+		position += count;
+		return count;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#available()
+	 */
+	public int available() throws IOException {
+		return limit - position + in.available();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#close()
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A deflater output stream whose <code>flush</code> performs a zlib sync
+ * flush. All data written before the flush can then be inflated by the peer,
+ * which is what the CVS <code>Gzip-stream</code> request requires since the
+ * client waits for responses to compressed requests.
+ * <p>
+ * Sync flushing is only supported by <code>Deflater</code> since Java 7,
+ * clients must check {@link #isSupported()} before creating the stream.
+ */
+class SyncFlushDeflaterOutputStream extends DeflaterOutputStream {
+
+	// Deflater.SYNC_FLUSH
+	private static final int SYNC_FLUSH = 2;
+	private static final int BUFFER_SIZE = 8192;
+	// Deflater.deflate(byte[], int, int, int)
+	private static final Method DEFLATE_WITH_FLUSH = getDeflateWithFlush();
+
+	private static Method getDeflateWithFlush() {
+		try {
+			return Deflater.class.getMethod("deflate", new Class[] { byte[].class, int.class, int.class, int.class }); //$NON-NLS-1$
+		} catch (NoSuchMethodException e) {
+			// Running on an older JRE
+			return null;
+		}
+	}
+
+	/**
+	 * Return whether the stream can be used with the running JRE.
+	 */
+	static boolean isSupported() {
+		return DEFLATE_WITH_FLUSH != null;
+	}
+
+	/**
+	 * Create a stream that writes the zlib compressed data to the given stream.
+	 * @param out the output stream
+	 * @param level the compression level (1 - 9)
+	 */
+	SyncFlushDeflaterOutputStream(OutputStream out, int level) {
+		super(out, new Deflater(level), BUFFER_SIZE);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.OutputStream#flush()
+	 */
+	public void flush() throws IOException {
+		if (!def.finished()) {
+			int count;
+			do {
+				count = syncDeflate();
+				if (count > 0)
+					out.write(buf, 0, count);
+			} while (count == buf.length);
+		}
+		out.flush();
+	}
+
+	private int syncDeflate() throws IOException {
+		try {
+			Object count = DEFLATE_WITH_FLUSH.invoke(def, new Object[] { buf, new Integer(0), new Integer(buf.length), new Integer(SYNC_FLUSH) });
+			return ((Integer) count).intValue();
+		} catch (IllegalAccessException e) {
+			throw new IOException(e.getMessage());
+		} catch (InvocationTargetException e) {
+			throw new IOException(e.getTargetException().getMessage());
+		}
+	}
+
+	/**
+	 * Free the resources of the deflater without writing anything
+	 * to the underlying stream.
+	 */
+	void end() {
+		def.end();
+	}
+}
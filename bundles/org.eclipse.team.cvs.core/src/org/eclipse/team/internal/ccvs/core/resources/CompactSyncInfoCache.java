@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.resources;
+
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
+import org.eclipse.team.internal.ccvs.core.syncinfo.ResourceSyncInfo;
+
+/**
+ * This cache keeps the sync bytes and the dirty indicators of the files of a
+ * folder in a {@link SyncBytesTable} held in a single session property of the
+ * folder instead of in session properties of each file. The folder sync info,
+ * the ignores and the dirty indicators of folders are cached in session
+ * properties as before.
+ * <p>
+ * Session properties are discarded with the resource they belong to, so the
+ * entry of a deleted resource is removed from the table of its parent when
+ * the deletion is reported (see {@link #resourceDeleted(IResource)}).
+ * </p>
+ */
+/*package*/ class CompactSyncInfoCache extends SessionPropertySyncInfoCache {
+
+	// key used on a folder to hold the sync bytes of its children
+	private static final QualifiedName SYNC_BYTES_TABLE_KEY = new QualifiedName(CVSProviderPlugin.ID, "sync-bytes-table"); //$NON-NLS-1$
+	// shared by the cached folders without children, it is never modified
+	private static final SyncBytesTable CACHED_EMPTY_TABLE = new SyncBytesTable();
+	static {
+		CACHED_EMPTY_TABLE.setCached(true);
+	}
+
+	/*package*/ CompactSyncInfoCache(SynchronizerSyncInfoCache synchronizerCache) {
+		super(synchronizerCache);
+	}
+
+	/*
+	 * Returns the table of the given container, creating it if asked to. A
+	 * table that is not created may be the shared empty table, which must
+	 * only be read.
+	 */
+	private SyncBytesTable getTable(IContainer container, boolean create) throws CVSException {
+		SyncBytesTable table = (SyncBytesTable)safeGetSessionProperty(container, SYNC_BYTES_TABLE_KEY);
+		if ((table == null || table == CACHED_EMPTY_TABLE) && create) {
+			return createTable(container, 0, 0);
+		}
+		return table;
+	}
+
+	/*
+	 * Returns the table of the given container that can be modified, creating
+	 * it with the given expected sizes if there is none yet.
+	 */
+	private synchronized SyncBytesTable createTable(IContainer container, int expectedSize, int expectedSyncBytesSize) throws CVSException {
+		SyncBytesTable table = (SyncBytesTable)safeGetSessionProperty(container, SYNC_BYTES_TABLE_KEY);
+		if (table == null || table == CACHED_EMPTY_TABLE) {
+			boolean cached = table != null;
+			table = new SyncBytesTable(expectedSize, expectedSyncBytesSize);
+			table.setCached(cached);
+			safeSetSessionProperty(container, SYNC_BYTES_TABLE_KEY, table);
+		}
+		return table;
+	}
+
+	/*
+	 * Returns whether the state of the resource is held by the table of its
+	 * parent. Projects are children of the workspace root which has no
+	 * session properties.
+	 */
+	private boolean isInTable(IResource resource) {
+		IContainer parent = resource.getParent();
+		return parent != null && parent.getType() != IResource.ROOT;
+	}
+
+	/*package*/ boolean isResourceSyncInfoCached(IContainer container) throws CVSException {
+		if (container.getType() == IResource.ROOT)
+			return super.isResourceSyncInfoCached(container);
+		SyncBytesTable table = getTable(container, false);
+		return table != null && table.isCached();
+	}
+
+	/*package*/ void setResourceSyncInfoCached(IContainer container) throws CVSException {
+		if (container.getType() == IResource.ROOT) {
+			super.setResourceSyncInfoCached(container);
+			return;
+		}
+		synchronized (this) {
+			SyncBytesTable table = getTable(container, false);
+			if (table == null) {
+				// Don't allocate a table for a folder without children
+				safeSetSessionProperty(container, SYNC_BYTES_TABLE_KEY, CACHED_EMPTY_TABLE);
+			} else {
+				table.setCached(true);
+			}
+		}
+	}
+
+	/*package*/ void prepareResourceSyncInfo(IContainer container, byte[][] infos) throws CVSException {
+		if (container.getType() == IResource.ROOT || infos.length == 0)
+			return;
+		int syncBytesSize = 0;
+		for (int i = 0; i < infos.length; i++) {
+			syncBytesSize += infos[i].length;
+		}
+		createTable(container, infos.length, syncBytesSize);
+	}
+
+	/*package*/ byte[] getStoredSyncBytes(IResource resource) throws CVSException {
+		if (!isInTable(resource))
+			return super.getStoredSyncBytes(resource);
+		SyncBytesTable table = getTable(resource.getParent(), false);
+		if (table == null) return null;
+		byte[] syncBytes = table.getSyncBytes(resource.getName());
+		// Ignore the sync bytes of a deleted resource that was replaced by one of the other type
+		if (syncBytes != null && ResourceSyncInfo.isFolder(syncBytes) == (resource.getType() == IResource.FILE))
+			return null;
+		return syncBytes;
+	}
+
+	/*package*/ void setStoredSyncBytes(IResource resource, byte[] syncBytes) throws CVSException {
+		if (!isInTable(resource)) {
+			super.setStoredSyncBytes(resource, syncBytes);
+			return;
+		}
+		SyncBytesTable table = getTable(resource.getParent(), syncBytes != null);
+		if (table != null)
+			table.setSyncBytes(resource.getName(), syncBytes);
+	}
+
+	/*package*/ String getStoredDirtyIndicator(IFile file) throws CVSException {
+		SyncBytesTable table = getTable(file.getParent(), false);
+		if (table == null) return null;
+		return table.getDirtyIndicator(file.getName());
+	}
+
+	/*package*/ void setStoredDirtyIndicator(IFile file, String indicator) throws CVSException {
+		SyncBytesTable table = getTable(file.getParent(), indicator != null);
+		if (table != null)
+			table.setDirtyIndicator(file.getName(), indicator);
+	}
+
+	/*package*/ void resourceDeleted(IResource resource) throws CVSException {
+		if (!isInTable(resource)) return;
+		IContainer parent = resource.getParent();
+		if (!parent.exists()) return;
+		SyncBytesTable table = getTable(parent, false);
+		if (table != null)
+			table.remove(resource.getName());
+	}
+
+	/*package*/ IResource[] purgeCache(IContainer container, boolean deep) throws CVSException {
+		IResource[] flushed = super.purgeCache(container, deep);
+		// Also forget the children that no longer exist. Files without a
+		// dirty indicator are recomputed, as they were by the purge.
+		if (container.exists() && container.getType() != IResource.ROOT)
+			safeSetSessionProperty(container, SYNC_BYTES_TABLE_KEY, null);
+		return flushed;
+	}
+
+	/*package*/ long[] getMemoryStatistics(IContainer container) throws CVSException {
+		if (container.getType() == IResource.ROOT)
+			return super.getMemoryStatistics(container);
+		SyncBytesTable table = getTable(container, false);
+		if (table == null)
+			return new long[3];
+		return new long[] { table.size(), table.getSyncBytesSize(), table.getMemorySize() };
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -57,12 +57,23 @@ public class EclipseSynchronizer implements IFlushOperation {
 	// the cvs eclipse synchronizer is a singleton
 	private static EclipseSynchronizer instance;
 	
+	// The Entries files are read in parallel when at least this many folders are loaded
+	private static final int MIN_FOLDERS_TO_READ_IN_PARALLEL = 32;
+	// The number of folders whose sync info is cached while the locks are held
+	private static final int FOLDERS_PER_BATCH = 64;
+	
+	// The sync bytes of the files of a folder are kept in one table unless this property is false
+	private static final boolean COMPACT_SYNC_INFO_CACHE = (System.getProperty("eclipse.cvs.compactSyncInfoCache")==null) ? //$NON-NLS-1$
+		true : (Boolean.valueOf(System.getProperty("eclipse.cvs.compactSyncInfoCache")).booleanValue()); //$NON-NLS-1$
+	
 	// track resources that have changed in a given operation
 	private ILock lock = Job.getJobManager().newLock();
 	private ReentrantLock resourceLock = new ReentrantLock();
 	
 	private SynchronizerSyncInfoCache synchronizerCache = new SynchronizerSyncInfoCache();
-	private SessionPropertySyncInfoCache sessionPropertyCache = new SessionPropertySyncInfoCache(synchronizerCache);
+	private SessionPropertySyncInfoCache sessionPropertyCache = COMPACT_SYNC_INFO_CACHE
+		? new CompactSyncInfoCache(synchronizerCache)
+		: new SessionPropertySyncInfoCache(synchronizerCache);
 	
 	/*
 	 * Package private constructor to allow specialized subclass for handling folder deletions
@@ -787,6 +798,7 @@ public class EclipseSynchronizer implements IFlushOperation {
 		if (resource.exists()) return;
 		try {
 			beginOperation();
+			sessionPropertyCache.resourceDeleted(resource);
 			adjustDirtyStateRecursively(resource, RECOMPUTE_INDICATOR);
 		} finally {
 			endOperation();
@@ -866,27 +878,39 @@ public class EclipseSynchronizer implements IFlushOperation {
 			} else {
 				infos = SyncFileWriter.readAllResourceSync(container);
 			}
-			try {
-				if (infos != null) {
-					for (int i = 0; i < infos.length; i++) {
-						byte[] syncBytes = infos[i];
-						IPath name = new Path(null, getName(syncBytes));
-						IResource resource;
-						if (isFolder(syncBytes)) {
-							resource = container.getFolder(name);
-						} else {
-							resource = container.getFile(name);
-						}
-						getSyncInfoCacheFor(resource).setCachedSyncBytes(resource, syncBytes, canModifyWorkspace);
+			setCachedResourceSyncForChildren(container, infos, canModifyWorkspace);
+		}
+	}
+	
+	/**
+	 * Caches the resource sync for the children of the container that was
+	 * read from disk. Folder must exist and must not be the workspace root.
+	 *
+	 * @param container the container
+	 * @param infos the sync bytes of the children, or null if there are none
+	 */
+	private void setCachedResourceSyncForChildren(IContainer container, byte[][] infos, boolean canModifyWorkspace) throws CVSException {
+		try {
+			if (infos != null) {
+				getSyncInfoCacheFor(container).prepareResourceSyncInfo(container, infos);
+				for (int i = 0; i < infos.length; i++) {
+					byte[] syncBytes = infos[i];
+					IPath name = new Path(null, getName(syncBytes));
+					IResource resource;
+					if (isFolder(syncBytes)) {
+						resource = container.getFolder(name);
+					} else {
+						resource = container.getFile(name);
 					}
+					getSyncInfoCacheFor(resource).setCachedSyncBytes(resource, syncBytes, canModifyWorkspace);
 				}
-				getSyncInfoCacheFor(container).setResourceSyncInfoCached(container);
-			} catch (CVSException e) {
-				if (Policy.DEBUG_METAFILE_CHANGES) {
-					System.err.println("Failed to cache Entries for folder " + container.getFullPath()); //$NON-NLS-1$
-				}
-				throw e;
 			}
+			getSyncInfoCacheFor(container).setResourceSyncInfoCached(container);
+		} catch (CVSException e) {
+			if (Policy.DEBUG_METAFILE_CHANGES) {
+				System.err.println("Failed to cache Entries for folder " + container.getFullPath()); //$NON-NLS-1$
+			}
+			throw e;
 		}
 	}
 	
@@ -1375,7 +1399,38 @@ public class EclipseSynchronizer implements IFlushOperation {
 			return;
 		SyncFileWriter.deleteFileFromBaseDirectory(file, monitor);
 	}
-	
+
+	/**
+	 * Returns a report of the memory used to cache the sync bytes of the
+	 * resources in and below the given container. The report is meant for
+	 * tracing and is not translated.
+	 *
+	 * @param container the container
+	 * @return a one line report
+	 * @throws CVSException
+	 */
+	public String getCacheMemoryReport(IContainer container) throws CVSException {
+		final long[] totals = new long[4];
+		try {
+			container.accept(new IResourceVisitor() {
+				public boolean visit(IResource resource) throws CoreException {
+					if (resource.getType() == IResource.FILE) return false;
+					long[] statistics = sessionPropertyCache.getMemoryStatistics((IContainer)resource);
+					totals[0]++;
+					for (int i = 0; i < statistics.length; i++) {
+						totals[i + 1] += statistics[i];
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			throw CVSException.wrapException(e);
+		}
+		return (sessionPropertyCache instanceof CompactSyncInfoCache ? "compact" : "session property") //$NON-NLS-1$ //$NON-NLS-2$
+			+ " cache: " + totals[0] + " folders, " + totals[1] + " entries, " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			+ totals[2] + " bytes of sync info, about " + totals[3] + " bytes used"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	/**
 	 * Method isSyncInfoLoaded returns true if all the sync info for the
 	 * provided resources is loaded into the internal cache.
@@ -1401,6 +1456,8 @@ public class EclipseSynchronizer implements IFlushOperation {
 	 * Method ensureSyncInfoLoaded loads all the relevent sync info into the cache.
 	 * This method can only be invoked when the workspace is open for modification.
 	 * in other words it cannot be invoked from inside a POST_CHANGE delta listener.
+	 * When the sync info of many folders is loaded, their Entries files are read
+	 * in parallel (see {@link CVSProviderPlugin#getSyncInfoReadThreads()}).
 	 * @param resources
 	 * @param i
 	 * @return Object
@@ -1408,6 +1465,10 @@ public class EclipseSynchronizer implements IFlushOperation {
 	public void ensureSyncInfoLoaded(IResource[] resources, int depth) throws CVSException {
 		// get the folders involved
 		IContainer[] folders = getParentFolders(resources, depth);
+		if (folders.length >= MIN_FOLDERS_TO_READ_IN_PARALLEL && CVSProviderPlugin.getPlugin().getSyncInfoReadThreads() > 1) {
+			cacheSyncInfoInBatches(folders);
+			return;
+		}
 		// Cache the sync info for all the folders
 		for (int i = 0; i < folders.length; i++) {
 			IContainer parent = folders[i];
@@ -1427,6 +1488,121 @@ public class EclipseSynchronizer implements IFlushOperation {
 			}
 		}
 	}
+	
+	/*
+	 * Read the Entries files of the folders in parallel and cache the sync info
+	 * for the folders of each project in batches. The files are read without
+	 * holding any lock, so the sync bytes that were read are only cached if the
+	 * cache was not purged in the meantime. Otherwise, and for folders whose
+	 * Entries file could not be read, the sync info is loaded as usual.
+	 */
+	private void cacheSyncInfoInBatches(IContainer[] folders) throws CVSException {
+		int purgeCount = sessionPropertyCache.getPurgeCount();
+		Map syncBytes = readResourceSync(folders);
+		// Group the folders by project, the batches are locked using the project rule
+		Map projects = new HashMap();
+		for (int i = 0; i < folders.length; i++) {
+			IProject project = folders[i].getProject();
+			List projectFolders = (List) projects.get(project);
+			if (projectFolders == null) {
+				projectFolders = new ArrayList();
+				projects.put(project, projectFolders);
+			}
+			projectFolders.add(folders[i]);
+		}
+		for (Iterator iter = projects.values().iterator(); iter.hasNext();) {
+			List projectFolders = (List) iter.next();
+			for (int start = 0; start < projectFolders.size(); start += FOLDERS_PER_BATCH) {
+				List batch = projectFolders.subList(start, Math.min(start + FOLDERS_PER_BATCH, projectFolders.size()));
+				ISchedulingRule rule = null;
+				try {
+					rule = beginBatching(MultiRule.combine((ISchedulingRule[]) batch.toArray(new ISchedulingRule[batch.size()])), null);
+					try {
+						beginOperation();
+						boolean purged = sessionPropertyCache.getPurgeCount() != purgeCount;
+						for (int i = 0; i < batch.size(); i++) {
+							IContainer parent = (IContainer) batch.get(i);
+							if (!purged && syncBytes.containsKey(parent) && !getSyncInfoCacheFor(parent).isResourceSyncInfoCached(parent)) {
+								setCachedResourceSyncForChildren(parent, (byte[][]) syncBytes.get(parent), true /* can modify workspace */);
+							} else {
+								cacheResourceSyncForChildren(parent, true /* can modify workspace */);
+							}
+							cacheFolderSync(parent);
+							cacheFolderIgnores(parent);
+						}
+					} finally {
+						endOperation();
+					}
+				} finally {
+					if (rule != null) endBatching(rule, null);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Read the Entries files of the folders whose resource sync is not cached.
+	 * The files are read by the calling thread and by background jobs. Returns
+	 * a map from the folders to their sync bytes, which may be null. Folders
+	 * whose Entries file could not be read are not in the map.
+	 */
+	private Map readResourceSync(IContainer[] folders) throws CVSException {
+		final List uncached = new ArrayList();
+		for (int i = 0; i < folders.length; i++) {
+			IContainer folder = folders[i];
+			// A quick check outside the lock, the folders are checked again before caching
+			if (!isLinkedResource(folder) && !getSyncInfoCacheFor(folder).isResourceSyncInfoCached(folder)) {
+				uncached.add(folder);
+			}
+		}
+		final Map syncBytes = new HashMap();
+		int threadCount = Math.min(CVSProviderPlugin.getPlugin().getSyncInfoReadThreads(), uncached.size() / MIN_FOLDERS_TO_READ_IN_PARALLEL);
+		Job[] jobs = new Job[Math.max(0, threadCount - 1)];
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i] = new Job(CVSMessages.EclipseSynchronizer_readingSyncInfo) {
+				protected IStatus run(IProgressMonitor monitor) {
+					readResourceSync(uncached, syncBytes);
+					return Status.OK_STATUS;
+				}
+			};
+			jobs[i].setSystem(true);
+			jobs[i].schedule();
+		}
+		try {
+			readResourceSync(uncached, syncBytes);
+		} finally {
+			for (int i = 0; i < jobs.length; i++) {
+				try {
+					jobs[i].join();
+				} catch (InterruptedException e) {
+					throw new OperationCanceledException();
+				}
+			}
+		}
+		return syncBytes;
+	}
+	
+	private static void readResourceSync(List folders, Map syncBytes) {
+		for (;;) {
+			IContainer folder;
+			synchronized (folders) {
+				if (folders.isEmpty())
+					return;
+				folder = (IContainer) folders.remove(folders.size() - 1);
+			}
+			try {
+				byte[][] infos = SyncFileWriter.readAllResourceSync(folder);
+				synchronized (syncBytes) {
+					syncBytes.put(folder, infos);
+				}
+			} catch (CVSException e) {
+				// The folder is loaded again while the lock is held,
+				// which reports the problem to the client
+			} catch (RuntimeException e) {
+				// See above
+			}
+		}
+	}
 
 	/*
 	 * Collect the projects and parent folders of the resources since 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,12 +11,18 @@
 package org.eclipse.team.internal.ccvs.core.resources;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.team.core.TeamException;
 import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.CVSMessages;
 import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
 import org.eclipse.team.internal.ccvs.core.CVSTag;
 import org.eclipse.team.internal.ccvs.core.ICVSFile;
@@ -31,9 +37,20 @@ import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
 
 /**
  * This class can be used to fetch and cache file contents for remote files.
+ * <p>
+ * When the contents of many files are fetched, the files are split into chunks
+ * that are fetched over several sessions in parallel (see
+ * {@link CVSProviderPlugin#getContentFetchSessions()}). Each session streams the
+ * file contents directly into the resource variant cache so the memory used per
+ * session does not depend on the number or size of the files.
  */
 public class FileContentCachingService {
 
+	// Fewer files than this are not worth opening another session for
+	private static final int MIN_FILES_PER_CHUNK = 32;
+	// The number of chunks per session, more chunks balance the load better
+	private static final int CHUNKS_PER_SESSION = 4;
+
 	String[] fileDiffs;
 	private CVSRepositoryLocation repository;
 	private ICVSFolder remoteRoot;
@@ -89,23 +106,21 @@ public class FileContentCachingService {
 	private void cacheFileContents(IProgressMonitor monitor) throws CVSException {
 		String[] files = getUncachedFiles();
 		if (files.length == 0) return;
+		int sessionCount = Math.min(CVSProviderPlugin.getPlugin().getContentFetchSessions(), files.length / MIN_FILES_PER_CHUNK);
 		// Fetch the file contents for all out-of-sync files by running an update
 		// on the remote tree passing the known changed files as arguments
 		monitor.beginTask(null, 10 + files.length * 100);
 		Policy.checkCanceled(monitor);
+		// The first session is opened before any other so that the user
+		// is prompted for authentication at most once
 		Session session = new Session(repository, remoteRoot, false);
 		session.open(Policy.subMonitorFor(monitor, 10), false /* read-only */);
 		try {
 			Policy.checkCanceled(monitor);
-			IStatus status = Command.UPDATE.execute(session,
-				Command.NO_GLOBAL_OPTIONS,
-				new LocalOption[] { Update.IGNORE_LOCAL_CHANGES },
-				files,
-				null,
-				Policy.subMonitorFor(monitor, files.length * 100));
-			if (!status.isOK()) {
-				// No big deal but log the problem anyway
-				CVSProviderPlugin.log (new CVSException(status));
+			if (sessionCount > 1) {
+				fetchInParallel(session, files, sessionCount, monitor);
+			} else {
+				fetchFiles(session, files, Policy.subMonitorFor(monitor, files.length * 100));
 			}
 		} finally {
 			session.close();
@@ -113,6 +128,132 @@ public class FileContentCachingService {
 		}
 	}
 
+	private void fetchFiles(Session session, String[] files, IProgressMonitor monitor) throws CVSException {
+		IStatus status = Command.UPDATE.execute(session,
+			Command.NO_GLOBAL_OPTIONS,
+			new LocalOption[] { Update.IGNORE_LOCAL_CHANGES },
+			files,
+			null,
+			monitor);
+		if (!status.isOK()) {
+			// No big deal but log the problem anyway
+			CVSProviderPlugin.log (new CVSException(status));
+		}
+	}
+
+	/*
+	 * Fetch the files in chunks over the given session and over additional
+	 * sessions that are opened by background jobs. The given session and
+	 * progress monitor are only used by the calling thread.
+	 */
+	private void fetchInParallel(Session session, String[] files, int sessionCount, final IProgressMonitor monitor) throws CVSException {
+		// Sort the files so that the files of a folder end up in the same chunks
+		files = (String[]) files.clone();
+		Arrays.sort(files);
+		final List chunks = new ArrayList();
+		int chunkSize = Math.max(MIN_FILES_PER_CHUNK, (files.length + sessionCount * CHUNKS_PER_SESSION - 1) / (sessionCount * CHUNKS_PER_SESSION));
+		for (int i = 0; i < files.length; i += chunkSize) {
+			String[] chunk = new String[Math.min(chunkSize, files.length - i)];
+			System.arraycopy(files, i, chunk, 0, chunk.length);
+			chunks.add(chunk);
+		}
+		final CVSException[] error = new CVSException[1];
+		// The number of files the jobs fetched that have not been reported to the monitor yet
+		final int[] fetched = new int[1];
+		Job[] jobs = new Job[sessionCount - 1];
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i] = new Job(CVSMessages.FileContentCachingService_fetchJob) {
+				protected IStatus run(IProgressMonitor jobMonitor) {
+					Session jobSession = new Session(repository, remoteRoot, false);
+					try {
+						jobSession.open(new NullProgressMonitor(), false /* read-only */);
+					} catch (CVSException e) {
+						// The server may limit the number of connections,
+						// the remaining sessions fetch the chunks of this one
+						CVSProviderPlugin.log(e);
+						return Status.OK_STATUS;
+					}
+					try {
+						try {
+							String[] chunk;
+							while (!monitor.isCanceled() && (chunk = nextChunk(chunks)) != null) {
+								fetchFiles(jobSession, chunk, new NullProgressMonitor());
+								synchronized (fetched) {
+									fetched[0] += chunk.length;
+								}
+							}
+						} finally {
+							jobSession.close();
+						}
+					} catch (CVSException e) {
+						synchronized (error) {
+							if (error[0] == null)
+								error[0] = e;
+						}
+					} catch (RuntimeException e) {
+						synchronized (error) {
+							if (error[0] == null)
+								error[0] = CVSException.wrapException(e);
+						}
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			jobs[i].setSystem(true);
+			jobs[i].schedule();
+		}
+		boolean interrupted = false;
+		try {
+			String[] chunk;
+			while ((chunk = nextChunk(chunks)) != null) {
+				Policy.checkCanceled(monitor);
+				fetchFiles(session, chunk, Policy.subMonitorFor(monitor, chunk.length * 100));
+				reportFetched(fetched, monitor);
+			}
+		} finally {
+			// Stop the jobs if we failed and wait for the chunks they are still working on
+			synchronized (chunks) {
+				chunks.clear();
+			}
+			for (int i = 0; i < jobs.length; i++) {
+				try {
+					jobs[i].join();
+					reportFetched(fetched, monitor);
+				} catch (InterruptedException e) {
+					// Wait for the job again, the cancelation is reported once all jobs are done
+					interrupted = true;
+					i--;
+				}
+			}
+		}
+		if (error[0] != null)
+			throw error[0];
+		if (interrupted)
+			throw new OperationCanceledException();
+		Policy.checkCanceled(monitor);
+	}
+
+	/*
+	 * Report the files fetched by the jobs since the last call as worked.
+	 */
+	private static void reportFetched(int[] fetched, IProgressMonitor monitor) {
+		int count;
+		synchronized (fetched) {
+			count = fetched[0];
+			fetched[0] = 0;
+		}
+		if (count > 0)
+			monitor.worked(count * 100);
+	}
+
+	private static String[] nextChunk(List chunks) {
+		synchronized (chunks) {
+			if (chunks.isEmpty())
+				return null;
+			return (String[]) chunks.remove(0);
+		}
+	}
+
 	/*
 	 * Only return those file in the diff list that exist remotely and whose contents are not already cached
 	 */
@@ -0,0 +1,548 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.resources;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.team.internal.ccvs.core.*;
+import org.eclipse.team.internal.ccvs.core.client.*;
+import org.eclipse.team.internal.ccvs.core.client.Command.LocalOption;
+import org.eclipse.team.internal.ccvs.core.client.listeners.*;
+import org.eclipse.team.internal.ccvs.core.connection.CVSServerException;
+import org.eclipse.team.internal.ccvs.core.util.Util;
+
+/**
+ * A cache of the complete log of remote files that is kept on disk across
+ * sessions. The log of a file is stored under its repository location and
+ * path, together with the head revision, the total number of revisions and
+ * a digest of the symbolic names the server reported for the file.
+ * <p>
+ * When the log of a cached file is requested again, only the revisions
+ * committed since the newest cached revision are fetched. If the server
+ * reports the same head revision and number of revisions, the cached log is
+ * used as is. Otherwise the new revisions are merged into the cached log if
+ * the symbolic names did not change and the merged log has as many revisions
+ * as the server reports; if not, the complete log is fetched again.
+ * </p><p>
+ * The total size of the cached logs is bounded, the least recently used
+ * logs are removed first.
+ * </p>
+ */
+public class LogHistoryCache {
+
+	private static final int VERSION = 1;
+
+	private static final String END_OF_FILE = "============================================================================="; //$NON-NLS-1$
+	private static final String HEAD = "head:"; //$NON-NLS-1$
+	private static final String SYMBOLIC_NAMES = "symbolic names:"; //$NON-NLS-1$
+	private static final String KEYWORD_SUBSTITUTION = "keyword substitution:"; //$NON-NLS-1$
+	private static final String TOTAL_REVISIONS = "total revisions:"; //$NON-NLS-1$
+	private static final String SELECTED_REVISIONS = "selected revisions:"; //$NON-NLS-1$
+	private static final String DESCRIPTION = "description:"; //$NON-NLS-1$
+
+	private static final String LOG_FILE_SUFFIX = ".log"; //$NON-NLS-1$
+	private static final String TEMP_FILE_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	private final File directory;
+	private long maximumSize;
+	// the total size of the cached logs or -1 if it is not known
+	private long size = -1;
+
+	/*
+	 * The log of a file and the header it was fetched with
+	 */
+	private static class History {
+		String head;
+		int totalRevisions;
+		String symbolicNames;
+		List revisions = new ArrayList();
+
+		ILogEntry[] toLogEntries(RemoteFile file) {
+			ILogEntry[] entries = new ILogEntry[revisions.size()];
+			for (int i = 0; i < entries.length; i++) {
+				entries[i] = ((Revision) revisions.get(i)).toLogEntry(file);
+			}
+			return entries;
+		}
+
+		Date getNewestDate() {
+			Date newest = null;
+			for (Iterator iter = revisions.iterator(); iter.hasNext();) {
+				Date date = ((Revision) iter.next()).date;
+				if (date == null)
+					return null;
+				if (newest == null || date.after(newest))
+					newest = date;
+			}
+			return newest;
+		}
+
+		/*
+		 * Return this log if the server reported the same header, this log merged with
+		 * the revisions fetched since the given date or null if the log must be fetched again
+		 */
+		History merge(HistoryListener listener, Date since) {
+			History fetched = listener.getHistory();
+			if (fetched.head == null || fetched.totalRevisions < 0 || !fetched.symbolicNames.equals(symbolicNames))
+				return null;
+			if (fetched.head.equals(head) && fetched.totalRevisions == totalRevisions)
+				return this;
+			Map fetchedRevisions = new HashMap();
+			for (Iterator iter = fetched.revisions.iterator(); iter.hasNext();) {
+				Revision revision = (Revision) iter.next();
+				fetchedRevisions.put(revision.revision, revision);
+			}
+			List merged = new ArrayList(fetched.revisions);
+			for (Iterator iter = revisions.iterator(); iter.hasNext();) {
+				Revision revision = (Revision) iter.next();
+				Revision fetchedRevision = (Revision) fetchedRevisions.get(revision.revision);
+				if (fetchedRevision == null) {
+					if (!revision.date.before(since)) {
+						// A revision that should have been fetched again is gone
+						return null;
+					}
+					merged.add(revision);
+				} else if (!revision.date.equals(fetchedRevision.date)) {
+					return null;
+				}
+			}
+			if (merged.size() != fetched.totalRevisions)
+				return null;
+			fetched.revisions = merged;
+			return fetched;
+		}
+
+		static History read(DataInputStream in) throws IOException {
+			History history = new History();
+			history.head = readString(in);
+			history.totalRevisions = in.readInt();
+			history.symbolicNames = readString(in);
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				history.revisions.add(Revision.read(in));
+			}
+			return history;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			writeString(out, head);
+			out.writeInt(totalRevisions);
+			writeString(out, symbolicNames);
+			out.writeInt(revisions.size());
+			for (Iterator iter = revisions.iterator(); iter.hasNext();) {
+				((Revision) iter.next()).write(out);
+			}
+		}
+	}
+
+	/*
+	 * The contents of a log entry without the remote file it belongs to
+	 */
+	private static class Revision {
+		String revision;
+		String author;
+		Date date;
+		String comment;
+		String state;
+		CVSTag[] tags;
+		CVSTag[] branches;
+		String[] branchRevisions;
+
+		static Revision fromLogEntry(ILogEntry entry) {
+			Revision revision = new Revision();
+			revision.revision = entry.getRevision();
+			revision.author = entry.getAuthor();
+			revision.date = entry.getDate();
+			revision.comment = entry.getComment();
+			revision.state = entry.getState();
+			revision.tags = entry.getTags();
+			revision.branches = entry.getBranches();
+			revision.branchRevisions = entry instanceof LogEntry ? ((LogEntry) entry).getBranchRevisions() : new String[0];
+			return revision;
+		}
+
+		ILogEntry toLogEntry(RemoteFile file) {
+			return new LogEntry(file, revision, author, date, comment, state, tags, branches, branchRevisions);
+		}
+
+		static Revision read(DataInputStream in) throws IOException {
+			Revision revision = new Revision();
+			revision.revision = readString(in);
+			revision.author = readString(in);
+			long time = in.readLong();
+			revision.date = time == -1 ? null : new Date(time);
+			revision.comment = readString(in);
+			revision.state = readString(in);
+			revision.tags = readTags(in);
+			revision.branches = readTags(in);
+			revision.branchRevisions = new String[in.readInt()];
+			for (int i = 0; i < revision.branchRevisions.length; i++) {
+				revision.branchRevisions[i] = readString(in);
+			}
+			return revision;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			writeString(out, revision);
+			writeString(out, author);
+			out.writeLong(date == null ? -1 : date.getTime());
+			writeString(out, comment);
+			writeString(out, state);
+			writeTags(out, tags);
+			writeTags(out, branches);
+			out.writeInt(branchRevisions.length);
+			for (int i = 0; i < branchRevisions.length; i++) {
+				writeString(out, branchRevisions[i]);
+			}
+		}
+
+		private static CVSTag[] readTags(DataInputStream in) throws IOException {
+			CVSTag[] tags = new CVSTag[in.readInt()];
+			for (int i = 0; i < tags.length; i++) {
+				String name = readString(in);
+				String branchRevision = readString(in);
+				tags[i] = new CVSTag(name, branchRevision, in.readInt());
+			}
+			return tags;
+		}
+
+		private static void writeTags(DataOutputStream out, CVSTag[] tags) throws IOException {
+			out.writeInt(tags.length);
+			for (int i = 0; i < tags.length; i++) {
+				writeString(out, tags[i].getName());
+				writeString(out, tags[i].getBranchRevision());
+				out.writeInt(tags[i].getType());
+			}
+		}
+	}
+
+	/*
+	 * A log listener that collects the entries of one file and records the
+	 * header of its log
+	 */
+	private static class HistoryListener extends LogListener {
+		private final EntryCollector collector;
+		private boolean inHeader = true;
+		private boolean inSymbolicNames;
+		private String head;
+		private int totalRevisions = -1;
+		private StringBuffer symbolicNames = new StringBuffer();
+
+		HistoryListener(RemoteFile file, EntryCollector collector) {
+			super(file, collector);
+			this.collector = collector;
+		}
+
+		public IStatus messageLine(String line, ICVSRepositoryLocation location, ICVSFolder commandRoot, IProgressMonitor monitor) {
+			if (line.equals(END_OF_FILE)) {
+				inHeader = true;
+			} else if (inHeader) {
+				if (inSymbolicNames) {
+					if (line.startsWith(KEYWORD_SUBSTITUTION)) {
+						inSymbolicNames = false;
+					} else {
+						symbolicNames.append(line).append('\n');
+					}
+				} else if (line.startsWith(HEAD)) {
+					head = line.substring(HEAD.length()).trim();
+				} else if (line.startsWith(SYMBOLIC_NAMES)) {
+					inSymbolicNames = true;
+				} else if (line.startsWith(TOTAL_REVISIONS)) {
+					// total revisions: 5;	selected revisions: 2
+					totalRevisions = parseCount(line, TOTAL_REVISIONS);
+					if (parseCount(line, SELECTED_REVISIONS) == 0) {
+						// There is no new revision, which the log listener would take
+						// for the log of a branch without commits
+						return OK;
+					}
+				} else if (line.startsWith(DESCRIPTION)) {
+					inHeader = false;
+				}
+			}
+			return super.messageLine(line, location, commandRoot, monitor);
+		}
+
+		private static int parseCount(String line, String label) {
+			int start = line.indexOf(label);
+			if (start == -1)
+				return -1;
+			start += label.length();
+			int end = line.indexOf(';', start);
+			try {
+				return Integer.parseInt(line.substring(start, end == -1 ? line.length() : end).trim());
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		ILogEntry[] getEntries() {
+			return collector.getEntries();
+		}
+
+		History getHistory() {
+			History history = new History();
+			history.head = head;
+			history.totalRevisions = totalRevisions;
+			history.symbolicNames = digest(symbolicNames.toString());
+			ILogEntry[] entries = getEntries();
+			for (int i = 0; i < entries.length; i++) {
+				history.revisions.add(Revision.fromLogEntry(entries[i]));
+			}
+			return history;
+		}
+	}
+
+	private static class EntryCollector implements ILogEntryListener {
+		private final String path;
+		private final List entries = new ArrayList();
+		EntryCollector(RemoteFile file) {
+			this.path = file.getRepositoryRelativePath();
+		}
+		public void handleLogEntryReceived(ILogEntry entry) {
+			if (entry.getRemoteFile().getRepositoryRelativePath().equals(path)) {
+				entries.add(entry);
+			}
+		}
+		ILogEntry[] getEntries() {
+			return (ILogEntry[]) entries.toArray(new ILogEntry[entries.size()]);
+		}
+	}
+
+	/**
+	 * Create a cache that keeps the logs in the given directory.
+	 * @param directory the directory of the cache
+	 * @param maximumSize the maximum total size in bytes of the cached logs,
+	 * 0 disables the cache
+	 */
+	public LogHistoryCache(File directory, long maximumSize) {
+		this.directory = directory;
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Set the maximum total size of the cached logs. Logs are removed if the
+	 * cached logs are larger.
+	 * @param maximumSize the maximum size in bytes, 0 disables the cache
+	 */
+	public synchronized void setMaximumSize(long maximumSize) {
+		this.maximumSize = maximumSize;
+		trim();
+	}
+
+	/**
+	 * Return the log entries of the given file. The entries are fetched over
+	 * the given open session, using the cached log of the file if there is one.
+	 *
+	 * @param session an open session
+	 * @param file the remote file
+	 * @param monitor a progress monitor
+	 * @return the log entries of the file
+	 * @throws CVSException if the log could not be fetched
+	 */
+	public ILogEntry[] getLogEntries(Session session, RemoteFile file, IProgressMonitor monitor) throws CVSException {
+		monitor = Policy.monitorFor(monitor);
+		monitor.beginTask(null, 100);
+		try {
+			String key = Util.appendPath(file.getRepository().getLocation(false), file.getRepositoryRelativePath());
+			History cached = read(key);
+			if (cached != null) {
+				Date since = cached.getNewestDate();
+				if (since != null) {
+					LocalOption option = Log.makeDateOption(">=" + new CVSTag(since).getName()); //$NON-NLS-1$
+					HistoryListener listener = fetch(session, file, new LocalOption[] { option }, Policy.subMonitorFor(monitor, 50));
+					History merged = cached.merge(listener, since);
+					if (merged != null) {
+						if (merged != cached)
+							write(key, merged);
+						return merged.toLogEntries(file);
+					}
+				}
+			}
+			HistoryListener listener = fetch(session, file, Command.NO_LOCAL_OPTIONS, Policy.subMonitorFor(monitor, cached == null ? 100 : 50));
+			History history = listener.getHistory();
+			if (history.head != null && history.totalRevisions == history.revisions.size())
+				write(key, history);
+			return listener.getEntries();
+		} finally {
+			monitor.done();
+		}
+	}
+
+	private HistoryListener fetch(Session session, RemoteFile file, LocalOption[] options, IProgressMonitor monitor) throws CVSException {
+		HistoryListener listener = new HistoryListener(file, new EntryCollector(file));
+		IStatus status = Command.LOG.execute(session, Command.NO_GLOBAL_OPTIONS, options,
+			new ICVSResource[] { file }, listener, monitor);
+		if (status.getCode() == CVSStatus.SERVER_ERROR) {
+			throw new CVSServerException(status);
+		}
+		return listener;
+	}
+
+	/**
+	 * Remove all the cached logs.
+	 */
+	public synchronized void clear() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				files[i].delete();
+			}
+		}
+		size = -1;
+	}
+
+	private synchronized History read(String key) {
+		if (maximumSize <= 0)
+			return null;
+		File file = getFile(key);
+		if (!file.exists())
+			return null;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != VERSION || !key.equals(readString(in)))
+				return null;
+			History history = History.read(in);
+			file.setLastModified(System.currentTimeMillis());
+			return history;
+		} catch (IOException e) {
+			// The file is replaced when the log is fetched
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	private synchronized void write(String key, History history) {
+		if (maximumSize <= 0)
+			return;
+		File file = getFile(key);
+		File tempFile = new File(directory, file.getName() + TEMP_FILE_SUFFIX);
+		directory.mkdirs();
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(VERSION);
+			writeString(out, key);
+			history.write(out);
+			out.close();
+			out = null;
+			long oldLength = file.length();
+			file.delete();
+			if (!tempFile.renameTo(file)) {
+				tempFile.delete();
+				size = -1;
+				return;
+			}
+			if (size != -1)
+				size += file.length() - oldLength;
+			trim();
+		} catch (IOException e) {
+			CVSProviderPlugin.log(IStatus.WARNING, "Could not cache the log of " + key, e); //$NON-NLS-1$
+			close(out);
+			tempFile.delete();
+		}
+	}
+
+	/*
+	 * Remove the least recently used logs until the total size is three
+	 * quarters of the maximum size if it exceeds the maximum size
+	 */
+	private void trim() {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		if (size == -1) {
+			size = 0;
+			for (int i = 0; i < files.length; i++) {
+				size += files[i].length();
+			}
+		}
+		if (size <= maximumSize)
+			return;
+		Arrays.sort(files, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				long modified1 = ((File) o1).lastModified();
+				long modified2 = ((File) o2).lastModified();
+				return modified1 < modified2 ? -1 : (modified1 == modified2 ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < files.length && size > maximumSize / 4 * 3; i++) {
+			long length = files[i].length();
+			if (files[i].delete())
+				size -= length;
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(directory, digest(key) + LOG_FILE_SUFFIX);
+	}
+
+	private static String digest(String string) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(string.getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+			StringBuffer buffer = new StringBuffer(digest.length * 2);
+			for (int i = 0; i < digest.length; i++) {
+				buffer.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+				buffer.append(Character.forDigit(digest[i] & 0xF, 16));
+			}
+			return buffer.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(string.hashCode());
+		} catch (UnsupportedEncodingException e) {
+			return Integer.toHexString(string.hashCode());
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes("UTF-8"); //$NON-NLS-1$
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void close(InputStream in) {
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// Ignore
+			}
+		}
+	}
+
+	private static void close(OutputStream out) {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// Ignore
+			}
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -283,16 +283,8 @@ public class RemoteFile extends RemoteResource implements ICVSRemoteFile  {
 			QuietOption quietness = CVSProviderPlugin.getPlugin().getQuietness();
 			try {
 				CVSProviderPlugin.getPlugin().setQuietness(Command.VERBOSE);
-				LogEntryListener listener = new LogEntryListener();  
-				IStatus status = Command.LOG.execute(
-					session,
-					Command.NO_GLOBAL_OPTIONS, Command.NO_LOCAL_OPTIONS,
-					new ICVSResource[] { RemoteFile.this }, new LogListener(RemoteFile.this, listener),
-					Policy.subMonitorFor(monitor, 90));
-				if (status.getCode() == CVSStatus.SERVER_ERROR) {
-					throw new CVSServerException(status);
-				}
-				return listener.getEntries();
+				return CVSProviderPlugin.getPlugin().getLogHistoryCache().getLogEntries(
+					session, RemoteFile.this, Policy.subMonitorFor(monitor, 90));
 			} finally {
 				CVSProviderPlugin.getPlugin().setQuietness(quietness);
 				monitor.done();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -39,6 +39,12 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 	/*package*/ static final FileNameMatcher NULL_IGNORES = new FileNameMatcher();
 	private static final FolderSyncInfo NULL_FOLDER_SYNC_INFO = new FolderSyncInfo("dummy-repo", "dummy-root", null, false); //$NON-NLS-1$ //$NON-NLS-2$
 	
+	// estimated number of bytes used by a session property besides its value
+	private static final int SESSION_PROPERTY_OVERHEAD = 64;
+
+	// incremented whenever the cache is purged (see getPurgeCount())
+	private volatile int purgeCount = 0;
+	
 	private QualifiedName FOLDER_DIRTY_STATE_KEY = new QualifiedName(CVSProviderPlugin.ID, "folder-dirty-state-cached"); //$NON-NLS-1$
 	
 	// defer to the sychronizer if there is no sync info
@@ -140,6 +146,7 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 	 * @return the resources whose sync info was flushed
 	 */
 	/*package*/ IResource[] purgeCache(IContainer container, boolean deep) throws CVSException {
+		purgeCount++;
 		if (! container.exists()) return new IResource[0];
 		try {
 			Set flushed = new HashSet();
@@ -166,8 +173,17 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 		}
 	}
 	
+	/**
+	 * Returns the number of times the cache has been purged. Sync info that
+	 * was read from disk without holding the synchronizer lock may only be
+	 * cached if the cache was not purged since it was read.
+	 */
+	/*package*/ int getPurgeCount() {
+		return purgeCount;
+	}
+	
 	/* package*/ void purgeResourceSyncCache(IResource resource) throws CVSException {
-		safeSetSessionProperty(resource, RESOURCE_SYNC_KEY, null);
+		setStoredSyncBytes(resource, null);
 		EclipseSynchronizer.getInstance().adjustDirtyStateRecursively(resource, RECOMPUTE_INDICATOR);
 	}
 	
@@ -219,11 +235,11 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 	}
 	
 	private void internalSetDirtyIndicator(IFile file, String indicator) throws CVSException {
-		safeSetSessionProperty(file, IS_DIRTY, indicator);
+		setStoredDirtyIndicator(file, indicator);
 	}
 	
 	private String internalGetDirtyIndicator(IFile file, boolean threadSafeAccess) throws CVSException {
-		String di = (String)safeGetSessionProperty(file, IS_DIRTY);
+		String di = getStoredDirtyIndicator(file);
 		if(di == null) {
 			di = RECOMPUTE_INDICATOR;
 		}
@@ -272,7 +288,7 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 	/*package*/ void flushDirtyCache(IResource resource) throws CVSException {
 		if (resource.exists()) {
 			if (resource.getType() == IResource.FILE) {
-				safeSetSessionProperty(resource, IS_DIRTY, null);
+				setStoredDirtyIndicator((IFile)resource, null);
 			} else {
 				safeSetSessionProperty(resource, IS_DIRTY, null);
 				flushDirtyStateFromDisk((IContainer)resource);
@@ -290,7 +306,7 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 	 */
 	/*package*/ boolean isSyncInfoLoaded(IContainer parent) throws CVSException {
 		if (parent.getFolder(new Path(SyncFileWriter.CVS_DIRNAME)).exists()) {
-			if (safeGetSessionProperty(parent, RESOURCE_SYNC_CACHED_KEY) == null)
+			if (!isResourceSyncInfoCached(parent))
 				return false;
 			if (safeGetSessionProperty(parent, FOLDER_SYNC_KEY) == null)
 				return false;
@@ -304,7 +320,7 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 	 * @see org.eclipse.team.internal.ccvs.core.resources.SyncInfoCache#getCachedSyncBytes(org.eclipse.core.resources.IResource, boolean)
 	 */
 	byte[] getCachedSyncBytes(IResource resource, boolean threadSafeAccess) throws CVSException {
-		byte[] bytes = (byte[])safeGetSessionProperty(resource, RESOURCE_SYNC_KEY);
+		byte[] bytes = getStoredSyncBytes(resource);
 		// If we are not thread safe, just return whatever was found in the session property
         if (!threadSafeAccess)
             return bytes;
@@ -324,13 +340,75 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 					// Return null if it is a gender change
 					bytes = null;
 				} else {
-					safeSetSessionProperty(resource, RESOURCE_SYNC_KEY, ResourceSyncInfo.convertFromDeletion(bytes));
+					setStoredSyncBytes(resource, ResourceSyncInfo.convertFromDeletion(bytes));
 				}
 			}
 		}
 		return bytes;
 	}
 
+	/**
+	 * Returns the sync bytes stored for the resource, or null if there are none.
+	 * Subclasses may store the sync bytes elsewhere than in a session property.
+	 */
+	/*package*/ byte[] getStoredSyncBytes(IResource resource) throws CVSException {
+		return (byte[])safeGetSessionProperty(resource, RESOURCE_SYNC_KEY);
+	}
+	
+	/**
+	 * Stores the sync bytes for the resource; if null, removes them.
+	 */
+	/*package*/ void setStoredSyncBytes(IResource resource, byte[] syncBytes) throws CVSException {
+		safeSetSessionProperty(resource, RESOURCE_SYNC_KEY, syncBytes);
+	}
+	
+	/**
+	 * Returns the dirty indicator stored for the file, or null if there is none.
+	 */
+	/*package*/ String getStoredDirtyIndicator(IFile file) throws CVSException {
+		return (String)safeGetSessionProperty(file, IS_DIRTY);
+	}
+	
+	/**
+	 * Stores the dirty indicator for the file; if null, removes it.
+	 */
+	/*package*/ void setStoredDirtyIndicator(IFile file, String indicator) throws CVSException {
+		safeSetSessionProperty(file, IS_DIRTY, indicator);
+	}
+	
+	/**
+	 * The resource has been deleted. Session properties are discarded together
+	 * with the resource so there is nothing to do, but subclasses that store the
+	 * state of resources elsewhere must discard it.
+	 */
+	/*package*/ void resourceDeleted(IResource resource) throws CVSException {
+		// Nothing to do
+	}
+
+	/**
+	 * Returns the number of children of the container whose sync bytes are cached,
+	 * the number of bytes of their sync bytes and an estimate of the memory
+	 * used to cache them.
+	 */
+	/*package*/ long[] getMemoryStatistics(IContainer container) throws CVSException {
+		long[] statistics = new long[3];
+		try {
+			IResource[] members = container.members();
+			for (int i = 0; i < members.length; i++) {
+				byte[] syncBytes = getStoredSyncBytes(members[i]);
+				if (syncBytes != null) {
+					statistics[0]++;
+					statistics[1] += syncBytes.length;
+					// the array and the session property map entry
+					statistics[2] += syncBytes.length + SESSION_PROPERTY_OVERHEAD;
+				}
+			}
+		} catch (CoreException e) {
+			throw CVSException.wrapException(e);
+		}
+		return statistics;
+	}
+
 	Object safeGetSessionProperty(IResource resource, QualifiedName key) throws CVSException {
 		try {
 			return resource.getSessionProperty(key);
@@ -367,7 +445,7 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 			syncBytes = ResourceSyncInfo.convertFromDeletion(syncBytes);
 		}
 		// Put the sync bytes into the cache
-		safeSetSessionProperty(resource, RESOURCE_SYNC_KEY, syncBytes);
+		setStoredSyncBytes(resource, syncBytes);
 		// Ensure the synchronizer is clear
 		if (canModifyWorkspace && synchronizerCache.getCachedSyncBytes(resource, true) != null) {
 			synchronizerCache.setCachedSyncBytes(resource, null, canModifyWorkspace);
@@ -465,7 +543,9 @@ import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 	/* package*/ void purgeDirtyCache(IResource resource) throws CVSException {
 		if (! resource.exists()) return;
 		try {
-			if (resource.getType() != IResource.ROOT) {
+			if (resource.getType() == IResource.FILE) {
+				setStoredDirtyIndicator((IFile)resource, null);
+			} else if (resource.getType() != IResource.ROOT) {
 				safeSetSessionProperty(resource, IS_DIRTY, null);
 			}
 			if (resource.getType() != IResource.FILE) {
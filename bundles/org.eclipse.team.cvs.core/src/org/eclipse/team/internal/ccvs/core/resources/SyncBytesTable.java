@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.core.resources;
+
+/**
+ * Holds the sync bytes and the dirty indicators of the children of a folder.
+ * The children are found by name in an open addressing hash table and the
+ * sync bytes of all children are kept in one byte array, so a folder costs a
+ * handful of arrays instead of two session properties per child. The arrays
+ * are only allocated when the first child is added, sized for the expected
+ * number of children if it is known.
+ * <p>
+ * The table is accessed without holding the synchronizer lock by the
+ * non thread safe accessors of the cache, so all methods are synchronized.
+ * </p>
+ * <p>
+ * This class is public for testing only.
+ * </p>
+ */
+public final class SyncBytesTable {
+
+	private static final int MIN_CAPACITY = 4;
+	private static final int MIN_ARENA_SIZE = 64;
+
+	private static final byte NO_INDICATOR = 0;
+	private static final byte IS_DIRTY = 1;
+	private static final byte NOT_DIRTY = 2;
+	private static final byte RECOMPUTE = 3;
+
+	// the table assumes that an object reference takes this many bytes
+	private static final int REFERENCE_SIZE = 8;
+
+	// the arrays are null until the first child is added
+	private String[] names;
+	// the offset of the sync bytes of each child in the arena
+	private int[] offsets;
+	// the length of the sync bytes of each child or -1 if it has none
+	private int[] lengths;
+	private byte[] indicators;
+	private int size = 0;
+	private int expectedSize;
+
+	private byte[] arena;
+	private int arenaEnd = 0;
+	private int expectedArenaSize;
+	// the number of bytes of the arena that are no longer used
+	private int garbage = 0;
+
+	// whether the sync bytes of all children have been loaded
+	private boolean cached = false;
+
+	/**
+	 * Creates an empty table.
+	 */
+	public SyncBytesTable() {
+		this(0, 0);
+	}
+
+	/**
+	 * Creates an empty table whose arrays are sized for the given number of
+	 * children and sync bytes once the first child is added.
+	 * @param expectedSize the expected number of children
+	 * @param expectedSyncBytesSize the expected number of bytes of sync bytes
+	 */
+	public SyncBytesTable(int expectedSize, int expectedSyncBytesSize) {
+		this.expectedSize = expectedSize;
+		this.expectedArenaSize = expectedSyncBytesSize;
+	}
+
+	/**
+	 * Returns a copy of the sync bytes of the child with the given name or
+	 * <code>null</code> if there are none.
+	 */
+	public synchronized byte[] getSyncBytes(String name) {
+		int index = indexOf(name);
+		if (index == -1 || lengths[index] == -1) return null;
+		byte[] syncBytes = new byte[lengths[index]];
+		System.arraycopy(arena, offsets[index], syncBytes, 0, syncBytes.length);
+		return syncBytes;
+	}
+
+	/**
+	 * Sets the sync bytes of the child with the given name. The bytes are
+	 * copied. If <code>null</code>, the sync bytes of the child are removed.
+	 */
+	public synchronized void setSyncBytes(String name, byte[] syncBytes) {
+		int index = indexOf(name);
+		if (syncBytes == null) {
+			if (index == -1 || lengths[index] == -1) return;
+			garbage += lengths[index];
+			lengths[index] = -1;
+			if (indicators[index] == NO_INDICATOR)
+				remove(index);
+			return;
+		}
+		if (index == -1) {
+			index = add(name);
+		}
+		if (lengths[index] == syncBytes.length) {
+			// Overwrite in place
+			System.arraycopy(syncBytes, 0, arena, offsets[index], syncBytes.length);
+			return;
+		}
+		if (lengths[index] != -1) {
+			garbage += lengths[index];
+			lengths[index] = -1;
+		}
+		if (arena == null) {
+			arena = new byte[Math.max(Math.max(expectedArenaSize, MIN_ARENA_SIZE), syncBytes.length)];
+		} else if (arenaEnd + syncBytes.length > arena.length) {
+			if (garbage > arenaEnd / 2) {
+				compact();
+			}
+			if (arenaEnd + syncBytes.length > arena.length) {
+				byte[] newArena = new byte[Math.max(arena.length * 2, arenaEnd + syncBytes.length)];
+				System.arraycopy(arena, 0, newArena, 0, arenaEnd);
+				arena = newArena;
+			}
+		}
+		System.arraycopy(syncBytes, 0, arena, arenaEnd, syncBytes.length);
+		offsets[index] = arenaEnd;
+		lengths[index] = syncBytes.length;
+		arenaEnd += syncBytes.length;
+	}
+
+	/**
+	 * Returns the dirty indicator of the child with the given name or
+	 * <code>null</code> if there is none. The indicator is one of the
+	 * constants of <code>SyncInfoCache</code>.
+	 */
+	public synchronized String getDirtyIndicator(String name) {
+		int index = indexOf(name);
+		if (index == -1) return null;
+		switch (indicators[index]) {
+			case IS_DIRTY :
+				return SyncInfoCache.IS_DIRTY_INDICATOR;
+			case NOT_DIRTY :
+				return SyncInfoCache.NOT_DIRTY_INDICATOR;
+			case RECOMPUTE :
+				return SyncInfoCache.RECOMPUTE_INDICATOR;
+			default :
+				return null;
+		}
+	}
+
+	/**
+	 * Sets the dirty indicator of the child with the given name. If
+	 * <code>null</code>, the indicator of the child is removed.
+	 */
+	public synchronized void setDirtyIndicator(String name, String indicator) {
+		byte value;
+		if (indicator == null) {
+			value = NO_INDICATOR;
+		} else if (indicator.equals(SyncInfoCache.IS_DIRTY_INDICATOR)) {
+			value = IS_DIRTY;
+		} else if (indicator.equals(SyncInfoCache.NOT_DIRTY_INDICATOR)) {
+			value = NOT_DIRTY;
+		} else if (indicator.equals(SyncInfoCache.RECOMPUTE_INDICATOR)) {
+			value = RECOMPUTE;
+		} else {
+			throw new IllegalArgumentException(indicator);
+		}
+		int index = indexOf(name);
+		if (index == -1) {
+			if (value == NO_INDICATOR) return;
+			index = add(name);
+		}
+		indicators[index] = value;
+		if (value == NO_INDICATOR && lengths[index] == -1)
+			remove(index);
+	}
+
+	/**
+	 * Removes the sync bytes and the dirty indicator of the child with the
+	 * given name.
+	 */
+	public synchronized void remove(String name) {
+		int index = indexOf(name);
+		if (index == -1) return;
+		if (lengths[index] != -1)
+			garbage += lengths[index];
+		remove(index);
+	}
+
+	public synchronized boolean isCached() {
+		return cached;
+	}
+
+	public synchronized void setCached(boolean cached) {
+		this.cached = cached;
+	}
+
+	/**
+	 * Returns the number of children that have sync bytes or a dirty indicator.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes of sync bytes held by the table.
+	 */
+	public synchronized int getSyncBytesSize() {
+		return arenaEnd - garbage;
+	}
+
+	/**
+	 * Returns an estimate of the number of bytes used by the table, not
+	 * counting the names of the children which are shared with the resources.
+	 */
+	public synchronized long getMemorySize() {
+		long memory = 0;
+		if (arena != null)
+			memory += arena.length;
+		if (names != null)
+			memory += (long)names.length * (REFERENCE_SIZE + 4 + 4 + 1);
+		return memory;
+	}
+
+	/**
+	 * Returns the number of slots of the hash table, 0 if no child has been
+	 * added yet.
+	 */
+	public synchronized int getCapacity() {
+		return names == null ? 0 : names.length;
+	}
+
+	/**
+	 * Returns the length of the array that holds the sync bytes, 0 if no
+	 * sync bytes have been set yet.
+	 */
+	public synchronized int getArenaSize() {
+		return arena == null ? 0 : arena.length;
+	}
+
+	private int indexOf(String name) {
+		if (names == null) return -1;
+		int mask = names.length - 1;
+		for (int index = name.hashCode() & mask;; index = (index + 1) & mask) {
+			String current = names[index];
+			if (current == null) return -1;
+			if (current.equals(name)) return index;
+		}
+	}
+
+	private int add(String name) {
+		if (names == null) {
+			int capacity = MIN_CAPACITY;
+			while (Math.max(expectedSize, 1) * 4 > capacity * 3) {
+				capacity *= 2;
+			}
+			names = new String[capacity];
+			offsets = new int[capacity];
+			lengths = new int[capacity];
+			indicators = new byte[capacity];
+		} else if ((size + 1) * 4 > names.length * 3) {
+			rehash(names.length * 2);
+		}
+		int mask = names.length - 1;
+		int index = name.hashCode() & mask;
+		while (names[index] != null) {
+			index = (index + 1) & mask;
+		}
+		names[index] = name;
+		lengths[index] = -1;
+		indicators[index] = NO_INDICATOR;
+		size++;
+		return index;
+	}
+
+	/*
+	 * Removes the entry at the given index and moves the entries that follow
+	 * it in the same run back so that no entry becomes unreachable.
+	 */
+	private void remove(int index) {
+		int mask = names.length - 1;
+		names[index] = null;
+		size--;
+		int free = index;
+		for (int next = (index + 1) & mask; names[next] != null; next = (next + 1) & mask) {
+			int home = names[next].hashCode() & mask;
+			// Move the entry if its home slot is not between the free slot and its slot
+			if (free <= next ? (home <= free || home > next) : (home <= free && home > next)) {
+				names[free] = names[next];
+				offsets[free] = offsets[next];
+				lengths[free] = lengths[next];
+				indicators[free] = indicators[next];
+				names[next] = null;
+				free = next;
+			}
+		}
+	}
+
+	private void rehash(int capacity) {
+		String[] oldNames = names;
+		int[] oldOffsets = offsets;
+		int[] oldLengths = lengths;
+		byte[] oldIndicators = indicators;
+		names = new String[capacity];
+		offsets = new int[capacity];
+		lengths = new int[capacity];
+		indicators = new byte[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldNames.length; i++) {
+			if (oldNames[i] == null) continue;
+			int index = oldNames[i].hashCode() & mask;
+			while (names[index] != null) {
+				index = (index + 1) & mask;
+			}
+			names[index] = oldNames[i];
+			offsets[index] = oldOffsets[i];
+			lengths[index] = oldLengths[i];
+			indicators[index] = oldIndicators[i];
+		}
+	}
+
+	/*
+	 * Copies the sync bytes that are still used to the start of a new arena.
+	 */
+	private void compact() {
+		int live = arenaEnd - garbage;
+		byte[] newArena = new byte[Math.max(MIN_ARENA_SIZE, live * 2)];
+		int end = 0;
+		for (int i = 0; i < names.length; i++) {
+			if (names[i] == null || lengths[i] == -1) continue;
+			System.arraycopy(arena, offsets[i], newArena, end, lengths[i]);
+			offsets[i] = end;
+			end += lengths[i];
+		}
+		arena = newArena;
+		arenaEnd = end;
+		garbage = 0;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -137,6 +137,18 @@ import org.eclipse.team.internal.ccvs.core.syncinfo.FolderSyncInfo;
 	 */
 	/*package*/ abstract void setResourceSyncInfoCached(IContainer container) throws CVSException;
 
+	/**
+	 * Indicate to the low level cache that the given sync info of the direct
+	 * children of the provided container is about to be set. The cache may
+	 * use this to size the storage of the container.
+	 * 
+	 * @param container
+	 * @param infos the sync bytes of the children
+	 */
+	/*package*/ void prepareResourceSyncInfo(IContainer container, byte[][] infos) throws CVSException {
+		// Nothing to prepare by default
+	}
+
 	/**
 	 * Return whether the cache also caches dirty state or recomputes it
 	 * each time it is requested.
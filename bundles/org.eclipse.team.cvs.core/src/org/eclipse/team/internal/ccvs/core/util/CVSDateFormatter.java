@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,29 +22,42 @@ import java.util.TimeZone;
  * required in the Entry file is ISO C asctime() function (Sun Apr  7 01:29:26 1996).
  * <p>
  * To be compatible with asctime(), the day field in the entryline format is
- * padded with a space and not a zero. Most other CVS clients use string comparison 
+ * padded with a space and not a zero. Most other CVS clients use string comparison
  * for timestamps based on the result of the C function asctime().
  * </p>
+ * <p>
+ * The methods may be called from any thread without locking. Timestamps in the
+ * usual formats are parsed and formatted by hand from their fixed fields. Other
+ * text, e.g. with lowercase or long month names, and dates before 1970 are
+ * handled by a <code>SimpleDateFormat</code> that is created for the call.
+ * </p>
  */
 public class CVSDateFormatter {
-	
+
 	private static final String ENTRYLINE_FORMAT = "E MMM dd HH:mm:ss yyyy"; //$NON-NLS-1$
 	private static final String SERVER_FORMAT = "dd MMM yyyy HH:mm:ss";//$NON-NLS-1$
 	private static final int ENTRYLINE_TENS_DAY_OFFSET = 8;
-	
-	private static final SimpleDateFormat serverFormat = new SimpleDateFormat(SERVER_FORMAT, Locale.US);
-	private static SimpleDateFormat entryLineFormat = new SimpleDateFormat(ENTRYLINE_FORMAT, Locale.US);
-	
-	static {
-		entryLineFormat.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
-	}
-	static synchronized public Date serverStampToDate(String text) throws ParseException {
+	private static final int ENTRYLINE_LENGTH = 24;
+
+	private static final String[] DAYS = { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+	private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$
+	private static final long MILLIS_PER_SECOND = 1000;
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * MILLIS_PER_SECOND;
+	// The largest time whose year still has four digits
+	private static final long MAX_FAST_TIME = daysFromCivil(10000, 1, 1) * MILLIS_PER_DAY - 1;
+
+	static public Date serverStampToDate(String text) throws ParseException {
+		long time = parseServerStamp(text);
+		if (time != -1) return new Date(time);
+		SimpleDateFormat serverFormat = new SimpleDateFormat(SERVER_FORMAT, Locale.US);
 		serverFormat.setTimeZone(getTimeZone(text));
 		Date date = serverFormat.parse(text);
 		return date;
 	}
-	
-	static synchronized public Date entryLineToDate(String text) throws ParseException {
+
+	static public Date entryLineToDate(String text) throws ParseException {
+		long time = parseEntryLine(text);
+		if (time != -1) return new Date(time);
 		try {
 			if (text.charAt(ENTRYLINE_TENS_DAY_OFFSET) == ' ') {
 				StringBuffer buf = new StringBuffer(text);
@@ -54,23 +67,256 @@ public class CVSDateFormatter {
 		} catch (StringIndexOutOfBoundsException e) {
 			throw new ParseException(e.getMessage(), ENTRYLINE_TENS_DAY_OFFSET);
 		}
-		return entryLineFormat.parse(text);
+		return createEntryLineFormat().parse(text);
 	}
 
-	static synchronized public String dateToEntryLine(Date date) {
+	static public String dateToEntryLine(Date date) {
 		if (date == null) return ""; //$NON-NLS-1$
-		String passOne = entryLineFormat.format(date);
+		long time = date.getTime();
+		if (time >= 0 && time <= MAX_FAST_TIME) {
+			// Sun Apr  7 01:29:26 1996
+			char[] chars = new char[ENTRYLINE_LENGTH];
+			long days = time / MILLIS_PER_DAY;
+			DAYS[(int) ((days + 4) % 7)].getChars(0, 3, chars, 0); // 1970-01-01 was a Thursday
+			chars[3] = ' ';
+			int[] fields = civilFromDays(days);
+			MONTHS[fields[1] - 1].getChars(0, 3, chars, 4);
+			chars[7] = ' ';
+			appendNumber(chars, 8, fields[2], 2);
+			if (chars[8] == '0') chars[8] = ' ';
+			chars[10] = ' ';
+			appendTime(chars, 11, time);
+			chars[19] = ' ';
+			appendNumber(chars, 20, fields[0], 4);
+			return new String(chars);
+		}
+		String passOne = createEntryLineFormat().format(date);
 		if (passOne.charAt(ENTRYLINE_TENS_DAY_OFFSET) != '0') return passOne;
 		StringBuffer passTwo = new StringBuffer(passOne);
 		passTwo.setCharAt(ENTRYLINE_TENS_DAY_OFFSET, ' ');
 		return passTwo.toString();
 	}
-	
-	static synchronized public String dateToNotifyServer(Date date) {
+
+	static public String dateToNotifyServer(Date date) {
+		long time = date.getTime();
+		if (time >= 0 && time <= MAX_FAST_TIME) {
+			// 07 Apr 1996 01:29:26 GMT
+			char[] chars = new char[24];
+			int[] fields = civilFromDays(time / MILLIS_PER_DAY);
+			appendNumber(chars, 0, fields[2], 2);
+			chars[2] = ' ';
+			MONTHS[fields[1] - 1].getChars(0, 3, chars, 3);
+			chars[6] = ' ';
+			appendNumber(chars, 7, fields[0], 4);
+			chars[11] = ' ';
+			appendTime(chars, 12, time);
+			" GMT".getChars(0, 4, chars, 20); //$NON-NLS-1$
+			return new String(chars);
+		}
+		SimpleDateFormat serverFormat = new SimpleDateFormat(SERVER_FORMAT, Locale.US);
 		serverFormat.setTimeZone(TimeZone.getTimeZone("GMT"));//$NON-NLS-1$
 		return serverFormat.format(date) + " GMT"; //$NON-NLS-1$
 	}
-	
+
+	private static SimpleDateFormat createEntryLineFormat() {
+		SimpleDateFormat entryLineFormat = new SimpleDateFormat(ENTRYLINE_FORMAT, Locale.US);
+		entryLineFormat.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
+		return entryLineFormat;
+	}
+
+	/*
+	 * Parses an entry line timestamp of the form "Sun Apr  7 01:29:26 1996".
+	 * Returns -1 if the text is not of that form, in range and after 1970.
+	 */
+	private static long parseEntryLine(String text) {
+		if (text.length() != ENTRYLINE_LENGTH
+				|| text.charAt(3) != ' ' || text.charAt(7) != ' ' || text.charAt(10) != ' '
+				|| text.charAt(13) != ':' || text.charAt(16) != ':' || text.charAt(19) != ' ')
+			return -1;
+		if (indexOf(DAYS, text, 0) == -1)
+			return -1;
+		int month = indexOf(MONTHS, text, 4);
+		int day = text.charAt(ENTRYLINE_TENS_DAY_OFFSET) == ' ' ? parseNumber(text, 9, 1) : parseNumber(text, 8, 2);
+		int year = parseNumber(text, 20, 4);
+		if (month == -1 || day < 1 || day > 31 || year < 1970)
+			return -1;
+		long time = parseTime(text, 11);
+		if (time == -1)
+			return -1;
+		return daysFromCivil(year, month + 1, day) * MILLIS_PER_DAY + time;
+	}
+
+	/*
+	 * Returns whether the ASCII bytes in the given range are an entry line
+	 * timestamp exactly as dateToEntryLine(Date) formats it, i.e. whether
+	 * parsing and formatting the timestamp leaves it unchanged.
+	 */
+	static boolean isEntryLineTimestamp(byte[] bytes, int start, int end) {
+		if (end - start != ENTRYLINE_LENGTH
+				|| bytes[start + 3] != ' ' || bytes[start + 7] != ' ' || bytes[start + 10] != ' '
+				|| bytes[start + 13] != ':' || bytes[start + 16] != ':' || bytes[start + 19] != ' ')
+			return false;
+		int dayOfWeek = indexOf(DAYS, bytes, start);
+		int month = indexOf(MONTHS, bytes, start + 4);
+		int day = bytes[start + ENTRYLINE_TENS_DAY_OFFSET] == ' ' ? parseNumber(bytes, start + 9, 1) : parseNumber(bytes, start + 8, 2);
+		int year = parseNumber(bytes, start + 20, 4);
+		int hours = parseNumber(bytes, start + 11, 2);
+		int minutes = parseNumber(bytes, start + 14, 2);
+		int seconds = parseNumber(bytes, start + 17, 2);
+		if (dayOfWeek == -1 || month == -1 || year < 1970
+				|| day < 1 || day < 10 && bytes[start + ENTRYLINE_TENS_DAY_OFFSET] != ' '
+				|| hours == -1 || hours > 23 || minutes == -1 || minutes > 59 || seconds == -1 || seconds > 59)
+			return false;
+		long days = daysFromCivil(year, month + 1, day);
+		// Days past the end of the month would be formatted in the next month
+		int[] fields = civilFromDays(days);
+		return fields[2] == day && (days + 4) % 7 == dayOfWeek;
+	}
+
+	/*
+	 * Parses a server timestamp of the form "7 Apr 1996 01:29:26 -0500".
+	 * Returns -1 if the text is not of that form, in range and after 1970.
+	 */
+	private static long parseServerStamp(String text) {
+		int length = text.length();
+		int pos = text.indexOf(' ');
+		if (pos < 1 || pos > 2 || length < pos + 18
+				|| text.charAt(pos + 4) != ' ' || text.charAt(pos + 9) != ' '
+				|| text.charAt(pos + 12) != ':' || text.charAt(pos + 15) != ':')
+			return -1;
+		int day = parseNumber(text, 0, pos);
+		int month = indexOf(MONTHS, text, pos + 1);
+		int year = parseNumber(text, pos + 5, 4);
+		if (month == -1 || day < 1 || day > 31 || year < 1970)
+			return -1;
+		long time = parseTime(text, pos + 10);
+		if (time == -1)
+			return -1;
+		// The zone is optional and has the form used by getTimeZone(String)
+		long offset = 0;
+		pos += 18;
+		if (pos < length) {
+			if (length != pos + 6 || text.charAt(pos) != ' ')
+				return -1;
+			char sign = text.charAt(pos + 1);
+			int hours = parseNumber(text, pos + 2, 2);
+			int minutes = parseNumber(text, pos + 4, 2);
+			if (sign != '-' && sign != '+' || hours == -1 || hours > 23 || minutes == -1 || minutes > 59)
+				return -1;
+			if (text.lastIndexOf("0000") == -1) { //$NON-NLS-1$
+				offset = (hours * 60 + minutes) * 60 * MILLIS_PER_SECOND;
+				if (sign == '-') offset = -offset;
+			}
+		}
+		time = daysFromCivil(year, month + 1, day) * MILLIS_PER_DAY + time - offset;
+		return time < 0 ? -1 : time;
+	}
+
+	/*
+	 * Parses the time of day of the form "01:29:26" at the given position
+	 * and returns it in milliseconds, or -1.
+	 */
+	private static long parseTime(String text, int pos) {
+		int hours = parseNumber(text, pos, 2);
+		int minutes = parseNumber(text, pos + 3, 2);
+		int seconds = parseNumber(text, pos + 6, 2);
+		if (hours == -1 || hours > 23 || minutes == -1 || minutes > 59 || seconds == -1 || seconds > 59)
+			return -1;
+		return ((hours * 60 + minutes) * 60 + seconds) * MILLIS_PER_SECOND;
+	}
+
+	/*
+	 * Returns the value of the given number of decimal digits at the
+	 * given position, or -1 if they are not all digits.
+	 */
+	private static int parseNumber(String text, int pos, int digits) {
+		int value = 0;
+		for (int i = pos; i < pos + digits; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static int parseNumber(byte[] bytes, int pos, int digits) {
+		int value = 0;
+		for (int i = pos; i < pos + digits; i++) {
+			byte b = bytes[i];
+			if (b < '0' || b > '9')
+				return -1;
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+
+	/*
+	 * Returns the index of the name that occurs at the given position, or -1.
+	 */
+	private static int indexOf(String[] names, String text, int pos) {
+		for (int i = 0; i < names.length; i++) {
+			if (text.startsWith(names[i], pos))
+				return i;
+		}
+		return -1;
+	}
+
+	private static int indexOf(String[] names, byte[] bytes, int pos) {
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			if (bytes[pos] == name.charAt(0) && bytes[pos + 1] == name.charAt(1) && bytes[pos + 2] == name.charAt(2))
+				return i;
+		}
+		return -1;
+	}
+
+	private static void appendTime(char[] chars, int pos, long time) {
+		int seconds = (int) (time % MILLIS_PER_DAY / MILLIS_PER_SECOND);
+		appendNumber(chars, pos, seconds / 3600, 2);
+		chars[pos + 2] = ':';
+		appendNumber(chars, pos + 3, seconds / 60 % 60, 2);
+		chars[pos + 5] = ':';
+		appendNumber(chars, pos + 6, seconds % 60, 2);
+	}
+
+	private static void appendNumber(char[] chars, int pos, int value, int digits) {
+		for (int i = pos + digits - 1; i >= pos; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	/*
+	 * Returns the number of days between 1970-01-01 and the given date
+	 * of the Gregorian calendar. The year must not be negative.
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		if (month <= 2) year--;
+		int era = year / 400;
+		int yearOfEra = year - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	/*
+	 * Returns the year, month (1 - 12) and day of the date that is the given
+	 * number of days after 1970-01-01, which must not be negative.
+	 */
+	private static int[] civilFromDays(long days) {
+		long z = days + 719468;
+		int era = (int) (z / 146097);
+		int dayOfEra = (int) (z - era * 146097L);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		return new int[] { year, month, day };
+	}
+
 	/*
 	 * Converts timezone text from date string from CVS server and
 	 * returns a timezone representing the received timezone.
@@ -78,7 +324,7 @@ public class CVSDateFormatter {
 	 */
 	static private TimeZone getTimeZone(String dateFromServer) {
 	    if (dateFromServer.lastIndexOf("0000") != -1)  //$NON-NLS-1$
-	        return TimeZone.getTimeZone("GMT");//$NON-NLS-1$ 
+	        return TimeZone.getTimeZone("GMT");//$NON-NLS-1$
 		String tz = null;
 		StringBuffer resultTz = new StringBuffer("GMT");//$NON-NLS-1$
 		if (dateFromServer.indexOf("-") != -1) {//$NON-NLS-1$
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,15 +15,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.team.internal.core.MultiPatternMatcher;
 
 /**
- * A FileNameMatcher associates a String with a String pattern.
+ * A FileNameMatcher associates a String with a String pattern. The patterns
+ * are compiled into a {@link MultiPatternMatcher} when a name is first
+ * matched after patterns were registered.
  */
 public class FileNameMatcher {
 	
 	private List matchers = new ArrayList();
 	private List results = new ArrayList();
+	private List patterns = new ArrayList();
 	private static final String TRUE = "true"; //$NON-NLS-1$
+	private MultiPatternMatcher compiled;
 	
 	public FileNameMatcher() {
 	}
@@ -50,12 +55,32 @@ public class FileNameMatcher {
 			return;
 		}
 	
-		matchers.add(new StringMatcher(pattern,false,false));
-		results.add(result);
-		
+		synchronized (this) {
+			matchers.add(new StringMatcher(pattern,false,false));
+			results.add(result);
+			patterns.add(pattern);
+			compiled = null;
+		}
 	}
 	
 	public String getMatch(String name) {
+		MultiPatternMatcher matcher = getCompiledMatcher();
+		int index = matcher.match(name);
+		if (index == MultiPatternMatcher.NOT_COMPILED) {
+			return getUncompiledMatch(name);
+		}
+		// Patterns that were not compiled and come before the compiled match take precedence
+		int[] uncompiled = matcher.getUncompiledPatterns();
+		for (int i = 0; i < uncompiled.length && (index == -1 || uncompiled[i] < index); i++) {
+			if (((StringMatcher) matchers.get(uncompiled[i])).match(name)) {
+				index = uncompiled[i];
+				break;
+			}
+		}
+		return index == -1 ? null : (String)results.get(index);
+	}
+	
+	private String getUncompiledMatch(String name) {
 		StringMatcher stringMatcher;
 		
 		for (int i = 0; i < matchers.size(); i++) {
@@ -68,6 +93,13 @@ public class FileNameMatcher {
 		return null;
 	}
 	
+	private synchronized MultiPatternMatcher getCompiledMatcher() {
+		if (compiled == null) {
+			compiled = new MultiPatternMatcher((String[]) patterns.toArray(new String[patterns.size()]), false);
+		}
+		return compiled;
+	}
+	
 	public boolean match(String name) {
 		return getMatch(name) != null;
 	}
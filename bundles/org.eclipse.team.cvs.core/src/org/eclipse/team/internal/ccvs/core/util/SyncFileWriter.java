@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -57,6 +57,16 @@ public class SyncFileWriter {
 	private static final String ADD_TAG="A "; //$NON-NLS-1$
 	private static final String REMOVE_TAG="R "; //$NON-NLS-1$	
 	
+	// Parts of entry lines that ResourceSyncInfo writes unchanged
+	private static final byte SEPARATOR = '/';
+	private static final byte BRANCH_TAG_PREFIX = 'T';
+	private static final byte DATE_TAG_PREFIX = 'D';
+	private static final String DEFAULT_KEYWORD_MODE = "-kkv"; //$NON-NLS-1$
+	private static final String TIMESTAMP_DUMMY = "dummy timestamp"; //$NON-NLS-1$
+	private static final String TIMESTAMP_MERGED = "Result of merge"; //$NON-NLS-1$
+	private static final String TIMESTAMP_MERGED_WITH_CONFLICT = TIMESTAMP_MERGED + "+"; //$NON-NLS-1$
+	private static final String TIMESTAMP_DELETED_AND_RESTORED = "restored+"; //$NON-NLS-1$
+	
 	// key for saving the mod stamp for each written meta file
 	public static final QualifiedName MODSTAMP_KEY = new QualifiedName("org.eclipse.team.cvs.core", "meta-file-modtime"); //$NON-NLS-1$ //$NON-NLS-2$
 	
@@ -77,48 +87,162 @@ public class SyncFileWriter {
 		}
 
 		// process Entries file contents
-		String[] entries = readLines(cvsSubDir.getFile(ENTRIES));
+		byte[] entries = readContents(cvsSubDir.getFile(ENTRIES));
 		if (entries == null) return null;
 		Map infos = new TreeMap();
-		for (int i = 0; i < entries.length; i++) {
-			String line = entries[i];
-			if(!FOLDER_TAG.equals(line) && !"".equals(line)) { //$NON-NLS-1$
+		int start = 0;
+		while (start < entries.length) {
+			int end = getEndOfLine(entries, start);
+			int length = end - start;
+			if (length != 0 && !(length == FOLDER_TAG.length() && entries[start] == FOLDER_TAG.charAt(0))) {
 				try {
-					ResourceSyncInfo info = new ResourceSyncInfo(line, null);
-					infos.put(info.getName(), info);
+					addEntry(infos, entries, start, length);
 				} catch (CVSException e) {
 					// There was a problem parsing the entry line.
 					// Log the problem and skip the entry
 					CVSProviderPlugin.log(new CVSStatus(IStatus.ERROR, NLS.bind(CVSMessages.SyncFileWriter_0, new String[] { parent.getFullPath().toString() }), e)); 
 				}			
 			}
+			start = getStartOfNextLine(entries, end);
 		}
 		
 		// process Entries.log file contents
-		String[] entriesLog = readLines(cvsSubDir.getFile(ENTRIES_LOG));
+		byte[] entriesLog = readContents(cvsSubDir.getFile(ENTRIES_LOG));
 		if (entriesLog != null) {
-			for (int i = 0; i < entriesLog.length; i++) {
-				String line = entriesLog[i];
-				if (line.startsWith(ADD_TAG)) {
-					line = line.substring(ADD_TAG.length());
-					ResourceSyncInfo info = new ResourceSyncInfo(line, null);
-					infos.put(info.getName(), info);
-				} else if (line.startsWith(REMOVE_TAG)) {
-					line = line.substring(REMOVE_TAG.length());
-					ResourceSyncInfo info = new ResourceSyncInfo(line, null);
-					infos.remove(info.getName());
+			start = 0;
+			while (start < entriesLog.length) {
+				int end = getEndOfLine(entriesLog, start);
+				if (startsWith(entriesLog, start, end, ADD_TAG)) {
+					addEntry(infos, entriesLog, start + ADD_TAG.length(), end - start - ADD_TAG.length());
+				} else if (startsWith(entriesLog, start, end, REMOVE_TAG)) {
+					infos.remove(getEntryName(entriesLog, start + REMOVE_TAG.length(), end - start - REMOVE_TAG.length()));
 				}
+				start = getStartOfNextLine(entriesLog, end);
 			}
 		}
 		
 		//return (ResourceSyncInfo[])infos.values().toArray(new ResourceSyncInfo[infos.size()]);
-		byte[][] result = new byte[infos.size()][];
-		int i = 0;
-		for (Iterator iter = infos.values().iterator(); iter.hasNext();) {
-			ResourceSyncInfo info = (ResourceSyncInfo) iter.next();
-			result[i++] = info.getBytes();
+		return (byte[][]) infos.values().toArray(new byte[infos.size()][]);
+	}
+	
+	/*
+	 * Adds the sync bytes of the entry line in the given range of the buffer to
+	 * the map, keyed by the name of the entry. Lines that ResourceSyncInfo writes
+	 * back unchanged are copied from the buffer as they are, other lines are
+	 * parsed and written by ResourceSyncInfo.
+	 */
+	private static void addEntry(Map infos, byte[] buffer, int offset, int length) throws CVSException {
+		String name = getUnchangedEntryName(buffer, offset, length);
+		if (name != null) {
+			byte[] syncBytes = new byte[length];
+			System.arraycopy(buffer, offset, syncBytes, 0, length);
+			infos.put(name, syncBytes);
+		} else {
+			ResourceSyncInfo info = new ResourceSyncInfo(new String(buffer, offset, length), null);
+			infos.put(info.getName(), info.getBytes());
+		}
+	}
+	
+	private static String getEntryName(byte[] buffer, int offset, int length) throws CVSException {
+		String name = getUnchangedEntryName(buffer, offset, length);
+		if (name != null) return name;
+		return new ResourceSyncInfo(new String(buffer, offset, length), null).getName();
+	}
+	
+	/*
+	 * Returns the name of the entry line in the given range of the buffer if
+	 * creating a ResourceSyncInfo from the line and getting its bytes would
+	 * return the line unchanged, or null if the line must be parsed. This is
+	 * the case for the lines of files and folders that CVS clients write,
+	 * as long as they consist of ASCII characters.
+	 */
+	private static String getUnchangedEntryName(byte[] buffer, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			// Other characters depend on the encoding
+			if (buffer[i] < 0) return null;
+		}
+		boolean isFolder = length > 1 && buffer[offset] == FOLDER_TAG.charAt(0) && buffer[offset + 1] == SEPARATOR;
+		int nameStart = offset + (isFolder ? 2 : 1);
+		if (!isFolder && (length == 0 || buffer[offset] != SEPARATOR)) return null;
+		int nameEnd = indexOf(buffer, SEPARATOR, nameStart, end);
+		if (nameEnd <= nameStart) return null;
+		if (isFolder) {
+			// D/name////
+			if (end - nameEnd != 4) return null;
+			for (int i = nameEnd; i < end; i++) {
+				if (buffer[i] != SEPARATOR) return null;
+			}
+		} else {
+			// /name/revision/timestamp/keyword mode/tag
+			int revisionEnd = indexOf(buffer, SEPARATOR, nameEnd + 1, end);
+			if (revisionEnd <= nameEnd + 1) return null;
+			for (int i = nameEnd + 1; i < revisionEnd; i++) {
+				// ResourceSyncInfo removes a locked by suffix
+				if (buffer[i] <= ' ') return null;
+			}
+			int timestampEnd = indexOf(buffer, SEPARATOR, revisionEnd + 1, end);
+			if (timestampEnd == -1 || !isUnchangedTimestamp(buffer, revisionEnd + 1, timestampEnd)) return null;
+			int modeEnd = indexOf(buffer, SEPARATOR, timestampEnd + 1, end);
+			if (modeEnd == -1 || isEqual(buffer, timestampEnd + 1, modeEnd, DEFAULT_KEYWORD_MODE)) return null;
+			// Branch and date tags are written unchanged, version tags as branch tags
+			if (modeEnd + 1 < end && buffer[modeEnd + 1] != BRANCH_TAG_PREFIX && buffer[modeEnd + 1] != DATE_TAG_PREFIX) return null;
+		}
+		char[] name = new char[nameEnd - nameStart];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = (char) buffer[nameStart + i];
+		}
+		return new String(name);
+	}
+	
+	/*
+	 * Returns whether ResourceSyncInfo writes the timestamp of an entry line
+	 * in the given range of the buffer unchanged.
+	 */
+	private static boolean isUnchangedTimestamp(byte[] buffer, int start, int end) {
+		if (isEqual(buffer, start, end, TIMESTAMP_DUMMY) || isEqual(buffer, start, end, TIMESTAMP_MERGED))
+			return true;
+		if (startsWith(buffer, start, end, TIMESTAMP_MERGED_WITH_CONFLICT))
+			return CVSDateFormatter.isEntryLineTimestamp(buffer, start + TIMESTAMP_MERGED_WITH_CONFLICT.length(), end);
+		if (startsWith(buffer, start, end, TIMESTAMP_DELETED_AND_RESTORED))
+			return CVSDateFormatter.isEntryLineTimestamp(buffer, start + TIMESTAMP_DELETED_AND_RESTORED.length(), end);
+		return CVSDateFormatter.isEntryLineTimestamp(buffer, start, end);
+	}
+	
+	private static int indexOf(byte[] buffer, byte b, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == b) return i;
+		}
+		return -1;
+	}
+	
+	private static boolean startsWith(byte[] buffer, int start, int end, String prefix) {
+		int length = prefix.length();
+		if (end - start < length) return false;
+		for (int i = 0; i < length; i++) {
+			if (buffer[start + i] != prefix.charAt(i)) return false;
 		}
-		return result;
+		return true;
+	}
+	
+	private static boolean isEqual(byte[] buffer, int start, int end, String string) {
+		return end - start == string.length() && startsWith(buffer, start, end, string);
+	}
+	
+	/*
+	 * Returns the end of the line that starts at the given index. Lines end
+	 * with a line feed, a carriage return or both, as for BufferedReader.
+	 */
+	private static int getEndOfLine(byte[] buffer, int start) {
+		for (int i = start; i < buffer.length; i++) {
+			if (buffer[i] == '\n' || buffer[i] == '\r') return i;
+		}
+		return buffer.length;
+	}
+	
+	private static int getStartOfNextLine(byte[] buffer, int end) {
+		if (end + 1 < buffer.length && buffer[end] == '\r' && buffer[end + 1] == '\n') return end + 2;
+		return end + 1;
 	}
 	
 	private static boolean folderExists(IFolder cvsSubDir) throws CVSException {
@@ -573,6 +697,39 @@ public class SyncFileWriter {
 		}
 	}
 	
+	/*
+	 * Reads the contents of the specified file.
+	 * Returns null if the file does not exist.
+	 */
+	private static byte[] readContents(IFile file) throws CVSException {
+		try {
+			InputStream in = getInputStream(file);
+			if (in != null) {
+				try {
+					ByteArrayOutputStream contents = new ByteArrayOutputStream();
+					byte[] buffer = new byte[8192];
+					int count;
+					while ((count = in.read(buffer)) != -1) {
+						contents.write(buffer, 0, count);
+					}
+					return contents.toByteArray();
+				} finally {
+					in.close();
+				}
+			}
+			return null;
+		} catch (IOException e) {
+			throw CVSException.wrapException(e);
+		} catch (CoreException e) {
+			// If the IFile doesn't exist or the underlying File doesn't exist,
+			// just return null to indicate the absence of the file
+			if (e.getStatus().getCode() == IResourceStatus.RESOURCE_NOT_FOUND
+					|| e.getStatus().getCode() == IResourceStatus.FAILED_READ_LOCAL)
+				return null;
+			throw CVSException.wrapException(e);
+		}
+	}
+
 	/*
 	 * Writes all lines to the specified file, using linefeed terminators for
 	 * compatibility with other CVS clients.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,6 +20,8 @@ public class CVSSSH2Messages extends NLS {
 	public static String JSchSession_4;
 
 	public static String JSchSession_5;
+
+	public static String JSchSession_6;
 	public static String CVSSSH2ServerConnection_open;
 	public static String CVSSSH2PreferencePage_18;
 	public static String CVSSSH2PreferencePage_19;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,9 +19,15 @@ import org.osgi.util.tracker.ServiceTracker;
 public class CVSSSH2Plugin extends Plugin {
 
 	public static String ID = "org.eclipse.team.cvs.ssh2"; //$NON-NLS-1$
+	// number of CVS connections that share one SSH session
+	public static final int DEFAULT_CHANNELS_PER_SESSION = 8;
+	// interval in seconds of the keep-alive messages sent over idle SSH sessions
+	public static final int DEFAULT_KEEP_ALIVE_INTERVAL = 30;
 	private static CVSSSH2Plugin plugin;
 
 	private ServiceTracker tracker;
+	private int channelsPerSession = DEFAULT_CHANNELS_PER_SESSION;
+	private int keepAliveInterval = DEFAULT_KEEP_ALIVE_INTERVAL;
 	
 	public CVSSSH2Plugin() {
 		super();
@@ -50,4 +56,42 @@ public class CVSSSH2Plugin extends Plugin {
     public IJSchService getJSchService() {
         return (IJSchService)tracker.getService();
     }
+
+	/**
+	 * Sets the maximum number of CVS connections that run in parallel over
+	 * one SSH session. Another SSH session to the same host is opened when
+	 * all sessions are used by that many connections. A value of 1 opens
+	 * an SSH session for every concurrent connection.
+	 */
+	public synchronized void setChannelsPerSession(int channels) {
+		channelsPerSession = Math.max(1, channels);
+	}
+
+	/**
+	 * Gets the maximum number of CVS connections that run in parallel over
+	 * one SSH session.
+	 */
+	public synchronized int getChannelsPerSession() {
+		return channelsPerSession;
+	}
+
+	/**
+	 * Sets the interval in seconds after which a keep-alive message is sent
+	 * over an SSH session that received nothing. A value of 0 disables
+	 * keep-alive messages. JSch waits for the keep-alive interval rather
+	 * than the connection timeout of the repository location when it reads
+	 * from a session that sends keep-alive messages, so the location
+	 * timeout only applies to sessions without keep-alive messages.
+	 */
+	public synchronized void setKeepAliveInterval(int interval) {
+		keepAliveInterval = Math.max(0, interval);
+	}
+
+	/**
+	 * Gets the interval in seconds after which a keep-alive message is sent
+	 * over an SSH session that received nothing.
+	 */
+	public synchronized int getKeepAliveInterval() {
+		return keepAliveInterval;
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -92,8 +92,11 @@ public class CVSSSH2ServerConnection implements IServerConnection {
 					}
 				}
 			} finally {
-				if (channel != null)
+				if (channel != null) {
 					channel.disconnect();
+					channel = null;
+					session.releaseChannel();
+				}
 			}
 		} 
 	}
@@ -131,14 +134,25 @@ public class CVSSSH2ServerConnection implements IServerConnection {
             boolean tryAgain = false;
 			while (firstTime || tryAgain) {
                 tryAgain = false; // reset the try again flag
-				session = JSchSession.getSession(location, location.getUsername(), password, location.getHost(), location.getPort(), monitor);
-				channel = session.getSession().openChannel("exec"); //$NON-NLS-1$
-				((ChannelExec) channel).setCommand(COMMAND);
-				channel_out = channel.getOutputStream();
-				channel_in = channel.getInputStream();
+				session = JSchSession.reserveChannel(location, location.getUsername(), password, location.getHost(), location.getPort(), monitor);
 				try {
+					channel = session.getSession().openChannel("exec"); //$NON-NLS-1$
+					((ChannelExec) channel).setCommand(COMMAND);
+					channel_out = channel.getOutputStream();
+					channel_in = channel.getInputStream();
 					channel.connect();
+				} catch (IOException e) {
+					channel = null;
+					session.releaseChannel();
+					throw e;
 				} catch (JSchException ee) {
+					channel = null;
+					if (isChannelNotOpenError(ee) && session.channelRefused()) {
+						// The session carries other channels so it is up but the server
+						// does not allow more channels on it. Use another session.
+						tryAgain = true;
+						continue;
+					}
                     // This strange logic is here due to how the JSch client shares sessions.
                     // It is possible that we have obtained a session that thinks it is connected
                     // but is not. Channel connection only works if the session is connected so the
@@ -153,6 +167,7 @@ public class CVSSSH2ServerConnection implements IServerConnection {
                         }
                     } finally {
                         // Always dispose of the current session when a failure occurs so we can start from scratch
+                        session.releaseChannel();
                         session.dispose();
                     }
 				}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,10 +11,10 @@
  *******************************************************************************/
 package org.eclipse.team.internal.ccvs.ssh2;
 
-import java.util.Enumeration;
+import java.util.*;
 
-import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jsch.core.IJSchService;
 import org.eclipse.jsch.core.IJSchLocation;
 import org.eclipse.jsch.core.IPasswordStore;
@@ -23,12 +23,64 @@ import org.eclipse.team.internal.ccvs.core.*;
 
 import com.jcraft.jsch.*;
 
+/**
+ * An SSH session to a user, host and port that is shared by the CVS connections
+ * to repositories on that host. Every CVS connection runs in a channel of its
+ * own and a session carries at most {@link CVSSSH2Plugin#getChannelsPerSession()}
+ * channels at a time. Another session to the same host is opened when all
+ * sessions are busy. A spare session is opened in the background when the
+ * last free channel of a host is taken so that the next connection does not
+ * wait for the key exchange.
+ */
 class JSchSession {
 	private static final int SSH_DEFAULT_PORT = 22;
+	// the number of keep-alive messages without reply after which a session is dropped
+	private static final int KEEP_ALIVE_COUNT_MAX = 3;
+	// pool key -> list of the sessions to the user, host and port
 	private static java.util.Hashtable pool = new java.util.Hashtable();
+	// the pool keys of the hosts a spare session is being opened to
+	private static Set prewarming = new HashSet();
+
+	/*
+	 * Authenticates a session that is opened in the background with the password
+	 * of the connection that is already open. The user is never prompted: unknown
+	 * host keys are rejected, keyboard-interactive authentication is not supported
+	 * and encrypted private keys that are not loaded yet are skipped.
+	 */
+	private static class NonInteractiveUserInfo implements UserInfo {
+		private final String password;
+
+		NonInteractiveUserInfo(String password) {
+			this.password = password;
+		}
+		public String getPassword() {
+			return password;
+		}
+		public boolean promptPassword(String message) {
+			return password != null;
+		}
+		public String getPassphrase() {
+			return null;
+		}
+		public boolean promptPassphrase(String message) {
+			return false;
+		}
+		public boolean promptYesNo(String message) {
+			return false;
+		}
+		public void showMessage(String message) {
+			// Nothing is shown in the background
+		}
+	}
 	
     private final Session session;
-    private final ICVSRepositoryLocation location;
+    private final String key;
+    // whether ports are forwarded over the session so that it must stay open
+    private boolean portForwarding;
+    // the number of channels that are used by connections
+    private int channels;
+    // lowered when the server refuses to open more channels
+    private int maxChannels = Integer.MAX_VALUE;
 
     protected static int getCVSTimeoutInMillis() {
         //return CVSProviderPlugin.getPlugin().getTimeout() * 1000;
@@ -41,60 +93,165 @@ class JSchSession {
         return ee.getMessage().equals("Auth fail"); //$NON-NLS-1$
     }
     
+    /**
+     * Return a connected session to the given host, opening one if there is
+     * none. The channels of the session are not counted, the session is used
+     * for port forwarding.
+     */
     static JSchSession getSession(final ICVSRepositoryLocation location, String username, String password, String hostname, int port, IProgressMonitor monitor) throws JSchException {
-    	int actualPort = port;
-        if (actualPort == ICVSRepositoryLocation.USE_DEFAULT_PORT)
-        	actualPort = getPort(location);
-		
-		String key = getPoolKey(username, hostname, actualPort);
+		String key = getPoolKey(username, hostname, getPort(location, port));
+		synchronized (pool) {
+			List sessions = getSessions(key);
+			if (!sessions.isEmpty()) {
+				JSchSession jschSession = (JSchSession) sessions.get(0);
+				jschSession.portForwarding = true;
+				return jschSession;
+			}
+		}
+		JSchSession jschSession = openSession(location, username, password, hostname, port, null, monitor);
+		synchronized (pool) {
+			jschSession.portForwarding = true;
+			getSessions(key).add(jschSession);
+		}
+		return jschSession;
+	}
 
-		try {
-			JSchSession jschSession = (JSchSession) pool.get(key);
-			if (jschSession != null && !jschSession.getSession().isConnected()) {
-				pool.remove(key);
-                jschSession = null;
+    /**
+     * Return a connected session to the given host that has a free channel
+     * and reserve the channel for a connection. A session is opened if all
+     * sessions are busy. The channel must be released with
+     * {@link #releaseChannel()} once the connection is closed.
+     */
+    static JSchSession reserveChannel(final ICVSRepositoryLocation location, String username, String password, String hostname, int port, IProgressMonitor monitor) throws JSchException {
+		String key = getPoolKey(username, hostname, getPort(location, port));
+		JSchSession jschSession;
+		synchronized (pool) {
+			jschSession = getSessionWithFreeChannel(key);
+			if (jschSession != null)
+				jschSession.channels++;
+		}
+		if (jschSession == null) {
+			jschSession = openSession(location, username, password, hostname, port, null, monitor);
+			synchronized (pool) {
+				jschSession.channels++;
+				getSessions(key).add(jschSession);
 			}
+		}
+		prewarm(location, username, password, hostname, port, key);
+		return jschSession;
+	}
 
-			if (jschSession == null) {
-                IJSchService service = getJSchService();
-                IJSchLocation jlocation=service.getLocation(username, hostname, actualPort);
-
-                // As for the connection method "pserverssh2", 
-                // there is not a place to save the given password for ssh2.
-                if (!location.getMethod().getName().equals("pserverssh2")) { //$NON-NLS-1$
-                    IPasswordStore pstore = new IPasswordStore() {
-                        public void clear(IJSchLocation l) {
-                            location.flushUserInfo();
-                        }
-                        public boolean isCached(IJSchLocation l) {
-                            return location.getUserInfoCached();
-                        }
-                        public void update(IJSchLocation l) {
-                            location.setPassword(l.getPassword());
-                            location.setAllowCaching(true);
-                        }
-                    };
-                    jlocation.setPasswordStore(pstore);
-                }
-                jlocation.setComment(NLS.bind(CVSSSH2Messages.JSchSession_3, new String[] {location.toString()}));
-                
-                Session session = null;
-                try {
-                    session = createSession(service, jlocation, password, monitor);
-                } catch (JSchException e) {
-                	throw e;
-                }
-                if (session == null)
-                	throw new JSchException(CVSSSH2Messages.JSchSession_4);
-                if (session.getTimeout() != location.getTimeout() * 1000)
-                	session.setTimeout(location.getTimeout() * 1000);
-                JSchSession schSession = new JSchSession(session, location);
-                pool.put(key, schSession);
-                return schSession;
+    /*
+     * Open a spare session in the background if all sessions to the host are busy.
+     * The spare session must not prompt the user, so it is only opened if it can
+     * authenticate with the password of the connection or with the loaded keys.
+     */
+    private static void prewarm(final ICVSRepositoryLocation location, final String username, final String password, final String hostname, final int port, final String key) {
+		synchronized (pool) {
+			if (getSessionWithFreeChannel(key) != null || prewarming.contains(key))
+				return;
+			prewarming.add(key);
+		}
+		Job job = new Job(NLS.bind(CVSSSH2Messages.JSchSession_6, new String[] { hostname })) {
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					JSchSession jschSession = openSession(location, username, password, hostname, port, new NonInteractiveUserInfo(password), monitor);
+					synchronized (pool) {
+						getSessions(key).add(jschSession);
+					}
+				} catch (JSchException e) {
+					// The session is opened when it is needed
+					if (Policy.DEBUG)
+						e.printStackTrace();
+				} catch (OperationCanceledException e) {
+					// The session needs a password that is not known
+				} finally {
+					synchronized (pool) {
+						prewarming.remove(key);
+					}
+				}
+				return Status.OK_STATUS;
 			}
-            return jschSession;
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+    /*
+     * Return a connected session with a free channel or null
+     */
+    private static JSchSession getSessionWithFreeChannel(String key) {
+		int maximum = CVSSSH2Plugin.getDefault().getChannelsPerSession();
+		for (Iterator iter = getSessions(key).iterator(); iter.hasNext();) {
+			JSchSession jschSession = (JSchSession) iter.next();
+			if (jschSession.channels < Math.min(maximum, jschSession.maxChannels))
+				return jschSession;
+		}
+		return null;
+	}
+
+    /*
+     * Return the connected sessions for the given key, removing the
+     * sessions that are no longer connected
+     */
+    private static List getSessions(String key) {
+		List sessions = (List) pool.get(key);
+		if (sessions == null) {
+			sessions = new ArrayList();
+			pool.put(key, sessions);
+		}
+		for (Iterator iter = sessions.iterator(); iter.hasNext();) {
+			if (!((JSchSession) iter.next()).getSession().isConnected())
+				iter.remove();
+		}
+		return sessions;
+	}
+
+    /*
+     * Open a session to the given host. The user is prompted by the authenticator
+     * of the JSch service if no user info is given.
+     */
+    private static JSchSession openSession(final ICVSRepositoryLocation location, String username, String password, String hostname, int port, UserInfo userInfo, IProgressMonitor monitor) throws JSchException {
+    	int actualPort = getPort(location, port);
+		try {
+            IJSchService service = getJSchService();
+            IJSchLocation jlocation=service.getLocation(username, hostname, actualPort);
+
+            // As for the connection method "pserverssh2", 
+            // there is not a place to save the given password for ssh2.
+            if (!location.getMethod().getName().equals("pserverssh2")) { //$NON-NLS-1$
+                IPasswordStore pstore = new IPasswordStore() {
+                    public void clear(IJSchLocation l) {
+                        location.flushUserInfo();
+                    }
+                    public boolean isCached(IJSchLocation l) {
+                        return location.getUserInfoCached();
+                    }
+                    public void update(IJSchLocation l) {
+                        location.setPassword(l.getPassword());
+                        location.setAllowCaching(true);
+                    }
+                };
+                jlocation.setPasswordStore(pstore);
+            }
+            jlocation.setComment(NLS.bind(CVSSSH2Messages.JSchSession_3, new String[] {location.toString()}));
+            
+            Session session = createSession(service, jlocation, password, userInfo, monitor);
+            if (session == null)
+            	throw new JSchException(CVSSSH2Messages.JSchSession_4);
+            int keepAliveInterval = CVSSSH2Plugin.getDefault().getKeepAliveInterval();
+            if (keepAliveInterval > 0) {
+            	// Keep idle sessions open through firewalls and notice dead servers.
+            	// JSch sends a keep-alive message whenever a read times out, so the
+            	// interval replaces the location timeout as the timeout of the session
+            	// and a dead server is noticed after KEEP_ALIVE_COUNT_MAX intervals.
+            	session.setServerAliveInterval(keepAliveInterval * 1000);
+            	session.setServerAliveCountMax(KEEP_ALIVE_COUNT_MAX);
+            } else if (session.getTimeout() != location.getTimeout() * 1000) {
+            	session.setTimeout(location.getTimeout() * 1000);
+            }
+            return new JSchSession(session, getPoolKey(username, hostname, actualPort));
 		} catch (JSchException e) {
-			pool.remove(key);
 			if(e.toString().indexOf("Auth cancel")!=-1){  //$NON-NLS-1$
 				throw new OperationCanceledException();
 			}
@@ -102,10 +259,10 @@ class JSchSession {
 		}
 	}
 
-    private static Session createSession(IJSchService service, IJSchLocation location, String password, IProgressMonitor monitor) throws JSchException {
+    private static Session createSession(IJSchService service, IJSchLocation location, String password, UserInfo userInfo, IProgressMonitor monitor) throws JSchException {
     	if (password != null)
     		location.setPassword(password);
-    	Session session = service.createSession(location, null);
+    	Session session = service.createSession(location, userInfo);
         session.setTimeout(getCVSTimeoutInMillis());
         if (password != null)
 			session.setPassword(password);
@@ -121,49 +278,94 @@ class JSchSession {
         return username + "@" + hostname + ":" + port; //$NON-NLS-1$ //$NON-NLS-2$
     }
 
-    private static String getPoolKey(ICVSRepositoryLocation location){
-        return location.getUsername() + "@" + location.getHost() + ":" + getPort(location); //$NON-NLS-1$ //$NON-NLS-2$
-    }
-
-	private static int getPort(ICVSRepositoryLocation location) {
-        int port = location.getPort();
+	private static int getPort(ICVSRepositoryLocation location, int port) {
+        if (port == ICVSRepositoryLocation.USE_DEFAULT_PORT)
+            port = location.getPort();
         if (port == ICVSRepositoryLocation.USE_DEFAULT_PORT)
             port = SSH_DEFAULT_PORT;
         return port;
     }
 
 	static void shutdown() {
-		if (getJSch() != null && pool.size() > 0) {
-			for (Enumeration e = pool.elements(); e.hasMoreElements();) {
-				JSchSession session = (JSchSession) (e.nextElement());
-				try {
-					session.getSession().disconnect();
-				} catch (Exception ee) {
-					// Ignore
-				}
+		List sessions = new ArrayList();
+		synchronized (pool) {
+			for (Iterator iter = pool.values().iterator(); iter.hasNext();) {
+				sessions.addAll((List) iter.next());
 			}
 			pool.clear();
 		}
+		for (Iterator iter = sessions.iterator(); iter.hasNext();) {
+			JSchSession session = (JSchSession) iter.next();
+			try {
+				session.getSession().disconnect();
+			} catch (Exception ee) {
+				// Ignore
+			}
+		}
 	}
 
 	static JSch getJSch() {
 		return getJSchService().getJSch();
 	}
   
-    private JSchSession(Session session, ICVSRepositoryLocation location) {
+    private JSchSession(Session session, String key) {
         this.session = session;
-        this.location = location;
+        this.key = key;
     }
 
     public Session getSession() {
         return session;
     }
 
+    /**
+     * Release a channel that was reserved with {@link #reserveChannel}. Sessions
+     * without channels are closed if another session to the host is idle.
+     */
+    public void releaseChannel() {
+    	List idle = new ArrayList();
+    	synchronized (pool) {
+    		channels--;
+    		for (Iterator iter = getSessions(key).iterator(); iter.hasNext();) {
+    			JSchSession jschSession = (JSchSession) iter.next();
+    			if (jschSession.channels == 0 && !jschSession.portForwarding)
+    				idle.add(jschSession);
+    		}
+    		// Keep one idle session for the next connection
+    		if (!idle.isEmpty())
+    			idle.remove(0);
+    		getSessions(key).removeAll(idle);
+    	}
+    	for (Iterator iter = idle.iterator(); iter.hasNext();) {
+    		((JSchSession) iter.next()).getSession().disconnect();
+    	}
+    }
+
+    /**
+     * Release a channel that the server refused to open although the session
+     * is connected. The server limits the number of channels per session so
+     * no more channels than are open now are opened on this session. Nothing
+     * is released if no other channel is open, the session is likely down.
+     * @return whether the channel was released and the session can still be used
+     */
+    public boolean channelRefused() {
+    	synchronized (pool) {
+    		if (channels <= 1)
+    			return false;
+    		channels--;
+    		maxChannels = channels;
+    		return true;
+    	}
+    }
+
     public void dispose() {
         if (session.isConnected()) {
             session.disconnect();
         }
-        pool.remove(getPoolKey(location));
+        synchronized (pool) {
+        	List sessions = (List) pool.get(key);
+        	if (sessions != null)
+        		sessions.remove(this);
+        }
     }
 
 }
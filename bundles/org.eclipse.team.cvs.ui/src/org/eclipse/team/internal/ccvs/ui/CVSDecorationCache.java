@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.internal.ccvs.ui;
+
+import java.util.*;
+
+import org.eclipse.core.resources.*;
+
+/**
+ * A cache of the CVS state the {@link CVSLightweightDecorator} calculates the
+ * decoration of a resource from. The state of a resource is removed when its
+ * sync info, the sync info of its parent or its modification state changes.
+ * The least recently used states are removed once the cache is full.
+ * <p>
+ * The number of lookups that found a state, the number of lookups that did
+ * not and the time spent calculating the states that were not found are
+ * counted for diagnosis.
+ * </p>
+ */
+public class CVSDecorationCache {
+
+	/**
+	 * The default number of resources whose state is cached.
+	 */
+	public static final int DEFAULT_SIZE = 10000;
+
+	private final Map states;
+
+	// Incremented each time states are removed so that a state calculated
+	// while the state of its resource changed is not cached
+	private long stamp;
+
+	private long hits;
+	private long misses;
+	private long calculationTime;
+
+	/**
+	 * Create a cache that holds the state of {@link #DEFAULT_SIZE} resources.
+	 */
+	public CVSDecorationCache() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Create a cache that holds the state of the given number of resources.
+	 * @param maximumSize the maximum number of resources whose state is cached
+	 */
+	public CVSDecorationCache(final int maximumSize) {
+		states = new LinkedHashMap(16, 0.75f, true /* access order */) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry eldest) {
+				return size() > maximumSize;
+			}
+		};
+	}
+
+	/**
+	 * Return the cached state of the given resource and count the lookup.
+	 * @param resource a resource
+	 * @return the state of the resource or <code>null</code> if it is not cached
+	 */
+	public synchronized Object getState(IResource resource) {
+		Object state = states.get(resource);
+		if (state == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return state;
+	}
+
+	/**
+	 * Return whether the state of the given resource is cached. The lookup
+	 * is not counted.
+	 * @param resource a resource
+	 * @return whether the state of the resource is cached
+	 */
+	public synchronized boolean contains(IResource resource) {
+		return states.containsKey(resource);
+	}
+
+	/**
+	 * Return the stamp to pass to {@link #putState(IResource, Object, long, long)}
+	 * for a state that is about to be calculated.
+	 * @return the current stamp of the cache
+	 */
+	public synchronized long getStamp() {
+		return stamp;
+	}
+
+	/**
+	 * Cache the state that was calculated for the given resource. The state
+	 * is not cached if any state was removed since the given stamp was
+	 * obtained, as the state may have been calculated from stale sync info.
+	 * @param resource the resource
+	 * @param state the state of the resource
+	 * @param stamp the stamp obtained before the state was calculated
+	 * @param time the time in milliseconds it took to calculate the state
+	 */
+	public synchronized void putState(IResource resource, Object state, long stamp, long time) {
+		calculationTime += time;
+		if (this.stamp == stamp) {
+			states.put(resource, state);
+		}
+	}
+
+	/**
+	 * Remove the state of the given resources. The state of the members of
+	 * the given containers is removed as well since the decoration of a
+	 * resource depends on the sync info of its parent.
+	 * @param resources the resources whose state changed
+	 */
+	public synchronized void invalidate(IResource[] resources) {
+		stamp++;
+		Set parents = new HashSet();
+		for (int i = 0; i < resources.length; i++) {
+			IResource resource = resources[i];
+			states.remove(resource);
+			if (resource.getType() != IResource.FILE) {
+				parents.add(resource);
+			}
+		}
+		if (parents.isEmpty())
+			return;
+		for (Iterator iter = states.keySet().iterator(); iter.hasNext();) {
+			IResource resource = (IResource) iter.next();
+			if (parents.contains(resource.getParent())) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove the state of all the resources of the given project.
+	 * @param project the project
+	 */
+	public synchronized void invalidate(IProject project) {
+		stamp++;
+		for (Iterator iter = states.keySet().iterator(); iter.hasNext();) {
+			IResource resource = (IResource) iter.next();
+			if (project.equals(resource.getProject())) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove the state of all resources.
+	 */
+	public synchronized void clear() {
+		stamp++;
+		states.clear();
+	}
+
+	/**
+	 * Return the number of resources whose state is cached.
+	 * @return the number of resources whose state is cached
+	 */
+	public synchronized int size() {
+		return states.size();
+	}
+
+	/**
+	 * Return the number of lookups that found the state of the resource.
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Return the number of lookups that did not find the state of the resource.
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Return the total time in milliseconds spent calculating the states
+	 * that were cached or offered to the cache.
+	 * @return the calculation time in milliseconds
+	 */
+	public synchronized long getCalculationTime() {
+		return calculationTime;
+	}
+
+	/**
+	 * Reset the number of hits and misses and the calculation time.
+	 */
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		calculationTime = 0;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import java.util.*;
 import org.eclipse.core.resources.*;
 import org.eclipse.core.resources.mapping.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
@@ -27,11 +28,13 @@ import org.eclipse.team.core.diff.IThreeWayDiff;
 import org.eclipse.team.internal.ccvs.core.*;
 import org.eclipse.team.internal.ccvs.core.client.Command.KSubstOption;
 import org.eclipse.team.internal.ccvs.core.resources.CVSWorkspaceRoot;
+import org.eclipse.team.internal.ccvs.core.resources.EclipseSynchronizer;
 import org.eclipse.team.internal.ccvs.core.syncinfo.FolderSyncInfo;
 import org.eclipse.team.internal.ccvs.core.syncinfo.ResourceSyncInfo;
 import org.eclipse.team.internal.ccvs.core.util.KnownRepositories;
 import org.eclipse.team.internal.ccvs.core.util.ResourceStateChangeListeners;
 import org.eclipse.team.internal.core.ExceptionCollector;
+import org.eclipse.team.internal.core.TeamPlugin;
 import org.eclipse.team.internal.ui.Utils;
 import org.eclipse.team.ui.TeamUI;
 import org.eclipse.team.ui.mapping.SynchronizationStateTester;
@@ -63,10 +66,112 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 	
 	private static final SynchronizationStateTester DEFAULT_TESTER = new SynchronizationStateTester();
 
+	private final CVSDecorationCache cache = new CVSDecorationCache();
+	private final PrepareDecorationsJob prepareJob = new PrepareDecorationsJob();
+
+	// The global ignores may be changed without the preference page, e.g. by Team.setAllIgnores
+	private final Preferences.IPropertyChangeListener ignoresListener = new Preferences.IPropertyChangeListener() {
+		public void propertyChange(Preferences.PropertyChangeEvent event) {
+			if (event.getProperty().equals(TeamPlugin.PREF_TEAM_IGNORES)) {
+				cache.clear();
+				refresh();
+			}
+		}
+	};
+
+	/*
+	 * Calculates the state of the resources whose state has changed in one
+	 * batch before their labels are updated, so that the sync info of their
+	 * folders is loaded once rather than by each decoration.
+	 */
+	private class PrepareDecorationsJob extends Job {
+		private final Set resources = new HashSet();
+
+		PrepareDecorationsJob() {
+			super(CVSUIMessages.CVSLightweightDecorator_prepareDecorations);
+			setSystem(true);
+			setPriority(Job.DECORATE);
+		}
+
+		void add(Set changedResources) {
+			synchronized (resources) {
+				resources.addAll(changedResources);
+			}
+			schedule();
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			IResource[] toPrepare;
+			synchronized (resources) {
+				toPrepare = (IResource[]) resources.toArray(new IResource[resources.size()]);
+				resources.clear();
+			}
+			if (toPrepare.length == 0)
+				return Status.OK_STATUS;
+			if (!monitor.isCanceled())
+				prepareDecorations(toPrepare);
+			// The labels are updated even if the job is canceled
+			postLabelEvent(new LabelProviderChangedEvent(CVSLightweightDecorator.this, toPrepare));
+			return Status.OK_STATUS;
+		}
+	}
+
+	/*
+	 * The CVS state of a resource that its decoration is calculated from
+	 */
+	private static class ResourceState {
+		boolean supervised;
+		String tag;
+		int type;
+		boolean hasRemote;
+		boolean ignored;
+		// null if the dirty state is not decorated from the resource
+		Boolean dirty;
+		boolean newResource;
+		boolean added;
+		String revision;
+		boolean readOnly;
+		boolean needsMerge;
+		String keywordSubstitution;
+		boolean watchEditEnabled;
+		ICVSRepositoryLocation location;
+		String repository;
+		boolean virtualFolder;
+
+		void apply(CVSDecoration decoration) {
+			decoration.setResourceType(type);
+			decoration.setHasRemote(hasRemote);
+			if (ignored) {
+				decoration.setIgnored(true);
+			}
+			if (!decoration.isIgnored()) {
+				if (dirty != null) {
+					decoration.setDirty(dirty.booleanValue());
+				}
+				if (newResource) {
+					decoration.setNewResource(true);
+				}
+				if (type == IResource.FILE) {
+					decoration.setAdded(added);
+					decoration.setRevision(revision);
+					decoration.setReadOnly(readOnly);
+					decoration.setNeedsMerge(needsMerge);
+					decoration.setKeywordSubstitution(keywordSubstitution);
+					decoration.setWatchEditEnabled(watchEditEnabled);
+				} else {
+					decoration.setLocation(location);
+					decoration.setRepository(repository);
+					decoration.setVirtualFolder(virtualFolder);
+				}
+			}
+		}
+	}
+
 	public CVSLightweightDecorator() {
 		ResourceStateChangeListeners.getListener().addResourceStateChangeListener(this);
 		TeamUI.addPropertyChangeListener(this);
 		CVSUIPlugin.addPropertyChangeListener(this);
+		TeamPlugin.getPlugin().getPluginPreferences().addPropertyChangeListener(ignoresListener);
 		
 		// This is an optimization to ensure that while decorating our fonts and colors are
 		// pre-created and decoration can occur without having to syncExec.
@@ -158,7 +263,7 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 		// Calculate and apply the decoration
 		try {
 			if (tester.isDecorationEnabled(element)) {
-				CVSDecoration cvsDecoration = decorate(element, tester);
+				CVSDecoration cvsDecoration = decorate(element, tester, cache);
 				cvsDecoration.apply(decoration);
 			}
 		} catch(CoreException e) {
@@ -201,12 +306,27 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
     }
     
     public static CVSDecoration decorate(Object element, SynchronizationStateTester tester) throws CoreException {
+    	return decorate(element, tester, null);
+    }
+
+    /*
+     * Calculate the decoration of the element. If a cache is provided, the CVS state
+     * of the resource the element adapts to is looked up in the cache.
+     */
+    private static CVSDecoration decorate(Object element, SynchronizationStateTester tester, CVSDecorationCache cache) throws CoreException {
     	IPreferenceStore store = CVSUIPlugin.getPlugin().getPreferenceStore();
         CVSDecoration result = new CVSDecoration();
         
+        // The state of an element that adapts to a single resource is the state of the resource
+        IResource resource = getResource(element);
+        ResourceState resourceState = null;
+        if (resource != null) {
+        	resourceState = getResourceState(element, resource, cache);
+        }
+        
         // First, decorate the synchronization state
     	int state = IDiff.NO_CHANGE;
-		if (isSupervised(element)) {
+		if (resourceState != null ? resourceState.supervised : isSupervised(element)) {
 			// TODO: Not quite right
 			result.setHasRemote(true);
 			state = tester.getState(element, 
@@ -220,29 +340,60 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
         }
 		// Tag
 		if (!result.isIgnored()) {
-			CVSTag tag = getTagToShow(element);
-			if (tag != null) {
-				String name = tag.getName();
-				if (tag.getType() == CVSTag.DATE) {
-					Date date = tag.asDate();
-					if (date != null) {
-						name = decorateFormatter.format(date);
-					}
-				}
+			String name = resourceState != null ? resourceState.tag : getTagName(getTagToShow(element));
+			if (name != null) {
 				result.setTag(name);
 			}
 		}
 		
 		// If the element adapts to a single resource, add additional decorations
-		IResource resource = getResource(element);
-		if (resource == null) {
+		if (resourceState == null) {
 			result.setResourceType(CVSDecoration.MODEL);
 		} else {
-			decorate(resource, result);
+			resourceState.apply(result);
 		}
 		tester.elementDecorated(element, result.asTeamStateDescription(null));
         return result;
     }
+
+	/*
+	 * Return the state of the resource the element adapts to, from the cache if one is provided
+	 */
+	private static ResourceState getResourceState(Object element, IResource resource, CVSDecorationCache cache) throws CoreException {
+		if (cache == null) {
+			return calculateResourceState(element, resource);
+		}
+		ResourceState state = (ResourceState) cache.getState(resource);
+		if (state == null) {
+			long stamp = cache.getStamp();
+			long start = System.currentTimeMillis();
+			state = calculateResourceState(element, resource);
+			cache.putState(resource, state, stamp, System.currentTimeMillis() - start);
+		}
+		return state;
+	}
+
+	private static ResourceState calculateResourceState(Object element, IResource resource) throws CoreException {
+		ResourceState state = getResourceState(resource);
+		state.supervised = isSupervised(element);
+		if (state.supervised) {
+			state.tag = getTagName(getTagToShow(resource));
+		}
+		return state;
+	}
+
+	private static String getTagName(CVSTag tag) {
+		if (tag == null)
+			return null;
+		String name = tag.getName();
+		if (tag.getType() == CVSTag.DATE) {
+			Date date = tag.asDate();
+			if (date != null) {
+				name = decorateFormatter.format(date);
+			}
+		}
+		return name;
+	}
     
 	private static boolean isSupervised(Object element) throws CoreException {
 		IResource[] resources = getTraversalRoots(element);
@@ -271,16 +422,18 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 		return (IResource[]) result.toArray(new IResource[result.size()]);
 	}
 
-	private static void decorate(IResource resource, CVSDecoration cvsDecoration) throws CVSException {
+	/*
+	 * Calculate the state the additional decorations of the resource are applied from
+	 */
+	private static ResourceState getResourceState(IResource resource) throws CVSException {
 		IPreferenceStore store = CVSUIPlugin.getPlugin().getPreferenceStore();
 		ICVSResource cvsResource = CVSWorkspaceRoot.getCVSResourceFor(resource);
-		cvsDecoration.setResourceType(resource.getType());
+		ResourceState state = new ResourceState();
+		state.type = resource.getType();
 		
-		cvsDecoration.setHasRemote(hasRemote(cvsResource));
-		if (cvsResource.isIgnored()) {
-			cvsDecoration.setIgnored(true);
-		}
-		if (!cvsDecoration.isIgnored()) {
+		state.hasRemote = hasRemote(cvsResource);
+		state.ignored = cvsResource.isIgnored();
+		if (!state.ignored) {
 			// Dirty: Only decorate dirty state if we're not set to decorate models
 			boolean decorateModel = store.getBoolean(ICVSUIConstants.PREF_CALCULATE_DIRTY);
 			if (!decorateModel) {
@@ -290,7 +443,7 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 					if (node != null) {
 						if (node instanceof IThreeWayDiff) {
 							IThreeWayDiff twd = (IThreeWayDiff) node;
-							cvsDecoration.setDirty(twd.getDirection() == IThreeWayDiff.OUTGOING 
+							state.dirty = Boolean.valueOf(twd.getDirection() == IThreeWayDiff.OUTGOING 
 								|| twd.getDirection() == IThreeWayDiff.CONFLICTING);
 						}
 					}
@@ -305,20 +458,21 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 				if (cvsResource.exists()) {
 					if (cvsResource.isFolder()) {
 						if (!((ICVSFolder) cvsResource).isCVSFolder()) {
-							cvsDecoration.setNewResource(true);
+							state.newResource = true;
 						}
 					} else if (!cvsResource.isManaged()) {
-						cvsDecoration.setNewResource(true);
+						state.newResource = true;
 					}
 				}
 			}
 			// Extract type specific properties
 			if (resource.getType() == IResource.FILE) {
-				extractFileProperties((IFile) resource, cvsDecoration);
+				extractFileProperties((IFile) resource, state);
 			} else {
-				extractContainerProperties((IContainer) resource, cvsDecoration);
+				extractContainerProperties((IContainer) resource, state);
 			}
 		}
+		return state;
 	}
 
 	private static boolean hasRemote(ICVSResource cvsResource) {
@@ -348,38 +502,88 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
     			}
             }
 		}
-		decorate(resource, cvsDecoration);
+		getResourceState(resource).apply(cvsDecoration);
 		return cvsDecoration;
 	}
 
-	private static void extractContainerProperties(IContainer resource, CVSDecoration cvsDecoration) throws CVSException {
+	private static void extractContainerProperties(IContainer resource, ResourceState state) throws CVSException {
 		ICVSFolder folder = CVSWorkspaceRoot.getCVSFolderFor(resource);
 		FolderSyncInfo folderInfo = folder.getFolderSyncInfo();
 		if (folderInfo != null) {
-			cvsDecoration.setLocation(KnownRepositories.getInstance().getRepository(folderInfo.getRoot()));
+			state.location = KnownRepositories.getInstance().getRepository(folderInfo.getRoot());
 			
 			// Ignore the relative 'repository' path if it is the same locally 
 			if (!resource.getFullPath().toString().substring(1).equals(folderInfo.getRepository()))
-				cvsDecoration.setRepository(folderInfo.getRepository());
-			cvsDecoration.setVirtualFolder(folderInfo.isVirtualDirectory());
+				state.repository = folderInfo.getRepository();
+			state.virtualFolder = folderInfo.isVirtualDirectory();
 		}
 	}
 
-	private static void extractFileProperties(IFile resource, CVSDecoration cvsDecoration) throws CVSException {
+	private static void extractFileProperties(IFile resource, ResourceState state) throws CVSException {
 		ICVSFile file = CVSWorkspaceRoot.getCVSFileFor(resource);
 		ResourceSyncInfo fileInfo = file.getSyncInfo();
 		KSubstOption option = KSubstOption.fromFile(resource);
 		if (fileInfo != null) {
-			cvsDecoration.setAdded(fileInfo.isAdded());
-			cvsDecoration.setRevision(fileInfo.getRevision());
-			cvsDecoration.setReadOnly(file.isReadOnly());
-			cvsDecoration.setNeedsMerge(fileInfo.isNeedsMerge(file.getTimeStamp()));
+			state.added = fileInfo.isAdded();
+			state.revision = fileInfo.getRevision();
+			state.readOnly = file.isReadOnly();
+			state.needsMerge = fileInfo.isNeedsMerge(file.getTimeStamp());
 			option = fileInfo.getKeywordMode();
 		}
-		cvsDecoration.setKeywordSubstitution(option.getShortDisplayText());
+		state.keywordSubstitution = option.getShortDisplayText();
 		CVSTeamProvider provider = getCVSProviderFor(resource);
 		if (provider != null)
-			cvsDecoration.setWatchEditEnabled(provider.isWatchEditEnabled());	
+			state.watchEditEnabled = provider.isWatchEditEnabled();	
+	}
+
+	/**
+	 * Calculate and cache the CVS state of the given resources before they
+	 * are decorated, for instance when they are about to be shown in a viewer.
+	 * The sync info of the folders containing the resources is loaded in one
+	 * pass of the synchronizer if it is not loaded yet. As loading the sync
+	 * info may wait for the scheduling rules of the folders, this method must
+	 * not be called from the decorator thread or from a resource delta listener.
+	 * 
+	 * @param resources the resources that are about to be decorated
+	 */
+	public void prepareDecorations(IResource[] resources) {
+		List toCalculate = new ArrayList();
+		for (int i = 0; i < resources.length; i++) {
+			IResource resource = resources[i];
+			if (resource.getType() != IResource.ROOT && getCVSProviderFor(resource) != null && !cache.contains(resource)) {
+				toCalculate.add(resource);
+			}
+		}
+		if (toCalculate.isEmpty())
+			return;
+		IResource[] resourcesToCalculate = (IResource[]) toCalculate.toArray(new IResource[toCalculate.size()]);
+		try {
+			EclipseSynchronizer synchronizer = EclipseSynchronizer.getInstance();
+			if (!synchronizer.isSyncInfoLoaded(resourcesToCalculate, IResource.DEPTH_ZERO)) {
+				synchronizer.ensureSyncInfoLoaded(resourcesToCalculate, IResource.DEPTH_ZERO);
+			}
+		} catch (CVSException e) {
+			// The sync info is loaded when each state is calculated
+			handleException((IResource) null, e);
+		}
+		for (int i = 0; i < resourcesToCalculate.length; i++) {
+			IResource resource = resourcesToCalculate[i];
+			try {
+				getResourceState(resource, resource, cache);
+			} catch (CoreException e) {
+				handleException(resource, e);
+			}
+		}
+	}
+
+	/**
+	 * Return the cache of the CVS state of the decorated resources, whose
+	 * statistics help diagnosing the decoration performance.
+	 * 
+	 * @return the cache of the decorator
+	 */
+	public CVSDecorationCache getCache() {
+		return cache;
 	}
 
 	protected static CVSTag getTagToShow(Object element) throws CoreException {
@@ -482,6 +686,7 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 	 */
 	 
 	public void refresh(IProject project) {
+		cache.invalidate(project);
 		final List resources = new ArrayList();
 		try {
 			project.accept(new IResourceVisitor() {
@@ -521,6 +726,8 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 	 * @see org.eclipse.team.internal.ccvs.core.IResourceStateChangeListener#resourceStateChanged(org.eclipse.core.resources.IResource[])
 	 */
 	public void resourceStateChanged(IResource[] changedResources) {
+		cache.invalidate(changedResources);
+		
 		// add depth first so that update thread processes parents first.
 		//System.out.println(">> State Change Event");
 		Set resourcesToUpdate = new HashSet();
@@ -538,7 +745,8 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 			}
 		}
 
-		postLabelEvent(new LabelProviderChangedEvent(this, resourcesToUpdate.toArray()));
+		// The labels are updated once the states are calculated in the background
+		prepareJob.add(resourcesToUpdate);
 	}
 	
 	/**
@@ -576,6 +784,9 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 		CVSProviderPlugin.broadcastDecoratorEnablementChanged(false /* disabled */);
 		TeamUI.removePropertyChangeListener(this);
 		CVSUIPlugin.removePropertyChangeListener(this);
+		TeamPlugin.getPlugin().getPluginPreferences().removePropertyChangeListener(ignoresListener);
+		prepareJob.cancel();
+		cache.clear();
 	}
 	
 	/**
@@ -615,6 +826,7 @@ public class CVSLightweightDecorator extends LabelProvider implements ILightweig
 	public void propertyChange(PropertyChangeEvent event) {
 		if (isEventOfInterest(event)) {
 			ensureFontAndColorsCreated(fonts, colors);
+			cache.clear();
 		    refresh();
 		}	
 	}
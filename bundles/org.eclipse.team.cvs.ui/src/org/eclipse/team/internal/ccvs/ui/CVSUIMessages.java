@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2011 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -223,6 +223,7 @@ public class CVSUIMessages extends NLS {
 	public static String CVSDecoratorConfiguration_2;
 	public static String CVSDecoratorConfiguration_3;
 	public static String CVSDecoratorConfiguration_4;
+	public static String CVSLightweightDecorator_prepareDecorations;
 	
 	public static String CVSFilePropertiesPage_ignored;
 	public static String CVSFilePropertiesPage_notManaged;
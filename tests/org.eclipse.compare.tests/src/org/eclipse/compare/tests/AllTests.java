@@ -22,6 +22,7 @@ public class AllTests {
 		TestSuite suite = new TestSuite("Test for org.eclipse.compare.tests"); //$NON-NLS-1$
 		// $JUnit-BEGIN$
 		suite.addTestSuite(TextMergeViewerTest.class);
+		suite.addTestSuite(DocumentMergerTest.class);
 		suite.addTestSuite(LineReaderTest.class);
 		suite.addTestSuite(StreamMergerTest.class);
 		suite.addTestSuite(DocLineComparatorTest.class);
@@ -30,7 +31,12 @@ public class AllTests {
 		suite.addTestSuite(PatchBuilderTest.class);
 		suite.addTestSuite(AsyncExecTests.class);
 		suite.addTestSuite(DiffTest.class);
+		suite.addTestSuite(HistogramDiffTest.class);
+		suite.addTestSuite(DifferencerTest.class);
 		suite.addTestSuite(FileDiffResultTest.class);
+		suite.addTestSuite(HunkLocatorTest.class);
+		suite.addTestSuite(StreamedPatchTest.class);
+		suite.addTestSuite(ParallelPatchTest.class);
 		suite.addTestSuite(ContentMergeViewerTest.class);
 		suite.addTestSuite(PatchLinesTest.class);
 		suite.addTestSuite(PatchUITest.class);
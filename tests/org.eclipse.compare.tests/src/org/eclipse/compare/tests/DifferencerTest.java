@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.compare.IStreamContentAccessor;
+import org.eclipse.compare.ITypedElement;
+import org.eclipse.compare.internal.BufferedResourceNode;
+import org.eclipse.compare.structuremergeviewer.Differencer;
+import org.eclipse.compare.structuremergeviewer.IStructureComparator;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.swt.graphics.Image;
+
+public class DifferencerTest extends WorkspaceTest {
+
+	public DifferencerTest() {
+		super();
+	}
+
+	public DifferencerTest(String name) {
+		super(name);
+	}
+
+	private static class Element implements IStructureComparator, ITypedElement, IStreamContentAccessor {
+		private final String fName;
+		private final byte[] fContents;
+		private final List fChildren;
+
+		Element(String name, byte[] contents) {
+			fName= name;
+			fContents= contents;
+			fChildren= null;
+		}
+
+		Element(String name) {
+			fName= name;
+			fContents= null;
+			fChildren= new ArrayList();
+		}
+
+		Element add(Element child) {
+			fChildren.add(child);
+			return this;
+		}
+
+		public Object[] getChildren() {
+			return fChildren != null ? fChildren.toArray() : null;
+		}
+
+		public InputStream getContents() {
+			return fContents != null ? new ByteArrayInputStream(fContents) : null;
+		}
+
+		public String getName() {
+			return fName;
+		}
+
+		public String getType() {
+			return fChildren != null ? ITypedElement.FOLDER_TYPE : ITypedElement.UNKNOWN_TYPE;
+		}
+
+		public Image getImage() {
+			return null;
+		}
+
+		public boolean equals(Object other) {
+			return other instanceof Element && fName.equals(((Element) other).fName);
+		}
+
+		public int hashCode() {
+			return fName.hashCode();
+		}
+	}
+
+	/*
+	 * Records the visited elements and exposes contentsEqual.
+	 */
+	private static class TestDifferencer extends Differencer {
+		final List fVisited= new ArrayList();
+
+		protected Object visit(Object data, int result, Object ancestor, Object left, Object right) {
+			ITypedElement element= (ITypedElement) (left != null ? left : right != null ? right : ancestor);
+			fVisited.add(data + "/" + element.getName() + ":" + result);
+			return data + "/" + element.getName();
+		}
+
+		boolean equal(Object input1, Object input2) {
+			return contentsEqual(input1, input2);
+		}
+	}
+
+	private static byte[] createContents(int length, int changedIndex) {
+		byte[] contents= new byte[length];
+		for (int i= 0; i < length; i++)
+			contents[i]= (byte) (i % 251);
+		if (changedIndex >= 0)
+			contents[changedIndex]++;
+		return contents;
+	}
+
+	public void testContentsEqualAcrossBuffers() {
+		TestDifferencer d= new TestDifferencer();
+		int[] lengths= new int[] { 0, 1, 8191, 8192, 8193, 20000 };
+		for (int i= 0; i < lengths.length; i++) {
+			int length= lengths[i];
+			Element left= new Element("f", createContents(length, -1));
+			assertTrue(d.equal(left, new Element("f", createContents(length, -1))));
+			assertFalse(d.equal(left, new Element("f", createContents(length + 1, -1))));
+			if (length > 0) {
+				assertFalse(d.equal(left, new Element("f", createContents(length, length - 1))));
+				assertFalse(d.equal(left, new Element("f", createContents(length - 1, -1))));
+			}
+		}
+	}
+
+	public void testParallelSameAsSerial() {
+		Element ancestor= createTree(0);
+		Element left= createTree(1);
+		Element right= createTree(2);
+
+		TestDifferencer serial= new TestDifferencer();
+		TestDifferencer parallel= new TestDifferencer();
+		parallel.setContentCompareThreads(4);
+
+		assertEquals(serial.findDifferences(false, new NullProgressMonitor(), "", null, left, right),
+				parallel.findDifferences(false, new NullProgressMonitor(), "", null, left, right));
+		assertEquals(serial.fVisited, parallel.fVisited);
+		assertFalse(serial.fVisited.isEmpty());
+
+		serial.fVisited.clear();
+		parallel.fVisited.clear();
+		assertEquals(serial.findDifferences(true, new NullProgressMonitor(), "", ancestor, left, right),
+				parallel.findDifferences(true, new NullProgressMonitor(), "", ancestor, left, right));
+		assertEquals(serial.fVisited, parallel.fVisited);
+		assertFalse(serial.fVisited.isEmpty());
+	}
+
+	public void testParallelNoChange() {
+		TestDifferencer parallel= new TestDifferencer();
+		parallel.setContentCompareThreads(4);
+		assertNull(parallel.findDifferences(false, null, "", null, createTree(0), createTree(0)));
+		assertTrue(parallel.fVisited.isEmpty());
+	}
+
+	/*
+	 * Creates folders with files, some of the files are changed, added or
+	 * removed depending on the variant.
+	 */
+	private static Element createTree(int variant) {
+		Element root= new Element("root");
+		for (int i= 0; i < 10; i++) {
+			Element folder= new Element("folder" + i);
+			root.add(folder);
+			for (int j= 0; j < 20; j++) {
+				int k= i * 20 + j;
+				if (variant != 0 && k % (5 + variant) == 0)
+					continue;
+				int changedIndex= variant != 0 && k % (3 + variant) == 0 ? variant : -1;
+				folder.add(new Element("file" + j, createContents(100 + k, changedIndex)));
+			}
+			if (variant != 0 && i % 3 == variant)
+				folder.add(new Element("added" + i, createContents(10, -1)));
+		}
+		return root;
+	}
+
+	public void testDigestCacheDetectsChanges() throws CoreException {
+		IProject project= createProject(new String[] { "a.txt", "b.txt" });
+		IFile a= project.getFile("a.txt");
+		IFile b= project.getFile("b.txt");
+		a.setContents(new ByteArrayInputStream("same contents".getBytes()), true, false, null);
+		b.setContents(new ByteArrayInputStream("same contents".getBytes()), true, false, null);
+
+		TestDifferencer d= new TestDifferencer();
+		assertTrue(d.equal(new BufferedResourceNode(a), new BufferedResourceNode(b)));
+		// the cached digests must not be used once a file changed
+		b.setContents(new ByteArrayInputStream("same_contents".getBytes()), true, false, null);
+		assertFalse(d.equal(new BufferedResourceNode(a), new BufferedResourceNode(b)));
+		b.setContents(new ByteArrayInputStream("other length".getBytes()), true, false, null);
+		assertFalse(d.equal(new BufferedResourceNode(a), new BufferedResourceNode(b)));
+
+		// modified buffers are compared byte by byte
+		BufferedResourceNode dirty= new BufferedResourceNode(b);
+		dirty.setContent("same contents".getBytes());
+		assertTrue(d.equal(new BufferedResourceNode(a), dirty));
+	}
+}
@@ -269,6 +269,64 @@ public class DocLineComparatorTest extends TestCase {
 			}
 	}
 
+	public void testLinesMatchAfterInterning() {
+		IDocument doc1= new Document();
+		doc1.set("a\nb\r\n a\r\nb\n b\na"); //$NON-NLS-1$
+		IDocument doc2= new Document();
+		doc2.set("b\r\na\nb \na\r\n\na"); //$NON-NLS-1$
+
+		ICompareFilter cacheable= createFilter(true);
+		ICompareFilter notCacheable= createFilter(false);
+
+		for (int w= 0; w < 2; w++) {
+			boolean ignoreWhitespace= w == 1;
+			// the first comparator pair compares interned lines, the second compares line by line
+			IRangeComparator l1= new DocLineComparator(doc1, null, ignoreWhitespace, new ICompareFilter[] { cacheable }, 'L');
+			IRangeComparator r1= new DocLineComparator(doc2, null, ignoreWhitespace, new ICompareFilter[] { cacheable }, 'R');
+			IRangeComparator l2= new DocLineComparator(doc1, null, ignoreWhitespace, new ICompareFilter[] { notCacheable }, 'L');
+			IRangeComparator r2= new DocLineComparator(doc2, null, ignoreWhitespace, new ICompareFilter[] { notCacheable }, 'R');
+			IRangeComparator l3= new DocLineComparator(doc1, null, ignoreWhitespace);
+			IRangeComparator r3= new DocLineComparator(doc2, null, ignoreWhitespace);
+			for (int i= 0; i < l1.getRangeCount(); i++) {
+				for (int j= 0; j < r1.getRangeCount(); j++) {
+					Assert.assertEquals(l2.rangesEqual(i, r2, j), l1.rangesEqual(i, r1, j));
+					Assert.assertEquals(r2.rangesEqual(j, l2, i), r1.rangesEqual(j, l1, i));
+				}
+				for (int j= 0; j < l1.getRangeCount(); j++)
+					Assert.assertEquals(l2.rangesEqual(i, l2, j), l1.rangesEqual(i, l1, j));
+			}
+			// without filters lines only match if their delimiters have the same length
+			Assert.assertEquals(ignoreWhitespace, l3.rangesEqual(0, r3, 3));
+			Assert.assertEquals(ignoreWhitespace, l3.rangesEqual(0, r3, 5));
+			Assert.assertEquals(ignoreWhitespace, l3.rangesEqual(2, r3, 1));
+			Assert.assertTrue(l3.rangesEqual(1, r3, 0));
+			Assert.assertTrue(l3.rangesEqual(5, r3, 5));
+		}
+	}
+
+	private ICompareFilter createFilter(final boolean canCache) {
+		return new ICompareFilter() {
+
+			public void setInput(Object input, Object ancestor, Object left,
+					Object right) {
+				// EMPTY
+			}
+
+			public IRegion[] getFilteredRegions(HashMap lineComparison) {
+				String line= (String) lineComparison.get(ICompareFilter.THIS_LINE);
+				return line.startsWith("b") ? new IRegion[] { new Region(0, 1) } : null; //$NON-NLS-1$
+			}
+
+			public boolean isEnabledInitially() {
+				return false;
+			}
+
+			public boolean canCacheFilteredRegions() {
+				return canCache;
+			}
+		};
+	}
+
 	public void testEmpty() {
 		IDocument doc1= new Document();
 		doc1.set(""); //$NON-NLS-1$
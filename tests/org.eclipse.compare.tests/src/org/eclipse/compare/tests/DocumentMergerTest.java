@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.compare.CompareConfiguration;
+import org.eclipse.compare.contentmergeviewer.ITokenComparator;
+import org.eclipse.compare.contentmergeviewer.TokenComparator;
+import org.eclipse.compare.internal.CompareUIPlugin;
+import org.eclipse.compare.internal.MergeViewerContentProvider;
+import org.eclipse.compare.internal.merge.DocumentMerger;
+import org.eclipse.compare.internal.merge.DocumentMerger.Diff;
+import org.eclipse.compare.internal.merge.DocumentMerger.IDocumentMergerInput;
+import org.eclipse.compare.internal.merge.DocumentMerger.IncrementalDiff;
+import org.eclipse.compare.rangedifferencer.RangeDifference;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DefaultPositionUpdater;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.Region;
+
+/**
+ * Tests that the lookups of the document merger return the same results as
+ * scanning all diffs and that incremental diffs result in the same diffs as
+ * diffing the documents.
+ */
+public class DocumentMergerTest extends TestCase {
+
+	private static final char LEFT= MergeViewerContentProvider.LEFT_CONTRIBUTOR;
+	private static final char RIGHT= MergeViewerContentProvider.RIGHT_CONTRIBUTOR;
+	private static final String DIFF_RANGE_CATEGORY= CompareUIPlugin.PLUGIN_ID + ".DIFF_RANGE_CATEGORY"; //$NON-NLS-1$
+
+	private IDocument fLeft;
+	private IDocument fRight;
+	private DocumentMerger fMerger;
+
+	public DocumentMergerTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		Random random= new Random(4711);
+		StringBuffer left= new StringBuffer();
+		StringBuffer right= new StringBuffer();
+		for (int i= 0; i < 2000; i++) {
+			String line= "line " + i + "\n"; //$NON-NLS-1$ //$NON-NLS-2$
+			switch (random.nextInt(8)) {
+			case 0:
+				left.append(line);
+				break;
+			case 1:
+				right.append(line);
+				break;
+			case 2:
+				left.append(line);
+				right.append("changed " + line); //$NON-NLS-1$
+				right.append("added " + line); //$NON-NLS-1$
+				break;
+			default:
+				left.append(line);
+				right.append(line);
+			}
+		}
+		fLeft= createDocument(left.toString(), LEFT);
+		fRight= createDocument(right.toString(), RIGHT);
+		final CompareConfiguration configuration= new CompareConfiguration();
+		fMerger= new DocumentMerger(new IDocumentMergerInput() {
+			public IDocument getDocument(char contributor) {
+				switch (contributor) {
+				case LEFT:
+					return fLeft;
+				case RIGHT:
+					return fRight;
+				}
+				return null;
+			}
+			public Position getRegion(char contributor) {
+				return null;
+			}
+			public boolean isIgnoreAncestor() {
+				return true;
+			}
+			public boolean isThreeWay() {
+				return false;
+			}
+			public CompareConfiguration getCompareConfiguration() {
+				return configuration;
+			}
+			public ITokenComparator createTokenComparator(String s) {
+				return new TokenComparator(s);
+			}
+			public boolean isHunkOnLeft() {
+				return false;
+			}
+			public int getHunkStart() {
+				return 0;
+			}
+			public boolean isPatchHunk() {
+				return false;
+			}
+			public boolean isShowPseudoConflicts() {
+				return false;
+			}
+			public boolean isPatchHunkOk() {
+				return false;
+			}
+		});
+		fMerger.doDiff();
+	}
+
+	/*
+	 * Creates a document whose diffs are updated and whose edits are
+	 * recorded like by the text merge viewer.
+	 */
+	private IDocument createDocument(String contents, final char contributor) {
+		IDocument document= new Document(contents);
+		document.addPositionUpdater(new DefaultPositionUpdater(DIFF_RANGE_CATEGORY) {
+			protected boolean notDeleted() {
+				return true;
+			}
+		});
+		document.addDocumentListener(new IDocumentListener() {
+			public void documentAboutToBeChanged(DocumentEvent event) {
+				// nothing to do
+			}
+			public void documentChanged(DocumentEvent event) {
+				int length= event.getText() != null ? event.getText().length() : 0;
+				fMerger.documentChanged(contributor, event.getOffset(), event.getLength(), length);
+			}
+		});
+		return document;
+	}
+
+	public void testLookups() {
+		assertTrue(fMerger.changesCount() > 100);
+		assertLookups();
+	}
+
+	public void testLookupsAfterEdit() throws BadLocationException {
+		assertLookups();
+		fRight.replace(0, 0, "first\nsecond\n"); //$NON-NLS-1$
+		fLeft.replace(fLeft.getLength() / 2, 0, "middle\n"); //$NON-NLS-1$
+		assertLookups();
+	}
+
+	public void testLookupsAfterDiff() throws CoreException {
+		assertLookups();
+		fRight.set(fRight.get().substring(fRight.getLength() / 3));
+		fMerger.doDiff();
+		assertLookups();
+	}
+
+	public void testIncrementalDiff() throws BadLocationException, CoreException {
+		Diff firstDiff= (Diff) fMerger.rangesIterator().next();
+		int line= (fRight.getNumberOfLines() - 1) / 2;
+		fRight.replace(fRight.getLineOffset(line), 0, "inserted\n"); //$NON-NLS-1$
+		applyIncrementalDiff(false);
+		// the diffs before the edited lines are kept
+		assertSame(firstDiff, fMerger.rangesIterator().next());
+		assertLookups();
+		assertSameDiffs();
+
+		fRight.replace(fRight.getLineOffset(line), fRight.getLineLength(line), ""); //$NON-NLS-1$
+		assertIncrementalDiff(false);
+		fRight.replace(fRight.getLineOffset(line), fRight.getLineLength(line), "replaced\n"); //$NON-NLS-1$
+		assertIncrementalDiff(false);
+	}
+
+	public void testIncrementalDiffOfAllLines() throws BadLocationException, CoreException {
+		fRight.replace(0, 0, "first\nsecond\n"); //$NON-NLS-1$
+		fLeft.replace(fLeft.getLength() / 2, 0, "middle\n"); //$NON-NLS-1$
+		fLeft.replace(fLeft.getLineOffset(10), fLeft.getLineOffset(20) - fLeft.getLineOffset(10), ""); //$NON-NLS-1$
+		fRight.replace(fRight.getLength(), 0, "last"); //$NON-NLS-1$
+		assertIncrementalDiff(true);
+		assertLookups();
+	}
+
+	public void testIncrementalDiffAfterEdit() throws BadLocationException {
+		fRight.replace(0, 0, "first\n"); //$NON-NLS-1$
+		assertTrue(fMerger.hasEdits());
+		IncrementalDiff incremental= fMerger.prepareIncrementalDiff(false);
+		assertNotNull(incremental);
+		assertTrue(incremental.run(new NullProgressMonitor()));
+		fRight.replace(0, 0, "second\n"); //$NON-NLS-1$
+		assertFalse(incremental.isValid());
+		List diffs= getDiffs();
+		assertFalse(applyIncrementalDiff(incremental));
+		assertEquals(diffs, getDiffs());
+		assertTrue(fMerger.hasEdits());
+	}
+
+	private void assertIncrementalDiff(boolean allLines) throws CoreException {
+		applyIncrementalDiff(allLines);
+		assertSameDiffs();
+	}
+
+	private void applyIncrementalDiff(boolean allLines) {
+		IncrementalDiff incremental= fMerger.prepareIncrementalDiff(allLines);
+		assertNotNull(incremental);
+		assertTrue(incremental.run(new NullProgressMonitor()));
+		assertTrue(applyIncrementalDiff(incremental));
+		assertFalse(fMerger.hasEdits());
+	}
+
+	/*
+	 * Asserts that diffing the documents results in the same diffs.
+	 */
+	private void assertSameDiffs() throws CoreException {
+		List diffs= getDiffs();
+		fMerger.doDiff();
+		assertEquals(getDiffs(), diffs);
+	}
+
+	private boolean applyIncrementalDiff(IncrementalDiff incremental) {
+		try {
+			return fMerger.applyIncrementalDiff(incremental);
+		} catch (CoreException e) {
+			fail(e.getMessage());
+			return false;
+		}
+	}
+
+	/*
+	 * Returns the kinds and positions of all diffs and their token diffs.
+	 */
+	private List getDiffs() {
+		List changes= new ArrayList();
+		for (Iterator iterator= fMerger.changesIterator(); iterator.hasNext();)
+			changes.add(iterator.next());
+		List result= new ArrayList();
+		for (Iterator iterator= fMerger.rangesIterator(); iterator.hasNext();) {
+			Diff diff= (Diff) iterator.next();
+			StringBuffer buffer= new StringBuffer();
+			buffer.append(diff.getKind()).append(changes.contains(diff) ? " change " : " "); //$NON-NLS-1$ //$NON-NLS-2$
+			appendPositions(buffer, diff);
+			if (diff.hasChildren()) {
+				for (Iterator children= diff.childIterator(); children.hasNext();)
+					appendPositions(buffer.append(" /"), (Diff) children.next()); //$NON-NLS-1$
+			}
+			result.add(buffer.toString());
+		}
+		return result;
+	}
+
+	private void appendPositions(StringBuffer buffer, Diff diff) {
+		Position left= diff.getPosition(LEFT);
+		Position right= diff.getPosition(RIGHT);
+		buffer.append(left.getOffset()).append(',').append(left.getLength()).append(' ');
+		buffer.append(right.getOffset()).append(',').append(right.getLength());
+	}
+
+	private void assertLookups() {
+		int virtualHeight= 1;
+		int rightHeight= 1;
+		for (Iterator iterator= fMerger.rangesIterator(); iterator.hasNext();) {
+			Diff diff= (Diff) iterator.next();
+			virtualHeight+= diff.getMaxDiffHeight();
+			rightHeight+= diff.getRightHeight();
+		}
+		assertEquals(virtualHeight, fMerger.getVirtualHeight());
+		assertEquals(rightHeight, fMerger.getRightHeight());
+
+		for (int line= -2; line < virtualHeight + 2; line++) {
+			assertEquals(realToVirtualPosition(LEFT, line), fMerger.realToVirtualPosition(LEFT, line));
+			assertEquals(realToVirtualPosition(RIGHT, line), fMerger.realToVirtualPosition(RIGHT, line));
+			assertEquals(virtualToRealPosition(LEFT, line), fMerger.virtualToRealPosition(LEFT, line));
+			assertEquals(virtualToRealPosition(RIGHT, line), fMerger.virtualToRealPosition(RIGHT, line));
+		}
+
+		for (int offset= 0; offset <= fRight.getLength(); offset+= 7) {
+			Position position= new Position(offset, 0);
+			assertSame(findDiff(position, false), fMerger.findDiff(position, false));
+			IRegion region= new Region(offset, offset % 50);
+			assertEquals(Arrays.asList(getChangeDiffs(RIGHT, region)), Arrays.asList(fMerger.getChangeDiffs(RIGHT, region)));
+		}
+		for (int offset= 0; offset <= fLeft.getLength(); offset+= 7) {
+			Position position= new Position(offset, 0);
+			assertSame(findDiff(position, true), fMerger.findDiff(position, true));
+			IRegion region= new Region(offset, offset % 50);
+			assertEquals(Arrays.asList(getChangeDiffs(LEFT, region)), Arrays.asList(fMerger.getChangeDiffs(LEFT, region)));
+		}
+	}
+
+	private int getHeight(Diff diff, char contributor) {
+		return contributor == LEFT ? diff.getLeftHeight() : diff.getRightHeight();
+	}
+
+	/*
+	 * The lookups below scan all diffs.
+	 */
+
+	private int realToVirtualPosition(char contributor, int vpos) {
+		int viewPos= 0;
+		int virtualPos= 0;
+		for (Iterator iterator= fMerger.rangesIterator(); iterator.hasNext();) {
+			Diff diff= (Diff) iterator.next();
+			int realHeight= getHeight(diff, contributor);
+			int virtualHeight= diff.getMaxDiffHeight();
+			if (vpos <= viewPos + realHeight) {
+				vpos-= viewPos;
+				if (realHeight <= 0)
+					vpos= 0;
+				else
+					vpos= (vpos * virtualHeight) / realHeight;
+				return virtualPos + vpos;
+			}
+			viewPos+= realHeight;
+			virtualPos+= virtualHeight;
+		}
+		return virtualPos;
+	}
+
+	private int virtualToRealPosition(char contributor, int v) {
+		int virtualPos= 0;
+		int viewPos= 0;
+		for (Iterator iterator= fMerger.rangesIterator(); iterator.hasNext();) {
+			Diff diff= (Diff) iterator.next();
+			int viewHeight= getHeight(diff, contributor);
+			int virtualHeight= diff.getMaxDiffHeight();
+			if (v < (virtualPos + virtualHeight)) {
+				v-= virtualPos;
+				if (viewHeight <= 0)
+					v= 0;
+				else
+					v= (int) (v * ((double) viewHeight / virtualHeight));
+				return viewPos + v;
+			}
+			virtualPos+= virtualHeight;
+			viewPos+= viewHeight;
+		}
+		return viewPos;
+	}
+
+	private Diff findDiff(Position p, boolean left) {
+		for (Iterator iterator= fMerger.rangesIterator(); iterator.hasNext();) {
+			Diff diff= (Diff) iterator.next();
+			Position diffPos= diff.getPosition(left ? LEFT : RIGHT);
+			if (diffPos.offset + diffPos.length >= p.offset && diff.getKind() != RangeDifference.NOCHANGE)
+				return diff;
+			if (diffPos.offset >= p.offset)
+				return diff;
+		}
+		return null;
+	}
+
+	private Diff[] getChangeDiffs(char contributor, IRegion region) {
+		List result= new ArrayList();
+		for (Iterator iterator= fMerger.changesIterator(); iterator.hasNext();) {
+			Diff diff= (Diff) iterator.next();
+			result.addAll(Arrays.asList(diff.getChangeDiffs(contributor, region)));
+		}
+		return (Diff[]) result.toArray(new Diff[result.size()]);
+	}
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests;
+
+import junit.framework.TestCase;
+
+import org.eclipse.compare.internal.DocLineComparator;
+import org.eclipse.compare.internal.core.ComparePlugin;
+import org.eclipse.compare.rangedifferencer.IRangeComparator;
+import org.eclipse.compare.rangedifferencer.RangeDifference;
+import org.eclipse.compare.rangedifferencer.RangeDifferencer;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jface.text.Document;
+
+public class HistogramDiffTest extends TestCase {
+
+	static final String S= System.getProperty("line.separator"); //$NON-NLS-1$
+
+	private String fOldAlgorithm;
+
+	public HistogramDiffTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fOldAlgorithm= ComparePlugin.getDefault().getDiffAlgorithm();
+		ComparePlugin.getDefault().setDiffAlgorithm(ComparePlugin.DIFF_ALGORITHM_HISTOGRAM);
+	}
+
+	protected void tearDown() throws Exception {
+		ComparePlugin.getDefault().setDiffAlgorithm(fOldAlgorithm);
+		super.tearDown();
+	}
+
+	public void testIdentical() {
+		RangeDifference[] diffs= findDifferences("A" + S + "B" + S + "C", "A" + S + "B" + S + "C", false); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(0, diffs.length);
+	}
+
+	public void testAddition() {
+		RangeDifference[] diffs= findDifferences("A" + S + "B" + S + "C", "A" + S + "B" + S + "x" + S + "C", false); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(1, diffs.length);
+		assertEquals(2, diffs[0].leftStart());
+		assertEquals(0, diffs[0].leftLength());
+		assertEquals(2, diffs[0].rightStart());
+		assertEquals(1, diffs[0].rightLength());
+	}
+
+	public void testDeletion() {
+		RangeDifference[] diffs= findDifferences("A" + S + "B" + S + "C", "A" + S + "C", false); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(1, diffs.length);
+		assertEquals(1, diffs[0].leftStart());
+		assertEquals(1, diffs[0].leftLength());
+		assertEquals(1, diffs[0].rightStart());
+		assertEquals(0, diffs[0].rightLength());
+	}
+
+	public void testNothingInCommon() {
+		RangeDifference[] diffs= findDifferences("A" + S + "B", "x" + S + "y" + S + "z", false); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(1, diffs.length);
+		assertEquals(0, diffs[0].leftStart());
+		assertEquals(2, diffs[0].leftLength());
+		assertEquals(0, diffs[0].rightStart());
+		assertEquals(3, diffs[0].rightLength());
+	}
+
+	public void testIgnoreWhitespace() {
+		RangeDifference[] diffs= findDifferences("A" + S + " B" + S + "C", "A" + S + "B  " + S + "C", true); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(0, diffs.length);
+	}
+
+	public void testAnchorsOnUniqueLines() {
+		// the braces occur often, the unique lines must be matched instead
+		String left= "a()" + S + "{" + S + "}" + S + "b()" + S + "{" + S + "}" + S + "c()" + S + "{" + S + "}"; //$NON-NLS-1$
+		String right= "b()" + S + "{" + S + "}" + S + "c()" + S + "{" + S + "}" + S + "a()" + S + "{" + S + "}"; //$NON-NLS-1$
+		RangeDifference[] diffs= findDifferences(left, right, false);
+		assertEquals(2, diffs.length);
+		assertEquals(0, diffs[0].leftStart());
+		assertEquals(3, diffs[0].leftLength());
+		assertEquals(0, diffs[0].rightLength());
+		assertEquals(4, diffs[1].rightStart());
+		assertEquals(3, diffs[1].rightLength());
+		assertEquals(0, diffs[1].leftLength());
+	}
+
+	public void testSameDifferencesAsMyers() {
+		String left= createDocument(500, 0);
+		String right= createDocument(500, 7);
+		RangeDifference[] histogram= findDifferences(left, right, false);
+		ComparePlugin.getDefault().setDiffAlgorithm(ComparePlugin.DIFF_ALGORITHM_MYERS);
+		RangeDifference[] myers= findDifferences(left, right, false);
+		assertEquals(myers.length, histogram.length);
+		for (int i= 0; i < myers.length; i++)
+			assertEquals(myers[i], histogram[i]);
+	}
+
+	public void testThreeWay() {
+		String a= "A" + S + "B" + S + "C" + S + "D"; //$NON-NLS-1$
+		String l= "A" + S + "b1" + S + "C" + S + "D"; //$NON-NLS-1$
+		String r= "A" + S + "B" + S + "C" + S + "d1"; //$NON-NLS-1$
+		RangeDifference[] diffs= RangeDifferencer.findRanges(new NullProgressMonitor(),
+				new DocLineComparator(new Document(a), null, false),
+				new DocLineComparator(new Document(l), null, false),
+				new DocLineComparator(new Document(r), null, false));
+		assertEquals(4, diffs.length);
+		assertEquals(RangeDifference.NOCHANGE, diffs[0].kind());
+		assertEquals(RangeDifference.LEFT, diffs[1].kind());
+		assertEquals(RangeDifference.NOCHANGE, diffs[2].kind());
+		assertEquals(RangeDifference.RIGHT, diffs[3].kind());
+	}
+
+	/*
+	 * Creates a document with the given number of unique lines. Every
+	 * modulo'th line is changed if modulo is not 0.
+	 */
+	static String createDocument(int lines, int modulo) {
+		StringBuffer sb= new StringBuffer();
+		for (int i= 0; i < lines; i++) {
+			if (modulo != 0 && i % modulo == 0)
+				sb.append("changed "); //$NON-NLS-1$
+			sb.append("line "); //$NON-NLS-1$
+			sb.append(i);
+			sb.append(S);
+		}
+		return sb.toString();
+	}
+
+	private RangeDifference[] findDifferences(String left, String right, boolean ignoreWhitespace) {
+		IRangeComparator l= new DocLineComparator(new Document(left), null, ignoreWhitespace);
+		IRangeComparator r= new DocLineComparator(new Document(right), null, ignoreWhitespace);
+		RangeDifference[] diffs= RangeDifferencer.findDifferences(l, r);
+		assertValid(diffs, l, r);
+		return diffs;
+	}
+
+	/*
+	 * Asserts that the differences are ordered and that all ranges in between
+	 * are really equal.
+	 */
+	private void assertValid(RangeDifference[] diffs, IRangeComparator left, IRangeComparator right) {
+		int leftEnd= 0;
+		int rightEnd= 0;
+		for (int i= 0; i <= diffs.length; i++) {
+			int leftStart= i < diffs.length ? diffs[i].leftStart() : left.getRangeCount();
+			int rightStart= i < diffs.length ? diffs[i].rightStart() : right.getRangeCount();
+			assertEquals(leftStart - leftEnd, rightStart - rightEnd);
+			for (int j= 0; j < leftStart - leftEnd; j++)
+				assertTrue(left.rangesEqual(leftEnd + j, right, rightEnd + j));
+			if (i < diffs.length) {
+				assertTrue(diffs[i].leftLength() > 0 || diffs[i].rightLength() > 0);
+				leftEnd= diffs[i].leftEnd();
+				rightEnd= diffs[i].rightEnd();
+			}
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.compare.internal.core.patch.FileDiffResult;
+import org.eclipse.compare.internal.core.patch.FilePatch2;
+import org.eclipse.compare.internal.core.patch.Hunk;
+import org.eclipse.compare.internal.core.patch.HunkResult;
+import org.eclipse.compare.patch.IHunk;
+import org.eclipse.compare.patch.PatchConfiguration;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Tests that hunks are applied at the same positions and with the same fuzz
+ * factor with the hunk locator of the file diff result as by trying every
+ * position.
+ */
+public class HunkLocatorTest extends TestCase {
+
+	// few different lines so that hunks match at many positions
+	private static final String[] LINES= { "a", "b", "c", "}", "{", " a", "a ", "x y", "xy" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$
+
+	private Random fRandom;
+
+	public HunkLocatorTest(String name) {
+		super(name);
+	}
+
+	public void testSmallFiles() {
+		for (int i= 0; i < 5000; i++) {
+			fRandom= new Random(i);
+			assertSameResults(i, 60, 4, 6);
+		}
+	}
+
+	public void testLargeFiles() {
+		for (int i= 0; i < 50; i++) {
+			fRandom= new Random(i);
+			assertSameResults(i, 1500, 120, 60);
+		}
+	}
+
+	public void testShiftedHunks() {
+		List lines= new ArrayList();
+		for (int i= 0; i < 100; i++)
+			lines.add("line" + i + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		FilePatch2 diff= new FilePatch2(new Path("file.txt"), 0, new Path("file.txt"), 0); //$NON-NLS-1$ //$NON-NLS-2$
+		new Hunk(diff, FilePatch2.CHANGE, 10, 3, 10, 3, new String[] { " line10\n", "-line11\n", "+changed11\n", " line12\n" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		new Hunk(diff, FilePatch2.CHANGE, 40, 3, 40, 3, new String[] { " line80\n", "-line81\n", "+changed81\n", " line82\n" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		new Hunk(diff, FilePatch2.CHANGE, 60, 3, 60, 3, new String[] { " line20\n", "-line21\n", "+changed21\n", " line22\n" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		PatchConfiguration configuration= new PatchConfiguration();
+		configuration.setFuzz(-1);
+		FileDiffResult result= new FileDiffResult(diff, configuration);
+		result.patch(lines, new NullProgressMonitor());
+		HunkResult[] results= result.getHunkResults();
+		assertEquals(3, results.length);
+		for (int i= 0; i < results.length; i++) {
+			assertTrue(results[i].isOK());
+			assertEquals(0, results[i].getFuzz());
+		}
+		assertEquals(0, results[0].getShift());
+		assertEquals(40, results[1].getShift());
+		assertEquals(-40, results[2].getShift());
+		assertEquals("changed11\n", result.getLines().get(11)); //$NON-NLS-1$
+		assertEquals("changed21\n", result.getLines().get(21)); //$NON-NLS-1$
+		assertEquals("changed81\n", result.getLines().get(81)); //$NON-NLS-1$
+	}
+
+	private String createLine() {
+		return LINES[fRandom.nextInt(LINES.length)] + (fRandom.nextInt(10) == 0 ? "\r\n" : "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private String getLine(List lines, int index) {
+		return index < lines.size() ? (String) lines.get(index) : createLine();
+	}
+
+	/*
+	 * Creates hunks for a random file and applies them to the file after it
+	 * was changed, once through the file diff result and once hunk by hunk.
+	 */
+	private void assertSameResults(int seed, int maxLines, int maxHunks, int maxChanges) {
+		int lineCount= fRandom.nextInt(maxLines);
+		List original= new ArrayList();
+		for (int i= 0; i < lineCount; i++)
+			original.add(createLine());
+		FilePatch2 diff= new FilePatch2(new Path("file.txt"), 0, new Path("file.txt"), 0); //$NON-NLS-1$ //$NON-NLS-2$
+		int hunkCount= 1 + fRandom.nextInt(maxHunks);
+		int position= 0;
+		for (int h= 0; h < hunkCount; h++) {
+			int start= position + fRandom.nextInt(5);
+			List hunkLines= new ArrayList();
+			int oldLength= 0;
+			int newLength= 0;
+			position= start;
+			int changes= 1 + fRandom.nextInt(3);
+			boolean hasContext= false;
+			for (int c= 0; c <= changes; c++) {
+				int context= fRandom.nextInt(4);
+				hasContext|= context > 0;
+				for (int i= 0; i < context; i++, position++, oldLength++, newLength++)
+					hunkLines.add(" " + getLine(original, position)); //$NON-NLS-1$
+				if (c == changes)
+					break;
+				int deleted= fRandom.nextInt(3);
+				for (int i= 0; i < deleted; i++, position++, oldLength++)
+					hunkLines.add("-" + getLine(original, position)); //$NON-NLS-1$
+				int added= fRandom.nextInt(3);
+				for (int i= 0; i < added; i++, newLength++)
+					hunkLines.add("+" + createLine()); //$NON-NLS-1$
+			}
+			// hunks without context lines are applied even beyond the end of the file
+			if (!hasContext) {
+				hunkLines.add(" " + getLine(original, position)); //$NON-NLS-1$
+				oldLength++;
+				newLength++;
+			}
+			int hunkStart= Math.max(0, start + fRandom.nextInt(7) - 3);
+			new Hunk(diff, FilePatch2.CHANGE, hunkStart, oldLength, hunkStart, newLength, (String[]) hunkLines.toArray(new String[hunkLines.size()]));
+		}
+		List target= new ArrayList(original);
+		int changes= fRandom.nextInt(maxChanges);
+		for (int i= 0; i < changes; i++) {
+			int kind= fRandom.nextInt(3);
+			if (kind == 0)
+				target.add(fRandom.nextInt(target.size() + 1), createLine());
+			else if (kind == 1 && !target.isEmpty())
+				target.remove(fRandom.nextInt(target.size()));
+			else if (!target.isEmpty())
+				target.set(fRandom.nextInt(target.size()), createLine());
+		}
+		PatchConfiguration configuration= new PatchConfiguration();
+		configuration.setReversed(fRandom.nextInt(4) == 0);
+		configuration.setIgnoreWhitespace(fRandom.nextInt(4) == 0);
+		configuration.setFuzz(fRandom.nextInt(4) - 1);
+
+		FileDiffResult result= new FileDiffResult(diff, configuration);
+		List lines= new ArrayList(target);
+		result.patch(lines, new NullProgressMonitor());
+		HunkResult[] results= result.getHunkResults();
+
+		// Without a file diff result pass the hunk results try every position
+		FileDiffResult linear= new FileDiffResult(diff, configuration);
+		IHunk[] hunks= diff.getHunks();
+		HunkResult[] expected= new HunkResult[hunks.length];
+		for (int i= 0; i < hunks.length; i++)
+			expected[i]= new HunkResult(linear, (Hunk) hunks[i]);
+		List expectedLines= new ArrayList(target);
+		if (configuration.getFuzz() != 0) {
+			List fuzzLines= new ArrayList(target);
+			int shift= 0;
+			for (int i= 0; i < expected.length; i++) {
+				expected[i].setShift(shift);
+				expected[i].calculateFuzz(fuzzLines, new NullProgressMonitor());
+				shift= expected[i].getShift();
+			}
+		}
+		int shift= 0;
+		for (int i= 0; i < expected.length; i++) {
+			expected[i].setShift(shift);
+			if (expected[i].patch(expectedLines))
+				shift= expected[i].getShift();
+		}
+
+		assertEquals(expected.length, results.length);
+		for (int i= 0; i < expected.length; i++) {
+			String message= "seed " + seed + ", hunk " + i; //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(message, expected[i].isOK(), results[i].isOK());
+			assertEquals(message, expected[i].getShift(), results[i].getShift());
+			assertEquals(message, expected[i].getFuzz(), results[i].getFuzz());
+		}
+		assertEquals("seed " + seed, expectedLines, lines); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.eclipse.compare.internal.Utilities;
+import org.eclipse.compare.internal.patch.Patcher;
+import org.eclipse.compare.internal.patch.WorkspacePatcher;
+import org.eclipse.compare.patch.WorkspacePatcherUI;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Tests applying a workspace patch whose files are patched by more than one
+ * thread before they are written.
+ */
+public class ParallelPatchTest extends WorkspaceTest {
+
+	private static final int FILES= 20;
+
+	public ParallelPatchTest() {
+		super();
+	}
+
+	public ParallelPatchTest(String name) {
+		super(name);
+	}
+
+	public void testApplyAll() throws CoreException, IOException {
+		IProject project= createProject("ParallelPatchTest", new String[0]); //$NON-NLS-1$
+		StringBuffer patch= createPatchHeader(project);
+		for (int i= 0; i < FILES; i++) {
+			createFile(project, "file" + i + ".txt", "line0\nline1\nline2\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			appendChange(patch, "file" + i + ".txt", "line1", "changed" + i); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+		// the last file has a hunk that does not apply
+		appendChange(patch, "file" + (FILES - 1) + ".txt", "missing", "changed"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		WorkspacePatcher patcher= createPatcher(patch.toString(), 4);
+		patcher.setGenerateRejectFile(true);
+		applyAll(patcher);
+
+		for (int i= 0; i < FILES; i++) {
+			assertEquals("line0\nchanged" + i + "\nline2\n", getContents(project.getFile("file" + i + ".txt"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+		assertTrue(project.getFile("file" + (FILES - 1) + ".txt.rej").exists()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertFalse(project.getFile("file0.txt.rej").exists()); //$NON-NLS-1$
+	}
+
+	public void testFileChangedTwice() throws CoreException, IOException {
+		IProject project= createProject("ParallelPatchTest", new String[0]); //$NON-NLS-1$
+		createFile(project, "file.txt", "line0\nline1\nline2\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		createFile(project, "other.txt", "line0\nline1\nline2\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		StringBuffer patch= createPatchHeader(project);
+		appendChange(patch, "file.txt", "line1", "changed1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		appendChange(patch, "other.txt", "line1", "changed1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		// applies to the contents written for the first change only
+		appendChange(patch, "file.txt", "changed1", "changed2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		applyAll(createPatcher(patch.toString(), 4));
+
+		assertEquals("line0\nchanged2\nline2\n", getContents(project.getFile("file.txt"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("line0\nchanged1\nline2\n", getContents(project.getFile("other.txt"))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static WorkspacePatcher createPatcher(String patch, int threads) throws IOException {
+		WorkspacePatcher patcher= new WorkspacePatcher();
+		patcher.parse(new BufferedReader(new StringReader(patch)));
+		patcher.setPatchThreads(threads);
+		return patcher;
+	}
+
+	private static void applyAll(WorkspacePatcher patcher) throws CoreException {
+		patcher.applyAll(new NullProgressMonitor(), new Patcher.IFileValidator() {
+			public boolean validateResources(IFile[] array) {
+				return true;
+			}
+		});
+	}
+
+	private static StringBuffer createPatchHeader(IProject project) {
+		StringBuffer sb= new StringBuffer();
+		sb.append(WorkspacePatcherUI.getWorkspacePatchHeader() + "\n"); //$NON-NLS-1$
+		sb.append(WorkspacePatcherUI.getWorkspacePatchProjectHeader(project) + "\n"); //$NON-NLS-1$
+		return sb;
+	}
+
+	private static void appendChange(StringBuffer sb, String filename, String oldLine, String newLine) {
+		sb.append("Index: " + filename + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("--- " + filename + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("+++ " + filename + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("@@ -2,1 +2,1 @@\n"); //$NON-NLS-1$
+		sb.append("-" + oldLine + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("+" + newLine + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static void createFile(IProject project, String filename, String contents) throws CoreException {
+		project.getFile(filename).create(new ByteArrayInputStream(contents.getBytes()), true, null);
+	}
+
+	private static String getContents(IFile file) throws CoreException, IOException {
+		return Utilities.readString(file.getContents(), file.getCharset());
+	}
+}
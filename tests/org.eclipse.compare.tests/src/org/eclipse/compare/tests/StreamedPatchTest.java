@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.compare.internal.core.patch.FileDiffResult;
+import org.eclipse.compare.internal.core.patch.LineReader;
+import org.eclipse.compare.internal.core.patch.StreamedFileDiffResult;
+import org.eclipse.compare.patch.IFilePatch2;
+import org.eclipse.compare.patch.IFilePatchResult;
+import org.eclipse.compare.patch.IFilePatchVisitor;
+import org.eclipse.compare.patch.PatchConfiguration;
+import org.eclipse.compare.patch.PatchParser;
+import org.eclipse.compare.patch.ReaderCreator;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Tests parsing a patch one file patch at a time and applying a file patch
+ * while streaming the contents.
+ */
+public class StreamedPatchTest extends TestCase {
+
+	private static final String PATCH= "Index: a.txt\n" //$NON-NLS-1$
+			+ "--- a.txt\n" //$NON-NLS-1$
+			+ "+++ a.txt\n" //$NON-NLS-1$
+			+ "@@ -1,2 +1,2 @@\n" //$NON-NLS-1$
+			+ " line0\n" //$NON-NLS-1$
+			+ "-line1\n" //$NON-NLS-1$
+			+ "+changed1\n" //$NON-NLS-1$
+			+ "Index: b.txt\n" //$NON-NLS-1$
+			+ "--- b.txt\n" //$NON-NLS-1$
+			+ "+++ b.txt\n" //$NON-NLS-1$
+			+ "@@ -1,2 +1,2 @@\n" //$NON-NLS-1$
+			+ " line0\n" //$NON-NLS-1$
+			+ "-line1\n" //$NON-NLS-1$
+			+ "+changed1\n" //$NON-NLS-1$
+			+ "@@ -5,2 +5,2 @@\n" //$NON-NLS-1$
+			+ " line4\n" //$NON-NLS-1$
+			+ "-line5\n" //$NON-NLS-1$
+			+ "+changed5\n" //$NON-NLS-1$
+			+ "Index: c.txt\n" //$NON-NLS-1$
+			+ "--- c.txt\n" //$NON-NLS-1$
+			+ "+++ c.txt\n" //$NON-NLS-1$
+			+ "@@ -3,1 +3,1 @@\n" //$NON-NLS-1$
+			+ "-line2\n" //$NON-NLS-1$
+			+ "+changed2\n"; //$NON-NLS-1$
+
+	public StreamedPatchTest(String name) {
+		super(name);
+	}
+
+	public void testParseOneFilePatchAtATime() throws CoreException {
+		IFilePatch2[] expected= PatchParser.parsePatch(getReaderCreator(PATCH));
+		final List visited= new ArrayList();
+		PatchParser.parsePatch(getReaderCreator(PATCH), new IFilePatchVisitor() {
+			public boolean visit(IFilePatch2 filePatch) {
+				visited.add(filePatch);
+				return true;
+			}
+		});
+		assertEquals(expected.length, visited.size());
+		PatchConfiguration configuration= new PatchConfiguration();
+		for (int i= 0; i < expected.length; i++) {
+			IFilePatch2 filePatch= (IFilePatch2) visited.get(i);
+			assertEquals(expected[i].getTargetPath(configuration), filePatch.getTargetPath(configuration));
+			assertEquals(expected[i].getHunks().length, filePatch.getHunks().length);
+		}
+	}
+
+	public void testStopParsing() throws CoreException {
+		final List visited= new ArrayList();
+		PatchParser.parsePatch(getReaderCreator(PATCH), new IFilePatchVisitor() {
+			public boolean visit(IFilePatch2 filePatch) {
+				visited.add(filePatch);
+				return visited.size() < 2;
+			}
+		});
+		assertEquals(2, visited.size());
+	}
+
+	public void testVisitorFails() {
+		final CoreException exception= new CoreException(new Status(IStatus.ERROR, "org.eclipse.compare.tests", "failed")); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			PatchParser.parsePatch(getReaderCreator(PATCH), new IFilePatchVisitor() {
+				public boolean visit(IFilePatch2 filePatch) throws CoreException {
+					throw exception;
+				}
+			});
+			fail();
+		} catch (CoreException e) {
+			assertSame(exception, e);
+		}
+	}
+
+	public void testWorkspacePatch() throws CoreException {
+		String patch= "### Eclipse Workspace Patch 1.0\n" //$NON-NLS-1$
+				+ "#P project1\n" //$NON-NLS-1$
+				+ PATCH.substring(0, PATCH.indexOf("Index: c.txt")) //$NON-NLS-1$
+				+ "#P project2\n" //$NON-NLS-1$
+				+ PATCH.substring(PATCH.indexOf("Index: c.txt")); //$NON-NLS-1$
+		final List paths= new ArrayList();
+		PatchParser.parsePatch(getReaderCreator(patch), new IFilePatchVisitor() {
+			public boolean visit(IFilePatch2 filePatch) {
+				paths.add(filePatch.getTargetPath(new PatchConfiguration()).toString());
+				return true;
+			}
+		});
+		assertEquals(3, paths.size());
+		assertEquals("project1/a.txt", paths.get(0)); //$NON-NLS-1$
+		assertEquals("project1/b.txt", paths.get(1)); //$NON-NLS-1$
+		assertEquals("project2/c.txt", paths.get(2)); //$NON-NLS-1$
+	}
+
+	public void testApplyShiftedHunks() throws CoreException {
+		// hunks every 50 lines, the target has lines inserted between them
+		StringBuffer patch= new StringBuffer("--- file.txt\n+++ file.txt\n"); //$NON-NLS-1$
+		for (int i= 10; i < 10000; i+= 50) {
+			patch.append("@@ -" + (i + 1) + ",3 +" + (i + 1) + ",3 @@\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			patch.append(' ').append(getLine(i));
+			patch.append('-').append(getLine(i + 1));
+			patch.append("+changed" + (i + 1) + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			patch.append(' ').append(getLine(i + 2));
+		}
+		// one hunk does not apply anywhere
+		patch.append("@@ -10001,2 +10001,2 @@\n-missing\n+changed\n"); //$NON-NLS-1$
+		StringBuffer contents= new StringBuffer();
+		for (int i= 0; i < 10020; i++) {
+			if (i % 70 == 0)
+				contents.append("inserted\n"); //$NON-NLS-1$
+			contents.append(getLine(i));
+		}
+		PatchConfiguration configuration= new PatchConfiguration();
+		configuration.setFuzz(-1);
+		assertSameResult(patch.toString(), contents.toString(), configuration);
+		configuration.setFuzz(0);
+		assertSameResult(patch.toString(), contents.toString(), configuration);
+	}
+
+	public void testApplyWithFuzz() throws CoreException {
+		String patch= "--- file.txt\n+++ file.txt\n" //$NON-NLS-1$
+				+ "@@ -11,5 +11,5 @@\n" //$NON-NLS-1$
+				+ " other\n" //$NON-NLS-1$
+				+ " " + getLine(11) //$NON-NLS-1$
+				+ "-" + getLine(12) //$NON-NLS-1$
+				+ "+changed\n" //$NON-NLS-1$
+				+ " " + getLine(13) //$NON-NLS-1$
+				+ " other\n"; //$NON-NLS-1$
+		StringBuffer contents= new StringBuffer();
+		for (int i= 0; i < 30; i++)
+			contents.append(getLine(i));
+		PatchConfiguration configuration= new PatchConfiguration();
+		configuration.setFuzz(-1);
+		IFilePatchResult result= assertSameResult(patch, contents.toString(), configuration);
+		assertFalse(result.hasRejects());
+	}
+
+	public void testAddition() throws CoreException {
+		String patch= "--- /dev/null\n+++ file.txt\n@@ -0,0 +1,2 @@\n+line0\n+line1\n"; //$NON-NLS-1$
+		IFilePatch2 filePatch= PatchParser.parsePatch(getReaderCreator(patch))[0];
+		StringWriter out= new StringWriter();
+		IFilePatchResult result= filePatch.apply(null, out, new PatchConfiguration(), new NullProgressMonitor());
+		assertTrue(result.hasMatches());
+		assertFalse(result.hasRejects());
+		assertEquals(createString("line0\nline1\n"), out.toString()); //$NON-NLS-1$
+	}
+
+	public void testHunkBeyondWindow() throws CoreException {
+		int position= 100 + StreamedFileDiffResult.MAXIMUM_SHIFT + 10;
+		String patch= "--- file.txt\n+++ file.txt\n" //$NON-NLS-1$
+				+ "@@ -101,3 +101,3 @@\n" //$NON-NLS-1$
+				+ " " + getLine(position) //$NON-NLS-1$
+				+ "-" + getLine(position + 1) //$NON-NLS-1$
+				+ "+changed\n" //$NON-NLS-1$
+				+ " " + getLine(position + 2); //$NON-NLS-1$
+		StringBuffer contents= new StringBuffer();
+		for (int i= 0; i < position + 100; i++)
+			contents.append(getLine(i));
+		IFilePatch2 filePatch= PatchParser.parsePatch(getReaderCreator(patch))[0];
+		PatchConfiguration configuration= new PatchConfiguration();
+		assertFalse(filePatch.apply(getReaderCreator(contents.toString()), configuration, new NullProgressMonitor()).hasRejects());
+		StringWriter out= new StringWriter();
+		IFilePatchResult result= filePatch.apply(getReaderCreator(contents.toString()), out, configuration, new NullProgressMonitor());
+		assertTrue(result.hasRejects());
+		assertFalse(result.hasMatches());
+		assertEquals(createString(contents.toString()), out.toString());
+	}
+
+	public void testMissingTarget() throws CoreException {
+		IFilePatch2 filePatch= PatchParser.parsePatch(getReaderCreator(PATCH))[0];
+		PatchConfiguration configuration= new PatchConfiguration();
+		FileDiffResult expected= (FileDiffResult) filePatch.apply(null, configuration, new NullProgressMonitor());
+		StringWriter out= new StringWriter();
+		FileDiffResult result= (FileDiffResult) filePatch.apply(null, out, configuration, new NullProgressMonitor());
+		assertTrue(result.getDiffProblem());
+		assertTrue(result.containsProblems());
+		assertFalse(result.hasMatches());
+		assertFalse(result.canApplyHunk(result.getHunkResults()[0].getHunk()));
+		assertEquals(expected.getLabel(), result.getLabel());
+		assertEquals(0, out.toString().length());
+	}
+
+	private IFilePatchResult assertSameResult(String patch, String contents, PatchConfiguration configuration) throws CoreException {
+		IFilePatch2 filePatch= PatchParser.parsePatch(getReaderCreator(patch))[0];
+		FileDiffResult expected= (FileDiffResult) filePatch.apply(getReaderCreator(contents), configuration, new NullProgressMonitor());
+		StringWriter out= new StringWriter();
+		IFilePatchResult result= filePatch.apply(getReaderCreator(contents), out, configuration, new NullProgressMonitor());
+		assertEquals(LineReader.createString(false, expected.getLines()), out.toString());
+		assertEquals(expected.hasMatches(), result.hasMatches());
+		assertEquals(expected.containsProblems(), ((FileDiffResult) result).containsProblems());
+		assertEquals(expected.getLabel(), ((FileDiffResult) result).getLabel());
+		assertEquals(expected.getCharset(), result.getCharset());
+		assertEquals(expected.getRejects().length, result.getRejects().length);
+		assertNull(result.getPatchedContents());
+		return result;
+	}
+
+	private static String getLine(int i) {
+		return "line" + i + "\n"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static String createString(String contents) {
+		return LineReader.createString(false, LineReader.readLines(new BufferedReader(new StringReader(contents))));
+	}
+
+	private static ReaderCreator getReaderCreator(final String contents) {
+		return new ReaderCreator() {
+			public Reader createReader() {
+				return new StringReader(contents);
+			}
+		};
+	}
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.compare.internal.DocLineComparator;
+import org.eclipse.compare.internal.core.ComparePlugin;
+import org.eclipse.compare.rangedifferencer.IRangeComparator;
+import org.eclipse.compare.rangedifferencer.RangeDifference;
+import org.eclipse.compare.rangedifferencer.RangeDifferencer;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.test.performance.Dimension;
+import org.eclipse.test.performance.PerformanceTestCase;
+
+/**
+ * Compares the run time and the quality (number of changed lines) of the
+ * Myers and the histogram diff on a large generated source file.
+ */
+public class DiffAlgorithmTest extends PerformanceTestCase {
+
+	private static final int LINES= 50000;
+
+	private String fOldAlgorithm;
+
+	public DiffAlgorithmTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fOldAlgorithm= ComparePlugin.getDefault().getDiffAlgorithm();
+	}
+
+	protected void tearDown() throws Exception {
+		ComparePlugin.getDefault().setDiffAlgorithm(fOldAlgorithm);
+		super.tearDown();
+	}
+
+	public void testMyers() {
+		tagAsSummary("2-way compare, 50000 lines, Myers", Dimension.ELAPSED_PROCESS); //$NON-NLS-1$
+		measure(ComparePlugin.DIFF_ALGORITHM_MYERS);
+	}
+
+	public void testHistogram() {
+		tagAsSummary("2-way compare, 50000 lines, histogram", Dimension.ELAPSED_PROCESS); //$NON-NLS-1$
+		measure(ComparePlugin.DIFF_ALGORITHM_HISTOGRAM);
+	}
+
+	public void testHistogramQuality() {
+		IRangeComparator left= new DocLineComparator(createLeft(), null, false);
+		IRangeComparator right= new DocLineComparator(createRight(), null, false);
+
+		ComparePlugin.getDefault().setDiffAlgorithm(ComparePlugin.DIFF_ALGORITHM_MYERS);
+		int myers= countChangedLines(RangeDifferencer.findDifferences(new NullProgressMonitor(), left, right));
+		ComparePlugin.getDefault().setDiffAlgorithm(ComparePlugin.DIFF_ALGORITHM_HISTOGRAM);
+		int histogram= countChangedLines(RangeDifferencer.findDifferences(new NullProgressMonitor(), left, right));
+
+		assertTrue("histogram: " + histogram + ", Myers: " + myers, histogram <= myers); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void measure(String algorithm) {
+		ComparePlugin.getDefault().setDiffAlgorithm(algorithm);
+		IRangeComparator left= new DocLineComparator(createLeft(), null, false);
+		IRangeComparator right= new DocLineComparator(createRight(), null, false);
+
+		// a warm up run
+		RangeDifferencer.findDifferences(new NullProgressMonitor(), left, right);
+
+		for (int count= 0; count < 3; count++) {
+			startMeasuring();
+			RangeDifferencer.findDifferences(new NullProgressMonitor(), left, right);
+			stopMeasuring();
+		}
+
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	private static int countChangedLines(RangeDifference[] diffs) {
+		int changed= 0;
+		for (int i= 0; i < diffs.length; i++)
+			changed+= diffs[i].leftLength() + diffs[i].rightLength();
+		return changed;
+	}
+
+	/*
+	 * Lines of generated code, every fifth line is a closing brace.
+	 */
+	private static List createLines() {
+		List lines= new ArrayList(LINES);
+		for (int i= 0; i < LINES; i++)
+			lines.add(i % 5 == 0 ? "}" : "statement" + i + "();"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		return lines;
+	}
+
+	private static IDocument createLeft() {
+		return toDocument(createLines());
+	}
+
+	/*
+	 * Changes and inserts lines and moves blocks of lines around.
+	 */
+	private static IDocument createRight() {
+		List lines= createLines();
+		Random random= new Random(5);
+		for (int i= 0; i < 2000; i++) {
+			int index= random.nextInt(lines.size());
+			if (random.nextBoolean())
+				lines.set(index, "changed" + i + "();"); //$NON-NLS-1$ //$NON-NLS-2$
+			else
+				lines.add(index, "inserted" + i + "();"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		for (int i= 0; i < 20; i++) {
+			int start= random.nextInt(lines.size() - 600);
+			List block= lines.subList(start, start + 500);
+			List moved= new ArrayList(block);
+			block.clear();
+			lines.addAll(random.nextInt(lines.size()), moved);
+		}
+		return toDocument(lines);
+	}
+
+	private static IDocument toDocument(List lines) {
+		StringBuffer sb= new StringBuffer();
+		for (int i= 0; i < lines.size(); i++) {
+			sb.append(lines.get(i));
+			sb.append('\n');
+		}
+		return new Document(sb.toString());
+	}
+}
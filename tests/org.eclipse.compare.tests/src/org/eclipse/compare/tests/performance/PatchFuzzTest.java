@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.compare.tests.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.compare.internal.core.patch.FileDiffResult;
+import org.eclipse.compare.internal.core.patch.FilePatch2;
+import org.eclipse.compare.internal.core.patch.Hunk;
+import org.eclipse.compare.patch.PatchConfiguration;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.test.performance.Dimension;
+import org.eclipse.test.performance.PerformanceTestCase;
+
+/**
+ * Measures applying a patch with 10000 hunks to a file with 100000 lines
+ * that was changed since the patch was created, so that no hunk applies at
+ * the position given in the patch.
+ */
+public class PatchFuzzTest extends PerformanceTestCase {
+
+	private static final int LINES= 100000;
+	private static final int HUNKS= 10000;
+	private static final int LINES_PER_HUNK= LINES / HUNKS;
+
+	public PatchFuzzTest(String name) {
+		super(name);
+	}
+
+	public void testShiftedHunks() {
+		tagAsSummary("Apply patch, 10000 shifted hunks, 100000 lines", Dimension.ELAPSED_PROCESS); //$NON-NLS-1$
+		FilePatch2 diff= createDiff();
+		PatchConfiguration configuration= new PatchConfiguration();
+		configuration.setFuzz(-1);
+
+		// a warm up run
+		apply(diff, configuration);
+
+		for (int count= 0; count < 3; count++) {
+			startMeasuring();
+			FileDiffResult result= apply(diff, configuration);
+			stopMeasuring();
+			assertFalse(result.containsProblems());
+		}
+
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	private static FileDiffResult apply(FilePatch2 diff, PatchConfiguration configuration) {
+		FileDiffResult result= new FileDiffResult(diff, configuration);
+		result.patch(createTarget(), new NullProgressMonitor());
+		return result;
+	}
+
+	private static String getLine(int i) {
+		return (i % 5 == 0 ? "}" : "statement" + i + "();") + "\n"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	/*
+	 * Each hunk changes one line and has three context lines before and after it.
+	 */
+	private static FilePatch2 createDiff() {
+		FilePatch2 diff= new FilePatch2(new Path("File.java"), 0, new Path("File.java"), 0); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int h= 0; h < HUNKS; h++) {
+			int start= h * LINES_PER_HUNK + 2;
+			String[] lines= new String[8];
+			for (int i= 0; i < 3; i++) {
+				lines[i]= " " + getLine(start + i); //$NON-NLS-1$
+				lines[i + 5]= " " + getLine(start + i + 4); //$NON-NLS-1$
+			}
+			lines[3]= "-" + getLine(start + 3); //$NON-NLS-1$
+			lines[4]= "+changed" + h + "();\n"; //$NON-NLS-1$ //$NON-NLS-2$
+			new Hunk(diff, FilePatch2.CHANGE, start, 7, start, 7, lines);
+		}
+		return diff;
+	}
+
+	/*
+	 * The lines the patch was created for with two lines inserted between
+	 * every two hunks.
+	 */
+	private static List createTarget() {
+		List lines= new ArrayList(LINES + 2 * HUNKS);
+		for (int i= 0; i < LINES; i++) {
+			if (i % LINES_PER_HUNK == 0) {
+				lines.add("inserted" + i + "();\n"); //$NON-NLS-1$ //$NON-NLS-2$
+				lines.add("}\n"); //$NON-NLS-1$
+			}
+			lines.add(getLine(i));
+		}
+		return lines;
+	}
+}
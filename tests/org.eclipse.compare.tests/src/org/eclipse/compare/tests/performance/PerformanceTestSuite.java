@@ -22,6 +22,8 @@ public class PerformanceTestSuite extends TestSuite {
 		TestSuite suite= new TestSuite("Compare performance tests"); //$NON-NLS-1$
 		//$JUnit-BEGIN$
 		suite.addTestSuite(RangeDifferencerTest.class);
+		suite.addTestSuite(DiffAlgorithmTest.class);
+		suite.addTestSuite(PatchFuzzTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2013 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -27,6 +27,8 @@ import org.eclipse.core.internal.net.ProxyType;
 import org.eclipse.core.net.proxy.IProxyData;
 import org.eclipse.core.net.proxy.IProxyService;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.preferences.ConfigurationScope;
+import org.osgi.service.prefs.Preferences;
 
 public class NetTest extends TestCase {
 
@@ -439,6 +441,77 @@ public class NetTest extends TestCase {
 		this.getProxyManager().setNonProxiedHosts(oldHosts);
 	}
 
+	public void testNonProxiedHostPatterns() throws CoreException {
+		setDataTest(IProxyData.HTTP_PROXY_TYPE);
+
+		String[] oldHosts = this.getProxyManager().getNonProxiedHosts();
+		this.getProxyManager().setNonProxiedHosts(new String[] { "Build.Example.com", "*.internal", "192.168.*",
+				"10.0.0.0/8", "172.16.0.0/12", "fd00::/8", "ci-?.example.com" });
+
+		String[] direct = new String[] { "build.example.com", "BUILD.EXAMPLE.COM", "repo.internal", "a.b.internal",
+				"192.168.1.7", "10.1.2.3", "172.31.255.255", "[fd12::1]", "ci-3.example.com" };
+		for (int i = 0; i < direct.length; i++) {
+			assertEquals(direct[i], 0, this.getProxyManager().getProxyDataForHost(direct[i]).length);
+		}
+		String[] proxied = new String[] { "example.com", "internal", "192.169.1.7", "11.0.0.1", "172.32.0.1",
+				"[fe80::1]", "ci-10.example.com", "10.example.com" };
+		for (int i = 0; i < proxied.length; i++) {
+			assertEquals(proxied[i], 1, this.getProxyManager().getProxyDataForHost(proxied[i]).length);
+		}
+
+		this.getProxyManager().setNonProxiedHosts(oldHosts);
+	}
+
+	public void testProxyDataForHostCache() throws CoreException {
+		setDataTest(IProxyData.HTTP_PROXY_TYPE);
+
+		String[] oldHosts = this.getProxyManager().getNonProxiedHosts();
+		IProxyData data = this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE);
+		assertNotNull(data);
+
+		// Changes to the returned data do not change the data returned later
+		data.disable();
+		data = this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE);
+		assertNotNull(data.getHost());
+
+		// Changes to the non-proxied hosts apply to hosts that were looked up before
+		this.getProxyManager().setNonProxiedHosts(new String[] { "*.randomhost.com" });
+		assertNull(this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE));
+		this.getProxyManager().setNonProxiedHosts(oldHosts);
+		assertNotNull(this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE));
+
+		// So do changes to the proxy data
+		IProxyData newData = this.getProxyManager().getProxyData(IProxyData.HTTP_PROXY_TYPE);
+		newData.setPort(8081);
+		this.getProxyManager().setProxyData(new IProxyData[] { newData });
+		assertEquals(8081, this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE).getPort());
+		this.getProxyManager().setProxiesEnabled(false);
+		assertNull(this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE));
+	}
+
+	public void testProxyDataForHostCacheAfterNodeRemoval() throws CoreException {
+		setDataTest(IProxyData.HTTP_PROXY_TYPE);
+		assertNotNull(this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE));
+
+		// Clearing the host removes the preference node of the proxy type
+		IProxyData data = this.getProxyManager().getProxyData(IProxyData.HTTP_PROXY_TYPE);
+		data.disable();
+		this.getProxyManager().setProxyData(new IProxyData[] { data });
+		assertNull(this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE));
+
+		// Changes to the node that replaces it apply to hosts that were looked up before
+		Preferences node = ConfigurationScope.INSTANCE.getNode("org.eclipse.core.net").node("proxyData").node(IProxyData.HTTP_PROXY_TYPE);
+		node.put("host", "www.example.org");
+		node.putInt("port", 8082);
+		data = this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE);
+		assertNotNull(data);
+		assertEquals("www.example.org", data.getHost());
+		assertEquals(8082, data.getPort());
+
+		node.putInt("port", 8083);
+		assertEquals(8083, this.getProxyManager().getProxyDataForHost("www.randomhost.com", IProxyData.HTTP_PROXY_TYPE).getPort());
+	}
+
 	private void validateSystemProperties(boolean present) {
 		validateProperty("http.proxySet", "true", present);
 		validateProperty("http.proxyHost", "www.eclipse.org", present);
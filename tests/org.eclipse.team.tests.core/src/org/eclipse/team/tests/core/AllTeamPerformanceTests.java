@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.tests.resources.ResourceTest;
+
+/**
+ * The performance tests of Team core. They are run by the performance target
+ * of test.xml, not with the other tests.
+ */
+public class AllTeamPerformanceTests extends ResourceTest {
+
+	public AllTeamPerformanceTests() {
+		super();
+	}
+
+	public AllTeamPerformanceTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite();
+		suite.addTest(ResourceVariantCachePerformanceTests.suite());
+		suite.addTest(MultiPatternMatcherPerformanceTests.suite());
+		suite.addTest(TimeoutStreamPerformanceTests.suite());
+		return suite;
+	}
+}
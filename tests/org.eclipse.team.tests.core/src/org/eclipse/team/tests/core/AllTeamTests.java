@@ -36,7 +36,10 @@ public class AllTeamTests extends ResourceTest {
 		TestSuite suite = new TestSuite();
 		suite.addTest(RepositoryProviderTests.suite());
 		suite.addTest(StreamTests.suite());
+		suite.addTest(TimeoutStreamTests.suite());
+		suite.addTest(ResourceVariantCacheTests.suite());
 		suite.addTest(StorageMergerTests.suite());
+		suite.addTest(MultiPatternMatcherTests.suite());
 		suite.addTest(org.eclipse.team.tests.core.regression.AllTests.suite());
 		return suite;
 	}
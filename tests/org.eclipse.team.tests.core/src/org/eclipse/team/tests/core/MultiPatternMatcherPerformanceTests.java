@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.team.internal.core.MultiPatternMatcher;
+import org.eclipse.team.internal.core.StringMatcher;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+
+/**
+ * Measures the time it takes to match many names against the default ignore
+ * patterns with a {@link StringMatcher} for each pattern and with a
+ * {@link MultiPatternMatcher}.
+ */
+public class MultiPatternMatcherPerformanceTests extends TestCase {
+
+	private static final int NAMES = 500000;
+	private static final int ITERATIONS = 5;
+
+	private String[] names;
+	private StringMatcher[] matchers;
+
+	public MultiPatternMatcherPerformanceTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(MultiPatternMatcherPerformanceTests.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		names = MultiPatternMatcherTests.createNames(NAMES);
+		matchers = MultiPatternMatcherTests.createMatchers(MultiPatternMatcherTests.IGNORE_PATTERNS);
+	}
+
+	public void testStringMatchers() {
+		Performance performance = Performance.getDefault();
+		PerformanceMeter meter = performance.createPerformanceMeter(performance.getDefaultScenarioId(this));
+		try {
+			for (int i = 0; i < ITERATIONS; i++) {
+				meter.start();
+				for (int j = 0; j < names.length; j++) {
+					MultiPatternMatcherTests.match(matchers, names[j]);
+				}
+				meter.stop();
+			}
+			meter.commit();
+		} finally {
+			meter.dispose();
+		}
+	}
+
+	public void testCompiledPatterns() {
+		MultiPatternMatcher compiled = new MultiPatternMatcher(MultiPatternMatcherTests.IGNORE_PATTERNS, true);
+		int[] uncompiled = compiled.getUncompiledPatterns();
+		Performance performance = Performance.getDefault();
+		PerformanceMeter meter = performance.createPerformanceMeter(performance.getDefaultScenarioId(this));
+		try {
+			for (int i = 0; i < ITERATIONS; i++) {
+				meter.start();
+				for (int j = 0; j < names.length; j++) {
+					MultiPatternMatcherTests.match(compiled, uncompiled, matchers, names[j]);
+				}
+				meter.stop();
+			}
+			meter.commit();
+		} finally {
+			meter.dispose();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.team.internal.core.MultiPatternMatcher;
+import org.eclipse.team.internal.core.StringMatcher;
+
+/**
+ * Tests that a {@link MultiPatternMatcher} gives the same results as
+ * matching each pattern with a {@link StringMatcher}.
+ */
+public class MultiPatternMatcherTests extends TestCase {
+
+	// the default ignore patterns of Team and CVS
+	static final String[] IGNORE_PATTERNS = new String[] {
+		"RCS", "RCSLOG", "SCCS", "CVS.adm", "tags", "TAGS", ".make.state", ".nse_depinfo",
+		"*~", "#*", ".#*", ",*", "_$*", "*$", "*.old", "*.bak", "*.BAK", "*.orig", "*.rej",
+		".del-*", "*.a", "*.olb", "*.obj", "*.o", "*.so", "*.exe", "*.Z", "*.elc", "*.ln",
+		".DS_Store", "core", "*.jnilib", "*.sl", "*.dll", "*.bat", "*.com", "*.log", "*.zip",
+		"*.gz", "bin", "*.class", "*.tar.gz", "Thumbs.db", "*.sw?", "build*.xml~", "*/target"
+	};
+
+	private static final int IGNORE_NAMES = 1000;
+
+	public MultiPatternMatcherTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(MultiPatternMatcherTests.class);
+	}
+
+	public void testLiteralsAndExtensions() {
+		String[] patterns = new String[] { "core", "*.o", "*.tar.gz", "*.gz", "*.", "" };
+		assertMatch(patterns, false, "core", 0);
+		assertMatch(patterns, false, "Core", -1);
+		assertMatch(patterns, true, "CORE", 0);
+		assertMatch(patterns, false, "a.o", 1);
+		assertMatch(patterns, false, ".o", 1);
+		assertMatch(patterns, false, "o", -1);
+		assertMatch(patterns, false, "a.tar.gz", 2);
+		assertMatch(patterns, false, "a.gz", 3);
+		assertMatch(patterns, true, "A.TAR.GZ", 2);
+		assertMatch(patterns, false, "a.", 4);
+		assertMatch(patterns, false, "a", -1);
+	}
+
+	public void testWildcards() {
+		String[] patterns = new String[] { "*", "a*b", "?x*", "**c", "a?*?b" };
+		assertMatch(patterns, false, "", 0);
+		String[] names = new String[] { "ab", "axb", "ba", "xx", "cc", "c", "aab", "abab", "a..b" };
+		for (int i = 0; i < names.length; i++) {
+			assertMatch(patterns, false, names[i], 0);
+			assertMatch(new String[] { "a*b", "?x*", "**c", "a?*?b" }, false, names[i], -2);
+		}
+	}
+
+	public void testUncompiledPatterns() {
+		MultiPatternMatcher matcher = new MultiPatternMatcher(new String[] { "a\\*", "*/bin", null, "*.o", "\u00e9*" }, true);
+		int[] uncompiled = matcher.getUncompiledPatterns();
+		assertEquals(4, uncompiled.length);
+		assertEquals(0, uncompiled[0]);
+		assertEquals(1, uncompiled[1]);
+		assertEquals(2, uncompiled[2]);
+		assertEquals(4, uncompiled[3]);
+		assertEquals(3, matcher.match("a.o"));
+		assertEquals(-1, matcher.match("a*"));
+		assertEquals(MultiPatternMatcher.NOT_COMPILED, matcher.match("\u00e9.o"));
+	}
+
+	public void testRandomPatterns() {
+		Random random = new Random(4711);
+		for (int run = 0; run < 200; run++) {
+			String[] patterns = new String[1 + random.nextInt(8)];
+			for (int i = 0; i < patterns.length; i++) {
+				patterns[i] = randomString(random, "aAb.*?", 5);
+			}
+			for (int i = 0; i < 50; i++) {
+				String name = randomString(random, "aAbB.", 8);
+				assertMatch(patterns, true, name, -2);
+				assertMatch(patterns, false, name, -2);
+			}
+		}
+	}
+
+	public void testIgnorePatterns() {
+		String[] names = createNames(IGNORE_NAMES);
+		StringMatcher[] matchers = createMatchers(IGNORE_PATTERNS);
+		MultiPatternMatcher compiled = new MultiPatternMatcher(IGNORE_PATTERNS, true);
+		int[] uncompiled = compiled.getUncompiledPatterns();
+		int count = 0;
+		for (int i = 0; i < names.length; i++) {
+			boolean expected = match(matchers, names[i]);
+			assertEquals(names[i], expected, match(compiled, uncompiled, matchers, names[i]));
+			if (expected)
+				count++;
+		}
+		// The names are realistic if some but not all of them are ignored
+		assertTrue(count > 0);
+		assertTrue(count < names.length);
+	}
+
+	static StringMatcher[] createMatchers(String[] patterns) {
+		StringMatcher[] matchers = new StringMatcher[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			matchers[i] = new StringMatcher(patterns[i], true, false);
+		}
+		return matchers;
+	}
+
+	/*
+	 * Return whether one of the string matchers matches the name
+	 */
+	static boolean match(StringMatcher[] matchers, String name) {
+		for (int i = 0; i < matchers.length; i++) {
+			if (matchers[i].match(name))
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Return whether the compiled patterns or the string matchers of the
+	 * patterns that are not compiled match the name
+	 */
+	static boolean match(MultiPatternMatcher compiled, int[] uncompiled, StringMatcher[] matchers, String name) {
+		if (compiled.match(name) >= 0)
+			return true;
+		for (int i = 0; i < uncompiled.length; i++) {
+			if (matchers[uncompiled[i]].match(name))
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Assert that the compiled patterns give the same result as the string
+	 * matchers and, unless the expected result is -2, that result
+	 */
+	private void assertMatch(String[] patterns, boolean ignoreCase, String name, int expected) {
+		int index = -1;
+		for (int i = 0; i < patterns.length; i++) {
+			if (new StringMatcher(patterns[i], ignoreCase, false).match(name)) {
+				index = i;
+				break;
+			}
+		}
+		if (expected != -2)
+			assertEquals(name, expected, index);
+		assertEquals(name, index, new MultiPatternMatcher(patterns, ignoreCase).match(name));
+	}
+
+	private static String randomString(Random random, String alphabet, int maxLength) {
+		int length = random.nextInt(maxLength + 1);
+		StringBuffer buffer = new StringBuffer(length);
+		for (int i = 0; i < length; i++) {
+			buffer.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return buffer.toString();
+	}
+
+	/*
+	 * Create file and folder names with the extensions and shapes found in a workspace
+	 */
+	static String[] createNames(int count) {
+		String[] stems = new String[] { "Team", "plugin", "build", "MANIFEST", "README", "about", "core", "Messages", "index", "Activator" };
+		String[] extensions = new String[] { ".java", ".class", ".xml", ".properties", ".MF", ".html", ".gif", ".png", ".o", ".log", ".bak", ".gz", ".swp", "~", "" };
+		Random random = new Random(42);
+		String[] names = new String[count];
+		for (int i = 0; i < count; i++) {
+			String name = stems[random.nextInt(stems.length)] + (random.nextInt(4) == 0 ? "" : Integer.toString(random.nextInt(1000)));
+			names[i] = name + extensions[random.nextInt(extensions.length)];
+		}
+		return names;
+	}
+}
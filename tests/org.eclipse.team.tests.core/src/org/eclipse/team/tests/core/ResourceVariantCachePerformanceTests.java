@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.team.internal.core.ResourceVariantCache;
+import org.eclipse.team.tests.core.ResourceVariantCacheTests.TestResourceVariant;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+
+/**
+ * Measures the time many threads take to fetch the contents of different
+ * variants whose streams are slow.
+ */
+public class ResourceVariantCachePerformanceTests extends TestCase {
+
+	private static final int ITERATIONS = 5;
+
+	public ResourceVariantCachePerformanceTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ResourceVariantCachePerformanceTests.class);
+	}
+
+	protected void tearDown() throws Exception {
+		ResourceVariantCache.disableCache(ResourceVariantCacheTests.CACHE_ID);
+		super.tearDown();
+	}
+
+	public void testConcurrentFetches() throws Exception {
+		Performance performance = Performance.getDefault();
+		PerformanceMeter meter = performance.createPerformanceMeter(performance.getDefaultScenarioId(this));
+		try {
+			for (int i = 0; i < ITERATIONS; i++) {
+				// Variants that are not cached yet
+				TestResourceVariant[][] variants = ResourceVariantCacheTests.createSlowVariants("project" + i);
+				meter.start();
+				ResourceVariantCacheTests.fetchInParallel(variants);
+				meter.stop();
+			}
+			meter.commit();
+		} finally {
+			meter.dispose();
+		}
+	}
+}
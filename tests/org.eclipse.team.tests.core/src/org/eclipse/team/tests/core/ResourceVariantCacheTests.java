@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.team.core.TeamException;
+import org.eclipse.team.core.variants.CachedResourceVariant;
+import org.eclipse.team.internal.core.ResourceVariantCache;
+import org.eclipse.team.internal.core.ResourceVariantCacheEntry;
+import org.eclipse.team.internal.core.TeamPlugin;
+
+public class ResourceVariantCacheTests extends TestCase {
+
+	static final String CACHE_ID = "org.eclipse.team.tests.core.cache";
+	static final int FETCH_THREADS = 16;
+	static final int FETCHES_PER_THREAD = 4;
+	static final int READ_DELAY = 20;
+	static final int READS_PER_FETCH = 5;
+	private static final int TRIM_VARIANTS = 200;
+
+	// the number of slow fetches that are writing their contents
+	private static int fetches;
+	private static int maxFetches;
+
+	/*
+	 * Simulates a slow connection by waiting before every read.
+	 */
+	static class SlowInputStream extends InputStream {
+		private final byte[] contents;
+		private int reads;
+		private int position;
+
+		SlowInputStream(byte[] contents) {
+			this.contents = contents;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position == contents.length)
+				return -1;
+			try {
+				Thread.sleep(READ_DELAY);
+			} catch (InterruptedException e) {
+				throw new IOException(e.getMessage());
+			}
+			reads++;
+			int count = reads == READS_PER_FETCH ? contents.length - position : Math.min(len, Math.max(1, contents.length / READS_PER_FETCH));
+			System.arraycopy(contents, position, b, off, count);
+			position += count;
+			return count;
+		}
+	}
+
+	static class TestResourceVariant extends CachedResourceVariant {
+		private final String path;
+		private final String contents;
+		int fetchCount;
+		boolean slow;
+
+		TestResourceVariant(String path, String contents) {
+			this.path = path;
+			this.contents = contents;
+		}
+
+		protected void fetchContents(IProgressMonitor monitor) throws TeamException {
+			fetchCount++;
+			if (!slow) {
+				setContents(new ByteArrayInputStream(contents.getBytes()), monitor);
+				return;
+			}
+			synchronized (ResourceVariantCacheTests.class) {
+				fetches++;
+				maxFetches = Math.max(fetches, maxFetches);
+			}
+			try {
+				setContents(new SlowInputStream(contents.getBytes()), monitor);
+			} finally {
+				synchronized (ResourceVariantCacheTests.class) {
+					fetches--;
+				}
+			}
+		}
+
+		protected String getCachePath() {
+			return path;
+		}
+
+		protected String getCacheId() {
+			return CACHE_ID;
+		}
+
+		public String getName() {
+			return path;
+		}
+
+		public boolean isContainer() {
+			return false;
+		}
+
+		public String getContentIdentifier() {
+			return path;
+		}
+
+		public byte[] asBytes() {
+			return path.getBytes();
+		}
+	}
+
+	public ResourceVariantCacheTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ResourceVariantCacheTests.class);
+	}
+
+	protected void tearDown() throws Exception {
+		ResourceVariantCache.disableCache(CACHE_ID);
+		super.tearDown();
+	}
+
+	public void testContentsSurviveRestart() throws Exception {
+		TestResourceVariant variant = new TestResourceVariant("project/file.txt 1.1", "first revision");
+		assertEquals("first revision", getContents(variant));
+		assertEquals(1, variant.fetchCount);
+
+		ResourceVariantCache.shutdown();
+
+		TestResourceVariant restarted = new TestResourceVariant("project/file.txt 1.1", "first revision");
+		assertTrue(restarted.isContentsCached());
+		assertEquals("first revision", getContents(restarted));
+		assertEquals(0, restarted.fetchCount);
+	}
+
+	public void testIdenticalContentsAreShared() throws Exception {
+		TestResourceVariant variant1 = new TestResourceVariant("project/a.txt 1.1", "same contents");
+		TestResourceVariant variant2 = new TestResourceVariant("project/b.txt 1.4", "same contents");
+		TestResourceVariant variant3 = new TestResourceVariant("project/b.txt 1.5", "other contents");
+		assertEquals("same contents", getContents(variant1));
+		assertEquals("same contents", getContents(variant2));
+		assertEquals("other contents", getContents(variant3));
+		assertEquals(2, getCachedFileCount());
+
+		// Disposing one of the entries must keep the shared contents
+		ResourceVariantCache.getCache(CACHE_ID).getCacheEntry("project/a.txt 1.1").dispose();
+		assertFalse(variant1.isContentsCached());
+		assertEquals("same contents", getContents(variant2));
+	}
+
+	public void testLeastRecentlyUsedContentsAreRemoved() throws Exception {
+		TestResourceVariant variant1 = new TestResourceVariant("project/file.txt 1.1", "revision 1");
+		assertEquals("revision 1", getContents(variant1));
+		ResourceVariantCache.getCache(CACHE_ID).setMaxSize(25);
+		TestResourceVariant variant2 = new TestResourceVariant("project/file.txt 1.2", "revision 2");
+		assertEquals("revision 2", getContents(variant2));
+		// Access the first revision so that the second one is the least recently used
+		assertEquals("revision 1", getContents(variant1));
+
+		TestResourceVariant variant3 = new TestResourceVariant("project/file.txt 1.3", "revision 3");
+		assertEquals("revision 3", getContents(variant3));
+		assertTrue(variant1.isContentsCached());
+		assertFalse(variant2.isContentsCached());
+		assertTrue(variant3.isContentsCached());
+		assertEquals(2, getCachedFileCount());
+	}
+
+	/*
+	 * Fetches the contents of different variants with many threads. Each fetch
+	 * waits on its stream while it writes the contents, so if the writes were
+	 * serialized no two fetches would be writing at the same time.
+	 */
+	public void testConcurrentFetches() throws Exception {
+		synchronized (ResourceVariantCacheTests.class) {
+			maxFetches = 0;
+		}
+		TestResourceVariant[][] variants = createSlowVariants("project");
+		fetchInParallel(variants);
+		synchronized (ResourceVariantCacheTests.class) {
+			assertTrue("The fetches were serialized", maxFetches > 1);
+		}
+		for (int i = 0; i < FETCH_THREADS; i++) {
+			for (int j = 0; j < FETCHES_PER_THREAD; j++) {
+				assertEquals(1, variants[i][j].fetchCount);
+			}
+		}
+	}
+
+	/*
+	 * Return variants in the given project whose contents are read slowly,
+	 * FETCHES_PER_THREAD variants for each of FETCH_THREADS threads.
+	 */
+	static TestResourceVariant[][] createSlowVariants(String project) {
+		TestResourceVariant[][] variants = new TestResourceVariant[FETCH_THREADS][FETCHES_PER_THREAD];
+		for (int i = 0; i < FETCH_THREADS; i++) {
+			for (int j = 0; j < FETCHES_PER_THREAD; j++) {
+				variants[i][j] = new TestResourceVariant(project + "/file" + i + ".txt 1." + j, "contents of revision 1." + j + " of file " + i);
+				variants[i][j].slow = true;
+			}
+		}
+		return variants;
+	}
+
+	/*
+	 * Fetch the contents of the variants of each row in a thread of its own
+	 */
+	static void fetchInParallel(final TestResourceVariant[][] variants) throws InterruptedException {
+		final Throwable[] errors = new Throwable[FETCH_THREADS];
+		Thread[] threads = new Thread[FETCH_THREADS];
+		for (int i = 0; i < FETCH_THREADS; i++) {
+			final int index = i;
+			threads[i] = new Thread("Fetch " + i) {
+				public void run() {
+					try {
+						for (int j = 0; j < FETCHES_PER_THREAD; j++) {
+							TestResourceVariant variant = variants[index][j];
+							assertEquals(variant.contents, getContents(variant));
+						}
+					} catch (Throwable e) {
+						errors[index] = e;
+					}
+				}
+			};
+		}
+		for (int i = 0; i < FETCH_THREADS; i++) {
+			threads[i].start();
+		}
+		for (int i = 0; i < FETCH_THREADS; i++) {
+			threads[i].join();
+		}
+		for (int i = 0; i < FETCH_THREADS; i++) {
+			if (errors[i] != null)
+				fail(errors[i].toString());
+		}
+	}
+
+	/*
+	 * Adds entries for contents cached before a restart while other fetches
+	 * trim the cache. An entry that is ready must still have its contents.
+	 */
+	public void testAddWhileTrimming() throws Exception {
+		final TestResourceVariant[] oldVariants = new TestResourceVariant[TRIM_VARIANTS];
+		for (int i = 0; i < TRIM_VARIANTS; i++) {
+			oldVariants[i] = new TestResourceVariant("project/old" + i + ".txt 1.1", "contents of old file " + i);
+			assertEquals(oldVariants[i].contents, getContents(oldVariants[i]));
+		}
+		ResourceVariantCache.shutdown();
+
+		ResourceVariantCache.enableCaching(CACHE_ID);
+		final ResourceVariantCache cache = ResourceVariantCache.getCache(CACHE_ID);
+		// Load the index before the limit is lowered so that nothing is trimmed on load
+		assertTrue(cache.hasContents(oldVariants[0].getCachePath()));
+		cache.setMaxSize(TRIM_VARIANTS * 10);
+		final ResourceVariantCacheEntry[] entries = new ResourceVariantCacheEntry[TRIM_VARIANTS];
+		final Throwable[] errors = new Throwable[2];
+		Thread adder = new Thread("Add") {
+			public void run() {
+				try {
+					for (int i = 0; i < TRIM_VARIANTS; i++) {
+						entries[i] = cache.add(oldVariants[i].getCachePath(), oldVariants[i]);
+					}
+				} catch (Throwable e) {
+					errors[0] = e;
+				}
+			}
+		};
+		Thread fetcher = new Thread("Fetch") {
+			public void run() {
+				try {
+					for (int i = 0; i < TRIM_VARIANTS; i++) {
+						TestResourceVariant variant = new TestResourceVariant("project/new" + i + ".txt 1.1", "contents of new file " + i);
+						assertEquals(variant.contents, getContents(variant));
+					}
+				} catch (Throwable e) {
+					errors[1] = e;
+				}
+			}
+		};
+		adder.start();
+		fetcher.start();
+		adder.join();
+		fetcher.join();
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] != null)
+				fail(errors[i].toString());
+		}
+		for (int i = 0; i < TRIM_VARIANTS; i++) {
+			if (entries[i].getState() == ResourceVariantCacheEntry.READY) {
+				assertTrue("The contents of " + entries[i].getId() + " were deleted", entries[i].getSize() > 0);
+			}
+		}
+	}
+
+	static String getContents(CachedResourceVariant variant) throws CoreException, IOException {
+		InputStream in = variant.getStorage(null).getContents();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int c;
+			while ((c = in.read()) != -1) {
+				out.write(c);
+			}
+			return out.toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	private int getCachedFileCount() {
+		File directory = TeamPlugin.getPlugin().getStateLocation().append(".cache").append(CACHE_ID).toFile();
+		String[] names = directory.list();
+		int count = 0;
+		for (int i = 0; i < names.length; i++) {
+			if (!names[i].equals("index"))
+				count++;
+		}
+		return count;
+	}
+}
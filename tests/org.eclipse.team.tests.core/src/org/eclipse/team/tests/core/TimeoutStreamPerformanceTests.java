@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+
+/**
+ * Measures the time it takes to transfer 64MB through a pipe, once
+ * directly and once through timeout streams on both ends.
+ */
+public class TimeoutStreamPerformanceTests extends TestCase {
+
+	private static final int TRANSFER_SIZE = 64 * 1024 * 1024;
+	private static final int ITERATIONS = 5;
+
+	public TimeoutStreamPerformanceTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(TimeoutStreamPerformanceTests.class);
+	}
+
+	public void testDirect() throws Exception {
+		measureTransfer(false);
+	}
+
+	public void testTimeoutStreams() throws Exception {
+		measureTransfer(true);
+	}
+
+	private void measureTransfer(boolean useTimeoutStreams) throws Exception {
+		Performance performance = Performance.getDefault();
+		PerformanceMeter meter = performance.createPerformanceMeter(performance.getDefaultScenarioId(this));
+		try {
+			for (int i = 0; i < ITERATIONS; i++) {
+				meter.start();
+				TimeoutStreamTests.transfer(useTimeoutStreams, TRANSFER_SIZE);
+				meter.stop();
+			}
+			meter.commit();
+		} finally {
+			meter.dispose();
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.team.internal.core.streams.PollingInputStream;
+import org.eclipse.team.internal.core.streams.PollingOutputStream;
+import org.eclipse.team.internal.core.streams.TimeoutInputStream;
+import org.eclipse.team.internal.core.streams.TimeoutOutputStream;
+
+/**
+ * Tests the timeout streams.
+ */
+public class TimeoutStreamTests extends TestCase {
+
+	private static final int TRANSFER_SIZE = 1024 * 1024;
+	private static final int IDLE_STREAMS = 200;
+
+	public TimeoutStreamTests(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(TimeoutStreamTests.class);
+	}
+
+	/*
+	 * Writes the given number of bytes to a stream in a separate thread.
+	 */
+	private static class Writer extends Thread {
+		private final OutputStream out;
+		private final int size;
+		IOException error;
+
+		Writer(OutputStream out, int size) {
+			super("TimeoutStreamTests writer");
+			this.out = out;
+			this.size = size;
+		}
+
+		public void run() {
+			try {
+				byte[] buffer = new byte[3000];
+				int written = 0;
+				while (written < size) {
+					int count = Math.min(buffer.length, size - written);
+					for (int i = 0; i < count; i++) {
+						buffer[i] = (byte) (written + i);
+					}
+					out.write(buffer, 0, count);
+					written += count;
+				}
+				out.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+	}
+
+	public void testReadTimeoutAndRetry() throws IOException {
+		PipedOutputStream out = new PipedOutputStream();
+		InputStream in = new TimeoutInputStream(new PipedInputStream(out), 1024, 100, 1000);
+		try {
+			try {
+				in.read();
+				fail("Read should have timed out");
+			} catch (InterruptedIOException e) {
+				assertEquals(0, e.bytesTransferred);
+			}
+			// The read that timed out is still pending and returns the data
+			out.write(42);
+			out.flush();
+			assertEquals(42, in.read());
+			out.close();
+			assertEquals(-1, in.read());
+		} finally {
+			in.close();
+		}
+	}
+
+	public void testPollingRetriesTimeouts() throws Exception {
+		final PipedOutputStream out = new PipedOutputStream();
+		InputStream in = new PollingInputStream(new TimeoutInputStream(new PipedInputStream(out), 1024, 100, 1000), 20, new NullProgressMonitor());
+		Thread writer = new Thread() {
+			public void run() {
+				try {
+					// Let several reads time out before writing
+					sleep(500);
+					out.write(new byte[] { 1, 2, 3 });
+					out.close();
+				} catch (Exception e) {
+					// The read fails
+				}
+			}
+		};
+		writer.start();
+		try {
+			assertEquals(1, in.read());
+			assertEquals(2, in.read());
+			assertEquals(3, in.read());
+			assertEquals(-1, in.read());
+		} finally {
+			in.close();
+			writer.join();
+		}
+	}
+
+	public void testCloseWithPendingRead() throws IOException {
+		InputStream blocking = new InputStream() {
+			public int read() throws IOException {
+				try {
+					Thread.sleep(60000);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				return -1;
+			}
+		};
+		InputStream in = new TimeoutInputStream(blocking, 1024, 100, 1000);
+		try {
+			in.read();
+			fail("Read should have timed out");
+		} catch (InterruptedIOException e) {
+			// expected
+		}
+		// The close interrupts the pending read
+		long start = System.currentTimeMillis();
+		in.close();
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+
+	public void testWriteError() throws IOException {
+		OutputStream failing = new OutputStream() {
+			public void write(int b) throws IOException {
+				throw new IOException("failed");
+			}
+		};
+		OutputStream out = new TimeoutOutputStream(failing, 16, 1000, 1000);
+		out.write(new byte[10]);
+		try {
+			out.flush();
+			out.flush();
+			fail("Flush should have failed");
+		} catch (InterruptedIOException e) {
+			fail("Flush should not have timed out");
+		} catch (IOException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		try {
+			out.write(new byte[40]);
+			fail("Write should have failed");
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			// The close flushes again
+		}
+	}
+
+	public void testGrowWhenFull() throws IOException {
+		PipedOutputStream out = new PipedOutputStream();
+		InputStream in = new TimeoutInputStream(new PipedInputStream(out), 64, 10, -1, true);
+		// The stream reads ahead so writing more than the size of both buffers does not block
+		for (int i = 0; i < 10000; i++) {
+			out.write(i);
+		}
+		out.close();
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i & 0xff, in.read());
+		}
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	public void testIdleStreamsDoNotUseThreads() throws Exception {
+		int threads = Thread.activeCount();
+		PipedOutputStream[] outs = new PipedOutputStream[IDLE_STREAMS];
+		InputStream[] ins = new InputStream[IDLE_STREAMS];
+		OutputStream[] timeoutOuts = new OutputStream[IDLE_STREAMS];
+		for (int i = 0; i < IDLE_STREAMS; i++) {
+			outs[i] = new PipedOutputStream();
+			ins[i] = new TimeoutInputStream(new PipedInputStream(outs[i]), 1024, 100, 1000);
+			timeoutOuts[i] = new TimeoutOutputStream(new PipedOutputStream(new PipedInputStream()), 1024, 100, 1000);
+		}
+		for (int i = 0; i < IDLE_STREAMS; i++) {
+			timeoutOuts[i].write(i);
+			outs[i].write(i);
+			assertEquals(i & 0xff, ins[i].read());
+		}
+		int used = Thread.activeCount() - threads;
+		for (int i = 0; i < IDLE_STREAMS; i++) {
+			outs[i].close();
+			ins[i].close();
+			timeoutOuts[i].close();
+		}
+		assertTrue(used < IDLE_STREAMS / 2);
+	}
+
+	/*
+	 * Transfers data through a pipe with timeout streams on both ends.
+	 */
+	public void testTransfer() throws Exception {
+		transfer(true, TRANSFER_SIZE);
+	}
+
+	/*
+	 * Transfer the given number of bytes through a pipe, directly or through
+	 * timeout streams on both ends, and check the bytes that are read.
+	 */
+	static void transfer(boolean useTimeoutStreams, int size) throws Exception {
+		PipedOutputStream pipeOut = new PipedOutputStream();
+		PipedInputStream pipeIn = new PipedInputStream(pipeOut);
+		OutputStream out = pipeOut;
+		InputStream in = pipeIn;
+		if (useTimeoutStreams) {
+			NullProgressMonitor monitor = new NullProgressMonitor();
+			out = new PollingOutputStream(new TimeoutOutputStream(pipeOut, 8192, 1000, 1000), 60, monitor);
+			in = new PollingInputStream(new TimeoutInputStream(pipeIn, 8192, 1000, 1000), 60, monitor);
+		}
+		Writer writer = new Writer(out, size);
+		writer.start();
+		byte[] buffer = new byte[5000];
+		int read = 0;
+		try {
+			int count;
+			while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+				for (int i = 0; i < count; i++) {
+					if (buffer[i] != (byte) (read + i))
+						fail("Unexpected byte at " + (read + i));
+				}
+				read += count;
+			}
+		} finally {
+			in.close();
+			writer.join();
+		}
+		if (writer.error != null)
+			throw writer.error;
+		assertEquals(size, read);
+	}
+}
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A local stand-in for a CVS pserver. It accepts any user and password and
+ * answers <code>update</code> requests by sending generated contents for every
+ * file argument. It is not a CVS server, it only knows enough of the protocol
+ * to serve file contents to the client in tests and benchmarks.
+ */
+public class PServerStandIn {
+
+	private static final String VALID_REQUESTS = "Valid-requests Root Valid-responses valid-requests Repository Directory Max-dotdot Static-directory Sticky Entry Kopt Checkin-time Modified Is-modified UseUnchanged Unchanged Questionable Case Argument Argumentx Global_option expand-modules co update noop version";
+
+	private final String root;
+	private final int fileSize;
+	private final int responseDelay;
+	private int handshakeDelay;
+	private ServerSocket serverSocket;
+	private final List sockets = new ArrayList();
+	private int connectionCount;
+	private int openConnections;
+	private int maxOpenConnections;
+	private int filesServed;
+	private int handshakeCount;
+
+	/**
+	 * Create a server stand-in.
+	 * @param root the repository root the server pretends to serve
+	 * @param fileSize the size of the contents that are sent for every file
+	 * @param responseDelay the time in milliseconds the server waits
+	 * before sending a file, i.e. the simulated latency
+	 */
+	public PServerStandIn(String root, int fileSize, int responseDelay) {
+		this.root = root;
+		this.fileSize = fileSize;
+		this.responseDelay = responseDelay;
+	}
+
+	/**
+	 * Return the contents the server sends for the given file.
+	 * @param path the path of the file relative to the local root of the session
+	 * @param fileSize the size of the contents
+	 * @return the contents
+	 */
+	public static byte[] getContents(String path, int fileSize) {
+		byte[] line = ("Contents of " + path + "\n").getBytes();
+		byte[] contents = new byte[fileSize];
+		for (int i = 0; i < contents.length; i++) {
+			contents[i] = line[i % line.length];
+		}
+		return contents;
+	}
+
+	/**
+	 * Set the time the server waits before it accepts the authentication of
+	 * a connection, i.e. the simulated cost of opening a connection.
+	 * @param handshakeDelay the delay in milliseconds
+	 */
+	public void setHandshakeDelay(int handshakeDelay) {
+		this.handshakeDelay = handshakeDelay;
+	}
+
+	public void start() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+		Thread acceptor = new Thread("PServerStandIn acceptor") {
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = serverSocket.accept();
+						synchronized (PServerStandIn.this) {
+							sockets.add(socket);
+							connectionCount++;
+							openConnections++;
+							maxOpenConnections = Math.max(openConnections, maxOpenConnections);
+						}
+						Thread handler = new Thread("PServerStandIn connection") {
+							public void run() {
+								try {
+									serve(socket);
+								} catch (IOException e) {
+									// The connection was closed
+								} finally {
+									synchronized (PServerStandIn.this) {
+										sockets.remove(socket);
+										openConnections--;
+									}
+									try {
+										socket.close();
+									} catch (IOException e) {
+										// Ignore
+									}
+								}
+							}
+						};
+						handler.setDaemon(true);
+						handler.start();
+					}
+				} catch (IOException e) {
+					// The server was stopped
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public void stop() throws IOException {
+		serverSocket.close();
+		synchronized (this) {
+			for (Iterator iter = sockets.iterator(); iter.hasNext();) {
+				((Socket) iter.next()).close();
+			}
+		}
+	}
+
+	/**
+	 * Return the location string of a pserver repository location that
+	 * connects to this server.
+	 */
+	public String getLocation() {
+		return ":pserver:user:password@localhost#" + serverSocket.getLocalPort() + ":" + root;
+	}
+
+	public synchronized int getConnectionCount() {
+		return connectionCount;
+	}
+
+	public synchronized int getMaxOpenConnections() {
+		return maxOpenConnections;
+	}
+
+	public synchronized int getFilesServed() {
+		return filesServed;
+	}
+
+	/**
+	 * Return the number of connections that were initialized by the client,
+	 * i.e. the number of <code>valid-requests</code> requests.
+	 */
+	public synchronized int getHandshakeCount() {
+		return handshakeCount;
+	}
+
+	private void serve(Socket socket) throws IOException {
+		InputStream in = new BufferedInputStream(socket.getInputStream());
+		OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+		String line;
+		// Accept any authentication request
+		while ((line = readLine(in)) != null && !line.equals("END AUTH REQUEST")) {
+			// Skip the root, user and password
+		}
+		sleep(handshakeDelay);
+		writeLine(out, "I LOVE YOU");
+		out.flush();
+		List arguments = new ArrayList();
+		while ((line = readLine(in)) != null) {
+			if (line.equals("valid-requests")) {
+				synchronized (this) {
+					handshakeCount++;
+				}
+				writeLine(out, VALID_REQUESTS);
+				writeLine(out, "ok");
+			} else if (line.equals("version")) {
+				writeLine(out, "M Concurrent Versions System (CVS) 1.12.13 (client/server)");
+				writeLine(out, "ok");
+			} else if (line.equals("update")) {
+				for (Iterator iter = arguments.iterator(); iter.hasNext();) {
+					String argument = (String) iter.next();
+					if (!argument.startsWith("-"))
+						sendFile(out, argument);
+				}
+				writeLine(out, "ok");
+			} else if (line.startsWith("Directory ")) {
+				// Skip the repository of the directory
+				readLine(in);
+				continue;
+			} else if (line.startsWith("Modified ")) {
+				// Skip the mode, the size and the contents of the file
+				readLine(in);
+				long size = Long.parseLong(readLine(in));
+				while (size > 0) {
+					size -= in.skip(size);
+				}
+				continue;
+			} else if (line.startsWith("Argument ")) {
+				arguments.add(line.substring("Argument ".length()));
+				continue;
+			} else if (line.length() == 0 || Character.isUpperCase(line.charAt(0))) {
+				// All other requests do not have a response
+				continue;
+			} else {
+				// Any other command succeeds without doing anything
+				writeLine(out, "ok");
+			}
+			arguments.clear();
+			out.flush();
+		}
+	}
+
+	private void sendFile(OutputStream out, String path) throws IOException {
+		sleep(responseDelay);
+		int index = path.lastIndexOf('/');
+		String name = path.substring(index + 1);
+		writeLine(out, "Updated " + (index == -1 ? "./" : path.substring(0, index + 1)));
+		writeLine(out, root + "/" + path);
+		writeLine(out, "/" + name + "/1.1///");
+		writeLine(out, "u=rw,g=r,o=r");
+		writeLine(out, String.valueOf(fileSize));
+		out.write(getContents(path, fileSize));
+		synchronized (this) {
+			filesServed++;
+		}
+	}
+
+	private static void sleep(int delay) throws IOException {
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b == -1)
+				return line.size() == 0 ? null : line.toString();
+			line.write(b);
+		}
+		return line.toString();
+	}
+
+	private static void writeLine(OutputStream out, String line) throws IOException {
+		out.write(line.getBytes());
+		out.write('\n');
+	}
+}
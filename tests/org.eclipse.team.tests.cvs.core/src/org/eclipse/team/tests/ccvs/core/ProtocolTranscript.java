@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The responses of a CVS server to the commands of a client, e.g. the
+ * responses to <code>co</code> and <code>update</code>. A response is the
+ * raw bytes the server sends after the command request, up to and including
+ * the final <code>ok</code> or <code>error</code> line. The responses to
+ * each command are replayed in the order they were added, starting over
+ * after the last one.
+ * <p>
+ * A transcript is stored as a sequence of entries, each made of a
+ * <code>C &lt;command&gt;</code> line, a <code>S &lt;size&gt;</code> line
+ * and the bytes of the response.
+ * </p>
+ * @see ReplayConnection
+ * @see RecordingConnection
+ */
+public class ProtocolTranscript {
+
+	// command -> List of byte[]
+	private final Map responses = new HashMap();
+	// command -> Integer, the index of the next response
+	private final Map positions = new HashMap();
+
+	/**
+	 * Add a response to the given command.
+	 * @param command the command request, e.g. <code>co</code>
+	 * @param response the response bytes
+	 */
+	public synchronized void addResponse(String command, byte[] response) {
+		List list = (List) responses.get(command);
+		if (list == null) {
+			list = new ArrayList();
+			responses.put(command, list);
+		}
+		list.add(response);
+	}
+
+	/**
+	 * Add a response to the given command.
+	 * @param command the command request, e.g. <code>co</code>
+	 * @param response the response lines, each followed by a newline
+	 */
+	public void addResponse(String command, String response) {
+		addResponse(command, response.getBytes());
+	}
+
+	/**
+	 * Return the number of responses to the given command.
+	 */
+	public synchronized int getResponseCount(String command) {
+		List list = (List) responses.get(command);
+		return list == null ? 0 : list.size();
+	}
+
+	/**
+	 * Return the next response to the given command. After the last
+	 * response the first one is returned again.
+	 * @return the response or <code>null</code> if there is no response to
+	 * the command
+	 */
+	public synchronized byte[] nextResponse(String command) {
+		List list = (List) responses.get(command);
+		if (list == null)
+			return null;
+		Integer position = (Integer) positions.get(command);
+		int index = position == null ? 0 : position.intValue();
+		positions.put(command, new Integer((index + 1) % list.size()));
+		return (byte[]) list.get(index);
+	}
+
+	/**
+	 * Replay the responses from the first one again.
+	 */
+	public synchronized void reset() {
+		positions.clear();
+	}
+
+	/**
+	 * Read a transcript that was written with {@link #write(OutputStream)}.
+	 * @param in the stream to read from
+	 * @return the transcript
+	 * @throws IOException if the stream cannot be read or is not a transcript
+	 */
+	public static ProtocolTranscript read(InputStream in) throws IOException {
+		in = new BufferedInputStream(in);
+		ProtocolTranscript transcript = new ProtocolTranscript();
+		String line;
+		while ((line = readLine(in)) != null) {
+			if (line.length() == 0)
+				continue;
+			if (!line.startsWith("C "))
+				throw new IOException("Expected a command: " + line);
+			String command = line.substring(2);
+			line = readLine(in);
+			if (line == null || !line.startsWith("S "))
+				throw new IOException("Expected the size of the response to " + command);
+			byte[] response = new byte[Integer.parseInt(line.substring(2))];
+			int count = 0;
+			while (count < response.length) {
+				int read = in.read(response, count, response.length - count);
+				if (read == -1)
+					throw new IOException("Unexpected end of the response to " + command);
+				count += read;
+			}
+			transcript.addResponse(command, response);
+		}
+		return transcript;
+	}
+
+	/**
+	 * Write the responses of the transcript. The responses to each command
+	 * are written in the order they are replayed.
+	 * @param out the stream to write to
+	 * @throws IOException if the stream cannot be written
+	 */
+	public synchronized void write(OutputStream out) throws IOException {
+		for (Iterator iter = responses.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			for (Iterator responseIter = ((List) entry.getValue()).iterator(); responseIter.hasNext();) {
+				byte[] response = (byte[]) responseIter.next();
+				out.write(("C " + entry.getKey() + "\nS " + response.length + "\n").getBytes());
+				out.write(response);
+				out.write('\n');
+			}
+		}
+		out.flush();
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b == -1)
+				return line.size() == 0 ? null : line.toString();
+			line.write(b);
+		}
+		return line.toString();
+	}
+}
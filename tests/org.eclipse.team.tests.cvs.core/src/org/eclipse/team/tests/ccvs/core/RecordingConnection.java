@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.ICVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.IConnectionMethod;
+import org.eclipse.team.internal.ccvs.core.IServerConnection;
+import org.eclipse.team.internal.ccvs.core.connection.CVSAuthenticationException;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+
+/**
+ * A connection that records the responses of a CVS server in a
+ * {@link ProtocolTranscript} that a {@link ReplayConnection} can replay.
+ * The connections of the locations that use the <code>record</code>
+ * connection method are <code>pserver</code> connections to the host, port
+ * and root directory of the location, see {@link #getLocation(String)}.
+ * <p>
+ * The client only sends a command once it has read the whole response to
+ * the previous command, so all bytes read after a command request are the
+ * response to that command. A response is added to the transcript when the
+ * next command is sent or when the connection is closed. Connections that
+ * are kept open by the session pool must be closed before the transcript
+ * is complete.
+ * </p>
+ */
+public class RecordingConnection implements IServerConnection {
+
+	// root directory -> ProtocolTranscript
+	private static final Map transcripts = new HashMap();
+
+	private final IServerConnection connection;
+	private final ProtocolTranscript transcript;
+	// the command whose response is read or null
+	private String command;
+	private final ByteArrayOutputStream response = new ByteArrayOutputStream();
+	private InputStream in;
+	private OutputStream out;
+
+	/**
+	 * Return the location string of a repository location whose connections
+	 * record the responses of the <code>pserver</code> repository of the
+	 * given location.
+	 * @param location the location string of a <code>pserver</code> location
+	 * @return the location string
+	 */
+	public static String getLocation(String location) {
+		return ":record:" + location.substring(location.indexOf(':', 1) + 1);
+	}
+
+	/**
+	 * Register the transcript the connections to the given root directory
+	 * add the responses to.
+	 * @param rootDirectory the root directory of the repository
+	 * @param transcript the transcript or <code>null</code> to remove it
+	 */
+	public static void setTranscript(String rootDirectory, ProtocolTranscript transcript) {
+		synchronized (transcripts) {
+			if (transcript == null) {
+				transcripts.remove(rootDirectory);
+			} else {
+				transcripts.put(rootDirectory, transcript);
+			}
+		}
+	}
+
+	public static IServerConnection createConnection(ICVSRepositoryLocation location, String password) {
+		ProtocolTranscript transcript;
+		synchronized (transcripts) {
+			transcript = (ProtocolTranscript) transcripts.get(location.getRootDirectory());
+		}
+		if (transcript == null)
+			throw new IllegalStateException("No transcript for " + location.getLocation(true));
+		IConnectionMethod[] methods = CVSRepositoryLocation.getPluggedInConnectionMethods();
+		for (int i = 0; i < methods.length; i++) {
+			if (methods[i].getName().equals("pserver"))
+				return new RecordingConnection(methods[i].createConnection(location, password), transcript);
+		}
+		throw new IllegalStateException("No pserver connection method");
+	}
+
+	/**
+	 * Create a connection that records the responses read from the given
+	 * connection.
+	 * @param connection the connection to the server
+	 * @param transcript the transcript the responses are added to
+	 */
+	public RecordingConnection(IServerConnection connection, ProtocolTranscript transcript) {
+		this.connection = connection;
+		this.transcript = transcript;
+	}
+
+	public void open(IProgressMonitor monitor) throws IOException, CVSAuthenticationException {
+		connection.open(monitor);
+		in = new FilterInputStream(connection.getInputStream()) {
+			public int read() throws IOException {
+				int b = super.read();
+				if (b != -1)
+					record(b);
+				return b;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				int count = super.read(b, off, len);
+				if (count > 0)
+					record(b, off, count);
+				return count;
+			}
+		};
+		final RequestReader requests = new RequestReader() {
+			protected void receiveCommand(String command) {
+				commandSent(command);
+			}
+		};
+		out = new FilterOutputStream(connection.getOutputStream()) {
+			public void write(int b) throws IOException {
+				super.out.write(b);
+				requests.write(b);
+			}
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				super.out.write(b, off, len);
+				requests.write(b, off, len);
+			}
+		};
+	}
+
+	public void close() throws IOException {
+		try {
+			commandSent(null);
+		} finally {
+			connection.close();
+		}
+	}
+
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	private void record(int b) {
+		if (command != null)
+			response.write(b);
+	}
+
+	private void record(byte[] b, int off, int len) {
+		if (command != null)
+			response.write(b, off, len);
+	}
+
+	/*
+	 * Add the response to the previous command to the transcript and
+	 * record the response to the given command.
+	 */
+	private void commandSent(String newCommand) {
+		if (command != null && response.size() > 0)
+			transcript.addResponse(command, response.toByteArray());
+		response.reset();
+		command = newCommand;
+	}
+}
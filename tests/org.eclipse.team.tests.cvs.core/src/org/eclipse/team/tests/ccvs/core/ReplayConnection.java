@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.ICVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.IServerConnection;
+
+/**
+ * A connection to an in-process CVS server that replays the responses of a
+ * {@link ProtocolTranscript}. The server reads the requests of the client
+ * and answers each command request with the next response to that command
+ * in the transcript. It answers <code>valid-requests</code>,
+ * <code>noop</code> and, unless the transcript contains a response to it,
+ * <code>version</code> itself. No thread or socket is involved: the
+ * response to a command is available as soon as the client has written the
+ * command request.
+ * <p>
+ * The transcripts are registered for the root directory of the repository
+ * locations that use the <code>replay</code> connection method, see
+ * {@link #getLocation(String)}.
+ * A transcript is either generated or recorded from a server with a
+ * {@link RecordingConnection}.
+ * </p>
+ */
+public class ReplayConnection implements IServerConnection {
+
+	private static final String VALID_REQUESTS = "Valid-requests Root Valid-responses valid-requests Repository Directory Max-dotdot Static-directory Sticky Entry Kopt Checkin-time Modified Is-modified UseUnchanged Unchanged Notify Questionable Case Argument Argumentx Global_option wrapper-sendme-rcsOptions Set expand-modules ci co update diff log rlog add remove status rdiff tag rtag import admin export history release watch-on watch-off watch-add watch-remove watchers editors init annotate rannotate noop version";
+	private static final String VERSION = "M Concurrent Versions System (CVS) 1.12.13 (client/server)\nok\n";
+
+	// root directory -> ProtocolTranscript
+	private static final Map transcripts = new HashMap();
+
+	private final ProtocolTranscript transcript;
+	private byte[] response = new byte[0];
+	private int position;
+
+	private final InputStream in = new InputStream() {
+		public int read() throws IOException {
+			checkResponse();
+			return response[position++] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			checkResponse();
+			int count = Math.min(len, response.length - position);
+			System.arraycopy(response, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		public int available() {
+			return response.length - position;
+		}
+	};
+
+	private final OutputStream out = new RequestReader() {
+		protected void receiveCommand(String command) {
+			ReplayConnection.this.receiveCommand(command);
+		}
+	};
+
+	/**
+	 * Return the location string of a repository location whose connections
+	 * replay the transcript registered for the given name.
+	 * @param name the name of the transcript
+	 * @return the location string
+	 */
+	public static String getLocation(String name) {
+		return ":replay:replay@localhost:" + getRootDirectory(name);
+	}
+
+	/**
+	 * Register the transcript the connections to the location of the given
+	 * name replay.
+	 * @param name the name of the transcript
+	 * @param transcript the transcript or <code>null</code> to remove it
+	 */
+	public static void setTranscript(String name, ProtocolTranscript transcript) {
+		synchronized (transcripts) {
+			if (transcript == null) {
+				transcripts.remove(getRootDirectory(name));
+			} else {
+				transcripts.put(getRootDirectory(name), transcript);
+			}
+		}
+	}
+
+	private static String getRootDirectory(String name) {
+		return "/replay/" + name;
+	}
+
+	public static IServerConnection createConnection(ICVSRepositoryLocation location, String password) {
+		ProtocolTranscript transcript;
+		synchronized (transcripts) {
+			transcript = (ProtocolTranscript) transcripts.get(location.getRootDirectory());
+		}
+		if (transcript == null)
+			throw new IllegalStateException("No transcript for " + location.getLocation(true));
+		return new ReplayConnection(transcript);
+	}
+
+	private ReplayConnection(ProtocolTranscript transcript) {
+		this.transcript = transcript;
+	}
+
+	public void open(IProgressMonitor monitor) {
+		// Nothing to do
+	}
+
+	public void close() {
+		response = new byte[0];
+		position = 0;
+	}
+
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	private void checkResponse() throws IOException {
+		if (position == response.length)
+			throw new IOException("The client waits for a response but there is none pending");
+	}
+
+	private void receiveCommand(String command) {
+		if (command.equals("valid-requests")) {
+			respond((VALID_REQUESTS + "\nok\n").getBytes());
+			return;
+		}
+		if (command.equals("noop")) {
+			respond("ok\n".getBytes());
+			return;
+		}
+		byte[] bytes = transcript.nextResponse(command);
+		if (bytes == null && command.equals("version"))
+			bytes = VERSION.getBytes();
+		if (bytes == null)
+			bytes = ("error  The transcript contains no response to " + command + "\n").getBytes();
+		respond(bytes);
+	}
+
+	private void respond(byte[] bytes) {
+		int remaining = response.length - position;
+		if (remaining == 0) {
+			response = bytes;
+		} else {
+			byte[] newResponse = new byte[remaining + bytes.length];
+			System.arraycopy(response, position, newResponse, 0, remaining);
+			System.arraycopy(bytes, 0, newResponse, remaining, bytes.length);
+			response = newResponse;
+		}
+		position = 0;
+	}
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core;
+
+import org.eclipse.team.internal.ccvs.core.ICVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.IConnectionMethod;
+import org.eclipse.team.internal.ccvs.core.IServerConnection;
+
+/**
+ * The connection method of the locations whose connections replay a
+ * {@link ProtocolTranscript}.
+ * @see ReplayConnection
+ */
+public class ReplayConnectionMethod implements IConnectionMethod {
+
+	public String getName() {
+		return "replay";
+	}
+
+	public IServerConnection createConnection(ICVSRepositoryLocation location, String password) {
+		return ReplayConnection.createConnection(location, password);
+	}
+
+	public void disconnect(ICVSRepositoryLocation location) {
+		// Nothing need to be done
+	}
+}
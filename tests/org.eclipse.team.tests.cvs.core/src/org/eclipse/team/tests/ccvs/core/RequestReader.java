@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+/**
+ * An output stream that reads the requests a CVS client writes to a server
+ * and reports the command requests, i.e. the requests the server answers.
+ * The contents of the files the client sends are skipped.
+ */
+abstract class RequestReader extends OutputStream {
+
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+	// the number of lines and bytes that follow the current request
+	private int pendingLines;
+	private long pendingBytes;
+	private boolean pendingSize;
+
+	public void write(int b) {
+		if (pendingBytes > 0) {
+			pendingBytes--;
+		} else if (b == '\n') {
+			receiveLine(line.toString());
+			line.reset();
+		} else {
+			line.write(b);
+		}
+	}
+
+	public void write(byte[] b, int off, int len) {
+		int end = off + len;
+		while (off < end) {
+			if (pendingBytes > 0) {
+				// Skip the contents of a file in one go
+				int count = (int) Math.min(pendingBytes, end - off);
+				pendingBytes -= count;
+				off += count;
+			} else {
+				write(b[off++]);
+			}
+		}
+	}
+
+	private void receiveLine(String request) {
+		if (pendingLines > 0) {
+			pendingLines--;
+			if (pendingSize && pendingLines == 0) {
+				// The size of the contents of a Modified request, z<size> if they are compressed
+				pendingSize = false;
+				pendingBytes = Long.parseLong(request.startsWith("z") ? request.substring(1) : request);
+			}
+			return;
+		}
+		if (request.startsWith("Modified ")) {
+			// The mode and the size are followed by the contents
+			pendingLines = 2;
+			pendingSize = true;
+		} else if (request.startsWith("Directory ") || request.startsWith("Notify ")) {
+			pendingLines = 1;
+		} else if (request.length() > 0 && Character.isLowerCase(request.charAt(0))) {
+			int space = request.indexOf(' ');
+			receiveCommand(space == -1 ? request : request.substring(0, space));
+		}
+		// All other requests do not have a response
+	}
+
+	/**
+	 * Called when the client has written a command request.
+	 * @param command the command, e.g. <code>co</code>
+	 */
+	protected abstract void receiveCommand(String command);
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.client.ResponseHandler;
+import org.eclipse.team.internal.ccvs.core.client.Session;
+
+/**
+ * A response handler that counts the responses a session handles with
+ * another handler and the time it spends in them.
+ * <p>
+ * The time is measured with <code>System.currentTimeMillis()</code>, so a
+ * single response usually takes no measurable time. Since the responses do
+ * not start in step with the clock, the sum over many responses is still a
+ * fair estimate of the time spent in the handler. The handlers a command
+ * registers while it runs, e.g. the <code>Created</code> handler of a
+ * checkout, replace the timing handlers.
+ * </p>
+ */
+public class TimingResponseHandler extends ResponseHandler {
+
+	// The responses with a handler, except MT which the commands expect to be handled by an MTHandler
+	private static final String[] RESPONSE_IDS = new String[] {
+		"Checked-in", "Copy-file", "Mod-time", "New-entry", "Removed", "Remove-entry",
+		"Set-static-directory", "Clear-static-directory", "Set-sticky", "Clear-sticky",
+		"Updated", "Update-existing", "Created", "Merged", "Valid-requests",
+		"Module-expansion", "Notified", "Template"
+	};
+
+	private final ResponseHandler handler;
+	private int count;
+	private long time;
+
+	/**
+	 * Replace the response handlers of the given session with timing handlers.
+	 * @param session an open session
+	 * @return the timing handlers
+	 */
+	public static TimingResponseHandler[] install(Session session) {
+		List handlers = new ArrayList();
+		for (int i = 0; i < RESPONSE_IDS.length; i++) {
+			ResponseHandler handler = session.getResponseHandler(RESPONSE_IDS[i]);
+			if (handler != null) {
+				TimingResponseHandler timingHandler = new TimingResponseHandler(handler);
+				session.registerResponseHandler(timingHandler);
+				handlers.add(timingHandler);
+			}
+		}
+		return (TimingResponseHandler[]) handlers.toArray(new TimingResponseHandler[handlers.size()]);
+	}
+
+	public TimingResponseHandler(ResponseHandler handler) {
+		this.handler = handler;
+	}
+
+	public String getResponseID() {
+		return handler.getResponseID();
+	}
+
+	public void handle(Session session, String argument, IProgressMonitor monitor) throws CVSException {
+		long start = System.currentTimeMillis();
+		try {
+			handler.handle(session, argument, monitor);
+		} finally {
+			time += System.currentTimeMillis() - start;
+			count++;
+		}
+	}
+
+	/**
+	 * Return the number of responses that were handled.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Return the time in milliseconds spent handling responses.
+	 */
+	public long getTime() {
+		return time;
+	}
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.cvsresources;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.Test;
+
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.syncinfo.ResourceSyncInfo;
+import org.eclipse.team.internal.ccvs.core.util.CVSDateFormatter;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+
+/**
+ * Tests that the date formatter gives the same results as the date formats
+ * it replaces.
+ */
+public class CVSDateFormatterTest extends EclipseTest {
+
+	private static final int ENTRY_LINES = 10000;
+
+	public CVSDateFormatterTest() {
+		super();
+	}
+
+	public CVSDateFormatterTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(CVSDateFormatterTest.class);
+	}
+
+	private static SimpleDateFormat createFormat(String pattern) {
+		SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format;
+	}
+
+	public void testEntryLineFormat() throws ParseException {
+		SimpleDateFormat format = createFormat("E MMM dd HH:mm:ss yyyy");
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			// Dates between 1900 and 2100
+			Date date = new Date((random.nextLong() >>> 1) % 6311390400000L - 2208988800000L);
+			String formatted = format.format(date);
+			String expected = formatted;
+			if (expected.charAt(8) == '0')
+				expected = expected.substring(0, 8) + ' ' + expected.substring(9);
+			String entryLine = CVSDateFormatter.dateToEntryLine(date);
+			assertEquals(expected, entryLine);
+			assertEquals(format.parse(formatted), CVSDateFormatter.entryLineToDate(entryLine));
+		}
+		assertEquals("Sun Apr  7 01:29:26 1996", CVSDateFormatter.dateToEntryLine(CVSDateFormatter.entryLineToDate("Sun Apr  7 01:29:26 1996")));
+		assertEquals("", CVSDateFormatter.dateToEntryLine(null));
+	}
+
+	public void testUnusualEntryLines() throws ParseException {
+		SimpleDateFormat format = createFormat("E MMM dd HH:mm:ss yyyy");
+		// The day of the week is ignored
+		assertEquals(format.parse("Sun Apr 07 01:29:26 1996"), CVSDateFormatter.entryLineToDate("Mon Apr  7 01:29:26 1996"));
+		// Zero padded days, lowercase names and out of range fields are parsed leniently
+		assertEquals(format.parse("Sun Apr 07 01:29:26 1996"), CVSDateFormatter.entryLineToDate("Sun Apr 07 01:29:26 1996"));
+		assertEquals(format.parse("sun apr 07 01:29:26 1996"), CVSDateFormatter.entryLineToDate("sun apr  7 01:29:26 1996"));
+		assertEquals(format.parse("Sat Mar 02 01:29:26 1996"), CVSDateFormatter.entryLineToDate("Sat Feb 31 01:29:26 1996"));
+		assertEquals(format.parse("Sun Apr 07 25:29:26 1996"), CVSDateFormatter.entryLineToDate("Sun Apr  7 25:29:26 1996"));
+		assertEquals(format.parse("Tue Dec 31 23:59:59 1968"), CVSDateFormatter.entryLineToDate("Tue Dec 31 23:59:59 1968"));
+		try {
+			CVSDateFormatter.entryLineToDate("Sun Apr");
+			fail("The entry line is too short");
+		} catch (ParseException e) {
+			// expected
+		}
+		try {
+			CVSDateFormatter.entryLineToDate("dummy timestamp");
+			fail("The entry line is not a date");
+		} catch (ParseException e) {
+			// expected
+		}
+	}
+
+	public void testServerFormat() throws ParseException {
+		SimpleDateFormat format = createFormat("dd MMM yyyy HH:mm:ss");
+		assertEquals(format.parse("17 Mar 2004 18:32:13"), CVSDateFormatter.serverStampToDate("17 Mar 2004 18:32:13 -0000"));
+		assertEquals(format.parse("07 Mar 2004 23:32:13"), CVSDateFormatter.serverStampToDate("7 Mar 2004 18:32:13 -0500"));
+		assertEquals(format.parse("07 Mar 2004 17:02:13"), CVSDateFormatter.serverStampToDate("07 Mar 2004 18:32:13 +0130"));
+		assertEquals(format.parse("07 Mar 2004 18:32:13"), CVSDateFormatter.serverStampToDate("07 Mar 2004 18:32:13"));
+		assertEquals(format.parse("07 Mar 2004 18:32:13"), CVSDateFormatter.serverStampToDate("07 Mar 2004 18:32:13 GMT"));
+		assertEquals(format.parse("31 Dec 1969 23:00:00"), CVSDateFormatter.serverStampToDate("1 Jan 1970 00:00:00 +0100"));
+		assertEquals("07 Apr 1996 01:29:26 GMT", CVSDateFormatter.dateToNotifyServer(format.parse("07 Apr 1996 01:29:26")));
+		assertEquals("31 Dec 1968 23:59:59 GMT", CVSDateFormatter.dateToNotifyServer(format.parse("31 Dec 1968 23:59:59")));
+	}
+
+	/*
+	 * Creates entries in several threads and checks that their timestamps
+	 * are the dates the date format parses.
+	 */
+	public void testParallelEntryLineParsing() throws Exception {
+		String[] entryLines = createEntryLines(ENTRY_LINES);
+		ResourceSyncInfo[] infos = parseEntryLines(entryLines, Math.max(2, Runtime.getRuntime().availableProcessors()));
+		SimpleDateFormat format = createFormat("E MMM dd HH:mm:ss yyyy");
+		for (int i = 0; i < entryLines.length; i++) {
+			String timestamp = entryLines[i].split("/")[3];
+			if (timestamp.charAt(8) == ' ')
+				timestamp = timestamp.substring(0, 8) + '0' + timestamp.substring(9);
+			assertEquals(entryLines[i], format.parse(timestamp), infos[i].getTimeStamp());
+		}
+	}
+
+	/**
+	 * Return entry lines of files with random timestamps.
+	 * @param count the number of entry lines
+	 * @return the entry lines
+	 */
+	public static String[] createEntryLines(int count) {
+		String[] entryLines = new String[count];
+		Random random = new Random(0);
+		for (int i = 0; i < entryLines.length; i++) {
+			Date date = new Date((random.nextLong() >>> 1) % 1400000000000L);
+			entryLines[i] = "/file" + i + ".java/1." + i % 100 + "/" + CVSDateFormatter.dateToEntryLine(date) + "/-kb/";
+		}
+		return entryLines;
+	}
+
+	/**
+	 * Create the sync info of the entry lines in the given number of threads.
+	 * @param entryLines the entry lines
+	 * @param threadCount the number of threads
+	 * @return the sync info of each entry line
+	 * @throws InterruptedException
+	 */
+	public static ResourceSyncInfo[] parseEntryLines(final String[] entryLines, int threadCount) throws InterruptedException {
+		final ResourceSyncInfo[] infos = new ResourceSyncInfo[entryLines.length];
+		final CVSException[] errors = new CVSException[threadCount];
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			final int thread = i;
+			final int count = threadCount;
+			threads[i] = new Thread("CVSDateFormatterTest") {
+				public void run() {
+					try {
+						for (int line = thread; line < entryLines.length; line += count) {
+							infos[line] = new ResourceSyncInfo(entryLines[line], null);
+						}
+					} catch (CVSException e) {
+						errors[thread] = e;
+					}
+				}
+			};
+		}
+		for (int i = 0; i < threadCount; i++) {
+			threads[i].start();
+		}
+		for (int i = 0; i < threadCount; i++) {
+			threads[i].join();
+			if (errors[i] != null)
+				fail(errors[i].getMessage());
+		}
+		return infos;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,7 +11,12 @@
 package org.eclipse.team.tests.ccvs.core.cvsresources;
 
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -44,6 +49,7 @@ import org.eclipse.team.internal.ccvs.core.resources.EclipseSynchronizer;
 import org.eclipse.team.internal.ccvs.core.syncinfo.FolderSyncInfo;
 import org.eclipse.team.internal.ccvs.core.syncinfo.MutableResourceSyncInfo;
 import org.eclipse.team.internal.ccvs.core.syncinfo.ResourceSyncInfo;
+import org.eclipse.team.internal.ccvs.core.util.CVSDateFormatter;
 import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
 import org.eclipse.team.tests.ccvs.core.CVSTestSetup;
 import org.eclipse.team.tests.ccvs.core.EclipseTest;
@@ -55,6 +61,9 @@ import org.eclipse.team.tests.ccvs.core.EclipseTest;
 public class EclipseSynchronizerTest extends EclipseTest {
 	private static EclipseSynchronizer sync = EclipseSynchronizer.getInstance();
 	
+	private static final int LOAD_FOLDERS = 200;
+	private static final int LOAD_FILES_PER_FOLDER = 50;
+	
 	public EclipseSynchronizerTest() {
 		super();
 	}
@@ -864,6 +873,33 @@ public class EclipseSynchronizerTest extends EclipseTest {
 		assertHasNoSyncInfo(file);
 	}
 	
+	/*
+	 * The sync bytes of a deleted resource are kept in the table of its
+	 * parent, they must not show up for a resource of the other type that
+	 * replaces it.
+	 */
+	public void testRecreationAsOtherType() throws CoreException {
+		// Create a project with dummy sync info
+		IProject project =  createProject(new String[] {"folder1/file1", "folder1/folder2/file2"});
+		
+		// Replace the file by a folder
+		IFile file = project.getFile("folder1/file1");
+		file.delete(false, false, null);
+		assertHasSyncInfo(file);
+		IFolder folder = project.getFolder("folder1/file1");
+		folder.create(false, true, null);
+		assertNull(sync.getSyncBytes(folder));
+		assertNull(sync.getResourceSync(folder));
+		
+		// Replace the folder by a file
+		IFolder folder2 = project.getFolder("folder1/folder2");
+		folder2.delete(false, false, null);
+		IFile file2 = project.getFile("folder1/folder2");
+		file2.create(getRandomContents(), false /*force*/, null);
+		assertNull(sync.getSyncBytes(file2));
+		assertNull(sync.getResourceSync(file2));
+	}
+	
 	/*
 	 * This testcase simulates an update that has an incoming deletion and a merge 
 	 * (which may do a move).
@@ -917,4 +953,97 @@ public class EclipseSynchronizerTest extends EclipseTest {
 		assertTrue(!sync.getResourceSync(file21).getRevision().equals(revision));
 		
 	}
+	
+	private static void writeFile(File file, String contents) throws IOException {
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes());
+		} finally {
+			out.close();
+		}
+	}
+	
+	/*
+	 * Loads the sync info of a project with many folders while reading one
+	 * Entries file at a time and while reading them in parallel and checks
+	 * the result.
+	 */
+	public void testEnsureSyncInfoLoaded() throws CoreException, IOException {
+		IProject project = getUniqueTestProject(getName());
+		String timestamp = CVSDateFormatter.dateToEntryLine(new Date(1396000000000L));
+		writeLoadFolders(project, timestamp);
+		int threads = CVSProviderPlugin.getPlugin().getSyncInfoReadThreads();
+		try {
+			CVSProviderPlugin.getPlugin().setSyncInfoReadThreads(1);
+			ensureSyncInfoLoaded(project, timestamp);
+			CVSProviderPlugin.getPlugin().setSyncInfoReadThreads(Math.max(threads, 2));
+			ensureSyncInfoLoaded(project, timestamp);
+		} finally {
+			CVSProviderPlugin.getPlugin().setSyncInfoReadThreads(threads);
+		}
+	}
+	
+	/*
+	 * Loads the sync info of many files and checks that the cache reports
+	 * the sync bytes of all of them.
+	 */
+	public void testCacheMemory() throws CoreException, IOException {
+		IProject project = getUniqueTestProject(getName());
+		String timestamp = CVSDateFormatter.dateToEntryLine(new Date(1396000000000L));
+		writeLoadFolders(project, timestamp);
+		ensureSyncInfoLoaded(project, timestamp);
+		String report = sync.getCacheMemoryReport(project);
+		assertTrue(report, report.indexOf(" " + LOAD_FOLDERS * LOAD_FILES_PER_FOLDER + " entries") != -1);
+	}
+	
+	/*
+	 * Folders without children under CVS control must not take memory
+	 */
+	public void testEmptyFolderMemory() throws CoreException, IOException {
+		IProject project = getUniqueTestProject(getName());
+		String timestamp = CVSDateFormatter.dateToEntryLine(new Date(1396000000000L));
+		writeLoadFolders(project, timestamp);
+		IFolder bin = project.getFolder("bin");
+		bin.create(false, true, null);
+		bin.getFile("file.class").create(getRandomContents(), false, null);
+		ensureSyncInfoLoaded(project, timestamp);
+		String report = sync.getCacheMemoryReport(bin);
+		if (report.startsWith("compact")) {
+			assertTrue(report, report.indexOf(" 0 entries") != -1);
+			assertTrue(report, report.endsWith("about 0 bytes used"));
+		}
+	}
+	
+	private static void writeLoadFolders(IProject project, String timestamp) throws CoreException, IOException {
+		File projectDir = project.getLocation().toFile();
+		for (int i = 0; i < LOAD_FOLDERS; i++) {
+			File folder = new File(projectDir, "folder" + i);
+			File cvsFolder = new File(folder, SyncFileWriter.CVS_DIRNAME);
+			writeFile(new File(cvsFolder, SyncFileWriter.ROOT), ":pserver:user@host:/home/repo\n");
+			writeFile(new File(cvsFolder, SyncFileWriter.REPOSITORY), project.getName() + "/folder" + i + "\n");
+			StringBuffer entries = new StringBuffer();
+			for (int j = 0; j < LOAD_FILES_PER_FOLDER; j++) {
+				entries.append("/file" + j + ".txt/1." + (j + 1) + "/" + timestamp + "//\n");
+				writeFile(new File(folder, "file" + j + ".txt"), "contents");
+			}
+			writeFile(new File(cvsFolder, SyncFileWriter.ENTRIES), entries.toString());
+		}
+		project.refreshLocal(IResource.DEPTH_INFINITE, null);
+	}
+	
+	private void ensureSyncInfoLoaded(IProject project, String timestamp) throws CVSException {
+		sync.flush(project, true, null);
+		assertTrue(!sync.isSyncInfoLoaded(new IResource[] { project }, IResource.DEPTH_INFINITE));
+		sync.ensureSyncInfoLoaded(new IResource[] { project }, IResource.DEPTH_INFINITE);
+		assertTrue(sync.isSyncInfoLoaded(new IResource[] { project }, IResource.DEPTH_INFINITE));
+		for (int i = 0; i < LOAD_FOLDERS; i++) {
+			IFolder folder = project.getFolder("folder" + i);
+			assertNotNull(sync.getFolderSync(folder));
+			for (int j = 0; j < LOAD_FILES_PER_FOLDER; j++) {
+				IFile file = folder.getFile("file" + j + ".txt");
+				assertEquals("/file" + j + ".txt/1." + (j + 1) + "/" + timestamp + "//", new String(sync.getSyncBytes(file)));
+			}
+		}
+	}
 }
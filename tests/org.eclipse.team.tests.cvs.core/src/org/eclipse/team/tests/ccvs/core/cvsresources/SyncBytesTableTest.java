@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.cvsresources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+
+import org.eclipse.team.internal.ccvs.core.resources.SyncBytesTable;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+
+/**
+ * Tests the table that holds the sync bytes of the children of a folder.
+ */
+public class SyncBytesTableTest extends EclipseTest {
+
+	public SyncBytesTableTest() {
+		super();
+	}
+
+	public SyncBytesTableTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(SyncBytesTableTest.class);
+	}
+
+	private static byte[] syncBytes(String name, String revision) {
+		return ("/" + name + "/" + revision + "/Sun Mar 30 12:00:00 2014//").getBytes();
+	}
+
+	private static void assertSyncBytes(SyncBytesTable table, String name, byte[] expected) {
+		byte[] actual = table.getSyncBytes(name);
+		if (expected == null) {
+			assertNull(name, actual);
+		} else {
+			assertNotNull(name, actual);
+			assertEquals(name, new String(expected), new String(actual));
+		}
+	}
+
+	/*
+	 * Returns names whose home slot in a table of the given capacity is the given slot.
+	 */
+	private static String[] namesWithHome(int home, int capacity, int count) {
+		List names = new ArrayList();
+		for (int i = 0; names.size() < count; i++) {
+			String name = "file" + i + ".txt";
+			if ((name.hashCode() & (capacity - 1)) == home)
+				names.add(name);
+		}
+		return (String[]) names.toArray(new String[names.size()]);
+	}
+
+	public void testEmptyTableAllocatesNothing() {
+		SyncBytesTable table = new SyncBytesTable();
+		assertNull(table.getSyncBytes("file.txt"));
+		assertNull(table.getDirtyIndicator("file.txt"));
+		table.setSyncBytes("file.txt", null);
+		table.remove("file.txt");
+		assertEquals(0, table.size());
+		assertEquals(0, table.getCapacity());
+		assertEquals(0, table.getArenaSize());
+		assertEquals(0, table.getMemorySize());
+	}
+
+	public void testPut() {
+		SyncBytesTable table = new SyncBytesTable();
+		byte[] a = syncBytes("a.txt", "1.1");
+		byte[] b = syncBytes("b.txt", "1.2");
+		table.setSyncBytes("a.txt", a);
+		table.setSyncBytes("b.txt", b);
+		assertEquals(2, table.size());
+		assertSyncBytes(table, "a.txt", a);
+		assertSyncBytes(table, "b.txt", b);
+		assertSyncBytes(table, "c.txt", null);
+
+		// The table holds copies
+		a[1] = 'x';
+		table.getSyncBytes("b.txt")[1] = 'x';
+		assertSyncBytes(table, "a.txt", syncBytes("a.txt", "1.1"));
+		assertSyncBytes(table, "b.txt", syncBytes("b.txt", "1.2"));
+
+		// Same length is overwritten in place, a different length is appended
+		table.setSyncBytes("a.txt", syncBytes("a.txt", "1.3"));
+		assertEquals(a.length + b.length, table.getSyncBytesSize());
+		table.setSyncBytes("a.txt", syncBytes("a.txt", "1.10"));
+		assertSyncBytes(table, "a.txt", syncBytes("a.txt", "1.10"));
+		assertEquals(a.length + 1 + b.length, table.getSyncBytesSize());
+		assertEquals(2, table.size());
+
+		// Removing the sync bytes keeps the dirty indicator
+		table.setDirtyIndicator("a.txt", "d");
+		table.setSyncBytes("a.txt", null);
+		assertSyncBytes(table, "a.txt", null);
+		assertEquals("d", table.getDirtyIndicator("a.txt"));
+		assertEquals(2, table.size());
+		table.setDirtyIndicator("a.txt", null);
+		assertNull(table.getDirtyIndicator("a.txt"));
+		assertEquals(1, table.size());
+	}
+
+	public void testExpectedSize() {
+		SyncBytesTable table = new SyncBytesTable(12, 12 * 40);
+		assertEquals(0, table.getCapacity());
+		assertEquals(0, table.getArenaSize());
+		for (int i = 0; i < 12; i++) {
+			table.setSyncBytes("f" + i, new byte[40]);
+		}
+		// Sized once for all the children
+		assertEquals(16, table.getCapacity());
+		assertEquals(12 * 40, table.getArenaSize());
+	}
+
+	public void testRemoveWithBackwardShift() {
+		// A table expecting 12 children has 16 slots
+		SyncBytesTable table = new SyncBytesTable(12, 0);
+		// Three names that want the last slot wrap around to the first slots,
+		// followed by a name that wants the first slot
+		String[] last = namesWithHome(15, 16, 3);
+		String[] first = namesWithHome(0, 16, 1);
+		String[] names = new String[] { last[0], last[1], last[2], first[0] };
+		for (int i = 0; i < names.length; i++) {
+			table.setSyncBytes(names[i], syncBytes(names[i], "1." + i));
+		}
+		assertEquals(16, table.getCapacity());
+
+		table.remove(last[0]);
+		assertSyncBytes(table, last[0], null);
+		for (int i = 1; i < names.length; i++) {
+			assertSyncBytes(table, names[i], syncBytes(names[i], "1." + i));
+		}
+		table.remove(last[2]);
+		assertSyncBytes(table, last[1], syncBytes(last[1], "1.1"));
+		assertSyncBytes(table, first[0], syncBytes(first[0], "1.3"));
+		assertEquals(2, table.size());
+
+		// The freed slots can be used again
+		table.setSyncBytes(last[0], syncBytes(last[0], "1.4"));
+		assertSyncBytes(table, last[0], syncBytes(last[0], "1.4"));
+		assertEquals(3, table.size());
+	}
+
+	public void testArenaGrowthAndCompaction() {
+		SyncBytesTable table = new SyncBytesTable();
+		int count = 20;
+		for (int i = 0; i < count; i++) {
+			table.setSyncBytes("f" + i, syncBytes("f" + i, "1.1"));
+		}
+		int live = table.getSyncBytesSize();
+		assertTrue(table.getArenaSize() >= live);
+		for (int i = 0; i < count; i++) {
+			assertSyncBytes(table, "f" + i, syncBytes("f" + i, "1.1"));
+		}
+
+		// Every change of length leaves garbage behind, which is compacted
+		// rather than growing the arena forever
+		for (int round = 0; round < 100; round++) {
+			String revision = round % 2 == 0 ? "1.10" : "1.1";
+			for (int i = 0; i < count; i++) {
+				table.setSyncBytes("f" + i, syncBytes("f" + i, revision));
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			assertSyncBytes(table, "f" + i, syncBytes("f" + i, "1.1"));
+		}
+		assertEquals(live, table.getSyncBytesSize());
+		assertTrue("The arena has " + table.getArenaSize() + " bytes for " + live + " bytes", table.getArenaSize() <= live * 4);
+	}
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.cvsresources;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.Test;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.syncinfo.ResourceSyncInfo;
+import org.eclipse.team.internal.ccvs.core.util.CVSDateFormatter;
+import org.eclipse.team.internal.ccvs.core.util.SyncFileWriter;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+
+/**
+ * Tests that reading the Entries files gives the same sync bytes as parsing
+ * each line with ResourceSyncInfo and loads the Entries files of a large
+ * checkout.
+ */
+public class SyncFileWriterTest extends EclipseTest {
+
+	private static final int FOLDERS = 1000;
+	private static final int ENTRIES_PER_FOLDER = 200;
+
+	public SyncFileWriterTest() {
+		super();
+	}
+
+	public SyncFileWriterTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(SyncFileWriterTest.class);
+	}
+
+	private static void writeFile(File file, String contents) throws IOException {
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes());
+		} finally {
+			out.close();
+		}
+	}
+
+	private static File getCVSFile(IContainer container, String name) {
+		return new File(new File(container.getLocation().toFile(), SyncFileWriter.CVS_DIRNAME), name);
+	}
+
+	/*
+	 * Returns the sync bytes that parsing each line with ResourceSyncInfo gives.
+	 */
+	private static byte[][] parseEntries(String[] entries, String[] log) {
+		Map infos = new TreeMap();
+		for (int i = 0; i < entries.length; i++) {
+			try {
+				ResourceSyncInfo info = new ResourceSyncInfo(entries[i], null);
+				infos.put(info.getName(), info.getBytes());
+			} catch (CVSException e) {
+				// skipped by the reader
+			}
+		}
+		for (int i = 0; i < log.length; i++) {
+			try {
+				if (log[i].startsWith("A ")) {
+					ResourceSyncInfo info = new ResourceSyncInfo(log[i].substring(2), null);
+					infos.put(info.getName(), info.getBytes());
+				} else if (log[i].startsWith("R ")) {
+					infos.remove(new ResourceSyncInfo(log[i].substring(2), null).getName());
+				}
+			} catch (CVSException e) {
+				fail(e.getMessage());
+			}
+		}
+		List result = new ArrayList();
+		for (Iterator iter = infos.values().iterator(); iter.hasNext();) {
+			result.add(iter.next());
+		}
+		return (byte[][]) result.toArray(new byte[result.size()][]);
+	}
+
+	private static String join(String[] lines, String delimiter) {
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < lines.length; i++) {
+			buffer.append(lines[i]);
+			buffer.append(delimiter);
+		}
+		return buffer.toString();
+	}
+
+	private void assertEntries(String prefix, String[] entries, String[] log, String delimiter) throws CoreException, IOException {
+		IProject project = getUniqueTestProject(prefix);
+		writeFile(getCVSFile(project, SyncFileWriter.ENTRIES), "D" + delimiter + join(entries, delimiter) + delimiter);
+		if (log.length > 0)
+			writeFile(getCVSFile(project, SyncFileWriter.ENTRIES_LOG), join(log, delimiter));
+		byte[][] expected = parseEntries(entries, log);
+		byte[][] actual = SyncFileWriter.readAllResourceSync(project);
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(new String(expected[i]), new String(actual[i]));
+		}
+	}
+
+	public void testEntryLines() throws CoreException, IOException {
+		String timestamp = CVSDateFormatter.dateToEntryLine(new Date(1396000000000L));
+		String[] entries = new String[] {
+			"/file1.txt/1.1/" + timestamp + "//",
+			"/file2.txt/1.2/" + timestamp + "/-kb/",
+			"/file3.txt/1.3/" + timestamp + "/-kkv/",
+			"/file4.txt/1.4/" + timestamp + "/-ko/Tbranch",
+			"/file5.txt/1.5/" + timestamp + "//Nversion",
+			"/file6.txt/1.6/" + timestamp + "//D2014.03.28.09.46.40",
+			"/file7.txt/1.7/dummy timestamp//",
+			"/file8.txt/1.8/Result of merge//",
+			"/file9.txt/1.9/Result of merge+" + timestamp + "//",
+			"/file10.txt/1.10/restored+" + timestamp + "//",
+			"/file11.txt/-1.11/" + timestamp + "//",
+			"/file12.txt/0/dummy timestamp//",
+			"/file13.txt/1.13/+=//",
+			"/file14.txt/1.14/+modified//",
+			"/file15.txt/1.15 locked by: user;/" + timestamp + "//",
+			"/file16.txt/1.16/Sat Mar 29 09:46:40 2014//",
+			"/file17.txt/1.17/Fri Mar 28 09:46:40 2014//",
+			"/file18.txt/1.18///",
+			"/file19.txt/1.19/" + timestamp + "//Tbranch/with/slashes",
+			"/file20.txt/1.20/" + timestamp + "//Xunknown",
+			"/file21.txt/1.21/" + timestamp,
+			"/\u00e9t\u00e9.txt/1.22/" + timestamp + "//",
+			"//1.23/" + timestamp + "//",
+			"/file24.txt//" + timestamp + "//",
+			"D/folder1////",
+			"D/folder2/1.1///",
+			"Dfolder3/1.1/" + timestamp + "//",
+		};
+		String[] log = new String[] {
+			"A /file25.txt/1.25/" + timestamp + "//",
+			"A D/folder4////",
+			"R /file2.txt/1.2/" + timestamp + "/-kb/",
+			"R /file3.txt/1.3/dummy timestamp//",
+			"X /file4.txt/1.4/" + timestamp + "//",
+		};
+		assertEntries("testEntryLinesLF", entries, log, "\n");
+		assertEntries("testEntryLinesCRLF", entries, log, "\r\n");
+		assertEntries("testEntryLinesCR", entries, new String[0], "\r");
+	}
+
+	public void testRandomEntryLines() throws CoreException, IOException {
+		String[] entries = new String[1000];
+		Random random = new Random(0);
+		for (int i = 0; i < entries.length; i++) {
+			// Dates between 1900 and 2100
+			Date date = new Date((random.nextLong() >>> 1) % 6311390400000L - 2208988800000L);
+			entries[i] = "/file" + i + "/1." + i + "/" + CVSDateFormatter.dateToEntryLine(date) + "//";
+		}
+		assertEntries("testRandomEntryLines", entries, new String[0], "\n");
+	}
+
+	/*
+	 * Writes the Entries files of a checkout with many files, reads them and
+	 * checks that all the entries were read.
+	 */
+	public void testLargeCheckout() throws CoreException, IOException {
+		IProject project = getUniqueTestProject("testLargeCheckout");
+		Random random = new Random(0);
+		IContainer[] folders = new IContainer[FOLDERS];
+		for (int i = 0; i < FOLDERS; i++) {
+			folders[i] = project.getFolder("folder" + i);
+			StringBuffer entries = new StringBuffer();
+			for (int j = 0; j < ENTRIES_PER_FOLDER; j++) {
+				Date date = new Date((random.nextLong() >>> 1) % 1400000000000L);
+				entries.append("/file").append(j).append(".java/1.").append(j % 100).append('/');
+				entries.append(CVSDateFormatter.dateToEntryLine(date)).append(j % 10 == 0 ? "/-kb/\n" : "//\n");
+			}
+			writeFile(getCVSFile(folders[i], SyncFileWriter.ENTRIES), entries.toString());
+		}
+		int count = 0;
+		for (int i = 0; i < FOLDERS; i++) {
+			count += SyncFileWriter.readAllResourceSync(folders[i]).length;
+		}
+		assertEquals(FOLDERS * ENTRIES_PER_FOLDER, count);
+	}
+}
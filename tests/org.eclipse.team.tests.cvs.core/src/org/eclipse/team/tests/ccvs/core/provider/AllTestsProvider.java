@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -31,11 +31,17 @@ public class AllTestsProvider extends EclipseTest {
 		//suite.addTestSuite(ModuleTest.class);
 		suite.addTest(ImportTest.suite());
 		suite.addTest(RemoteResourceTest.suite());
+		suite.addTest(FileContentCachingServiceTest.suite());
+		suite.addTest(GzipStreamTest.suite());
+		suite.addTest(ResponseStreamTest.suite());
 		suite.addTest(CVSProviderTest.suite());
 		suite.addTest(ResourceDeltaTest.suite());
 		suite.addTest(WatchEditTest.suite());
 		suite.addTest(LinkResourcesTest.suite());
 		suite.addTest(IsModifiedTests.suite());
+		suite.addTest(LogHistoryCacheTest.suite());
+		suite.addTest(SessionPoolTest.suite());
+		suite.addTest(ProtocolTranscriptTest.suite());
 
 		// Disabled since they are unstable, see https://bugs.eclipse.org/409126
 		if (!TeamCVSTestPlugin.IS_UNSTABLE_TEST)
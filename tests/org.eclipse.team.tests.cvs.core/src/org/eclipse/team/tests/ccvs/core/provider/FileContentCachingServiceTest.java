@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.Test;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
+import org.eclipse.team.internal.ccvs.core.ICVSRemoteResource;
+import org.eclipse.team.internal.ccvs.core.client.Update;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.resources.FileContentCachingService;
+import org.eclipse.team.internal.ccvs.core.resources.RemoteFile;
+import org.eclipse.team.internal.ccvs.core.resources.RemoteFolderTree;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+import org.eclipse.team.tests.ccvs.core.PServerStandIn;
+
+/**
+ * Fetches the contents of a few thousand files from a local pserver stand-in
+ * over one and over several sessions.
+ */
+public class FileContentCachingServiceTest extends EclipseTest {
+
+	private static final int FOLDERS = 20;
+	private static final int FILES_PER_FOLDER = 150;
+	private static final int FILE_SIZE = 2048;
+	private static final int RESPONSE_DELAY = 1;
+
+	private PServerStandIn server;
+	private CVSRepositoryLocation location;
+
+	public FileContentCachingServiceTest() {
+		super();
+	}
+
+	public FileContentCachingServiceTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(FileContentCachingServiceTest.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		server = new PServerStandIn("/standin", FILE_SIZE, RESPONSE_DELAY);
+		server.start();
+		location = CVSRepositoryLocation.fromString(server.getLocation());
+	}
+
+	protected void tearDown() throws Exception {
+		CVSProviderPlugin.getPlugin().setContentFetchSessions(CVSProviderPlugin.DEFAULT_CONTENT_FETCH_SESSIONS);
+		server.stop();
+		super.tearDown();
+	}
+
+	public void testSingleSession() throws Exception {
+		CVSProviderPlugin.getPlugin().setContentFetchSessions(1);
+		fetchAll();
+		assertEquals(1, server.getConnectionCount());
+	}
+
+	public void testParallelSessions() throws Exception {
+		CVSProviderPlugin.getPlugin().setContentFetchSessions(4);
+		fetchAll();
+		assertTrue(server.getMaxOpenConnections() > 1);
+		assertTrue(server.getMaxOpenConnections() <= 4);
+	}
+
+	public void testFewFilesUseOneSession() throws Exception {
+		CVSProviderPlugin.getPlugin().setContentFetchSessions(4);
+		RemoteFolderTree root = createTree();
+		String[] paths = new String[] { "folder0/file0.txt", "folder1/file1.txt" };
+		FileContentCachingService.fetchFileContents(root, paths, new NullProgressMonitor());
+		assertEquals(1, server.getConnectionCount());
+		assertContents(root, paths);
+	}
+
+	/*
+	 * Fetch the contents of all the files and check them.
+	 */
+	private void fetchAll() throws Exception {
+		RemoteFolderTree root = createTree();
+		String[] paths = new String[FOLDERS * FILES_PER_FOLDER];
+		for (int i = 0; i < FOLDERS; i++) {
+			for (int j = 0; j < FILES_PER_FOLDER; j++) {
+				paths[i * FILES_PER_FOLDER + j] = "folder" + i + "/file" + j + ".txt";
+			}
+		}
+		FileContentCachingService.fetchFileContents(root, paths, new NullProgressMonitor());
+		assertEquals(paths.length, server.getFilesServed());
+		assertContents(root, paths);
+	}
+
+	/*
+	 * Create a tree in a module that is unique to the test so that the
+	 * contents of other tests are not in the cache.
+	 */
+	private RemoteFolderTree createTree() {
+		String module = getName() + System.currentTimeMillis();
+		RemoteFolderTree root = new RemoteFolderTree(null, module, location, module, null);
+		ICVSRemoteResource[] folders = new ICVSRemoteResource[FOLDERS];
+		for (int i = 0; i < FOLDERS; i++) {
+			RemoteFolderTree folder = new RemoteFolderTree(root, "folder" + i, location, module + "/folder" + i, null);
+			ICVSRemoteResource[] files = new ICVSRemoteResource[FILES_PER_FOLDER];
+			for (int j = 0; j < FILES_PER_FOLDER; j++) {
+				files[j] = new RemoteFile(folder, Update.STATE_NONE, "file" + j + ".txt", "1.1", null, null);
+			}
+			folder.setChildren(files);
+			folders[i] = folder;
+		}
+		root.setChildren(folders);
+		return root;
+	}
+
+	private void assertContents(RemoteFolderTree root, String[] paths) throws CoreException, IOException {
+		for (int i = 0; i < paths.length; i++) {
+			RemoteFile file = (RemoteFile) root.getFile(paths[i]);
+			assertTrue(paths[i], file.isContentsCached());
+			InputStream in = file.getStorage(null).getContents();
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[FILE_SIZE];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+				assertEquals(paths[i], new String(PServerStandIn.getContents(paths[i], FILE_SIZE)), out.toString());
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
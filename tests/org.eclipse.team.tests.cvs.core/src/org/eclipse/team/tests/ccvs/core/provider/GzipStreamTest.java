@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import junit.framework.Test;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.IServerConnection;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.connection.Connection;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+
+/**
+ * Tests the compression of the whole connection that is enabled by
+ * the Gzip-stream request.
+ */
+public class GzipStreamTest extends EclipseTest {
+
+	/*
+	 * A server connection that records the requests and
+	 * returns the given responses.
+	 */
+	private static class RecordingServerConnection implements IServerConnection {
+		final ByteArrayOutputStream requests = new ByteArrayOutputStream();
+		private final InputStream responses;
+
+		RecordingServerConnection(byte[] responses) {
+			this.responses = new ByteArrayInputStream(responses);
+		}
+
+		public void open(IProgressMonitor monitor) {
+			// Nothing to do
+		}
+
+		public void close() {
+			// Nothing to do
+		}
+
+		public InputStream getInputStream() {
+			return responses;
+		}
+
+		public OutputStream getOutputStream() {
+			return requests;
+		}
+	}
+
+	public GzipStreamTest() {
+		super();
+	}
+
+	public GzipStreamTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(GzipStreamTest.class);
+	}
+
+	public void testCompressedRequestsAndResponses() throws Exception {
+		if (!Connection.isStreamCompressionSupported())
+			return;
+		String responses = "Valid-requests Root Valid-responses valid-requests Gzip-stream\nok\n";
+		RecordingServerConnection server = new RecordingServerConnection(deflate(responses.getBytes()));
+		Connection connection = new Connection(CVSRepositoryLocation.fromString(":pserver:user@localhost:/repo"), server);
+		connection.open(new NullProgressMonitor());
+		try {
+			connection.writeLine("Gzip-stream 6");
+			connection.enableCompression(6);
+			connection.writeLine("valid-requests");
+			connection.flush();
+
+			// The request is sent as is, everything after it is compressed
+			byte[] sent = server.requests.toByteArray();
+			String prefix = "Gzip-stream 6\n";
+			assertEquals(prefix, new String(sent, 0, prefix.length()));
+			// The flush must make all the requests available to the server
+			assertEquals("valid-requests\n", inflate(sent, prefix.length()));
+
+			assertEquals("Valid-requests Root Valid-responses valid-requests Gzip-stream", connection.readLine());
+			assertEquals("ok", connection.readLine());
+		} finally {
+			connection.close();
+		}
+	}
+
+	public void testLargeRequestIsFlushedCompletely() throws Exception {
+		if (!Connection.isStreamCompressionSupported())
+			return;
+		RecordingServerConnection server = new RecordingServerConnection(new byte[0]);
+		Connection connection = new Connection(CVSRepositoryLocation.fromString(":pserver:user@localhost:/repo"), server);
+		connection.open(new NullProgressMonitor());
+		try {
+			connection.enableCompression(1);
+			StringBuffer expected = new StringBuffer();
+			for (int i = 0; i < 10000; i++) {
+				String line = "Entry /file" + i + ".txt/1." + i + "///";
+				connection.writeLine(line);
+				expected.append(line).append('\n');
+			}
+			connection.flush();
+			byte[] sent = server.requests.toByteArray();
+			assertTrue(sent.length < expected.length());
+			assertEquals(expected.toString(), inflate(sent, 0));
+		} finally {
+			connection.close();
+		}
+	}
+
+	private static byte[] deflate(byte[] bytes) {
+		Deflater deflater = new Deflater(6);
+		deflater.setInput(bytes);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		while (!deflater.finished()) {
+			out.write(buffer, 0, deflater.deflate(buffer));
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	/*
+	 * Inflate everything that is available without requiring
+	 * the end of the compressed stream.
+	 */
+	private static String inflate(byte[] bytes, int offset) throws DataFormatException, IOException {
+		Inflater inflater = new Inflater();
+		inflater.setInput(bytes, offset, bytes.length - offset);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int count;
+		while ((count = inflater.inflate(buffer)) > 0) {
+			out.write(buffer, 0, count);
+		}
+		inflater.end();
+		return out.toString();
+	}
+}
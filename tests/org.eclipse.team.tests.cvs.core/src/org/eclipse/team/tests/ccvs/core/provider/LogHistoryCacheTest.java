@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.provider;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import junit.framework.Test;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.team.core.TeamException;
+import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
+import org.eclipse.team.internal.ccvs.core.CVSTag;
+import org.eclipse.team.internal.ccvs.core.ICVSRemoteFile;
+import org.eclipse.team.internal.ccvs.core.ILogEntry;
+import org.eclipse.team.internal.ccvs.core.resources.CVSWorkspaceRoot;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+
+/**
+ * Tests that the log entries of a remote file read from the log history cache
+ * are the same as the log entries fetched without the cache.
+ */
+public class LogHistoryCacheTest extends EclipseTest {
+
+	public LogHistoryCacheTest() {
+		super();
+	}
+
+	public LogHistoryCacheTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(LogHistoryCacheTest.class);
+	}
+
+	public void testIncrementalRefresh() throws TeamException, CoreException {
+		IProject project = createProject("testIncrementalRefresh", new String[] { "file.txt" }); // 1.1
+		setContentsAndEnsureModified(project.getFile("file.txt"), "hi there");
+		commitResources(project, new String[] { "file.txt" }); // 1.2
+
+		// The first fetch fills the cache, the second one is served from it
+		assertSameLogEntries(project, 2);
+		assertSameLogEntries(project, 2);
+
+		// New revisions are merged into the cached log
+		setContentsAndEnsureModified(project.getFile("file.txt"), "bye there");
+		commitResources(project, new String[] { "file.txt" }); // 1.3
+		assertSameLogEntries(project, 3);
+
+		// New tags are picked up although the head revision did not change
+		tagProject(project, new CVSTag("v1", CVSTag.VERSION), false);
+		ILogEntry[] entries = assertSameLogEntries(project, 3);
+		assertEquals(1, entries[2].getTags().length);
+		assertEquals("v1", entries[2].getTags()[0].getName());
+	}
+
+	public void testCacheDisabled() throws TeamException, CoreException {
+		IProject project = createProject("testCacheDisabled", new String[] { "file.txt" });
+		CVSProviderPlugin plugin = CVSProviderPlugin.getPlugin();
+		long size = plugin.getLogHistoryCacheSize();
+		try {
+			plugin.setLogHistoryCacheSize(0);
+			assertEquals(1, getLogEntries(project).length);
+			setContentsAndEnsureModified(project.getFile("file.txt"), "hi there");
+			commitResources(project, new String[] { "file.txt" });
+			assertEquals(2, getLogEntries(project).length);
+		} finally {
+			plugin.setLogHistoryCacheSize(size);
+		}
+	}
+
+	private ILogEntry[] assertSameLogEntries(IProject project, int count) throws TeamException {
+		ILogEntry[] cached = getLogEntries(project);
+		CVSProviderPlugin plugin = CVSProviderPlugin.getPlugin();
+		long size = plugin.getLogHistoryCacheSize();
+		ILogEntry[] expected;
+		try {
+			// The cache is cleared when it is disabled
+			plugin.setLogHistoryCacheSize(0);
+			expected = getLogEntries(project);
+		} finally {
+			plugin.setLogHistoryCacheSize(size);
+		}
+		// Fill the cache again for the next fetch
+		getLogEntries(project);
+
+		assertEquals(count, expected.length);
+		assertEquals(expected.length, cached.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].getRevision(), cached[i].getRevision());
+			assertEquals(expected[i].getAuthor(), cached[i].getAuthor());
+			assertEquals(expected[i].getDate(), cached[i].getDate());
+			assertEquals(expected[i].getComment(), cached[i].getComment());
+			assertEquals(expected[i].getState(), cached[i].getState());
+			assertEquals(Arrays.asList(expected[i].getTags()), Arrays.asList(cached[i].getTags()));
+			assertEquals(expected[i].getRemoteFile().getRepositoryRelativePath(), cached[i].getRemoteFile().getRepositoryRelativePath());
+		}
+		return cached;
+	}
+
+	private ILogEntry[] getLogEntries(IProject project) throws TeamException {
+		ICVSRemoteFile remote = (ICVSRemoteFile) CVSWorkspaceRoot.getRemoteResourceFor(project.getFile("file.txt"));
+		ILogEntry[] entries = remote.getLogEntries(DEFAULT_MONITOR);
+		Arrays.sort(entries, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				return ((ILogEntry) o1).getRevision().compareTo(((ILogEntry) o2).getRevision());
+			}
+		});
+		return entries;
+	}
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.Test;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
+import org.eclipse.team.internal.ccvs.core.ICVSRemoteResource;
+import org.eclipse.team.internal.ccvs.core.client.Update;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.resources.FileContentCachingService;
+import org.eclipse.team.internal.ccvs.core.resources.RemoteFile;
+import org.eclipse.team.internal.ccvs.core.resources.RemoteFolderTree;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+import org.eclipse.team.tests.ccvs.core.PServerStandIn;
+import org.eclipse.team.tests.ccvs.core.ProtocolTranscript;
+import org.eclipse.team.tests.ccvs.core.RecordingConnection;
+import org.eclipse.team.tests.ccvs.core.ReplayConnection;
+
+/**
+ * Tests the file format of the protocol transcripts and replays a transcript
+ * that was recorded from a local pserver stand-in.
+ */
+public class ProtocolTranscriptTest extends EclipseTest {
+
+	private static final String ROOT = "/standin";
+	private static final int FOLDERS = 2;
+	private static final int FILES_PER_FOLDER = 5;
+	private static final int FILE_SIZE = 100;
+
+	public ProtocolTranscriptTest() {
+		super();
+	}
+
+	public ProtocolTranscriptTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(ProtocolTranscriptTest.class);
+	}
+
+	public void testWriteAndRead() throws IOException {
+		ProtocolTranscript transcript = new ProtocolTranscript();
+		// Responses that look like entries of the file format or have no newline at the end
+		byte[] binary = new byte[256];
+		for (int i = 0; i < binary.length; i++) {
+			binary[i] = (byte) i;
+		}
+		transcript.addResponse("co", "M first\nok\n");
+		transcript.addResponse("co", "C update\nS 3\n\nok\n");
+		transcript.addResponse("update", binary);
+		transcript.addResponse("update", "error  no newline");
+		transcript.addResponse("version", "");
+
+		ProtocolTranscript read = writeAndRead(transcript);
+		assertEquals(2, read.getResponseCount("co"));
+		assertEquals(2, read.getResponseCount("update"));
+		assertEquals(1, read.getResponseCount("version"));
+		assertEquals(0, read.getResponseCount("status"));
+		String[] commands = new String[] { "co", "co", "update", "update", "version" };
+		for (int i = 0; i < commands.length; i++) {
+			assertResponse(transcript.nextResponse(commands[i]), read.nextResponse(commands[i]));
+		}
+	}
+
+	public void testReadInvalid() {
+		String[] invalid = new String[] { "update\n", "C update\nok\n", "C update\nS 10\nok\n" };
+		for (int i = 0; i < invalid.length; i++) {
+			try {
+				ProtocolTranscript.read(new ByteArrayInputStream(invalid[i].getBytes()));
+				fail(invalid[i]);
+			} catch (IOException e) {
+				// Expected
+			}
+		}
+	}
+
+	/*
+	 * Records the responses of the stand-in to the fetch of the contents of
+	 * some files, writes and reads the transcript and fetches the contents
+	 * again from the replayed transcript.
+	 */
+	public void testRecordAndReplay() throws Exception {
+		PServerStandIn server = new PServerStandIn(ROOT, FILE_SIZE, 0);
+		server.start();
+		CVSRepositoryLocation recordLocation = CVSRepositoryLocation.fromString(RecordingConnection.getLocation(server.getLocation()));
+		CVSProviderPlugin.getPlugin().setContentFetchSessions(1);
+		ProtocolTranscript transcript = new ProtocolTranscript();
+		RecordingConnection.setTranscript(ROOT, transcript);
+		String[] paths = getPaths();
+		try {
+			RemoteFolderTree root = createTree(recordLocation);
+			FileContentCachingService.fetchFileContents(root, paths, new NullProgressMonitor());
+			assertContents(root, paths);
+			// The response to the last command is recorded when the connection is closed
+			CVSProviderPlugin.getPlugin().getSessionPool().clear(recordLocation);
+		} finally {
+			RecordingConnection.setTranscript(ROOT, null);
+			server.stop();
+		}
+		assertEquals(paths.length, server.getFilesServed());
+		assertTrue(transcript.getResponseCount("update") > 0);
+
+		String name = getName();
+		ReplayConnection.setTranscript(name, writeAndRead(transcript));
+		CVSRepositoryLocation replayLocation = CVSRepositoryLocation.fromString(ReplayConnection.getLocation(name));
+		try {
+			RemoteFolderTree root = createTree(replayLocation);
+			FileContentCachingService.fetchFileContents(root, paths, new NullProgressMonitor());
+			assertContents(root, paths);
+		} finally {
+			CVSProviderPlugin.getPlugin().getSessionPool().clear(replayLocation);
+			ReplayConnection.setTranscript(name, null);
+			CVSProviderPlugin.getPlugin().setContentFetchSessions(CVSProviderPlugin.DEFAULT_CONTENT_FETCH_SESSIONS);
+		}
+	}
+
+	private static ProtocolTranscript writeAndRead(ProtocolTranscript transcript) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		transcript.write(out);
+		return ProtocolTranscript.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	private static void assertResponse(byte[] expected, byte[] actual) {
+		assertNotNull(actual);
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i]);
+		}
+	}
+
+	private static String[] getPaths() {
+		String[] paths = new String[FOLDERS * FILES_PER_FOLDER];
+		for (int i = 0; i < FOLDERS; i++) {
+			for (int j = 0; j < FILES_PER_FOLDER; j++) {
+				paths[i * FILES_PER_FOLDER + j] = "folder" + i + "/file" + j + ".txt";
+			}
+		}
+		return paths;
+	}
+
+	/*
+	 * Create a tree in a module that is unique to the test so that the
+	 * contents of other tests are not in the cache.
+	 */
+	private RemoteFolderTree createTree(CVSRepositoryLocation location) {
+		String module = getName() + System.currentTimeMillis();
+		RemoteFolderTree root = new RemoteFolderTree(null, module, location, module, null);
+		ICVSRemoteResource[] folders = new ICVSRemoteResource[FOLDERS];
+		for (int i = 0; i < FOLDERS; i++) {
+			RemoteFolderTree folder = new RemoteFolderTree(root, "folder" + i, location, module + "/folder" + i, null);
+			ICVSRemoteResource[] files = new ICVSRemoteResource[FILES_PER_FOLDER];
+			for (int j = 0; j < FILES_PER_FOLDER; j++) {
+				files[j] = new RemoteFile(folder, Update.STATE_NONE, "file" + j + ".txt", "1.1", null, null);
+			}
+			folder.setChildren(files);
+			folders[i] = folder;
+		}
+		root.setChildren(folders);
+		return root;
+	}
+
+	private void assertContents(RemoteFolderTree root, String[] paths) throws CoreException, IOException {
+		for (int i = 0; i < paths.length; i++) {
+			RemoteFile file = (RemoteFile) root.getFile(paths[i]);
+			assertTrue(paths[i], file.isContentsCached());
+			InputStream in = file.getStorage(null).getContents();
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[FILE_SIZE];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+				assertEquals(paths[i], new String(PServerStandIn.getContents(paths[i], FILE_SIZE)), out.toString());
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
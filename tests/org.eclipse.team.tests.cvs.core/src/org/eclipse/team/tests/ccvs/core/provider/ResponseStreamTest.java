@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import junit.framework.Test;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.IServerConnection;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.connection.Connection;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+
+/**
+ * Tests reading the responses of the server through a connection.
+ */
+public class ResponseStreamTest extends EclipseTest {
+
+	private static final String[] RESPONSE_NAMES = new String[] { "ok", "error", "M", "E", "Updated" };
+	private static final long TRANSCRIPT_SIZE = 1024 * 1024;
+
+	/*
+	 * A server connection that returns the given responses.
+	 */
+	private static class ReplayServerConnection implements IServerConnection {
+		private final InputStream responses;
+
+		ReplayServerConnection(InputStream responses) {
+			this.responses = responses;
+		}
+
+		public void open(IProgressMonitor monitor) {
+			// Nothing to do
+		}
+
+		public void close() {
+			// Nothing to do
+		}
+
+		public InputStream getInputStream() {
+			return responses;
+		}
+
+		public OutputStream getOutputStream() {
+			return new ByteArrayOutputStream();
+		}
+	}
+
+	/**
+	 * Repeats a transcript until the given number of bytes was returned,
+	 * followed by the final "ok" of the command.
+	 */
+	public static class RepeatingInputStream extends InputStream {
+		private final byte[] transcript;
+		private final byte[] end = "ok\n".getBytes();
+		private final long size;
+		private long position;
+
+		public RepeatingInputStream(byte[] transcript, long size) {
+			this.transcript = transcript;
+			this.size = size - size % transcript.length;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position < size) {
+				int offset = (int) (position % transcript.length);
+				int count = Math.min(len, transcript.length - offset);
+				System.arraycopy(transcript, offset, b, off, count);
+				position += count;
+				return count;
+			}
+			int offset = (int) (position - size);
+			if (offset == end.length)
+				return -1;
+			int count = Math.min(len, end.length - offset);
+			System.arraycopy(end, offset, b, off, count);
+			position += count;
+			return count;
+		}
+	}
+
+	public ResponseStreamTest() {
+		super();
+	}
+
+	public ResponseStreamTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(ResponseStreamTest.class);
+	}
+
+	/**
+	 * Open a connection that reads the given responses.
+	 * @param responses the responses of the server
+	 * @return the open connection
+	 * @throws CVSException
+	 */
+	public static Connection openConnection(InputStream responses) throws CVSException {
+		Connection connection = new Connection(CVSRepositoryLocation.fromString(":pserver:user@localhost:/repo"), new ReplayServerConnection(responses));
+		connection.open(new NullProgressMonitor());
+		return connection;
+	}
+
+	public void testLinesLongerThanBuffer() throws Exception {
+		StringBuffer longLine = new StringBuffer("M ");
+		for (int i = 0; i < 5000; i++) {
+			longLine.append("word").append(i).append(' ');
+		}
+		String responses = "M first\n" + longLine + "\n\nok";
+		Connection connection = openConnection(new ByteArrayInputStream(responses.getBytes()));
+		try {
+			assertEquals("M first", connection.readLine());
+			assertEquals(longLine.toString(), connection.readLine());
+			assertEquals("", connection.readLine());
+			// The last line has no newline
+			assertEquals("ok", connection.readLine());
+		} finally {
+			connection.close();
+		}
+	}
+
+	public void testResponseNamesAreShared() throws Exception {
+		String responses = "M a message\nE\nMbox x\nUpdated folder/\nok\n";
+		Connection connection = openConnection(new ByteArrayInputStream(responses.getBytes()));
+		try {
+			assertSame(RESPONSE_NAMES[2], connection.readResponse(RESPONSE_NAMES));
+			assertEquals("a message", connection.getResponseArgument());
+			assertSame(RESPONSE_NAMES[3], connection.readResponse(RESPONSE_NAMES));
+			assertEquals("", connection.getResponseArgument());
+			assertEquals("Mbox", connection.readResponse(RESPONSE_NAMES));
+			assertEquals("x", connection.getResponseArgument());
+			assertSame(RESPONSE_NAMES[4], connection.readResponse(RESPONSE_NAMES));
+			assertEquals("folder/", connection.getResponseArgument());
+			assertSame(RESPONSE_NAMES[0], connection.readResponse(RESPONSE_NAMES));
+		} finally {
+			connection.close();
+		}
+	}
+
+	public void testLinesAndContents() throws Exception {
+		// The contents of files are read from the stream between lines
+		byte[] contents = new byte[20000];
+		for (int i = 0; i < contents.length; i++) {
+			contents[i] = (byte) i;
+		}
+		ByteArrayOutputStream responses = new ByteArrayOutputStream();
+		responses.write(("Updated folder/\n" + contents.length + "\n").getBytes());
+		responses.write(contents);
+		responses.write("ok\n".getBytes());
+		Connection connection = openConnection(new ByteArrayInputStream(responses.toByteArray()));
+		try {
+			assertEquals("Updated folder/", connection.readLine());
+			assertEquals(String.valueOf(contents.length), connection.readLine());
+			InputStream in = connection.getInputStream();
+			byte[] read = new byte[contents.length];
+			int count = 0;
+			// Read a single byte and then chunks of different sizes
+			read[count++] = (byte) in.read();
+			while (count < read.length) {
+				int n = in.read(read, count, Math.min(read.length - count, count % 10000 + 1));
+				assertTrue(n > 0);
+				count += n;
+			}
+			for (int i = 0; i < contents.length; i++) {
+				assertEquals(contents[i], read[i]);
+			}
+			assertEquals("ok", connection.readLine());
+		} finally {
+			connection.close();
+		}
+	}
+
+	public void testNonAsciiLines() throws Exception {
+		CVSRepositoryLocation location = CVSRepositoryLocation.fromString(":pserver:user@localhost:/repo");
+		String message = "M \u00e9t\u00e9 \u00fcber \u65e5\u672c";
+		byte[] responses = (message + "\nok\n").getBytes(location.getEncoding());
+		Connection connection = openConnection(new ByteArrayInputStream(responses));
+		try {
+			String expected = new String(message.getBytes(location.getEncoding()), location.getEncoding());
+			assertSame(RESPONSE_NAMES[2], connection.readResponse(RESPONSE_NAMES));
+			assertEquals(expected.substring(2), connection.getResponseArgument());
+			assertEquals("ok", connection.readLine());
+		} finally {
+			connection.close();
+		}
+	}
+
+	/*
+	 * Reads the responses of a large rlog through the connection and by
+	 * reading one byte at a time, which is how lines were read before.
+	 */
+	public void testReplayRlogTranscript() throws Exception {
+		byte[] transcript = createRlogTranscript();
+		int lines = readResponses(new RepeatingInputStream(transcript, TRANSCRIPT_SIZE));
+		int bytewiseLines = readLinesBytewise(new RepeatingInputStream(transcript, TRANSCRIPT_SIZE));
+		assertTrue(lines > 0);
+		assertEquals(bytewiseLines, lines);
+	}
+
+	/**
+	 * Read the responses through a connection up to the final "ok".
+	 * @param responses the responses of the server
+	 * @return the number of responses before the "ok"
+	 * @throws CVSException
+	 */
+	public static int readResponses(InputStream responses) throws CVSException {
+		Connection connection = openConnection(responses);
+		int lines = 0;
+		try {
+			while (connection.readResponse(RESPONSE_NAMES) != RESPONSE_NAMES[0]) {
+				connection.getResponseArgument();
+				lines++;
+			}
+		} finally {
+			connection.close();
+		}
+		return lines;
+	}
+
+	/**
+	 * Read the lines of the responses one byte at a time up to the final
+	 * "ok".
+	 * @param responses the responses of the server
+	 * @return the number of lines before the "ok"
+	 * @throws IOException
+	 */
+	public static int readLinesBytewise(InputStream responses) throws IOException {
+		String encoding = CVSRepositoryLocation.fromString(":pserver:user@localhost:/repo").getEncoding();
+		int lines = 0;
+		byte[] buffer = new byte[256];
+		while (true) {
+			int index = 0;
+			int r;
+			while ((r = responses.read()) != -1 && r != '\n') {
+				if (index == buffer.length) {
+					byte[] newBuffer = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
+					buffer = newBuffer;
+				}
+				buffer[index++] = (byte) r;
+			}
+			String line = new String(buffer, 0, index, encoding);
+			if (line.equals("ok"))
+				return lines;
+			lines++;
+		}
+	}
+
+	/**
+	 * Return the responses of an rlog of a few files.
+	 * @return the responses
+	 */
+	public static byte[] createRlogTranscript() {
+		StringBuffer buffer = new StringBuffer();
+		for (int file = 0; file < 10; file++) {
+			buffer.append("M \n");
+			buffer.append("M RCS file: /cvsroot/eclipse/org.eclipse.team.cvs.core/src/org/eclipse/team/internal/ccvs/core/File" + file + ".java,v\n");
+			buffer.append("M head: 1.42\n");
+			buffer.append("M branch:\n");
+			buffer.append("M locks: strict\n");
+			buffer.append("M access list:\n");
+			buffer.append("M symbolic names:\n");
+			for (int tag = 0; tag < 20; tag++) {
+				buffer.append("M \tv2014050" + tag % 10 + "-" + tag + ": 1." + (tag + 20) + "\n");
+			}
+			buffer.append("M keyword substitution: kv\n");
+			buffer.append("M total revisions: 42;\tselected revisions: 42\n");
+			buffer.append("M description:\n");
+			for (int revision = 42; revision > 32; revision--) {
+				buffer.append("M ----------------------------\n");
+				buffer.append("M revision 1." + revision + "\n");
+				buffer.append("M date: 2014/05/0" + revision % 10 + " 12:34:56;  author: committer;  state: Exp;  lines: +" + revision + " -3\n");
+				buffer.append("M Fix bug " + (400000 + revision) + ": Avoid reading the responses one byte at a time\n");
+			}
+			buffer.append("M =============================================================================\n");
+		}
+		return buffer.toString().getBytes();
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.core.provider;
+
+import junit.framework.Test;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
+import org.eclipse.team.internal.ccvs.core.client.Command;
+import org.eclipse.team.internal.ccvs.core.client.Command.GlobalOption;
+import org.eclipse.team.internal.ccvs.core.client.Session;
+import org.eclipse.team.internal.ccvs.core.client.SessionPool;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.resources.RemoteFolderTree;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+import org.eclipse.team.tests.ccvs.core.PServerStandIn;
+
+/**
+ * Tests that sessions reuse the connections of closed sessions.
+ */
+public class SessionPoolTest extends EclipseTest {
+
+	private static final int COMMANDS = 20;
+	private static final int HANDSHAKE_DELAY = 20;
+
+	private PServerStandIn server;
+	private CVSRepositoryLocation location;
+
+	public SessionPoolTest() {
+		super();
+	}
+
+	public SessionPoolTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(SessionPoolTest.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		server = new PServerStandIn("/standin", 0, 0);
+		server.setHandshakeDelay(HANDSHAKE_DELAY);
+		server.start();
+		location = CVSRepositoryLocation.fromString(server.getLocation());
+	}
+
+	protected void tearDown() throws Exception {
+		CVSProviderPlugin.getPlugin().setSessionPoolSize(CVSProviderPlugin.DEFAULT_SESSION_POOL_SIZE);
+		CVSProviderPlugin.getPlugin().setSessionPoolIdleTimeout(CVSProviderPlugin.DEFAULT_SESSION_POOL_IDLE_TIMEOUT);
+		CVSProviderPlugin.getPlugin().getSessionPool().clear(location);
+		server.stop();
+		super.tearDown();
+	}
+
+	public void testReuseConnection() throws Exception {
+		SessionPool pool = CVSProviderPlugin.getPlugin().getSessionPool();
+		int reused = pool.getReusedCount();
+		runCommands(COMMANDS, Command.NO_GLOBAL_OPTIONS);
+		assertEquals(1, server.getHandshakeCount());
+		assertEquals(1, server.getConnectionCount());
+		assertEquals(COMMANDS - 1, pool.getReusedCount() - reused);
+		assertEquals(1, pool.getIdleCount(location));
+	}
+
+	public void testPoolDisabled() throws Exception {
+		CVSProviderPlugin.getPlugin().setSessionPoolSize(0);
+		runCommands(COMMANDS, Command.NO_GLOBAL_OPTIONS);
+		assertEquals(COMMANDS, server.getHandshakeCount());
+		assertEquals(0, CVSProviderPlugin.getPlugin().getSessionPool().getIdleCount(location));
+	}
+
+	public void testIdleTimeout() throws Exception {
+		CVSProviderPlugin.getPlugin().setSessionPoolIdleTimeout(0);
+		runCommands(3, Command.NO_GLOBAL_OPTIONS);
+		assertEquals(3, server.getHandshakeCount());
+	}
+
+	public void testGlobalOptionsOfEarlierSessions() throws Exception {
+		GlobalOption[] doNotChange = new GlobalOption[] { Command.DO_NOT_CHANGE };
+		runCommands(1, doNotChange);
+		// The server would still apply -n to a command that does not send it
+		runCommands(1, Command.NO_GLOBAL_OPTIONS);
+		assertEquals(2, server.getHandshakeCount());
+		// A command that sends -n again can use any connection
+		runCommands(1, doNotChange);
+		runCommands(1, doNotChange);
+		assertEquals(2, server.getHandshakeCount());
+	}
+
+	public void testSessionsInParallel() throws Exception {
+		Session session1 = openSession();
+		Session session2 = openSession();
+		try {
+			assertEquals(2, server.getHandshakeCount());
+		} finally {
+			session1.close();
+			session2.close();
+		}
+		assertEquals(2, CVSProviderPlugin.getPlugin().getSessionPool().getIdleCount(location));
+		runCommands(2, Command.NO_GLOBAL_OPTIONS);
+		assertEquals(2, server.getHandshakeCount());
+	}
+
+	/*
+	 * Run the given number of commands, each in its own session.
+	 */
+	private void runCommands(int count, GlobalOption[] globalOptions) throws CVSException {
+		for (int i = 0; i < count; i++) {
+			Session session = openSession();
+			try {
+				IStatus status = Command.VERSION.execute(session, globalOptions, Command.NO_LOCAL_OPTIONS, new String[0], null, new NullProgressMonitor());
+				assertTrue(status.isOK());
+			} finally {
+				session.close();
+			}
+		}
+	}
+
+	private Session openSession() throws CVSException {
+		String module = getName();
+		Session session = new Session(location, new RemoteFolderTree(null, module, location, module, null), false /* output to console */);
+		session.open(new NullProgressMonitor(), false /* read-only */);
+		return session;
+	}
+}
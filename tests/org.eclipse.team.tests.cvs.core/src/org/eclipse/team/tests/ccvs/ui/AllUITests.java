@@ -41,6 +41,7 @@ public class AllUITests extends EclipseTest {
 		suite.addTest(CVSHisoryTableProviderTest.suite());
 		suite.addTest(PatchTreeTest.suite());
 		suite.addTest(RepositoriesViewTests.suite());
+		suite.addTest(CVSDecorationCacheTest.suite());
 		return suite;
 	}
 
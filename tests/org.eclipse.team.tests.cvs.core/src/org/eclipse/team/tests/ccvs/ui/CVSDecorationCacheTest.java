@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.ui;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.viewers.DecorationContext;
+import org.eclipse.jface.viewers.IDecoration;
+import org.eclipse.jface.viewers.IDecorationContext;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.team.core.IIgnoreInfo;
+import org.eclipse.team.core.Team;
+import org.eclipse.team.internal.ccvs.ui.CVSDecorationCache;
+import org.eclipse.team.internal.ccvs.ui.CVSLightweightDecorator;
+import org.eclipse.team.tests.ccvs.core.CVSTestSetup;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+import org.eclipse.team.ui.mapping.SynchronizationStateTester;
+
+/**
+ * Tests that the decorations calculated from the cached CVS state of resources
+ * are the same as the decorations calculated without the cache.
+ */
+public class CVSDecorationCacheTest extends EclipseTest {
+
+	/*
+	 * A decoration that records what is added to it
+	 */
+	private static class TestDecoration implements IDecoration {
+		private final List decorations = new ArrayList();
+		public void addPrefix(String prefix) {
+			decorations.add("prefix " + prefix);
+		}
+		public void addSuffix(String suffix) {
+			decorations.add("suffix " + suffix);
+		}
+		public void addOverlay(ImageDescriptor overlay) {
+			decorations.add(overlay);
+		}
+		public void addOverlay(ImageDescriptor overlay, int quadrant) {
+			decorations.add(overlay);
+		}
+		public IDecorationContext getDecorationContext() {
+			return DecorationContext.DEFAULT_CONTEXT;
+		}
+		public void setBackgroundColor(Color color) {
+			decorations.add(color);
+		}
+		public void setForegroundColor(Color color) {
+			decorations.add(color);
+		}
+		public void setFont(Font font) {
+			decorations.add(font);
+		}
+	}
+
+	public CVSDecorationCacheTest() {
+		super();
+	}
+
+	public CVSDecorationCacheTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new CVSTestSetup(new TestSuite(CVSDecorationCacheTest.class));
+	}
+
+	public void testCachedDecorations() throws CoreException, IOException {
+		IProject project = createProject(new String[] { "changed.txt", "folder1/", "folder1/a.txt" });
+		addResources(project, new String[] { "added.txt" }, false);
+		IResource[] resources = getResources(project, new String[] { "changed.txt", "added.txt", "folder1/", "folder1/a.txt" });
+		CVSLightweightDecorator decorator = new CVSLightweightDecorator();
+		try {
+			CVSDecorationCache cache = decorator.getCache();
+			assertSameDecorations(decorator, resources);
+			assertEquals(resources.length, cache.getMisses());
+			assertEquals(0, cache.getHits());
+			assertSameDecorations(decorator, resources);
+			assertEquals(resources.length, cache.getMisses());
+			assertEquals(resources.length, cache.getHits());
+
+			// The state of a modified file is calculated again
+			appendText(project.getFile("changed.txt"), "more text", false);
+			assertFalse(cache.contains(project.getFile("changed.txt")));
+			assertSameDecorations(decorator, resources);
+			assertTrue(cache.getMisses() > resources.length);
+
+			// The state of the members of a folder is calculated again with the state of the folder
+			unmanageResources(project, new String[] { "folder1/" });
+			assertFalse(cache.contains(project.getFile("folder1/a.txt")));
+			assertSameDecorations(decorator, resources);
+		} finally {
+			decorator.dispose();
+		}
+	}
+
+	public void testPrepareDecorations() throws CoreException {
+		IProject project = createProject(new String[] { "file1.txt", "folder1/", "folder1/a.txt", "folder1/b.txt" });
+		IResource[] resources = getResources(project, new String[] { "file1.txt", "folder1/", "folder1/a.txt", "folder1/b.txt" });
+		CVSLightweightDecorator decorator = new CVSLightweightDecorator();
+		try {
+			CVSDecorationCache cache = decorator.getCache();
+			decorator.prepareDecorations(resources);
+			assertEquals(resources.length, cache.size());
+			cache.resetStatistics();
+			assertSameDecorations(decorator, resources);
+			assertEquals(0, cache.getMisses());
+			assertEquals(resources.length, cache.getHits());
+		} finally {
+			decorator.dispose();
+		}
+	}
+
+	public void testIgnoresChanged() throws CoreException {
+		IProject project = createProject(new String[] { "file1.txt", "file2.log" });
+		IResource[] resources = getResources(project, new String[] { "file1.txt", "file2.log" });
+		IIgnoreInfo[] ignores = Team.getAllIgnores();
+		String[] oldPatterns = new String[ignores.length];
+		boolean[] oldEnabled = new boolean[ignores.length];
+		String[] patterns = new String[ignores.length + 1];
+		boolean[] enabled = new boolean[ignores.length + 1];
+		for (int i = 0; i < ignores.length; i++) {
+			patterns[i] = oldPatterns[i] = ignores[i].getPattern();
+			enabled[i] = oldEnabled[i] = ignores[i].getEnabled();
+		}
+		patterns[ignores.length] = "*.log";
+		enabled[ignores.length] = true;
+		CVSLightweightDecorator decorator = new CVSLightweightDecorator();
+		try {
+			CVSDecorationCache cache = decorator.getCache();
+			decorator.prepareDecorations(resources);
+			assertEquals(resources.length, cache.size());
+
+			// The ignores are changed without the preference page
+			Team.setAllIgnores(patterns, enabled);
+			assertEquals(0, cache.size());
+			assertSameDecorations(decorator, resources);
+		} finally {
+			decorator.dispose();
+			Team.setAllIgnores(oldPatterns, oldEnabled);
+		}
+	}
+
+	public void testInvalidate() throws CoreException {
+		IProject project = createProject(new String[] { "file1.txt", "folder1/", "folder1/a.txt", "folder1/folder2/", "folder1/folder2/b.txt" });
+		IResource[] resources = getResources(project, new String[] { "file1.txt", "folder1/", "folder1/a.txt", "folder1/folder2/", "folder1/folder2/b.txt" });
+		CVSDecorationCache cache = new CVSDecorationCache();
+		for (int i = 0; i < resources.length; i++) {
+			cache.putState(resources[i], resources[i].getName(), cache.getStamp(), 0);
+		}
+
+		// The members of a folder are removed with it but not their members
+		cache.invalidate(new IResource[] { project.getFolder("folder1") });
+		assertTrue(cache.contains(project.getFile("file1.txt")));
+		assertFalse(cache.contains(project.getFolder("folder1")));
+		assertFalse(cache.contains(project.getFile("folder1/a.txt")));
+		assertFalse(cache.contains(project.getFolder("folder1/folder2")));
+		assertTrue(cache.contains(project.getFile("folder1/folder2/b.txt")));
+
+		// A state calculated while states were removed is not cached
+		long stamp = cache.getStamp();
+		cache.invalidate(new IResource[] { project.getFile("file1.txt") });
+		cache.putState(project.getFile("folder1/a.txt"), "a.txt", stamp, 0);
+		assertFalse(cache.contains(project.getFile("folder1/a.txt")));
+
+		cache.invalidate(project);
+		assertEquals(0, cache.size());
+	}
+
+	private void assertSameDecorations(CVSLightweightDecorator decorator, IResource[] resources) throws CoreException {
+		for (int i = 0; i < resources.length; i++) {
+			IResource resource = resources[i];
+			TestDecoration expected = new TestDecoration();
+			CVSLightweightDecorator.decorate(resource, new SynchronizationStateTester()).apply(expected);
+			TestDecoration actual = new TestDecoration();
+			decorator.decorate(resource, actual);
+			assertEquals(resource.getFullPath().toString(), expected.decorations, actual.decorations);
+		}
+	}
+}
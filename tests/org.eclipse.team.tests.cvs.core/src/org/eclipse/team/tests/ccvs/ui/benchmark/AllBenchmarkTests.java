@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,6 +29,9 @@ public class AllBenchmarkTests extends EclipseTest {
 		TestSuite suite = new TestSuite();
 		suite.addTest(WorkflowTests.suite());
 		suite.addTest(SyncTests.suite());
+		suite.addTest(ReplayBenchmarkTest.suite());
+		suite.addTest(ResponseStreamBenchmarkTest.suite());
+		suite.addTest(CVSDateFormatterBenchmarkTest.suite());
         // TODO: Enable decorators?
 		return new CVSTestSetup(suite);
 	}
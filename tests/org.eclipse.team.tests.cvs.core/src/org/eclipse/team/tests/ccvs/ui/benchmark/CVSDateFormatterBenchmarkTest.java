@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.ui.benchmark;
+
+import junit.framework.Test;
+
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+import org.eclipse.team.tests.ccvs.core.cvsresources.CVSDateFormatterTest;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+
+/**
+ * Measures the time it takes to create the sync info of many entry lines
+ * in one thread and in as many threads as there are processors.
+ */
+public class CVSDateFormatterBenchmarkTest extends EclipseTest {
+
+	private static final int ENTRY_LINES = 200000;
+	private static final int ITERATIONS = 5;
+
+	public CVSDateFormatterBenchmarkTest() {
+		super();
+	}
+
+	public CVSDateFormatterBenchmarkTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(CVSDateFormatterBenchmarkTest.class);
+	}
+
+	public void testSingleThread() throws Exception {
+		measureParsing(1);
+	}
+
+	public void testParallel() throws Exception {
+		measureParsing(Runtime.getRuntime().availableProcessors());
+	}
+
+	private void measureParsing(int threadCount) throws Exception {
+		String[] entryLines = CVSDateFormatterTest.createEntryLines(ENTRY_LINES);
+		// Warm up
+		CVSDateFormatterTest.parseEntryLines(entryLines, threadCount);
+		Performance performance = Performance.getDefault();
+		PerformanceMeter meter = performance.createPerformanceMeter(performance.getDefaultScenarioId(this));
+		try {
+			for (int i = 0; i < ITERATIONS; i++) {
+				meter.start();
+				CVSDateFormatterTest.parseEntryLines(entryLines, threadCount);
+				meter.stop();
+			}
+			meter.commit();
+		} finally {
+			meter.dispose();
+		}
+	}
+}
@@ -0,0 +1,538 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.ui.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.Test;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.team.internal.ccvs.core.CVSException;
+import org.eclipse.team.internal.ccvs.core.CVSProviderPlugin;
+import org.eclipse.team.internal.ccvs.core.ICVSFolder;
+import org.eclipse.team.internal.ccvs.core.ICVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.ILogEntry;
+import org.eclipse.team.internal.ccvs.core.client.Command;
+import org.eclipse.team.internal.ccvs.core.client.CommandOutputListener;
+import org.eclipse.team.internal.ccvs.core.client.RLog;
+import org.eclipse.team.internal.ccvs.core.client.Session;
+import org.eclipse.team.internal.ccvs.core.client.Command.LocalOption;
+import org.eclipse.team.internal.ccvs.core.client.listeners.ICommandOutputListener;
+import org.eclipse.team.internal.ccvs.core.client.listeners.ILogEntryListener;
+import org.eclipse.team.internal.ccvs.core.client.listeners.IStatusListener;
+import org.eclipse.team.internal.ccvs.core.client.listeners.LogListener;
+import org.eclipse.team.internal.ccvs.core.client.listeners.StatusListener;
+import org.eclipse.team.internal.ccvs.core.client.listeners.UpdateListener;
+import org.eclipse.team.internal.ccvs.core.connection.CVSRepositoryLocation;
+import org.eclipse.team.internal.ccvs.core.resources.CVSWorkspaceRoot;
+import org.eclipse.team.internal.ccvs.core.resources.RemoteFolderTree;
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+import org.eclipse.team.tests.ccvs.core.PServerStandIn;
+import org.eclipse.team.tests.ccvs.core.ProtocolTranscript;
+import org.eclipse.team.tests.ccvs.core.ReplayConnection;
+import org.eclipse.team.tests.ccvs.core.TimingResponseHandler;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+
+/**
+ * Measures the throughput of checkout, update, status, rlog and commit for
+ * repositories of different sizes. The commands run against a
+ * {@link ReplayConnection}, so what is measured is the client: the
+ * session, the commands, the response handlers, the listeners and the
+ * workspace. For each command and size the test reports the time per
+ * iteration, the files per second, the bytes allocated per iteration and
+ * the time spent in each response handler and in the output listener.
+ */
+public class ReplayBenchmarkTest extends EclipseTest {
+
+	private static final int[] SIZES = new int[] { 10, 100, 1000 };
+	private static final int FILES_PER_FOLDER = 50;
+	private static final int FILE_SIZE = 2048;
+	// every UPDATE_INTERVAL-th file has a new revision on the server
+	private static final int UPDATE_INTERVAL = 10;
+	private static final int WARMUP_ITERATIONS = 2;
+	private static final int ITERATIONS = 5;
+	private static final String MOD_TIME = "1 Oct 2014 12:00:00 -0000";
+
+	private static Method getThreadMXBean;
+	private static Method getThreadAllocatedBytes;
+	private static Method getId;
+
+	private final List repositories = new ArrayList();
+
+	static {
+		try {
+			// Look the counter up reflectively since it is not part of the class libraries the tests are compiled against
+			getThreadMXBean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean", new Class[0]);
+			getThreadAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", new Class[] { long.class });
+			getId = Thread.class.getMethod("getId", new Class[0]);
+		} catch (Exception e) {
+			// The VM does not count the allocated bytes
+			getThreadAllocatedBytes = null;
+		}
+	}
+
+	/*
+	 * A repository served by a replay connection and the project it is checked out into
+	 */
+	private static class Repository {
+		final IProject project;
+		final CVSRepositoryLocation location;
+		final String[] paths;
+		Repository(IProject project, CVSRepositoryLocation location, String[] paths) {
+			this.project = project;
+			this.location = location;
+			this.paths = paths;
+		}
+	}
+
+	/*
+	 * A command whose execution is measured
+	 */
+	private abstract class Operation {
+		/*
+		 * Get the repository and the workspace ready for the next execution
+		 */
+		void prepare(Repository repository) throws CoreException {
+			// Nothing to do
+		}
+		/*
+		 * Check the workspace after the last execution
+		 */
+		void verify(Repository repository) throws CVSException {
+			// Nothing to do
+		}
+		boolean isModifying() {
+			return false;
+		}
+		abstract ICVSFolder getLocalRoot(Repository repository);
+		abstract ICommandOutputListener createListener();
+		abstract IStatus execute(Repository repository, Session session, ICommandOutputListener listener, IProgressMonitor monitor) throws CVSException;
+	}
+
+	/*
+	 * An output listener that counts the lines another listener receives
+	 * and the time it spends in them
+	 */
+	private static class TimingOutputListener implements ICommandOutputListener {
+		private final ICommandOutputListener listener;
+		int count;
+		long time;
+		TimingOutputListener(ICommandOutputListener listener) {
+			this.listener = listener;
+		}
+		public IStatus messageLine(String line, ICVSRepositoryLocation location, ICVSFolder commandRoot, IProgressMonitor monitor) {
+			long start = System.currentTimeMillis();
+			try {
+				return listener.messageLine(line, location, commandRoot, monitor);
+			} finally {
+				time += System.currentTimeMillis() - start;
+				count++;
+			}
+		}
+		public IStatus errorLine(String line, ICVSRepositoryLocation location, ICVSFolder commandRoot, IProgressMonitor monitor) {
+			long start = System.currentTimeMillis();
+			try {
+				return listener.errorLine(line, location, commandRoot, monitor);
+			} finally {
+				time += System.currentTimeMillis() - start;
+				count++;
+			}
+		}
+	}
+
+	public ReplayBenchmarkTest() {
+		super();
+	}
+
+	public ReplayBenchmarkTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(ReplayBenchmarkTest.class);
+	}
+
+	protected void tearDown() throws Exception {
+		for (Iterator iter = repositories.iterator(); iter.hasNext();) {
+			Repository repository = (Repository) iter.next();
+			CVSProviderPlugin.getPlugin().getSessionPool().clear(repository.location);
+			ReplayConnection.setTranscript(repository.project.getName(), null);
+		}
+		repositories.clear();
+		super.tearDown();
+	}
+
+	public void testCheckout() throws Exception {
+		benchmark("checkout", false, new Operation() {
+			void prepare(Repository repository) throws CoreException {
+				repository.project.delete(IResource.ALWAYS_DELETE_PROJECT_CONTENT | IResource.FORCE, null);
+				repository.project.create(null);
+				repository.project.open(null);
+			}
+			ICVSFolder getLocalRoot(Repository repository) {
+				return CVSWorkspaceRoot.getCVSFolderFor(ResourcesPlugin.getWorkspace().getRoot());
+			}
+			ICommandOutputListener createListener() {
+				return new UpdateListener(null);
+			}
+			IStatus execute(Repository repository, Session session, ICommandOutputListener listener, IProgressMonitor monitor) throws CVSException {
+				return Command.CHECKOUT.execute(session, Command.NO_GLOBAL_OPTIONS, Command.NO_LOCAL_OPTIONS, new String[] { repository.project.getName() }, listener, monitor);
+			}
+			void verify(Repository repository) throws CVSException {
+				assertCheckedOut(repository);
+			}
+		});
+	}
+
+	public void testUpdate() throws Exception {
+		benchmark("update", true, new Operation() {
+			ICVSFolder getLocalRoot(Repository repository) {
+				return CVSWorkspaceRoot.getCVSFolderFor(repository.project);
+			}
+			ICommandOutputListener createListener() {
+				return new UpdateListener(null);
+			}
+			IStatus execute(Repository repository, Session session, ICommandOutputListener listener, IProgressMonitor monitor) throws CVSException {
+				return Command.UPDATE.execute(session, Command.NO_GLOBAL_OPTIONS, Command.NO_LOCAL_OPTIONS, Command.NO_ARGUMENTS, listener, monitor);
+			}
+		});
+	}
+
+	public void testStatus() throws Exception {
+		final int[] files = new int[1];
+		benchmark("status", true, new Operation() {
+			ICVSFolder getLocalRoot(Repository repository) {
+				return CVSWorkspaceRoot.getCVSFolderFor(repository.project);
+			}
+			ICommandOutputListener createListener() {
+				return new StatusListener(new IStatusListener() {
+					public void fileStatus(ICVSFolder commandRoot, String path, String remoteRevision) {
+						files[0]++;
+					}
+				});
+			}
+			IStatus execute(Repository repository, Session session, ICommandOutputListener listener, IProgressMonitor monitor) throws CVSException {
+				return Command.STATUS.execute(session, Command.NO_GLOBAL_OPTIONS, Command.NO_LOCAL_OPTIONS, Command.NO_ARGUMENTS, listener, monitor);
+			}
+		});
+		assertTrue(files[0] > 0);
+	}
+
+	public void testRLog() throws Exception {
+		final int[] entries = new int[1];
+		benchmark("rlog", false, new Operation() {
+			ICVSFolder getLocalRoot(Repository repository) {
+				String module = repository.project.getName();
+				return new RemoteFolderTree(null, module, repository.location, module, null);
+			}
+			ICommandOutputListener createListener() {
+				return new LogListener(new ILogEntryListener() {
+					public void handleLogEntryReceived(ILogEntry entry) {
+						entries[0]++;
+					}
+				});
+			}
+			IStatus execute(Repository repository, Session session, ICommandOutputListener listener, IProgressMonitor monitor) throws CVSException {
+				return new RLog().execute(session, Command.NO_GLOBAL_OPTIONS, Command.NO_LOCAL_OPTIONS, new String[] { repository.project.getName() }, listener, monitor);
+			}
+		});
+		assertTrue(entries[0] > 0);
+	}
+
+	public void testCommit() throws Exception {
+		benchmark("commit", true, new Operation() {
+			private int revision;
+			void prepare(Repository repository) throws CoreException {
+				revision++;
+				for (int i = 0; i < repository.paths.length; i++) {
+					byte[] contents = PServerStandIn.getContents(repository.paths[i] + " " + revision, FILE_SIZE);
+					repository.project.getFile(repository.paths[i]).setContents(new ByteArrayInputStream(contents), true, false, null);
+				}
+			}
+			ICVSFolder getLocalRoot(Repository repository) {
+				return CVSWorkspaceRoot.getCVSFolderFor(repository.project);
+			}
+			boolean isModifying() {
+				return true;
+			}
+			ICommandOutputListener createListener() {
+				return new CommandOutputListener();
+			}
+			IStatus execute(Repository repository, Session session, ICommandOutputListener listener, IProgressMonitor monitor) throws CVSException {
+				LocalOption[] localOptions = new LocalOption[] { Command.makeArgumentOption(Command.MESSAGE_OPTION, "Benchmark") };
+				return Command.COMMIT.execute(session, Command.NO_GLOBAL_OPTIONS, localOptions, Command.NO_ARGUMENTS, listener, monitor);
+			}
+		});
+	}
+
+	/*
+	 * Run the operation for each repository size and report the measurements
+	 */
+	private void benchmark(String name, boolean checkout, Operation operation) throws Exception {
+		Performance performance = Performance.getDefault();
+		for (int s = 0; s < SIZES.length; s++) {
+			int size = SIZES[s];
+			Repository repository = createRepository(size);
+			if (checkout)
+				checkout(repository);
+			// response -> long[] { count, time }
+			Map handlerTimes = new TreeMap();
+			int lines = 0;
+			long listenerTime = 0;
+			long elapsed = 0;
+			long allocated = 0;
+			PerformanceMeter meter = performance.createPerformanceMeter(performance.getDefaultScenarioId(this) + size);
+			try {
+				for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+					boolean measured = i >= WARMUP_ITERATIONS;
+					operation.prepare(repository);
+					Session session = new Session(repository.location, operation.getLocalRoot(repository), false /* output to console */);
+					session.open(new NullProgressMonitor(), operation.isModifying());
+					IStatus status;
+					try {
+						TimingResponseHandler[] handlers = TimingResponseHandler.install(session);
+						TimingOutputListener listener = new TimingOutputListener(operation.createListener());
+						long allocatedBefore = getAllocatedBytes();
+						if (measured)
+							meter.start();
+						long start = System.currentTimeMillis();
+						status = operation.execute(repository, session, listener, new NullProgressMonitor());
+						long time = System.currentTimeMillis() - start;
+						if (measured)
+							meter.stop();
+						long allocatedAfter = getAllocatedBytes();
+						if (measured) {
+							elapsed += time;
+							allocated += allocatedAfter - allocatedBefore;
+							lines += listener.count;
+							listenerTime += listener.time;
+							for (int j = 0; j < handlers.length; j++) {
+								if (handlers[j].getCount() == 0)
+									continue;
+								long[] total = (long[]) handlerTimes.get(handlers[j].getResponseID());
+								if (total == null) {
+									total = new long[2];
+									handlerTimes.put(handlers[j].getResponseID(), total);
+								}
+								total[0] += handlers[j].getCount();
+								total[1] += handlers[j].getTime();
+							}
+						}
+					} finally {
+						session.close();
+					}
+					assertTrue(status.toString(), status.getSeverity() <= IStatus.INFO);
+				}
+				meter.commit();
+			} finally {
+				meter.dispose();
+			}
+			operation.verify(repository);
+			report(name, size, elapsed, allocated, handlerTimes, lines, listenerTime);
+		}
+	}
+
+	private void report(String name, int size, long elapsed, long allocated, Map handlerTimes, int lines, long listenerTime) {
+		StringBuffer report = new StringBuffer();
+		report.append("ReplayBenchmarkTest: ").append(name).append(" of ").append(size).append(" files: ");
+		report.append(elapsed / ITERATIONS).append("ms per iteration, ");
+		report.append(elapsed == 0 ? "-" : Long.toString(size * ITERATIONS * 1000L / elapsed)).append(" files/s, ");
+		if (getThreadAllocatedBytes == null) {
+			report.append("allocation not measured");
+		} else {
+			report.append(allocated / ITERATIONS / 1024).append("KB allocated per iteration");
+		}
+		for (Iterator iter = handlerTimes.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			long[] total = (long[]) entry.getValue();
+			report.append("\n\t").append(entry.getKey()).append(": ").append(total[0] / ITERATIONS).append(" responses, ");
+			report.append(total[1] / ITERATIONS).append("ms per iteration");
+		}
+		report.append("\n\tlistener: ").append(lines / ITERATIONS).append(" lines, ").append(listenerTime / ITERATIONS).append("ms per iteration");
+		System.out.println(report);
+	}
+
+	/*
+	 * Return the number of bytes the current thread allocated so far or -1 if the VM does not count them
+	 */
+	private static long getAllocatedBytes() {
+		if (getThreadAllocatedBytes == null)
+			return -1;
+		try {
+			Object bean = getThreadMXBean.invoke(null, new Object[0]);
+			Object id = getId.invoke(Thread.currentThread(), new Object[0]);
+			return ((Long) getThreadAllocatedBytes.invoke(bean, new Object[] { id })).longValue();
+		} catch (Exception e) {
+			getThreadAllocatedBytes = null;
+			return -1;
+		}
+	}
+
+	/*
+	 * Create a project and a repository with the given number of files in
+	 * folders of FILES_PER_FOLDER files
+	 */
+	private Repository createRepository(int size) throws CoreException, CVSException {
+		IProject project = getUniqueTestProject(getName() + size);
+		String module = project.getName();
+		String[] paths = new String[size];
+		for (int i = 0; i < size; i++) {
+			paths[i] = "folder" + (i / FILES_PER_FOLDER) + "/file" + i + ".txt";
+		}
+		ReplayConnection.setTranscript(module, createTranscript("/replay/" + module, module, paths));
+		CVSRepositoryLocation location = CVSRepositoryLocation.fromString(ReplayConnection.getLocation(module));
+		Repository repository = new Repository(project, location, paths);
+		repositories.add(repository);
+		return repository;
+	}
+
+	private void checkout(Repository repository) throws CVSException {
+		Session session = new Session(repository.location, CVSWorkspaceRoot.getCVSFolderFor(ResourcesPlugin.getWorkspace().getRoot()), false /* output to console */);
+		session.open(new NullProgressMonitor(), false /* read-only */);
+		try {
+			IStatus status = Command.CHECKOUT.execute(session, Command.NO_GLOBAL_OPTIONS, Command.NO_LOCAL_OPTIONS, new String[] { repository.project.getName() }, null, new NullProgressMonitor());
+			assertTrue(status.toString(), status.isOK());
+		} finally {
+			session.close();
+		}
+		assertCheckedOut(repository);
+	}
+
+	private void assertCheckedOut(Repository repository) throws CVSException {
+		for (int i = 0; i < repository.paths.length; i++) {
+			IFile file = repository.project.getFile(repository.paths[i]);
+			assertTrue(file.getFullPath().toString(), file.exists());
+			assertNotNull(file.getFullPath().toString(), CVSWorkspaceRoot.getCVSFileFor(file).getSyncInfo());
+		}
+	}
+
+	/*
+	 * Create the responses of a server for the repository with the given files
+	 */
+	private static ProtocolTranscript createTranscript(String root, String module, String[] paths) {
+		ProtocolTranscript transcript = new ProtocolTranscript();
+		transcript.addResponse("expand-modules", "Module-expansion " + module + "\nok\n");
+		StringBuffer checkout = new StringBuffer();
+		StringBuffer update = new StringBuffer();
+		StringBuffer status = new StringBuffer();
+		StringBuffer log = new StringBuffer();
+		StringBuffer commit = new StringBuffer();
+		List contents = new ArrayList();
+		String moduleFolder = root + "/" + module;
+		checkout.append("E cvs server: Updating " + module + "\n");
+		checkout.append("Clear-sticky " + module + "/\n" + moduleFolder + "/\n");
+		checkout.append("Clear-static-directory " + module + "/\n" + moduleFolder + "/\n");
+		String currentFolder = null;
+		for (int i = 0; i < paths.length; i++) {
+			String path = paths[i];
+			int slash = path.lastIndexOf('/');
+			String folder = path.substring(0, slash);
+			String name = path.substring(slash + 1);
+			String repositoryFolder = moduleFolder + "/" + folder;
+			if (!folder.equals(currentFolder)) {
+				currentFolder = folder;
+				checkout.append("E cvs server: Updating " + module + "/" + folder + "\n");
+				checkout.append("Clear-sticky " + module + "/" + folder + "/\n" + repositoryFolder + "/\n");
+				checkout.append("Clear-static-directory " + module + "/" + folder + "/\n" + repositoryFolder + "/\n");
+				update.append("E cvs server: Updating " + folder + "\n");
+				status.append("E cvs server: Examining " + folder + "\n");
+				log.append("E cvs server: Logging " + module + "/" + folder + "\n");
+			}
+			checkout.append("M U " + module + "/" + path + "\n");
+			checkout.append("Mod-time " + MOD_TIME + "\n");
+			checkout.append("Updated " + module + "/" + folder + "/\n" + repositoryFolder + "/" + name + "\n/" + name + "/1.1///\nu=rw,g=r,o=r\n" + FILE_SIZE + "\n");
+			checkout.append('\u0000');
+			contents.add(PServerStandIn.getContents(path, FILE_SIZE));
+			if (i % UPDATE_INTERVAL == 0) {
+				update.append("M U " + path + "\n");
+				update.append("Updated " + folder + "/\n" + repositoryFolder + "/" + name + "\n/" + name + "/1.2///\nu=rw,g=r,o=r\n" + FILE_SIZE + "\n");
+				update.append('\u0000');
+			}
+			status.append("M ===================================================================\n");
+			status.append("M File: " + name + "      \tStatus: Up-to-date\n");
+			status.append("M \n");
+			status.append("M    Working revision:\t1.1\n");
+			status.append("M    Repository revision:\t1.1\t" + repositoryFolder + "/" + name + ",v\n");
+			status.append("M    Sticky Tag:\t\t(none)\n");
+			status.append("M    Sticky Date:\t\t(none)\n");
+			status.append("M    Sticky Options:\t(none)\n");
+			status.append("M \n");
+			log.append("M \n");
+			log.append("M RCS file: " + repositoryFolder + "/" + name + ",v\n");
+			log.append("M head: 1.2\nM branch:\nM locks: strict\nM access list:\nM symbolic names:\n");
+			log.append("M \tv1: 1.1\n");
+			log.append("M keyword substitution: kv\nM total revisions: 2;\tselected revisions: 2\nM description:\n");
+			log.append("M ----------------------------\nM revision 1.2\n");
+			log.append("M date: 2014/10/01 12:00:00;  author: user;  state: Exp;  lines: +1 -1\n");
+			log.append("M Second revision of " + name + "\n");
+			log.append("M ----------------------------\nM revision 1.1\n");
+			log.append("M date: 2014/09/01 12:00:00;  author: user;  state: Exp;\n");
+			log.append("M Initial revision\n");
+			log.append("M =============================================================================\n");
+			commit.append("M Checking in " + path + ";\n");
+			commit.append("M " + repositoryFolder + "/" + name + ",v  <--  " + name + "\n");
+			commit.append("M new revision: 1.2; previous revision: 1.1\nM done\n");
+			commit.append("Checked-in " + folder + "/\n" + repositoryFolder + "/" + name + "\n/" + name + "/1.2///\n");
+		}
+		checkout.append("ok\n");
+		update.append("ok\n");
+		status.append("ok\n");
+		log.append("ok\n");
+		commit.append("ok\n");
+		transcript.addResponse("co", insertContents(checkout.toString(), contents, 1));
+		transcript.addResponse("update", insertContents(update.toString(), contents, UPDATE_INTERVAL));
+		transcript.addResponse("status", status.toString());
+		transcript.addResponse("rlog", log.toString());
+		transcript.addResponse("ci", commit.toString());
+		return transcript;
+	}
+
+	/*
+	 * Replace the markers in the response with the contents of every
+	 * interval-th file
+	 */
+	private static byte[] insertContents(String response, List contents, int interval) {
+		byte[] bytes = response.getBytes();
+		int markers = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == 0)
+				markers++;
+		}
+		byte[] result = new byte[bytes.length - markers + markers * FILE_SIZE];
+		int position = 0;
+		int file = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == 0) {
+				byte[] fileContents = (byte[]) contents.get(file);
+				System.arraycopy(fileContents, 0, result, position, fileContents.length);
+				position += fileContents.length;
+				file += interval;
+			} else {
+				result[position++] = bytes[i];
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.team.tests.ccvs.ui.benchmark;
+
+import junit.framework.Test;
+
+import org.eclipse.team.tests.ccvs.core.EclipseTest;
+import org.eclipse.team.tests.ccvs.core.provider.ResponseStreamTest;
+import org.eclipse.team.tests.ccvs.core.provider.ResponseStreamTest.RepeatingInputStream;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+
+/**
+ * Measures the time it takes to read the responses of a 100MB rlog through
+ * a connection and by reading one byte at a time, which is how lines were
+ * read before.
+ */
+public class ResponseStreamBenchmarkTest extends EclipseTest {
+
+	private static final long TRANSCRIPT_SIZE = 100 * 1024 * 1024;
+	private static final int ITERATIONS = 5;
+
+	public ResponseStreamBenchmarkTest() {
+		super();
+	}
+
+	public ResponseStreamBenchmarkTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return suite(ResponseStreamBenchmarkTest.class);
+	}
+
+	public void testReadResponses() throws Exception {
+		byte[] transcript = ResponseStreamTest.createRlogTranscript();
+		Performance performance = Performance.getDefault();
+		PerformanceMeter meter = performance.createPerformanceMeter(performance.getDefaultScenarioId(this));
+		try {
+			for (int i = 0; i < ITERATIONS; i++) {
+				RepeatingInputStream responses = new RepeatingInputStream(transcript, TRANSCRIPT_SIZE);
+				meter.start();
+				ResponseStreamTest.readResponses(responses);
+				meter.stop();
+			}
+			meter.commit();
+		} finally {
+			meter.dispose();
+		}
+	}
+
+	public void testReadLinesBytewise() throws Exception {
+		byte[] transcript = ResponseStreamTest.createRlogTranscript();
+		Performance performance = Performance.getDefault();
+		PerformanceMeter meter = performance.createPerformanceMeter(performance.getDefaultScenarioId(this));
+		try {
+			for (int i = 0; i < ITERATIONS; i++) {
+				RepeatingInputStream responses = new RepeatingInputStream(transcript, TRANSCRIPT_SIZE);
+				meter.start();
+				ResponseStreamTest.readLinesBytewise(responses);
+				meter.stop();
+			}
+			meter.commit();
+		} finally {
+			meter.dispose();
+		}
+	}
+}